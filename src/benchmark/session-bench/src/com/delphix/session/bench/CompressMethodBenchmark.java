@@ -0,0 +1,228 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.bench;
+
+import com.delphix.session.util.CompressMethod;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the payload compress methods on their own, outside of the frame codec. It measures the time
+ * to compress and decompress a buffer of file transfer data, and prints the compression ratio for each combination at
+ * setup since JMH has no notion of it.
+ *
+ * The data is synthesized to resemble what is typically transferred over the session, i.e.,
+ *
+ *     text     - log lines with timestamps, levels, and messages drawn from a small vocabulary
+ *
+ *     binary   - database style pages of fixed layout records with small integers, sequence numbers, and padding
+ *
+ *     mixed    - text and binary interleaved with an equal share of random bytes standing in for data that has
+ *                already been compressed
+ *
+ * Alternatively, a real file may be specified with "-p file=<path>", in which case the first size bytes of the file
+ * are used instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressMethodBenchmark {
+
+    private static final String[] WORDS = { "session", "transport", "nexus", "command", "slot", "login", "logout",
+            "recovered", "timeout", "exchange", "completed", "failed", "retry", "channel", "bytes", "snapshot" };
+
+    private static final String[] LEVELS = { "INFO", "DEBUG", "WARN", "ERROR" };
+
+    private static final int PAGE_SIZE = 8192;
+    private static final int RECORD_SIZE = 64;
+
+    @Param({ "COMPRESS_DEFLATE", "COMPRESS_GZIP", "COMPRESS_LZ4", "COMPRESS_LZ4_HC" })
+    private CompressMethod compress;
+
+    @Param({ "text", "binary", "mixed" })
+    private String data;
+
+    @Param({ "1048576" })
+    private int size;
+
+    @Param({ "" })
+    private String file;
+
+    private byte[] input;
+    private byte[] compressed;
+
+    private ByteArrayOutputStream output;
+    private byte[] restored;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if (file.length() > 0) {
+            input = readFile(file, size);
+        } else if (data.equals("text")) {
+            input = createText(size, new Random(size));
+        } else if (data.equals("binary")) {
+            input = createBinary(size, new Random(size));
+        } else {
+            input = createMixed(size, new Random(size));
+        }
+
+        output = new ByteArrayOutputStream(compress.estimateCompressed(input.length));
+        restored = new byte[input.length];
+
+        compressed = compress();
+
+        System.out.printf("%n%s %s ratio %.3f%n", compress, file.length() > 0 ? file : data,
+                (double) compressed.length / input.length);
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        output.reset();
+
+        OutputStream os = compress.createOutputStream(output);
+        os.write(input);
+        os.close();
+
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        InputStream is = compress.createInputStream(new ByteArrayInputStream(compressed));
+        int offset = 0;
+
+        while (offset < restored.length) {
+            int count = is.read(restored, offset, restored.length - offset);
+
+            if (count < 0) {
+                throw new EOFException();
+            }
+
+            offset += count;
+        }
+
+        is.close();
+
+        return restored;
+    }
+
+    private static byte[] readFile(String file, int size) throws IOException {
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        byte[] buf = new byte[(int) Math.min(size, new File(file).length())];
+
+        try {
+            is.readFully(buf);
+        } finally {
+            is.close();
+        }
+
+        return buf;
+    }
+
+    private static byte[] createText(int size, Random random) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        long time = 1388534400000L;
+
+        while (sb.length() < size) {
+            time += random.nextInt(5000);
+
+            sb.append(time).append(' ').append(LEVELS[random.nextInt(LEVELS.length)]).append(' ');
+            sb.append("[worker-").append(random.nextInt(32)).append("] ");
+
+            int words = 4 + random.nextInt(12);
+
+            for (int i = 0; i < words; i++) {
+                sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+
+                if (random.nextInt(4) == 0) {
+                    sb.append(random.nextInt(100000)).append(' ');
+                }
+            }
+
+            sb.append('\n');
+        }
+
+        byte[] buf = new byte[size];
+        System.arraycopy(sb.toString().getBytes(), 0, buf, 0, size);
+
+        return buf;
+    }
+
+    private static byte[] createBinary(int size, Random random) {
+        byte[] buf = new byte[size];
+        long sequence = random.nextInt();
+
+        for (int page = 0; page < size; page += PAGE_SIZE) {
+            // Page header with a magic number and the page number
+            writeLong(buf, page, 0xd5d5d5d5L << 32 | page / PAGE_SIZE);
+
+            for (int record = page + RECORD_SIZE; record + RECORD_SIZE <= Math.min(page + PAGE_SIZE, size);
+                    record += RECORD_SIZE) {
+                writeLong(buf, record, sequence++);
+                writeLong(buf, record + 8, random.nextInt(1000));
+                writeLong(buf, record + 16, random.nextLong());
+
+                // The rest of the record is left zero as padding or null columns
+            }
+        }
+
+        return buf;
+    }
+
+    private static byte[] createMixed(int size, Random random) {
+        byte[] buf = new byte[size];
+        int chunk = 65536;
+
+        for (int offset = 0; offset < size; offset += chunk) {
+            int length = Math.min(chunk, size - offset);
+            byte[] part;
+
+            switch ((offset / chunk) % 4) {
+            case 0:
+                part = createText(length, random);
+                break;
+
+            case 1:
+                part = createBinary(length, random);
+                break;
+
+            default:
+                part = new byte[length];
+                random.nextBytes(part);
+                break;
+            }
+
+            System.arraycopy(part, 0, buf, offset, length);
+        }
+
+        return buf;
+    }
+
+    private static void writeLong(byte[] buf, int offset, long value) {
+        for (int i = 0; i < 8 && offset + i < buf.length; i++) {
+            buf[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.bench;
+
+import com.delphix.session.impl.frame.*;
+import com.delphix.session.test.TestTransportManager;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the session frame codec for a control frame, i.e., a ping request that consists of nothing
+ * but the frame header and the fixed frame fields. Unlike SessionFrameBenchmark, where the cost is dominated by the
+ * service payload, it shows the per frame overhead of the codec itself, with the digest method applied to both the
+ * header and frame digests.
+ *
+ * The gc profiler, enabled by the bench target, reports the normalized allocation rate, i.e., gc.alloc.rate.norm
+ * in bytes per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlFrameBenchmark {
+
+    @Param({ "DIGEST_NONE", "DIGEST_CRC32" })
+    private DigestMethod digest;
+
+    private EncoderEmbedder<ChannelBuffer> encoder;
+    private DecoderEmbedder<SessionFrame> decoder;
+
+    private PingRequest frame;
+    private ChannelBuffer encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TestTransportManager xportManager = new TestTransportManager();
+
+        SessionFrameEncoder frameEnc = new SessionFrameEncoder(xportManager);
+        SessionFrameDecoder frameDec = new SessionFrameDecoder(xportManager);
+
+        configure(frameEnc.getOptions());
+        configure(frameDec.getOptions());
+
+        encoder = new EncoderEmbedder<ChannelBuffer>(frameEnc);
+        decoder = new DecoderEmbedder<SessionFrame>(frameDec);
+
+        frame = new PingRequest();
+        frame.setExchangeID(ExchangeID.allocate());
+        frame.setCommandSN(new SerialNumber(3711L));
+        frame.setExpectedCommandSN(new SerialNumber(1783L));
+        frame.setMaxSlotIDInUse(0xfff0);
+
+        encoder.offer(frame);
+        encoded = ChannelBuffers.copiedBuffer(encoder.poll());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        encoder.finish();
+        decoder.finish();
+    }
+
+    @Benchmark
+    public ChannelBuffer encode() {
+        encoder.offer(frame);
+        return encoder.poll();
+    }
+
+    @Benchmark
+    public SessionFrame decode() {
+        decoder.offer(encoded.duplicate());
+        return decoder.poll();
+    }
+
+    private void configure(SessionFrameOptions options) {
+        options.setHeaderDigest(digest);
+        options.setFrameDigest(digest);
+    }
+}
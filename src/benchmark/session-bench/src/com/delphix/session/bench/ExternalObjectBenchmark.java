@@ -0,0 +1,170 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.bench;
+
+import com.delphix.session.impl.control.ControlExchangeType;
+import com.delphix.session.util.ExchangeRegistry;
+import com.delphix.session.util.ExternalClassCache;
+import com.delphix.session.util.ExternalClassTable;
+import com.delphix.session.util.ExternalObjectInput;
+import com.delphix.session.util.ExternalObjectOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the object encoding of ExternalObjectOutput and ExternalObjectInput, i.e., what an exchange
+ * codec goes through for each object nested in an exchange. The serial encoding is the default with java serialization
+ * while the compact encoding is what is used once nexus.compactObjects has been negotiated. The cached encoding is the
+ * compact encoding with the class cache of a transport that has seen the classes before. Each operation encodes the
+ * object onto a fresh object stream, as is the case for each payload, and decodes it back. The encoded size of each
+ * combination is printed at setup since JMH has no notion of it.
+ *
+ * The objects are modeled after what typically goes into an exchange, i.e.,
+ *
+ *     string       - a short string such as a path or a name
+ *
+ *     list         - a list of strings, longs, and UUIDs
+ *
+ *     external     - an externalizable object not found in the class table
+ *
+ *     serializable - a serializable object not found in the class table
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalObjectBenchmark {
+
+    @Param({ "serial", "compact", "cached" })
+    private String encoding;
+
+    @Param({ "string", "list", "external", "serializable" })
+    private String object;
+
+    private ExternalClassTable table;
+    private ExternalClassCache sendCache;
+    private ExternalClassCache receiveCache;
+    private Object input;
+
+    private ByteArrayOutputStream output;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ClassNotFoundException {
+        if (!encoding.equals("serial")) {
+            table = new ExternalClassTable(ExchangeRegistry.create(ControlExchangeType.class));
+        }
+
+        if (object.equals("string")) {
+            input = "/domain0/group-2/source-17/datafile/users01.dbf";
+        } else if (object.equals("list")) {
+            List<Object> list = new ArrayList<Object>();
+
+            for (int i = 0; i < 8; i++) {
+                list.add("datafile-" + i);
+                list.add((long) i << 32);
+                list.add(UUID.randomUUID());
+            }
+
+            input = list;
+        } else if (object.equals("external")) {
+            input = new Record(1234567890L, "users01.dbf", 8192);
+        } else {
+            input = new Date();
+        }
+
+        output = new ByteArrayOutputStream();
+
+        // Define the classes in the caches as if sent over the transport before
+        if (encoding.equals("cached")) {
+            sendCache = new ExternalClassCache();
+            receiveCache = new ExternalClassCache();
+
+            ExternalObjectOutput oout = new ExternalObjectOutput(output, table, sendCache);
+            oout.writeObject(input);
+            oout.flush();
+
+            sendCache.commit(oout.getDefinedClasses());
+
+            ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(output.toByteArray()), table,
+                    receiveCache);
+            oin.readObject();
+        }
+
+        encoded = encode();
+
+        System.out.printf("%n%s %s size %d bytes%n", encoding, object, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        output.reset();
+
+        ExternalObjectOutput oout = new ExternalObjectOutput(output, table, sendCache);
+        oout.writeObject(input);
+        oout.flush();
+
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public Object decode() throws IOException, ClassNotFoundException {
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(encoded), table, receiveCache);
+        return oin.readObject();
+    }
+
+    public static class Record implements Externalizable {
+
+        private long offset;
+        private String name;
+        private int length;
+
+        public Record() {
+
+        }
+
+        public Record(long offset, String name, int length) {
+            this.offset = offset;
+            this.name = name;
+            this.length = length;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeLong(offset);
+            out.writeUTF(name);
+            out.writeInt(length);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            offset = in.readLong();
+            name = in.readUTF();
+            length = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.bench;
+
+import com.delphix.session.service.*;
+import com.delphix.session.util.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class benchmarks the ordered executors with tagged requests. Each benchmark operation submits a batch of
+ * tagged requests and waits for all of them to be executed. The tags are drawn in turn from a pool of the given size
+ * so that a large pool models one tag per remote stream where each tag is seen only a few times, and a small pool
+ * models a few long-lived streams.
+ *
+ * Both executors are given the same number of threads. The gc profiler tells how much is allocated per batch on top
+ * of the futures themselves, which are the same for both, e.g.,
+ *
+ *     % ant bench -Dbench.args="OrderedExecutorBenchmark -p tags=1000000"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderedExecutorBenchmark {
+
+    @Param({ "TAGGED", "STRIPED" })
+    private String executor;
+
+    @Param({ "16", "1000000" })
+    private int tags;
+
+    @Param({ "1024" })
+    private int batch;
+
+    @Param({ "4" })
+    private int threads;
+
+    private ExecutorService service;
+    private Object[] tagPool;
+    private int nextTag;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (executor.equals("TAGGED")) {
+            service = new TaggedRequestExecutor(threads);
+        } else {
+            service = new StripedTaggedRequestExecutor(threads);
+        }
+
+        tagPool = new Object[tags];
+
+        for (int i = 0; i < tags; i++) {
+            tagPool[i] = Integer.valueOf(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws TimeoutException {
+        ExecutorUtil.shutdown(service);
+    }
+
+    @Benchmark
+    public int execute() {
+        pending.set(batch);
+
+        for (int i = 0; i < batch; i++) {
+            service.execute(new TaggedFuture(new TaggedRequest(tagPool[nextTag])));
+
+            if (++nextTag == tags) {
+                nextTag = 0;
+            }
+        }
+
+        while (pending.get() > 0) {
+            Thread.yield();
+        }
+
+        return nextTag;
+    }
+
+    private class TaggedFuture extends ThreadFuture<ServiceResponse> implements ServiceFuture {
+
+        private final TaggedRequest request;
+
+        public TaggedFuture(final TaggedRequest request) {
+            super(new Runnable() {
+
+                @Override
+                public void run() {
+                    pending.decrementAndGet();
+                }
+            }, null);
+
+            this.request = request;
+        }
+
+        @Override
+        public ServiceRequest getServiceRequest() {
+            return request;
+        }
+    }
+
+    private static class TaggedRequest implements ServiceTaggedRequest {
+
+        private final Object tag;
+
+        public TaggedRequest(Object tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Object getTag() {
+            return tag;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public ByteBuffer[] getData() {
+            return null;
+        }
+
+        @Override
+        public void setData(ByteBuffer[] data) {
+
+        }
+
+        @Override
+        public ServiceResponse execute(ServiceNexus nexus) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.bench;
+
+import com.delphix.session.impl.frame.*;
+import com.delphix.session.service.ServiceOptions;
+import com.delphix.session.test.FrameBuilder;
+import com.delphix.session.test.HelloRequest;
+import com.delphix.session.test.TestTransportManager;
+import com.delphix.session.util.CompressMethod;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.delphix.session.service.ServiceOption.*;
+
+/**
+ * This class benchmarks the session frame codec. It measures the time to encode and decode a command request frame
+ * carrying a hello request with bulk data, over every combination of the digest method (applied to header, frame, and
+ * payload digests alike), the compress method, the bulk data digest option, and the bulk data size.
+ *
+ * The bulk data is made of random bytes drawn from a small alphabet so that it compresses to roughly half its size,
+ * which is closer to real world file transfer data than either all zero or purely random content. The largest size
+ * is kept just under 16MB since the frame length is encoded in 24 bits and must cover the header and any compression
+ * overhead as well.
+ *
+ * The gc profiler, enabled by the bench target, reports the normalized allocation rate, i.e., gc.alloc.rate.norm
+ * in bytes per frame. The default mode reports the average time per frame; use "-bm thrpt" for frames per unit time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionFrameBenchmark {
+
+    @Param({ "DIGEST_NONE", "DIGEST_CRC32", "DIGEST_ADLER32" })
+    private DigestMethod digest;
+
+    @Param({ "COMPRESS_NONE", "COMPRESS_DEFLATE", "COMPRESS_GZIP", "COMPRESS_LZ4", "COMPRESS_LZ4_HC" })
+    private CompressMethod compress;
+
+    @Param({ "false", "true" })
+    private boolean digestData;
+
+    @Param({ "64", "4096", "65536", "1048576", "16252928" })
+    private int size;
+
+    private EncoderEmbedder<ChannelBuffer> encoder;
+    private DecoderEmbedder<SessionFrame> decoder;
+
+    private CommandRequest frame;
+    private ChannelBuffer encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TestTransportManager xportManager = new TestTransportManager();
+
+        // Allow the largest frame supported by the protocol
+        ServiceOptions options = xportManager.getNexus().getOptions();
+
+        options.setOption(FORE_MAX_REQUEST, FORE_MAX_REQUEST.getMaximum());
+        options.setOption(BACK_MAX_REQUEST, BACK_MAX_REQUEST.getMaximum());
+        options.setOption(FORE_MAX_RESPONSE, FORE_MAX_RESPONSE.getMaximum());
+        options.setOption(BACK_MAX_RESPONSE, BACK_MAX_RESPONSE.getMaximum());
+
+        SessionFrameEncoder frameEnc = new SessionFrameEncoder(xportManager);
+        SessionFrameDecoder frameDec = new SessionFrameDecoder(xportManager);
+
+        configure(frameEnc.getOptions());
+        configure(frameDec.getOptions());
+
+        encoder = new EncoderEmbedder<ChannelBuffer>(frameEnc);
+        decoder = new DecoderEmbedder<SessionFrame>(frameDec);
+
+        FrameBuilder builder = new FrameBuilder(ExchangeID.allocate(), new SerialNumber(3711L),
+                new SerialNumber(139L), 11, 0xfff0);
+
+        HelloRequest request = new HelloRequest(createData(size));
+        request.setMessage("hello");
+
+        frame = builder.buildRequest(request);
+
+        // Keep a private copy since the encoding buffer is recycled by the next encode
+        encoder.offer(frame);
+        encoded = ChannelBuffers.copiedBuffer(encoder.poll());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        encoder.finish();
+        decoder.finish();
+    }
+
+    @Benchmark
+    public ChannelBuffer encode() {
+        encoder.offer(frame);
+        return encoder.poll();
+    }
+
+    @Benchmark
+    public SessionFrame decode() {
+        decoder.offer(encoded.duplicate());
+        return decoder.poll();
+    }
+
+    private void configure(SessionFrameOptions options) {
+        options.setHeaderDigest(digest);
+        options.setFrameDigest(digest);
+        options.setPayloadDigest(digest);
+        options.setDigestData(digestData);
+        options.setPayloadCompress(compress);
+    }
+
+    private static ByteBuffer createData(int size) {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        return ByteBuffer.wrap(data);
+    }
+}
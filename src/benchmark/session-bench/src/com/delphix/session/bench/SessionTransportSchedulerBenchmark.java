@@ -0,0 +1,255 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.bench;
+
+import com.delphix.session.impl.common.*;
+import com.delphix.session.util.LatencyHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class benchmarks the transport schedulers against a simulated multi-connection session in which one of the
+ * transports rides a congested path. Each transport is modeled as a pipe with a fixed bandwidth and round-trip latency
+ * that serves the requests in order. One transport has its bandwidth divided and its latency multiplied by the
+ * slowdown factor. The session keeps the given number of commands outstanding; each benchmark operation retires the
+ * earliest completion, if the queue is full, and schedules a new command.
+ *
+ * The time reported by JMH is the cost of the scheduling decision itself. The simulated command latency percentiles
+ * and the share of commands that went over the slow transport are printed at teardown since JMH has no notion of
+ * them. Those are what tell the schedulers apart, e.g.,
+ *
+ *     % ant bench -Dbench.args="SessionTransportSchedulerBenchmark -p slowdown=10"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionTransportSchedulerBenchmark {
+
+    private static final double BANDWIDTH = 1.0; // Transport bandwidth (bytes/ns, i.e., 1GB/s)
+    private static final long LATENCY = TimeUnit.MICROSECONDS.toNanos(100); // Transport round-trip latency (ns)
+
+    @Param({ "ROUND_ROBIN", "LEAST_QUEUE", "LEAST_LATENCY" })
+    private ScheduleMethod scheduler;
+
+    @Param({ "8" })
+    private int transports;
+
+    @Param({ "10" })
+    private int slowdown;
+
+    @Param({ "64" })
+    private int queueDepth;
+
+    @Param({ "65536" })
+    private int size;
+
+    private SessionTransportScheduler sched;
+    private SimulatedTransport[] xports;
+
+    private final PriorityQueue<SimulatedExchange> inflight = new PriorityQueue<SimulatedExchange>(64,
+            new Comparator<SimulatedExchange>() {
+
+                @Override
+                public int compare(SimulatedExchange e1, SimulatedExchange e2) {
+                    return e1.completeTime < e2.completeTime ? -1 : e1.completeTime > e2.completeTime ? 1 : 0;
+                }
+            });
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private long now; // Simulated time (ns)
+    private long completed; // Number of commands completed
+    private long completedSlow; // Number of commands completed over the slow transport
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sched = scheduler.create();
+        xports = new SimulatedTransport[transports];
+
+        for (int i = 0; i < transports; i++) {
+            if (i == 0) {
+                xports[i] = new SimulatedTransport(BANDWIDTH / slowdown, LATENCY * slowdown);
+            } else {
+                xports[i] = new SimulatedTransport(BANDWIDTH, LATENCY);
+            }
+
+            sched.attach(xports[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        System.out.printf("%n%s simulated latency (us) p50 %.1f p99 %.1f p99.9 %.1f, slow transport share %.2f%%, "
+                + "throughput %.1f MB/s%n", scheduler, latency.getValueAtPercentile(50.0) / 1000.0,
+                latency.getValueAtPercentile(99.0) / 1000.0, latency.getValueAtPercentile(99.9) / 1000.0,
+                100.0 * completedSlow / completed, (double) completed * size / now * 1000);
+    }
+
+    @Benchmark
+    public SessionTransport schedule() {
+        if (inflight.size() >= queueDepth) {
+            complete(inflight.poll());
+        }
+
+        SimulatedExchange exchange = new SimulatedExchange(size);
+        SimulatedTransport xport = (SimulatedTransport) sched.schedule(exchange);
+
+        xport.send(exchange, now);
+        inflight.offer(exchange);
+
+        return xport;
+    }
+
+    private void complete(SimulatedExchange exchange) {
+        SimulatedTransport xport = exchange.xport;
+
+        now = exchange.completeTime;
+        xport.complete(exchange);
+
+        latency.record(exchange.completeTime - exchange.sendTime);
+        completed++;
+
+        if (xport == xports[0]) {
+            completedSlow++;
+        }
+    }
+
+    /**
+     * Transport modeled as a pipe that transfers the requests one after another at the given bandwidth, followed by
+     * the round-trip latency.
+     */
+    private static class SimulatedTransport extends SessionTransport {
+
+        private final double bandwidth; // Bandwidth (bytes/ns)
+        private final long latency; // Round-trip latency (ns)
+
+        private long busyUntil; // Time when the pipe is done with the requests sent so far
+        private int depth; // Number of outstanding requests
+        private long bytes; // Number of outstanding request bytes
+
+        public SimulatedTransport(double bandwidth, long latency) {
+            super(null);
+
+            this.bandwidth = bandwidth;
+            this.latency = latency;
+        }
+
+        public void send(SimulatedExchange exchange, long now) {
+            busyUntil = Math.max(now, busyUntil) + (long) (exchange.size / bandwidth);
+
+            exchange.xport = this;
+            exchange.sendTime = now;
+            exchange.completeTime = busyUntil + latency;
+
+            depth++;
+            bytes += exchange.size;
+        }
+
+        public void complete(SimulatedExchange exchange) {
+            depth--;
+            bytes -= exchange.size;
+
+            updateNetworkTime(exchange.completeTime - exchange.sendTime, exchange.size);
+        }
+
+        @Override
+        public int getOutboundQueueDepth() {
+            return depth;
+        }
+
+        @Override
+        public long getOutboundBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return true;
+        }
+
+        @Override
+        public boolean isClient() {
+            return true;
+        }
+
+        @Override
+        public SessionNexus getNexus() {
+            return null;
+        }
+    }
+
+    private static class SimulatedExchange extends SessionExchange {
+
+        private final int size; // Request data size
+
+        private SimulatedTransport xport; // Transport scheduled
+        private long sendTime; // Simulated send time
+        private long completeTime; // Simulated complete time
+
+        public SimulatedExchange(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public long getRequestBytes() {
+            return size;
+        }
+
+        @Override
+        public boolean isClient() {
+            return true;
+        }
+
+        @Override
+        protected void setupExchange() {
+
+        }
+
+        @Override
+        protected void createExchange() {
+
+        }
+
+        @Override
+        public boolean send() {
+            return true;
+        }
+
+        @Override
+        public void receive() {
+
+        }
+
+        @Override
+        public void reset() {
+
+        }
+    }
+}
@@ -20,26 +20,23 @@ package com.delphix.session.module.remote.impl;
 
 import com.delphix.appliance.server.exception.DelphixInterruptedException;
 
+import java.util.concurrent.CountDownLatch;
+
 public abstract class AbstractStreamWriter implements StreamWriter {
 
-    private boolean ready;
+    private final CountDownLatch ready = new CountDownLatch(1); // Released once the write may start
 
     @Override
-    public synchronized void startWrite() {
-        while (!ready) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                throw new DelphixInterruptedException(e);
-            }
+    public void startWrite() {
+        try {
+            ready.await();
+        } catch (InterruptedException e) {
+            throw new DelphixInterruptedException(e);
         }
     }
 
     @Override
-    public synchronized void writeReady() {
-        if (!ready) {
-            ready = true;
-            notify();
-        }
+    public void writeReady() {
+        ready.countDown();
     }
 }
@@ -30,6 +30,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * This class implements a data sink that supports sequential streaming write access. It maintains the current offset
@@ -42,7 +43,7 @@ public class StreamSink implements Closeable {
     private final StreamProgress progress;
 
     private long current;
-    private boolean eof;
+    private final CountDownLatch eof = new CountDownLatch(1); // Released once EOF has been reached
 
     public StreamSink(OutputStream stream) {
         this(stream, 0, null);
@@ -95,23 +96,16 @@ public class StreamSink implements Closeable {
 
         sync = update(current, 0, true, sync);
 
-        synchronized (this) {
-            if (!eof) {
-                eof = true;
-                notify();
-            }
-        }
+        eof.countDown();
 
         return sync;
     }
 
-    public synchronized void awaitEof() {
-        while (!eof) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                throw new DelphixInterruptedException();
-            }
+    public void awaitEof() {
+        try {
+            eof.await();
+        } catch (InterruptedException e) {
+            throw new DelphixInterruptedException();
         }
     }
 
@@ -34,6 +34,8 @@ public class NexusInfo implements Serializable {
     private List<TransportInfo> xports;
     private Map<String, ?> options;
 
+    private String lz4Instance;
+
     public NexusInfo() {
 
     }
@@ -86,6 +88,14 @@ public class NexusInfo implements Serializable {
         this.options = options;
     }
 
+    public String getLZ4Instance() {
+        return lz4Instance;
+    }
+
+    public void setLZ4Instance(String lz4Instance) {
+        this.lz4Instance = lz4Instance;
+    }
+
     public List<TransportInfo> getTransports() {
         return xports;
     }
@@ -27,42 +27,57 @@ import com.delphix.session.util.AsyncTask;
 import com.delphix.session.util.TaskMgmtSync;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.delphix.session.service.ServiceOption.FORE_DATA_WINDOW;
 import static com.delphix.session.service.ServiceOption.SYNC_DISPATCH;
+import static com.delphix.session.service.ServiceOption.XPORT_INTERACTIVE;
 import static com.delphix.session.service.ServiceOption.XPORT_SCHEDULER;
 
+/**
+ * This class describes the client channel. The channel state is protected by the channel lock except on the fast path
+ * taken by the uncontended dispatch and completion of a command (see commandStartFast and commandCompleteActive). The
+ * state touched there, including the command counters, the slot table, the data credit, the command sequence, and
+ * the transport scheduler, is updated with atomic operations instead. Everything else, such as the command queues
+ * and the stale set, is still only modified with the channel lock held.
+ */
 public class SessionClientChannel extends SessionChannel {
 
     /*
-     * Command set for all outstanding commands. This helps us keep track of all commands that have entered the
-     * channel but not left yet for debugging purpose. It also ensures that nothing is left behind during channel
-     * shutdown.
+     * Count of all outstanding commands. This helps us keep track of all commands that have entered the channel but
+     * not left yet for debugging purpose. It also ensures that nothing is left behind during channel shutdown.
      */
-    private final Set<SessionClientCommand> registry = new HashSet<SessionClientCommand>();
-
-    // Command queue for those waiting to be started
-    private final LinkedList<SessionClientCommand> pendingQueue = new LinkedList<SessionClientCommand>();
-
-    // Command queue for those waiting to be retried
-    private final Queue<SessionClientCommand> retryQueue = new LinkedList<SessionClientCommand>();
+    private final AtomicInteger totalCommands = new AtomicInteger();
 
-    // Command queue for those waiting to be aborted
-    private final Queue<SessionClientCommand> abortQueue = new LinkedList<SessionClientCommand>();
-
-    // Command set for those active or in flight (for tracking purpose only)
-    private final Set<SessionClientCommand> activeSet = new HashSet<SessionClientCommand>();
+    /*
+     * Command queues for those waiting to be started, retried, and aborted, respectively. The queues are intrusive
+     * so that commands are queued without allocation and unlinked in constant time when aborted. The commands on
+     * the pending queue are kept in the order of their arrival, with interactive commands ahead of bulk commands.
+     */
+    private final SessionClientCommandQueue pendingQueue = new SessionClientCommandQueue();
+    private final SessionClientCommandQueue retryQueue = new SessionClientCommandQueue();
+    private final SessionClientCommandQueue abortQueue = new SessionClientCommandQueue();
 
-    // Command set for those with active task management (for tracking purpose only)
-    private final Set<SessionClientCommand> abortSet = new HashSet<SessionClientCommand>();
+    /*
+     * Count of commands active or in flight and those with active task management (for tracking purpose only). The
+     * membership is implied by the command state, i.e., ACTIVE and ABORT, respectively.
+     */
+    private final AtomicInteger activeCommands = new AtomicInteger();
+    private int abortCommands;
 
     /*
      * Command set for those aborted locally. It contains all the commands, over the lifetime of the channel, that
      * have been completed back up to the application without having the associated channel state synchronized. We
      * add all the commands from the abort queue to the stale set when the channel is disconnect and remove command
      * from the stale set when the command is completed (due to task management). The stale set must be completely
-     * cleared before new commands are processed to avoid potential inconsistency.
+     * cleared before new commands are processed to avoid potential inconsistency. The set is only modified with the
+     * channel lock held but it is checked for emptiness on the fast path.
      */
-    private final Set<SessionClientCommand> staleSet = new HashSet<SessionClientCommand>();
+    private final Set<SessionClientCommand> staleSet =
+            Collections.newSetFromMap(new ConcurrentHashMap<SessionClientCommand, Boolean>());
 
     private final SessionClientTask retryTask; // Channel retry task
     private final SessionClientTask abortTask; // Channel abort task
@@ -71,6 +86,15 @@ public class SessionClientChannel extends SessionChannel {
     private final SessionClientSlotTable slotTable; // Command slot table
     private final SessionTransportScheduler scheduler; // Transport scheduler
     private final SessionThrottler throttler; // Throughput throttler
+    private volatile boolean throttled; // Restart delayed for throughput throttling
+
+    /*
+     * The slot table limits the number of outstanding commands but not the amount of data they carry. The server
+     * also grants a data window, which bounds the request data held by the started commands. Each command consumes
+     * credit for its request data when it is assigned a slot and returns it when the slot is released.
+     */
+    private final long dataWindow; // Request data window negotiated at login (0 if unlimited)
+    private final AtomicLong dataInUse = new AtomicLong(); // Request data credit held by the started commands
 
     private SessionClientLogout logout; // Session logout exchange
     private final TaskMgmtSync shutdown; // Channel shutdown sync
@@ -93,6 +117,11 @@ public class SessionClientChannel extends SessionChannel {
 
     public SessionClientChannel(SessionNexus nexus, boolean fore, int queueDepth, SerialNumber commandSN,
             int bandwidthLimit) {
+        this(nexus, fore, queueDepth, commandSN, bandwidthLimit, null);
+    }
+
+    public SessionClientChannel(SessionNexus nexus, boolean fore, int queueDepth, SerialNumber commandSN,
+            int bandwidthLimit, SessionThrottler parentThrottler) {
         super(nexus, fore);
 
         // Initialize the command sequence
@@ -103,14 +132,23 @@ public class SessionClientChannel extends SessionChannel {
         this.commandSN = commandSN;
 
         // Create the transport scheduler
-        String option = nexus.getOptions().getOption(XPORT_SCHEDULER);
-        scheduler = ScheduleMethod.valueOf(option).create();
+        ScheduleMethod method = ScheduleMethod.valueOf(nexus.getOptions().getOption(XPORT_SCHEDULER));
+        int reserved = nexus.getOptions().getOption(XPORT_INTERACTIVE);
+
+        if (reserved > 0) {
+            scheduler = new SessionTransportClassifier(method, reserved);
+        } else {
+            scheduler = method.create();
+        }
 
-        // Create the session throttler
-        throttler = new SessionThrottler(bandwidthLimit * (1024 * 1024), this);
+        // Create the session throttler under the parent throttler if any
+        throttler = new SessionThrottler(bandwidthLimit * (1024L * 1024), parentThrottler);
 
         slotTable = new SessionClientSlotTable(queueDepth);
 
+        // The data window is negotiated for the forechannel at login and stays fixed for the life of the channel
+        dataWindow = fore ? nexus.getOptions().getOption(FORE_DATA_WINDOW) : 0;
+
         stats = new SessionClientChannelStats(this);
 
         shutdown = new TaskMgmtSync();
@@ -118,6 +156,11 @@ public class SessionClientChannel extends SessionChannel {
         // Create the channel retry task
         retryTask = new SessionClientTask(retryQueue) {
 
+            @Override
+            public boolean isReady() {
+                return super.isReady() && scheduler.isWritable(retryQueue.peek());
+            }
+
             @Override
             protected void doWork(SessionClientCommand command) {
                 retryCommand(command);
@@ -138,7 +181,8 @@ public class SessionClientChannel extends SessionChannel {
 
             @Override
             public boolean isReady() {
-                return super.isReady() && (throttler.needTokens() || slotTable.available()) && staleSet.isEmpty();
+                return super.isReady() && !throttled && slotTable.available() && staleSet.isEmpty()
+                        && hasCredit(pendingQueue.peek()) && scheduler.isWritable(pendingQueue.peek());
             }
 
             @Override
@@ -176,15 +220,14 @@ public class SessionClientChannel extends SessionChannel {
         return !scheduler.isEmpty();
     }
 
-    @Override
-    public SerialNumber getCommandSN() {
-        return commandSN;
-    }
-
     public SerialNumber nextCommandSN() {
-        SerialNumber current = commandSN;
-        commandSN = current.next();
-        return current;
+        for (;;) {
+            SerialNumber current = commandSN;
+
+            if (compareAndSetCommandSN(current, current.next())) {
+                return current;
+            }
+        }
     }
 
     @Override
@@ -193,13 +236,26 @@ public class SessionClientChannel extends SessionChannel {
             throw new ProtocolViolationException("invalid expected command sequence " + commandSN);
         }
 
-        if (expectedCommandSN == null || expectedCommandSN.lessThan(commandSN)) {
-            expectedCommandSN = commandSN;
+        for (;;) {
+            SerialNumber current = expectedCommandSN;
+
+            if (current != null && !current.lessThan(commandSN)) {
+                return;
+            }
+
+            if (compareAndSetExpectedCommandSN(current, commandSN)) {
+                return;
+            }
         }
     }
 
+    /*
+     * The channel state refreshed from or updated into the frames is either atomic or volatile. Since the refresh and
+     * the update happen with every exchange, they are done without the channel lock.
+     */
+
     @Override
-    public synchronized void refresh(RequestFrame request) {
+    public void refresh(RequestFrame request) {
         SerialNumber expectedCommandSN = request.getExpectedCommandSN();
 
         if (expectedCommandSN != null) {
@@ -208,14 +264,19 @@ public class SessionClientChannel extends SessionChannel {
     }
 
     @Override
-    public synchronized void refresh(ResponseFrame response) {
+    public void refresh(ResponseFrame response) {
         setExpectedCommandSN(response.getExpectedCommandSN());
 
-        slotTable.update(response.getCurrentMaxSlotID(), response.getTargetMaxSlotID());
+        // Resume the pending commands if the server has grown the slot table
+        if (slotTable.update(response.getCurrentMaxSlotID(), response.getTargetMaxSlotID())) {
+            synchronized (this) {
+                restartTask.submit();
+            }
+        }
     }
 
     @Override
-    public synchronized void update(RequestFrame request) {
+    public void update(RequestFrame request) {
         /*
          * Command request has a command SN assigned to it upon entry to the session (see commandStart). The command
          * SN remains the same for the life of that command. Non-command requests carry the latest command SN so it
@@ -231,12 +292,12 @@ public class SessionClientChannel extends SessionChannel {
     }
 
     @Override
-    public synchronized void update(ResponseFrame response) {
+    public void update(ResponseFrame response) {
         response.setCommandSN(getCommandSN());
     }
 
     public int getActiveCommands() {
-        return activeSet.size();
+        return activeCommands.get();
     }
 
     public int getRetryCommands() {
@@ -248,11 +309,15 @@ public class SessionClientChannel extends SessionChannel {
     }
 
     public int getTotalCommands() {
-        return registry.size();
+        return totalCommands.get();
+    }
+
+    public long getDataInUse() {
+        return dataInUse.get();
     }
 
     public int getAbortCommands() {
-        return abortQueue.size() + abortSet.size();
+        return abortQueue.size() + abortCommands;
     }
 
     public ServiceFuture execute(ServiceRequest request, Runnable done, long timeout) {
@@ -282,11 +347,11 @@ public class SessionClientChannel extends SessionChannel {
         }
 
         /*
-         * Try to start channel command processing. If the command could not be started immediately for various
-         * reasons, it would have been queued in the channel for later processing. In that case, re-enable task
-         * management before return.
+         * Try to start channel command processing, without the channel lock first if the channel is uncontended. If
+         * the command could not be started immediately for various reasons, it would have been queued in the channel
+         * for later processing. In that case, re-enable task management before return.
          */
-        if (!commandStart(command)) {
+        if (!commandStartFast(command) && !commandStart(command)) {
             logger.tracef("%s: command queued for restart later", command);
             command.enableTaskMgmt();
 
@@ -386,24 +451,30 @@ public class SessionClientChannel extends SessionChannel {
      * pending command has not modified the vital channel state. Specifically, it has not been assigned a command
      * slot nor a command sequence. Hence, to abort a pending command does not require state synchronization with
      * the server. In the meantime, the pending queue ensures that the commands are always processed in order when
-     * they are restarted later. There are a few conditions that prevent immediate start of a command.
+     * they are restarted later, except that interactive commands are processed ahead of bulk commands (see
+     * ServiceTrafficClass). There are a few conditions that prevent immediate start of a command.
      *
      *   - non-empty pending queue (i.e., restart task is running)
      *   - non-empty stale set (i.e. commands aborted locally)
      *   - channel not connected
+     *   - no writable transport for the command (i.e., all above the write buffer high watermark)
      *   - command slot table full
+     *   - data window full (i.e., not enough credit for the request data)
      *
      * If none of the above conditions are met, the command shall be started immediately following which the channel
      * state must be kept in sync with the server regardless of the outcome of the command.
      */
     private synchronized boolean commandStart(SessionClientCommand command) {
-        // Update the throttler's token count
-        throttler.updateTokens();
-
         // Register the command and check if it can be started immediately or not
         if (!register(command)) {
             command.setState(SessionClientCommandState.PENDING);
-            pendingQueue.offer(command);
+
+            // Let interactive commands jump ahead of the pending bulk commands
+            if (command.getTrafficClass() == ServiceTrafficClass.INTERACTIVE) {
+                pendingQueue.offerPriority(command);
+            } else {
+                pendingQueue.offer(command);
+            }
 
             // Submit the restart task in case we failed to register the command due to throughput throttling.
             restartTask.submit();
@@ -415,6 +486,15 @@ public class SessionClientChannel extends SessionChannel {
 
         // Schedule the transport to send the command over
         SessionTransport xport = scheduler.schedule(command);
+
+        /*
+         * Transport writability changes outside of the channel lock. If the last writable transport has just gone
+         * over the high watermark since the command was registered, send it anyway since the slot is taken already.
+         */
+        if (xport == null) {
+            xport = scheduler.schedule();
+        }
+
         command.setTransport(xport);
 
         // The success of command registration above ensures that a transport exists in the scheduler
@@ -422,7 +502,73 @@ public class SessionClientChannel extends SessionChannel {
 
         // Activate the command
         command.setState(SessionClientCommandState.ACTIVE);
-        activeSet.add(command);
+        activeCommands.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * State transitions: T1
+     *
+     * Start the command without the channel lock in the uncontended case, i.e., when none of the conditions outlined
+     * in commandStart() above holds it back. The conditions are checked the same way except that the transport, the
+     * data credit, the slot, and the command SN are claimed with atomic operations. Whatever has been claimed is
+     * given back if the command cannot be started after all, in which case the caller falls back to commandStart()
+     * under the channel lock, which resumes the restart task if necessary.
+     *
+     * Since the pending queue and the restart task are checked without the lock, a command dispatched concurrently
+     * with another one being queued may be started ahead of it. That is no different from the two dispatch contexts
+     * arriving in the opposite order. A command dispatched after another has been queued always finds it queued.
+     */
+    private boolean commandStartFast(SessionClientCommand command) {
+        if (throttled || !pendingQueue.isEmpty() || !restartTask.isDone()) {
+            return false;
+        }
+
+        /*
+         * Count the command as active before the channel is found connected. Should the last transport be detached
+         * concurrently, detach() will wait for the command to drain before it proceeds (see detach).
+         */
+        activeCommands.incrementAndGet();
+
+        if (!isConnected() || !staleSet.isEmpty() || !scheduler.isWritable(command)) {
+            activeCommands.decrementAndGet();
+            return false;
+        }
+
+        // Consume the required tokens or leave it to commandStart() to throttle the channel
+        if (throttler.consumeTokens(command, getCompressionRatio()) > 0) {
+            activeCommands.decrementAndGet();
+            return false;
+        }
+
+        // Schedule the transport to send the command over
+        SessionTransport xport = scheduler.schedule(command);
+
+        if (xport == null) {
+            xport = scheduler.schedule();
+        }
+
+        if (xport == null || !consumeCredit(command)) {
+            activeCommands.decrementAndGet();
+            return false;
+        }
+
+        // The slot must be reserved before the command SN is allocated (see SessionServerSlotTable)
+        if (slotTable.reserve(command) == null) {
+            releaseCredit(command);
+            activeCommands.decrementAndGet();
+            return false;
+        }
+
+        // Register the command with the channel
+        totalCommands.incrementAndGet();
+
+        command.setCommandSN(nextCommandSN());
+        command.setTransport(xport);
+
+        // Activate the command
+        command.setState(SessionClientCommandState.ACTIVE);
 
         return true;
     }
@@ -446,17 +592,23 @@ public class SessionClientChannel extends SessionChannel {
                 throw new NexusResetException("failed to dispatch new command");
             }
 
-            registry.add(command);
+            totalCommands.incrementAndGet();
             shutdown.unblock();
 
             return false;
         }
 
         // Register the command with the channel
-        registry.add(command);
+        totalCommands.incrementAndGet();
 
         // Check if the restart task is done
-        if (!restartTask.isDone()) {
+        if (!restartTask.isDone() || !pendingQueue.isEmpty()) {
+            return false;
+        }
+
+        // Check if any transport is below the write buffer high watermark
+        if (!scheduler.isWritable(command)) {
+            logger.debugf("%s: command queued due to unwritable transports", command);
             return false;
         }
 
@@ -466,7 +618,15 @@ public class SessionClientChannel extends SessionChannel {
         }
 
         // Consume the required tokens
-        if (!throttler.consumeTokens(command, getCompressionRatio())) {
+        long waitNS = throttler.consumeTokens(command, getCompressionRatio());
+
+        if (waitNS > 0) {
+            throttle(waitNS);
+            return false;
+        }
+
+        // Consume the data credit if the data window has room for the command
+        if (!consumeCredit(command)) {
             return false;
         }
 
@@ -478,6 +638,7 @@ public class SessionClientChannel extends SessionChannel {
         SessionClientSlot slot = slotTable.reserve(command);
 
         if (slot == null) {
+            releaseCredit(command);
             return false;
         }
 
@@ -492,8 +653,7 @@ public class SessionClientChannel extends SessionChannel {
     private synchronized void commandQueueRetry(SessionClientCommand command) {
         // Deactivate the command
         command.setState(SessionClientCommandState.RETRY);
-        boolean removed = activeSet.remove(command);
-        assert removed;
+        activeCommands.decrementAndGet();
 
         command.resetTransport();
 
@@ -583,7 +743,7 @@ public class SessionClientChannel extends SessionChannel {
 
         // Activate the command
         command.setState(SessionClientCommandState.ACTIVE);
-        activeSet.add(command);
+        activeCommands.incrementAndGet();
 
         command.resetStatus();
 
@@ -636,34 +796,50 @@ public class SessionClientChannel extends SessionChannel {
      */
     private synchronized boolean commandRestart(SessionClientCommand command) {
         // Consume the required tokens
-        throttler.consumeTokens(command, getCompressionRatio(), true);
+        long waitNS = throttler.consumeTokens(command, getCompressionRatio());
+
+        if (waitNS > 0) {
+            commandRequeue(command);
+            throttle(waitNS);
+            return false;
+        }
 
         // Check if the channel is connected
         if (!isConnected()) {
-            pendingQueue.offerFirst(command);
+            commandRequeue(command);
             return false;
         }
 
-        // Schedule the transport to send the command over
+        // Schedule the transport to send the command over unless none is writable
         SessionTransport xport = scheduler.schedule(command);
+
+        if (xport == null) {
+            commandRequeue(command);
+            return false;
+        }
+
         command.setTransport(xport);
 
         /*
          * Reserve a slot for the command. Slot reservation may fail since the task may have been restarted due to
-         * tokens becoming available.
+         * tokens becoming available. The same goes for the data credit.
          */
-        if (slotTable.reserve(command) == null) {
-            pendingQueue.offerFirst(command);
+        if (!consumeCredit(command)) {
+            commandRequeue(command);
             return false;
         }
 
-        assert command.getSlot() != null;
+        if (slotTable.reserve(command) == null) {
+            releaseCredit(command);
+            commandRequeue(command);
+            return false;
+        }
 
         // Allocate a command SN for the command
         command.setCommandSN(nextCommandSN());
 
-        // Add the command to the active set before activating the command
-        activeSet.add(command);
+        // Count the command as active before activating the command
+        activeCommands.incrementAndGet();
 
         // Activate the command and dispatch may start right away from the dispatch context
         command.setState(SessionClientCommandState.ACTIVE);
@@ -671,6 +847,81 @@ public class SessionClientChannel extends SessionChannel {
         return true;
     }
 
+    /**
+     * Put the command that failed to restart back to where it was on the pending queue.
+     */
+    private void commandRequeue(SessionClientCommand command) {
+        pendingQueue.requeue(command, command.getTrafficClass() == ServiceTrafficClass.INTERACTIVE);
+    }
+
+    /**
+     * Check if the data window has room for the command. A command carrying more data than the window is allowed
+     * to start when no other credit is held since it would be stuck forever otherwise.
+     */
+    private boolean hasCredit(SessionClientCommand command) {
+        return command == null || hasCredit(dataInUse.get(), command.getDataSize());
+    }
+
+    private boolean hasCredit(long inUse, long credit) {
+        return dataWindow == 0 || inUse == 0 || inUse + credit <= dataWindow;
+    }
+
+    /**
+     * Consume the data credit for the command if the data window has room for it. Return true if the credit has been
+     * consumed and false otherwise.
+     */
+    private boolean consumeCredit(SessionClientCommand command) {
+        long credit = command.getDataSize();
+
+        for (;;) {
+            long inUse = dataInUse.get();
+
+            if (!hasCredit(inUse, credit)) {
+                return false;
+            }
+
+            if (dataInUse.compareAndSet(inUse, inUse + credit)) {
+                break;
+            }
+        }
+
+        command.setDataCredit(credit);
+
+        return true;
+    }
+
+    private void releaseCredit(SessionClientCommand command) {
+        long inUse = dataInUse.addAndGet(-command.getDataCredit());
+        assert inUse >= 0;
+
+        command.setDataCredit(0);
+    }
+
+    /**
+     * Delay the restart of the pending commands until the throttler may have enough tokens. The restart task is woken
+     * up by the nexus scheduler rather than waiting for the tokens with the channel lock held.
+     */
+    private void throttle(long waitNS) {
+        if (throttled) {
+            return;
+        }
+
+        throttled = true;
+
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (SessionClientChannel.this) {
+                    throttled = false;
+                    restartTask.submit();
+                }
+            }
+        };
+
+        nexus.schedule(task, waitNS, TimeUnit.NANOSECONDS);
+    }
+
     /**
      * State transitions: T7, T12
      *
@@ -680,8 +931,7 @@ public class SessionClientChannel extends SessionChannel {
     private synchronized boolean commandQueueAbort(SessionClientCommand command) {
         // Deactivate the abort if any
         if (command.getState() == SessionClientCommandState.ABORT) {
-            boolean removed = abortSet.remove(command);
-            assert removed;
+            abortCommands--;
             command.resetAbort();
         }
 
@@ -749,7 +999,7 @@ public class SessionClientChannel extends SessionChannel {
 
         // Activate the abort
         command.setState(SessionClientCommandState.ABORT);
-        abortSet.add(command);
+        abortCommands++;
 
         return true;
     }
@@ -768,16 +1018,10 @@ public class SessionClientChannel extends SessionChannel {
         SessionClientCommandState state = command.getState();
         boolean notify = true;
 
-        // Update the throttler's token count
-        throttler.updateTokens();
-
         // Command state specific processing
-        boolean removed;
-
         switch (state) {
         case ACTIVE:
-            removed = activeSet.remove(command);
-            assert removed;
+            activeCommands.decrementAndGet();
             break;
 
         case PENDING:
@@ -786,8 +1030,7 @@ public class SessionClientChannel extends SessionChannel {
         case ABORT:
             logger.infof("%s: command completed after abort", command);
 
-            removed = abortSet.remove(command);
-            assert removed;
+            abortCommands--;
 
             // Resume the restart task after the stale set is cleared
             if (staleSet.remove(command)) {
@@ -808,21 +1051,59 @@ public class SessionClientChannel extends SessionChannel {
         command.setState(SessionClientCommandState.FINAL);
 
         // Unregister the command
-        removed = registry.remove(command);
-        assert removed;
+        int total = totalCommands.decrementAndGet();
+        assert total >= 0;
 
         // Release the command slot if any
         SessionClientSlot slot = command.getSlot();
 
-        // Release the slot and resume the restart task
+        // Release the slot and the data credit and resume the restart task
         if (slot != null) {
             slotTable.release(slot);
+            releaseCredit(command);
             restartTask.submit();
         }
 
         return notify;
     }
 
+    /**
+     * State transitions: T2
+     *
+     * Complete an active command from the channel without the channel lock. Task management must have been disabled
+     * on the command by the caller so that the command cannot be aborted concurrently. Return false if the command
+     * is not active, in which case the caller must complete it with commandComplete() instead.
+     *
+     * The restart task is resumed only if the pending queue is not empty. The queue is checked after the slot and the
+     * data credit have been released whereas commandStart() queues the command before the restart task checks for
+     * them. Hence, at least one of the two is bound to see the other and the pending command is never stranded.
+     */
+    private boolean commandCompleteActive(SessionClientCommand command) {
+        if (command.getState() != SessionClientCommandState.ACTIVE) {
+            return false;
+        }
+
+        command.setState(SessionClientCommandState.FINAL);
+
+        activeCommands.decrementAndGet();
+
+        // Unregister the command
+        int total = totalCommands.decrementAndGet();
+        assert total >= 0;
+
+        // Release the slot and the data credit held by the active command
+        slotTable.release(command.getSlot());
+        releaseCredit(command);
+
+        if (!pendingQueue.isEmpty()) {
+            synchronized (this) {
+                restartTask.submit();
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Complete the command with optionally a service exception generated by the protocol layer either locally or
      * over the wire.
@@ -832,6 +1113,13 @@ public class SessionClientChannel extends SessionChannel {
             return;
         }
 
+        notifyComplete(command, t);
+    }
+
+    /**
+     * Notify the application of the command completion after the command has been completed from the channel.
+     */
+    private void notifyComplete(SessionClientCommand command, Throwable t) {
         command.complete(t);
 
         // Update the channel stats
@@ -943,8 +1231,14 @@ public class SessionClientChannel extends SessionChannel {
         /*
          * In case the command is still being aborted, we will just complete it here and let the task management
          * discover the command status when it completes later, as guaranteed by the transport completion ordering.
+         * Otherwise, the command cannot be aborted with task management disabled and it is completed from the channel
+         * without the lock.
          */
-        completeCommand(command, exception);
+        if (disabled && commandCompleteActive(command)) {
+            notifyComplete(command, exception);
+        } else {
+            completeCommand(command, exception);
+        }
 
         if (disabled) {
             // Re-enable task management if successfully disabled earlier
@@ -1124,7 +1418,8 @@ public class SessionClientChannel extends SessionChannel {
 
     /**
      * Attempt to abort a pending command. If found, it will be removed from the pending queue to prevent a race
-     * with the restart task. We will have exclusive access to the command following that.
+     * with the restart task. We will have exclusive access to the command following that. The removal takes constant
+     * time regardless of the queue depth.
      */
     private synchronized boolean commandAbortPending(SessionClientCommand command) {
         return pendingQueue.remove(command);
@@ -1146,7 +1441,7 @@ public class SessionClientChannel extends SessionChannel {
      * completed back from the associated transport.
      */
     private synchronized boolean commandAbortActive(SessionClientCommand command) {
-        if (!activeSet.contains(command)) {
+        if (command.getState() != SessionClientCommandState.ACTIVE) {
             return false;
         }
 
@@ -1163,9 +1458,8 @@ public class SessionClientChannel extends SessionChannel {
         // Activate the abort
         command.setState(SessionClientCommandState.ABORT);
 
-        boolean removed = activeSet.remove(command);
-        assert removed;
-        abortSet.add(command);
+        activeCommands.decrementAndGet();
+        abortCommands++;
 
         return true;
     }
@@ -1283,6 +1577,19 @@ public class SessionClientChannel extends SessionChannel {
         }
     }
 
+    /**
+     * Notify the channel that the transport has become writable again. Resume the commands held back while none of
+     * the transports were writable. This is invoked from the network context.
+     */
+    public synchronized void notifyWritable(SessionTransport xport) {
+        if (!scheduler.contains(xport)) {
+            return;
+        }
+
+        retryTask.submit();
+        restartTask.submit();
+    }
+
     /**
      * Detach the transport from the channel. Channel connectivity management, including transport attachment and
      * detachment, is processed as a series of session events in chronological order.
@@ -1312,11 +1619,11 @@ public class SessionClientChannel extends SessionChannel {
         synchronized (this) {
             /*
              * Command dispatch may have selected a transport just before it is detached, in which case, a command
-             * may have been put in the active set while on its way to a dead transport. Such commands should fail
+             * may have been counted as active while on its way to a dead transport. Such commands should fail
              * shortly at the transport. We will wait briefly here for them to drain before proceeding.
              */
-            while (!activeSet.isEmpty() || !abortSet.isEmpty()) {
-                logger.infof("%s: drain active (%d/%d) commands", nexus, activeSet.size(), abortSet.size());
+            while (activeCommands.get() > 0 || abortCommands > 0) {
+                logger.infof("%s: drain active (%d/%d) commands", nexus, activeCommands.get(), abortCommands);
 
                 try {
                     wait(1000);
@@ -1397,10 +1704,10 @@ public class SessionClientChannel extends SessionChannel {
          * various queues for a snapshot of the channel stats. The synchronized block is added to guard against that.
          */
         synchronized (this) {
-            registry.removeAll(pendingQueue);
+            totalCommands.addAndGet(-pendingQueue.size());
             pendingQueue.clear();
 
-            registry.removeAll(retryQueue);
+            totalCommands.addAndGet(-retryQueue.size());
             retryQueue.clear();
 
             // The stale set should be a super set of abort queue after channel disconnected
@@ -1413,10 +1720,10 @@ public class SessionClientChannel extends SessionChannel {
              * Clear the stale set which are already completed. Note that after this point the channel state will be
              * inconsistent and there is no way to reconcile any more. And that is fine for shutdown.
              */
-            registry.removeAll(staleSet);
+            totalCommands.addAndGet(-staleSet.size());
             staleSet.clear();
 
-            assert registry.isEmpty();
+            assert totalCommands.get() == 0;
         }
 
         /*
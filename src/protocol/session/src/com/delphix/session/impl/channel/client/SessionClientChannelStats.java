@@ -18,13 +18,13 @@
 
 package com.delphix.session.impl.channel.client;
 
+import com.delphix.session.util.LatencyHistogram;
+
 import java.util.HashMap;
 import java.util.Map;
 
 public class SessionClientChannelStats {
 
-    // TODO: add histogram support
-
     private static final String EXECUTE_TIME = "client.sum.executeTime";
     private static final String PENDING_TIME = "client.sum.pendingTime";
     private static final String NETWORK_TIME = "client.sum.networkTime";
@@ -32,6 +32,13 @@ public class SessionClientChannelStats {
     private static final String COMPLETE_TIME = "client.sum.completeTime";
     private static final String ABORT_TIME = "client.sum.abortTime";
 
+    private static final String EXECUTE_HIST = "client.hist.executeTime";
+    private static final String PENDING_HIST = "client.hist.pendingTime";
+    private static final String NETWORK_HIST = "client.hist.networkTime";
+    private static final String DISPATCH_HIST = "client.hist.dispatchTime";
+    private static final String COMPLETE_HIST = "client.hist.completeTime";
+    private static final String ABORT_HIST = "client.hist.abortTime";
+
     private static final String TOTAL_BYTES = "client.sum.totalBytes";
     private static final String TOTAL_COMPRESSED_BYTES = "client.sum.totalCompressedBytes";
 
@@ -48,6 +55,7 @@ public class SessionClientChannelStats {
     private static final String TOTAL_COUNT = "client.now.totalCount";
     private static final String CURRENT_CMD_SN = "client.now.currentCmdSN";
     private static final String EXPECTED_CMD_SN = "client.now.expectedCmdSN";
+    private static final String DATA_IN_USE = "client.now.dataInUse";
 
     private long executeTime; // Total execute time (ns)
     private long pendingTime; // Total pending time (ns)
@@ -56,6 +64,14 @@ public class SessionClientChannelStats {
     private long completeTime; // Total complete time (ns)
     private long abortTime; // Total abort time (ns)
 
+    // Latency histograms for the phases above (ns)
+    private final LatencyHistogram executeHistogram = new LatencyHistogram();
+    private final LatencyHistogram pendingHistogram = new LatencyHistogram();
+    private final LatencyHistogram networkHistogram = new LatencyHistogram();
+    private final LatencyHistogram dispatchHistogram = new LatencyHistogram();
+    private final LatencyHistogram completeHistogram = new LatencyHistogram();
+    private final LatencyHistogram abortHistogram = new LatencyHistogram();
+
     private long totalCompleted; // Total number of commands completed
     private long totalPending; // Total number of commands pending
     private long totalReset; // Total number of commands reset
@@ -72,9 +88,26 @@ public class SessionClientChannelStats {
         this.channel = channel;
     }
 
-    public synchronized void update(SessionClientCommand command) {
+    public void update(SessionClientCommand command) {
         SessionClientCommandStats stats = command.getStats();
 
+        // Record the latencies outside of the lock since the histograms are lock-free
+        if (!stats.isAborted()) {
+            executeHistogram.record(stats.getExecuteTime());
+            pendingHistogram.record(stats.getPendingTime());
+            networkHistogram.record(stats.getNetworkTime());
+            dispatchHistogram.record(stats.getDispatchTime());
+            completeHistogram.record(stats.getCompleteTime());
+        } else {
+            abortHistogram.record(stats.getAbortTime());
+        }
+
+        synchronized (this) {
+            updateSummary(stats);
+        }
+    }
+
+    private void updateSummary(SessionClientCommandStats stats) {
         if (!stats.isAborted()) {
             executeTime += stats.getExecuteTime();
             pendingTime += stats.getPendingTime();
@@ -119,6 +152,13 @@ public class SessionClientChannelStats {
 
         totalAborted = 0;
         totalThrottled = 0;
+
+        executeHistogram.reset();
+        pendingHistogram.reset();
+        networkHistogram.reset();
+        dispatchHistogram.reset();
+        completeHistogram.reset();
+        abortHistogram.reset();
     }
 
     public long getExecuteTime() {
@@ -199,10 +239,20 @@ public class SessionClientChannelStats {
         stats.put(TOTAL_THROTTLED, totalThrottled);
     }
 
+    private void getHistogramStats(Map<String, Object> stats) {
+        executeHistogram.getStats(EXECUTE_HIST, stats);
+        pendingHistogram.getStats(PENDING_HIST, stats);
+        networkHistogram.getStats(NETWORK_HIST, stats);
+        dispatchHistogram.getStats(DISPATCH_HIST, stats);
+        completeHistogram.getStats(COMPLETE_HIST, stats);
+        abortHistogram.getStats(ABORT_HIST, stats);
+    }
+
     public Map<String, ?> getStats() {
         Map<String, Object> stats = new HashMap<String, Object>();
 
         getSummaryStats(stats);
+        getHistogramStats(stats);
 
         synchronized (channel) {
             stats.put(ACTIVE_COUNT, channel.getActiveCommands());
@@ -212,6 +262,7 @@ public class SessionClientChannelStats {
             stats.put(PENDING_COUNT, channel.getPendingCommands());
             stats.put(CURRENT_CMD_SN, channel.getCommandSN().toString());
             stats.put(EXPECTED_CMD_SN, channel.getExpectedCommandSN().toString());
+            stats.put(DATA_IN_USE, channel.getDataInUse());
         }
 
         return stats;
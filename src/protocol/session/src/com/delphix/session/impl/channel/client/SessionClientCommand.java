@@ -24,20 +24,23 @@ import com.delphix.session.impl.frame.CommandResponse;
 import com.delphix.session.impl.frame.SerialNumber;
 import com.delphix.session.service.ServiceFuture;
 import com.delphix.session.service.ServiceRequest;
+import com.delphix.session.service.ServiceTrafficClass;
 import com.delphix.session.util.ByteBufferUtil;
 import com.delphix.session.util.TaskMgmtSync;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledFuture;
 
 public class SessionClientCommand extends SessionClientExchange {
 
     private final ServiceRequest serviceRequest; // Service command
+    private final ServiceTrafficClass trafficClass; // Service command traffic class
     private final SessionClientFuture future; // Command future
 
-    private SessionClientCommandState state; // Command state
-    private boolean pending; // Initial dispatch pending
-    private boolean proceed; // Initial dispatch proceed
+    private volatile SessionClientCommandState state; // Command state
+    private volatile CountDownLatch pending; // Initial dispatch pending
+    private volatile boolean proceed; // Initial dispatch proceed
 
     private SessionClientSlot slot; // Command slot
     private SerialNumber commandSN; // Command sequence
@@ -50,6 +53,12 @@ public class SessionClientCommand extends SessionClientExchange {
     private final SessionClientCommandStats stats; // Command stats
 
     private boolean hasTokens; // Command has already consumed the required tokens
+    private long dataCredit; // Data credit held by the command
+
+    // Channel command queue links (see SessionClientCommandQueue)
+    SessionClientCommandQueue queue; // Queue the command is on if any
+    SessionClientCommand queuePrev; // Previous command on the queue
+    SessionClientCommand queueNext; // Next command on the queue
 
     public SessionClientCommand(SessionClientChannel channel, ServiceRequest request) {
         this(channel, request, null);
@@ -59,6 +68,7 @@ public class SessionClientCommand extends SessionClientExchange {
         super(channel);
 
         this.serviceRequest = request;
+        this.trafficClass = ServiceTrafficClass.classify(request);
 
         future = new SessionClientFuture(this) {
 
@@ -188,6 +198,9 @@ public class SessionClientCommand extends SessionClientExchange {
         // Time command receive
         stats.receive();
 
+        // Feed the network round-trip time back to the transport for scheduling
+        xport.updateNetworkTime(stats.getLastNetworkTime(), getDataSize());
+
         channel.refresh(response);
         channel.getSibling().refresh(response);
 
@@ -322,23 +335,27 @@ public class SessionClientCommand extends SessionClientExchange {
         }
     }
 
-    public synchronized boolean syncDispatch() throws InterruptedException {
-        while (pending) {
-            wait();
+    /**
+     * Wait for the initial dispatch to proceed. The wait is on a latch rather than the command monitor so that a
+     * dispatch context running on a virtual thread does not pin its carrier thread while the command is pending.
+     */
+    public boolean syncDispatch() throws InterruptedException {
+        CountDownLatch latch = pending;
+
+        if (latch != null) {
+            latch.await();
         }
 
         return proceed;
     }
 
-    private synchronized void blockDispatch() {
-        pending = true;
+    private void blockDispatch() {
+        pending = new CountDownLatch(1);
     }
 
-    private synchronized void notifyDispatch(boolean active) {
+    private void notifyDispatch(boolean active) {
         proceed = active;
-        pending = false;
-
-        notify();
+        pending.countDown();
     }
 
     public long getDataSize() {
@@ -351,6 +368,24 @@ public class SessionClientCommand extends SessionClientExchange {
         return ByteBufferUtil.remaining(data);
     }
 
+    @Override
+    public long getRequestBytes() {
+        return getDataSize();
+    }
+
+    @Override
+    public ServiceTrafficClass getTrafficClass() {
+        return trafficClass;
+    }
+
+    public long getDataCredit() {
+        return dataCredit;
+    }
+
+    public void setDataCredit(long dataCredit) {
+        this.dataCredit = dataCredit;
+    }
+
     public void setHasTokens() {
         hasTokens = true;
     }
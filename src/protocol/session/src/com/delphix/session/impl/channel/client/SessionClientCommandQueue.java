@@ -0,0 +1,252 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.channel.client;
+
+import java.util.AbstractQueue;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class describes an intrusive command queue for the client channel. The queue links are embedded in the command
+ * itself so that enqueue and dequeue do not allocate, and a command can be unlinked from anywhere in the queue in
+ * constant time, such as when it is aborted while pending or waiting for retry.
+ *
+ * A command is on at most one queue at any time since the pending, retry, and abort queues correspond to mutually
+ * exclusive command states. Priority commands may be queued ahead of the others while still kept in the order of
+ * their arrival among themselves. The queue is not thread safe. Like the rest of the channel state, it is protected by
+ * the channel lock, except that the size may be read without the lock to check whether the queue is empty.
+ */
+public class SessionClientCommandQueue extends AbstractQueue<SessionClientCommand> {
+
+    private SessionClientCommand head; // First command in the queue
+    private SessionClientCommand tail; // Last command in the queue
+    private SessionClientCommand priorityTail; // Last priority command in the queue
+
+    private volatile int size; // Number of commands in the queue
+    private int modCount; // Structural modification count
+
+    public SessionClientCommandQueue() {
+
+    }
+
+    @Override
+    public boolean offer(SessionClientCommand command) {
+        link(command);
+
+        command.queuePrev = tail;
+
+        if (tail == null) {
+            head = command;
+        } else {
+            tail.queueNext = command;
+        }
+
+        tail = command;
+
+        return true;
+    }
+
+    /**
+     * Insert the command at the head of the queue.
+     */
+    public boolean offerFirst(SessionClientCommand command) {
+        link(command);
+
+        command.queueNext = head;
+
+        if (head == null) {
+            tail = command;
+        } else {
+            head.queuePrev = command;
+        }
+
+        head = command;
+
+        return true;
+    }
+
+    /**
+     * Insert the command behind the priority commands already in the queue but ahead of all the others.
+     */
+    public boolean offerPriority(SessionClientCommand command) {
+        if (priorityTail == null) {
+            offerFirst(command);
+        } else {
+            link(command);
+
+            SessionClientCommand next = priorityTail.queueNext;
+
+            command.queuePrev = priorityTail;
+            command.queueNext = next;
+
+            priorityTail.queueNext = command;
+
+            if (next == null) {
+                tail = command;
+            } else {
+                next.queuePrev = command;
+            }
+        }
+
+        priorityTail = command;
+
+        return true;
+    }
+
+    /**
+     * Put the command back at the head of the queue after it has been polled but could not be started. If it was a
+     * priority command, it is restored as one so that priority commands queued after it stay behind it.
+     */
+    public boolean requeue(SessionClientCommand command, boolean priority) {
+        offerFirst(command);
+
+        if (priority && priorityTail == null) {
+            priorityTail = command;
+        }
+
+        return true;
+    }
+
+    @Override
+    public SessionClientCommand poll() {
+        SessionClientCommand command = head;
+
+        if (command != null) {
+            unlink(command);
+        }
+
+        return command;
+    }
+
+    @Override
+    public SessionClientCommand peek() {
+        return head;
+    }
+
+    /**
+     * Remove the command from the queue in constant time. Return false if the command is not on this queue.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+
+        unlink((SessionClientCommand) o);
+
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof SessionClientCommand && ((SessionClientCommand) o).queue == this;
+    }
+
+    @Override
+    public void clear() {
+        while (head != null) {
+            unlink(head);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<SessionClientCommand> iterator() {
+        return new Iterator<SessionClientCommand>() {
+
+            private SessionClientCommand next = head;
+            private final int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public SessionClientCommand next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+
+                SessionClientCommand command = next;
+                next = command.queueNext;
+
+                return command;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void link(SessionClientCommand command) {
+        if (command.queue != null) {
+            throw new IllegalStateException("command already queued " + command);
+        }
+
+        command.queue = this;
+
+        size++;
+        modCount++;
+    }
+
+    private void unlink(SessionClientCommand command) {
+        SessionClientCommand prev = command.queuePrev;
+        SessionClientCommand next = command.queueNext;
+
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.queueNext = next;
+        }
+
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.queuePrev = prev;
+        }
+
+        if (command == priorityTail) {
+            priorityTail = prev;
+        }
+
+        command.queuePrev = null;
+        command.queueNext = null;
+        command.queue = null;
+
+        size--;
+        modCount++;
+    }
+}
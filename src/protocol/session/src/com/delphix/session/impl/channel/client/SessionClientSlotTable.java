@@ -19,16 +19,29 @@
 package com.delphix.session.impl.channel.client;
 
 import java.util.Arrays;
-import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * This class describes the client slot table. Slots are reserved on command start and released on command completion
+ * without the channel lock. The reservation is tracked in a bitmap sized for the largest queue depth that may be
+ * negotiated, with each slot claimed and given back by compare-and-set on the word that holds its bit. The slot object
+ * is owned exclusively by whoever holds the bit.
+ *
+ * Resizing of the table as directed by the server is serialized on the table itself. The table is grown before the
+ * targetMaxSlotID is raised so that a reserved slot always exists. When the table is downsized, the targetMaxSlotID is
+ * lowered first and the table is trimmed only after no slots in the "freeing" zone above it are reserved. A slot that
+ * is reserved concurrently with the downsizing finds itself above the new targetMaxSlotID and is given back.
+ */
 public class SessionClientSlotTable {
 
     private static final int INVALID_SLOT_ID = -1;
 
-    private SessionClientSlot[] table;
-    private BitSet bitmap;
+    private static final int MAX_SLOTS = 4096; // Largest queue depth negotiable (see ServiceOption)
 
-    private int targetMaxSlotID;
+    private volatile SessionClientSlot[] table;
+    private final AtomicLongArray bitmap = new AtomicLongArray(MAX_SLOTS / Long.SIZE);
+
+    private volatile int targetMaxSlotID;
 
     public SessionClientSlotTable(int capacity) {
         table = new SessionClientSlot[capacity];
@@ -37,28 +50,38 @@ public class SessionClientSlotTable {
             table[i] = new SessionClientSlot(i);
         }
 
-        bitmap = new BitSet(capacity);
-
         targetMaxSlotID = capacity - 1;
     }
 
     public SessionClientSlot reserve(SessionClientCommand command) {
-        int pos = bitmap.nextClearBit(0);
+        for (;;) {
+            int pos = nextClearBit(targetMaxSlotID);
 
-        if (pos > targetMaxSlotID) {
-            return null;
-        }
+            if (pos == INVALID_SLOT_ID) {
+                return null;
+            }
 
-        bitmap.set(pos);
+            // Start over if another context has beaten us to the slot
+            if (!setBit(pos)) {
+                continue;
+            }
 
-        SessionClientSlot slot = table[pos];
+            // Give the slot back if it has fallen in the "freeing" zone since the targetMaxSlotID was read
+            if (pos > targetMaxSlotID) {
+                clearBit(pos);
+                shrink();
+                continue;
+            }
 
-        slot.advance();
-        slot.setCommand(command);
+            SessionClientSlot slot = table[pos];
 
-        command.setSlot(slot);
+            slot.advance();
+            slot.setCommand(command);
 
-        return slot;
+            command.setSlot(slot);
+
+            return slot;
+        }
     }
 
     public void release(SessionClientSlot slot) {
@@ -70,7 +93,7 @@ public class SessionClientSlotTable {
         slot.getCommand().resetSlot();
         slot.resetCommand();
 
-        bitmap.clear(slotID);
+        clearBit(slotID);
 
         // Attempt to shrink if the slot just released is in the "freeing" zone
         if (slotID > targetMaxSlotID) {
@@ -78,51 +101,45 @@ public class SessionClientSlotTable {
         }
     }
 
-    private void shrink() {
-        int slotID = bitmap.nextSetBit(targetMaxSlotID + 1);
-
+    private synchronized void shrink() {
         // We cannot shrink yet if there are still active slots in the "freeing" zone
-        if (slotID >= 0) {
+        if (getMaxSlotIDInUse() > targetMaxSlotID) {
             return;
         }
 
         int capacity = targetMaxSlotID + 1;
 
-        table = Arrays.copyOf(table, capacity);
-
-        BitSet copy = new BitSet(capacity);
-
-        // Operator and will ignore the extra bits in bitmap
-        copy.set(0, capacity);
-        copy.and(bitmap);
-
-        bitmap = copy;
+        if (capacity < table.length) {
+            table = Arrays.copyOf(table, capacity);
+        }
     }
 
-    private void grow() {
+    private void grow(int capacity) {
         int oldCapacity = table.length;
-        int capacity = targetMaxSlotID + 1;
 
-        table = Arrays.copyOf(table, capacity);
+        SessionClientSlot[] copy = Arrays.copyOf(table, capacity);
 
         // Create the newly added slots
         for (int i = oldCapacity; i < capacity; i++) {
-            table[i] = new SessionClientSlot(i);
+            copy[i] = new SessionClientSlot(i);
         }
 
-        BitSet copy = new BitSet(capacity);
-
-        // Operator or will tack on the extra bits in the bitmap
-        copy.or(bitmap);
-
-        bitmap = copy;
+        table = copy;
     }
 
     /**
      * Get the maximum slot ID in use at the moment.
      */
     public int getMaxSlotIDInUse() {
-        return bitmap.isEmpty() ? INVALID_SLOT_ID : bitmap.length() - 1;
+        for (int index = (table.length - 1) / Long.SIZE; index >= 0; index--) {
+            long word = bitmap.get(index);
+
+            if (word != 0) {
+                return index * Long.SIZE + Long.SIZE - 1 - Long.numberOfLeadingZeros(word);
+            }
+        }
+
+        return INVALID_SLOT_ID;
     }
 
     /**
@@ -136,30 +153,92 @@ public class SessionClientSlotTable {
      * Return the number of slots currently reserved.
      */
     public int size() {
-        return bitmap.cardinality();
+        int size = 0;
+
+        for (int index = (table.length - 1) / Long.SIZE; index >= 0; index--) {
+            size += Long.bitCount(bitmap.get(index));
+        }
+
+        return size;
     }
 
     /**
      * Check if the slot table has any reserved slots.
      */
     public boolean isEmpty() {
-        return bitmap.isEmpty();
+        return getMaxSlotIDInUse() == INVALID_SLOT_ID;
     }
 
     /**
-     * Check if the slot table has unreserved slots available.
+     * Check if the slot table has unreserved slots available. Slots in the "freeing" zone above the targetMaxSlotID
+     * do not count since they may not be reserved.
      */
     public boolean available() {
-        return capacity() > size();
+        return nextClearBit(targetMaxSlotID) != INVALID_SLOT_ID;
     }
 
-    public void update(int currentMaxSlotID, int targetMaxSlotID) {
-        this.targetMaxSlotID = targetMaxSlotID;
+    /**
+     * Update the slot table as directed by the server. Return true if the table has grown.
+     */
+    public synchronized boolean update(int currentMaxSlotID, int targetMaxSlotID) {
+        targetMaxSlotID = Math.min(targetMaxSlotID, MAX_SLOTS - 1);
 
+        // Publish the new slots before they may be reserved
         if (targetMaxSlotID + 1 > table.length) {
-            grow();
-        } else {
-            shrink();
+            grow(targetMaxSlotID + 1);
+            this.targetMaxSlotID = targetMaxSlotID;
+            return true;
+        }
+
+        this.targetMaxSlotID = targetMaxSlotID;
+        shrink();
+
+        return false;
+    }
+
+    /**
+     * Return the lowest slot ID not reserved up to the maxSlotID, or INVALID_SLOT_ID if there is none.
+     */
+    private int nextClearBit(int maxSlotID) {
+        for (int index = 0; index <= maxSlotID / Long.SIZE; index++) {
+            long word = ~bitmap.get(index);
+
+            if (word != 0) {
+                int pos = index * Long.SIZE + Long.numberOfTrailingZeros(word);
+                return pos <= maxSlotID ? pos : INVALID_SLOT_ID;
+            }
+        }
+
+        return INVALID_SLOT_ID;
+    }
+
+    private boolean setBit(int pos) {
+        int index = pos / Long.SIZE;
+        long mask = 1L << pos;
+
+        for (;;) {
+            long word = bitmap.get(index);
+
+            if ((word & mask) != 0) {
+                return false;
+            }
+
+            if (bitmap.compareAndSet(index, word, word | mask)) {
+                return true;
+            }
+        }
+    }
+
+    private void clearBit(int pos) {
+        int index = pos / Long.SIZE;
+        long mask = 1L << pos;
+
+        for (;;) {
+            long word = bitmap.get(index);
+
+            if (bitmap.compareAndSet(index, word, word & ~mask)) {
+                return;
+            }
         }
     }
 }
@@ -25,15 +25,19 @@ import com.delphix.session.util.ObjectRegistry;
 import com.delphix.session.util.TaskMgmtSync;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 
+import static com.delphix.session.service.ServiceOption.FORE_DATA_BUDGET;
+import static com.delphix.session.service.ServiceOption.FORE_QUEUE_CONTROL;
+
 public class SessionServerChannel extends SessionChannel {
 
     // Synchronous pending restart threshold
     private static final int PENDING_THRESHOLD = 4;
 
-    // Attached transports
-    private List<SessionTransport> xports = new ArrayList<SessionTransport>();
+    // Attached transports (copied on write so that reads may be toggled without the channel lock)
+    private List<SessionTransport> xports = new CopyOnWriteArrayList<SessionTransport>();
 
     // Command registry for all outstanding commands
     private final ObjectRegistry<ExchangeID, SessionServerCommand> registry = ObjectRegistry.create();
@@ -41,6 +45,15 @@ public class SessionServerChannel extends SessionChannel {
     private SessionServerSlotTable slotTable; // Command slot table
     private SessionServerSequencer sequencer; // Command sequencer
 
+    private SessionServerSlotController controller; // Slot table controller (optional)
+
+    private final SessionServerReplyCache replyCache; // Reply cache shared by all channels
+    private long cachedBytes; // Response data held in the reply cache on the heap
+    private long spilledBytes; // Response data held in the reply cache off-heap
+
+    private final SessionServerInflightBudget inflightBudget; // Request data budget shared by all forechannels
+    private volatile long inflightBytes; // Request data held by the commands under execution
+
     /*
      * Each channel imposes a limit on the total number of outstanding commands. The limit is directly reflected
      * in the size of the slot table, which leads to the maximum command sequence expected at any given moment. The
@@ -99,6 +112,17 @@ public class SessionServerChannel extends SessionChannel {
         expectedCommandSN = commandSN;
         maximumCommandSN = expectedCommandSN.next(slotTable.getCurrentMaxSlotID());
 
+        // Let the server drive the size of the forechannel slot table if so configured
+        if (fore && nexus.getOptions().getOption(FORE_QUEUE_CONTROL)) {
+            int dataBudget = nexus.getOptions().getOption(FORE_DATA_BUDGET);
+            controller = new SessionServerSlotController(slotTable, nexus.getExecutor(), dataBudget);
+        }
+
+        replyCache = nexus.getManager().getReplyCache();
+
+        // Only the forechannel is subject to the request data budget since the client does not pause its transports
+        inflightBudget = fore ? nexus.getManager().getInflightBudget() : null;
+
         stats = new SessionServerChannelStats(this);
 
         shutdown = new TaskMgmtSync();
@@ -220,6 +244,35 @@ public class SessionServerChannel extends SessionChannel {
         return slotTable.inUse();
     }
 
+    public int getSlotCount() {
+        return slotTable.getCurrentMaxSlotID() + 1;
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Get the request data bytes held by the commands under execution.
+     */
+    public long getInflightBytes() {
+        return inflightBytes;
+    }
+
+    /**
+     * Enable or disable reads on all the transports attached to the channel (see SessionServerInflightBudget). This
+     * may be called without the channel lock.
+     */
+    public void setReadable(boolean readable) {
+        for (SessionTransport xport : xports) {
+            xport.setReadable(readable);
+        }
+    }
+
     public SessionExchange createExchange(RequestFrame request) {
         SessionExchange exchange;
 
@@ -685,8 +738,25 @@ public class SessionServerChannel extends SessionChannel {
         boolean added = activeSet.add(command);
         assert added;
 
+        /*
+         * Charge the request data against the inflight budget. It is done here rather than upon arrival since a
+         * command held up by the sequencer may be waiting for one that has yet to be read from a paused transport.
+         */
+        long bytes = command.getDataSize();
+
+        if (inflightBudget != null && bytes != 0) {
+            inflightBytes += bytes;
+            command.setInflightBytes(bytes);
+
+            inflightBudget.acquire(this, bytes);
+        }
+
         // Finally subject the command to execution
         command.invoke();
+
+        if (controller != null) {
+            controller.start(command);
+        }
     }
 
     private synchronized void restartCommand(SessionServerCommand command) {
@@ -714,6 +784,11 @@ public class SessionServerChannel extends SessionChannel {
 
             // Advance the maximumCommandSN before responding for the same reason as above.
             updateMaximumCommandSN();
+
+            // Resize the slot table according to the load if necessary
+            if (controller != null) {
+                controller.done(command);
+            }
         }
 
         // Only send if the command has not been cancelled
@@ -721,6 +796,12 @@ public class SessionServerChannel extends SessionChannel {
             command.send();
         }
 
+        /*
+         * Admit the response data to the reply cache before the channel is locked again. Spilling the data off-heap
+         * involves a buffer allocation and a full copy, neither of which should hold up the other commands.
+         */
+        replyCache.admit(command);
+
         completeCommand(command);
     }
 
@@ -739,6 +820,27 @@ public class SessionServerChannel extends SessionChannel {
 
         command.setState(SessionServerCommandState.INDOUBT);
 
+        // Release the request data as the service is done with it
+        long bytes = command.getInflightBytes();
+
+        if (bytes != 0) {
+            inflightBytes -= bytes;
+            command.setInflightBytes(0);
+
+            inflightBudget.release(this, bytes);
+        }
+
+        // Record the response data admitted to the reply cache unless the command has been evicted in the meantime
+        if (command.hasSlot()) {
+            if (command.isCacheSpilled()) {
+                spilledBytes += command.getCacheBytes();
+            } else {
+                cachedBytes += command.getCacheBytes();
+            }
+        } else {
+            replyCache.release(command);
+        }
+
         if (command.hasRetry()) {
             command.setState(SessionServerCommandState.RETRY);
             retryTask.submit(command);
@@ -783,6 +885,15 @@ public class SessionServerChannel extends SessionChannel {
 
         registry.unregister(command.getExchangeID());
 
+        // Release the response data from the reply cache
+        if (command.isCacheSpilled()) {
+            spilledBytes -= command.getCacheBytes();
+        } else {
+            cachedBytes -= command.getCacheBytes();
+        }
+
+        replyCache.release(command);
+
         // Update the channel stats
         stats.update(command);
     }
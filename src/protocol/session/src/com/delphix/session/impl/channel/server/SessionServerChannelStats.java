@@ -18,13 +18,13 @@
 
 package com.delphix.session.impl.channel.server;
 
+import com.delphix.session.util.LatencyHistogram;
+
 import java.util.HashMap;
 import java.util.Map;
 
 public class SessionServerChannelStats {
 
-    // TODO: add histogram support
-
     private static final String EXECUTE_TIME = "server.sum.executeTime";
     private static final String PENDING_TIME = "server.sum.pendingTime";
     private static final String SERVICE_TIME = "server.sum.serviceTime";
@@ -33,6 +33,14 @@ public class SessionServerChannelStats {
     private static final String COMPLETE_TIME = "server.sum.completeTime";
     private static final String ABORT_TIME = "server.sum.abortTime";
 
+    private static final String EXECUTE_HIST = "server.hist.executeTime";
+    private static final String PENDING_HIST = "server.hist.pendingTime";
+    private static final String SERVICE_HIST = "server.hist.serviceTime";
+    private static final String PROCESS_HIST = "server.hist.processTime";
+    private static final String DISPATCH_HIST = "server.hist.dispatchTime";
+    private static final String COMPLETE_HIST = "server.hist.completeTime";
+    private static final String ABORT_HIST = "server.hist.abortTime";
+
     private static final String TOTAL_COMPLETED = "server.sum.totalCompleted";
     private static final String TOTAL_PENDING = "server.sum.totalPending";
     private static final String TOTAL_RETRIES = "server.sum.totalRetries";
@@ -43,6 +51,10 @@ public class SessionServerChannelStats {
     private static final String ACTIVE_COUNT = "server.now.activeCount";
     private static final String UNDONE_COUNT = "server.now.undoneCount";
     private static final String CACHED_COUNT = "server.now.cachedCount";
+    private static final String SLOT_COUNT = "server.now.slotCount";
+    private static final String CACHED_BYTES = "server.now.cachedBytes";
+    private static final String SPILLED_BYTES = "server.now.spilledBytes";
+    private static final String INFLIGHT_BYTES = "server.now.inflightBytes";
     private static final String MAXIMUM_CMD_SN = "server.now.maximumCmdSN";
     private static final String EXPECTED_CMD_SN = "server.now.expectedCmdSN";
     private static final String LATEST_CMD_SN = "server.now.latestCmdSN";
@@ -55,6 +67,15 @@ public class SessionServerChannelStats {
     private long completeTime; // Total complete time (ns)
     private long abortTime; // Total abort time (ns)
 
+    // Latency histograms for the phases above (ns)
+    private final LatencyHistogram executeHistogram = new LatencyHistogram();
+    private final LatencyHistogram pendingHistogram = new LatencyHistogram();
+    private final LatencyHistogram serviceHistogram = new LatencyHistogram();
+    private final LatencyHistogram processHistogram = new LatencyHistogram();
+    private final LatencyHistogram dispatchHistogram = new LatencyHistogram();
+    private final LatencyHistogram completeHistogram = new LatencyHistogram();
+    private final LatencyHistogram abortHistogram = new LatencyHistogram();
+
     private long totalCompleted; // Total number of commands processed
     private long totalPending; // Total number of commands pending
     private long totalAborted; // Total number of commands aborted
@@ -68,9 +89,27 @@ public class SessionServerChannelStats {
         this.channel = channel;
     }
 
-    public synchronized void update(SessionServerCommand command) {
+    public void update(SessionServerCommand command) {
         SessionServerCommandStats stats = command.getStats();
 
+        // Record the latencies outside of the lock since the histograms are lock-free
+        if (!stats.isAborted()) {
+            executeHistogram.record(stats.getExecuteTime());
+            pendingHistogram.record(stats.getPendingTime());
+            serviceHistogram.record(stats.getServiceTime());
+            processHistogram.record(stats.getProcessTime());
+            dispatchHistogram.record(stats.getDispatchTime());
+            completeHistogram.record(stats.getCompleteTime());
+        } else {
+            abortHistogram.record(stats.getAbortTime());
+        }
+
+        synchronized (this) {
+            updateSummary(stats);
+        }
+    }
+
+    private void updateSummary(SessionServerCommandStats stats) {
         orderDistance += stats.getOrderDistance();
 
         if (!stats.isAborted()) {
@@ -109,6 +148,14 @@ public class SessionServerChannelStats {
         totalRetries = 0;
 
         orderDistance = 0;
+
+        executeHistogram.reset();
+        pendingHistogram.reset();
+        serviceHistogram.reset();
+        processHistogram.reset();
+        dispatchHistogram.reset();
+        completeHistogram.reset();
+        abortHistogram.reset();
     }
 
     public long getExecuteTime() {
@@ -181,15 +228,30 @@ public class SessionServerChannelStats {
         }
     }
 
+    private void getHistogramStats(Map<String, Object> stats) {
+        executeHistogram.getStats(EXECUTE_HIST, stats);
+        pendingHistogram.getStats(PENDING_HIST, stats);
+        serviceHistogram.getStats(SERVICE_HIST, stats);
+        processHistogram.getStats(PROCESS_HIST, stats);
+        dispatchHistogram.getStats(DISPATCH_HIST, stats);
+        completeHistogram.getStats(COMPLETE_HIST, stats);
+        abortHistogram.getStats(ABORT_HIST, stats);
+    }
+
     public Map<String, ?> getStats() {
         Map<String, Object> stats = new HashMap<String, Object>();
 
         getSummaryStats(stats);
+        getHistogramStats(stats);
 
         synchronized (channel) {
             stats.put(ACTIVE_COUNT, channel.getActiveCommands());
             stats.put(UNDONE_COUNT, channel.getUndoneCommands());
             stats.put(CACHED_COUNT, channel.getCachedCommands());
+            stats.put(SLOT_COUNT, channel.getSlotCount());
+            stats.put(CACHED_BYTES, channel.getCachedBytes());
+            stats.put(SPILLED_BYTES, channel.getSpilledBytes());
+            stats.put(INFLIGHT_BYTES, channel.getInflightBytes());
             stats.put(MAXIMUM_CMD_SN, channel.getMaximumCommandSN().toString());
             stats.put(EXPECTED_CMD_SN, channel.getExpectedCommandSN().toString());
             stats.put(LATEST_CMD_SN, channel.getLatestCommandSN().toString());
@@ -24,6 +24,7 @@ import com.delphix.session.service.ServiceException;
 import com.delphix.session.service.ServiceExecutionException;
 import com.delphix.session.service.ServiceRequest;
 import com.delphix.session.service.ServiceResponse;
+import com.delphix.session.util.ByteBufferUtil;
 
 import java.util.LinkedList;
 import java.util.Queue;
@@ -77,11 +78,25 @@ public class SessionServerCommand extends SessionServerExchange {
 
     private final SessionServerCommandStats stats; // Command stats
 
+    private long dataSize; // Service request data size
+
+    private long cacheBytes; // Response data held in the reply cache
+    private boolean cacheSpilled; // Response data spilled off-heap
+
+    private long inflightBytes; // Request data charged against the inflight budget
+
     public SessionServerCommand(SessionServerChannel channel, RequestFrame request) {
         super(channel, request);
 
         this.commandSN = request.getCommandSN();
 
+        // Remember the data size since the service request is released as soon as the service is done
+        ServiceRequest serviceRequest = ((CommandRequest) request).getRequest();
+
+        if (serviceRequest != null && serviceRequest.getData() != null) {
+            dataSize = ByteBufferUtil.remaining(serviceRequest.getData());
+        }
+
         // Initialize the command state
         setState(SessionServerCommandState.INITIAL);
 
@@ -252,6 +267,31 @@ public class SessionServerCommand extends SessionServerExchange {
         nexus.getExecutor().execute(future);
     }
 
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    public boolean isCacheSpilled() {
+        return cacheSpilled;
+    }
+
+    public void setCacheBytes(long cacheBytes, boolean cacheSpilled) {
+        this.cacheBytes = cacheBytes;
+        this.cacheSpilled = cacheSpilled;
+    }
+
+    public long getInflightBytes() {
+        return inflightBytes;
+    }
+
+    public void setInflightBytes(long inflightBytes) {
+        this.inflightBytes = inflightBytes;
+    }
+
     private void finish() {
         // Time service finish
         stats.finish();
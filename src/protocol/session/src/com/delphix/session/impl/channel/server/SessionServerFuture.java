@@ -50,6 +50,13 @@ public class SessionServerFuture extends ThreadFuture<ServiceResponse> implement
         }
     }
 
+    /**
+     * Get the service response if the command has completed successfully and the response has not been forgotten.
+     */
+    public synchronized ServiceResponse getResponse() {
+        return result;
+    }
+
     public synchronized boolean isForgotten() {
         return forgotten;
     }
@@ -0,0 +1,180 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.channel.server;
+
+import com.delphix.appliance.logger.Logger;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class bounds the request data held in memory by all forechannels under the same session manager. The per
+ * nexus flow control, i.e., the slot table and the data window, bounds each client individually but nothing bounds
+ * the sum across clients otherwise. The request data of a command is charged from the moment it passes the sequencer
+ * until the service is done with it (see SessionServerChannel). Commands held up by the sequencer are not charged
+ * since they may be waiting for a command that has yet to be read from a transport paused by the budget, and they are
+ * bounded by the slot table of each channel anyway.
+ *
+ * Once the request data held crosses the high watermark, which is the limit, reads are disabled on the transports of
+ * the channel holding the most request data. Each further command charged above the high watermark from a channel
+ * still reading disables the next heaviest channel and so on. Reads are enabled again on all channels once the request
+ * data held has dropped below the low watermark. Requests already decoded by the transports being disabled are still
+ * delivered, hence the limit is soft.
+ *
+ * Services that wait on the back channel while holding request data should be mindful that the back channel response
+ * may be stuck behind the disabled reads until the request data held by others drops below the low watermark.
+ *
+ * The budget is charged and released with the channel locked. It never calls back into the channel lock itself so
+ * that there is no lock ordering issue between channels pausing each other.
+ */
+public class SessionServerInflightBudget {
+
+    private static final Logger logger = Logger.getLogger(SessionServerInflightBudget.class);
+
+    private static final long DEFAULT_LIMIT = 256L * 1024 * 1024; // Default limit (bytes)
+
+    private volatile long limit = DEFAULT_LIMIT; // High watermark (bytes)
+
+    private final AtomicLong usage = new AtomicLong(); // Request data held (bytes)
+
+    // Channels holding request data
+    private final Set<SessionServerChannel> channels = Collections.newSetFromMap(
+            new ConcurrentHashMap<SessionServerChannel, Boolean>());
+
+    private final Set<SessionServerChannel> paused = new HashSet<SessionServerChannel>(); // Channels with reads disabled
+    private volatile boolean throttled; // Reads disabled on any channel
+
+    private long numPauses; // Number of times reads have been disabled on a channel
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("invalid inflight limit " + limit);
+        }
+
+        this.limit = limit;
+
+        // Reads may be enabled right away if the limit has been raised
+        if (throttled) {
+            resume();
+        }
+    }
+
+    public long getUsage() {
+        return usage.get();
+    }
+
+    public synchronized long getNumPauses() {
+        return numPauses;
+    }
+
+    /**
+     * Charge the request data of a command from the channel. The channel has accounted for it already.
+     */
+    public void acquire(SessionServerChannel channel, long bytes) {
+        if (channel.getInflightBytes() == bytes) {
+            channels.add(channel);
+        }
+
+        if (usage.addAndGet(bytes) > limit) {
+            pause(channel);
+        }
+    }
+
+    /**
+     * Release the request data charged earlier. The channel has accounted for it already.
+     */
+    public void release(SessionServerChannel channel, long bytes) {
+        if (channel.getInflightBytes() == 0) {
+            channels.remove(channel);
+        }
+
+        long current = usage.addAndGet(-bytes);
+
+        if (throttled && current <= getLowWatermark()) {
+            resume();
+        }
+    }
+
+    private long getLowWatermark() {
+        return limit - limit / 4;
+    }
+
+    private synchronized void pause(SessionServerChannel channel) {
+        if (usage.get() <= limit) {
+            return;
+        }
+
+        /*
+         * The channel may have been paused already with the command read ahead of it. Disable reads again in case a
+         * transport has been attached to the channel since.
+         */
+        if (paused.contains(channel)) {
+            channel.setReadable(false);
+            return;
+        }
+
+        // Disable reads on the heaviest channel still reading
+        SessionServerChannel heaviest = null;
+        long maxWeight = 0;
+
+        for (SessionServerChannel candidate : channels) {
+            long weight = candidate.getInflightBytes();
+
+            if (weight > maxWeight && !paused.contains(candidate)) {
+                heaviest = candidate;
+                maxWeight = weight;
+            }
+        }
+
+        if (heaviest == null) {
+            return;
+        }
+
+        logger.infof("%s: disable reads with %d bytes held out of %d", heaviest.getNexus(), maxWeight, usage.get());
+
+        heaviest.setReadable(false);
+        paused.add(heaviest);
+
+        throttled = true;
+        numPauses++;
+
+        // The request data may have been released before the throttled flag is visible
+        resume();
+    }
+
+    private synchronized void resume() {
+        if (!throttled || usage.get() > getLowWatermark()) {
+            return;
+        }
+
+        for (SessionServerChannel channel : paused) {
+            channel.setReadable(true);
+        }
+
+        paused.clear();
+        throttled = false;
+    }
+}
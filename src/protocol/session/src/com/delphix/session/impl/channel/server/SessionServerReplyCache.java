@@ -0,0 +1,220 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.channel.server;
+
+import com.delphix.appliance.logger.Logger;
+import com.delphix.session.service.ServiceResponse;
+import com.delphix.session.util.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class accounts for the response data held in the reply cache of all server channels under the same session
+ * manager. A command that has been responded to stays with its slot until the peer confirms it (see SessionServerSlot)
+ * and so does the bulk data in the service response, in case the response must be sent again over a retry. With deep
+ * slot tables and large responses, the unconfirmed responses alone may hold a substantial portion of the heap.
+ *
+ * The cache is given a byte budget for the heap. Once the budget is exceeded, the data of the newly cached responses
+ * is spilled to a compact off-heap buffer. The off-heap store has a byte limit of its own, which also covers response
+ * data that is off-heap to begin with. If the off-heap limit would be exceeded, or the off-heap buffer cannot be
+ * allocated, the data is left on the heap in excess of the budget rather than failing the command. Only the bulk data
+ * is accounted for since the rest of the service response is usually small.
+ *
+ * The accounting is done with atomic counters such that the response data may be admitted, and copied off-heap if
+ * need be, without holding the channel lock. The channel only records the outcome under its lock afterwards.
+ */
+public class SessionServerReplyCache {
+
+    private static final Logger logger = Logger.getLogger(SessionServerReplyCache.class);
+
+    private static final long DEFAULT_LIMIT = 256L * 1024 * 1024; // Default heap budget (bytes)
+    private static final long DEFAULT_SPILL_LIMIT = 256L * 1024 * 1024; // Default off-heap limit (bytes)
+
+    private volatile long limit = DEFAULT_LIMIT; // Heap budget (bytes)
+    private volatile long spillLimit = DEFAULT_SPILL_LIMIT; // Off-heap limit (bytes)
+
+    private final AtomicLong heapBytes = new AtomicLong(); // Response data cached on the heap (bytes)
+    private final AtomicLong spillBytes = new AtomicLong(); // Response data cached off-heap (bytes)
+    private final AtomicLong spillRefused = new AtomicLong(); // Responses left on the heap over the budget
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("invalid reply cache limit " + limit);
+        }
+
+        this.limit = limit;
+    }
+
+    public long getSpillLimit() {
+        return spillLimit;
+    }
+
+    public void setSpillLimit(long spillLimit) {
+        if (spillLimit < 0) {
+            throw new IllegalArgumentException("invalid reply cache spill limit " + spillLimit);
+        }
+
+        this.spillLimit = spillLimit;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes.get();
+    }
+
+    public long getSpillBytes() {
+        return spillBytes.get();
+    }
+
+    public long getSpillRefused() {
+        return spillRefused.get();
+    }
+
+    /**
+     * Account for the response data of the command as it enters the reply cache, spilling it off-heap if the heap
+     * budget would be exceeded otherwise. The response must have been sent already since the data buffers may be
+     * replaced. It must not be called with the channel locked since the off-heap buffer is allocated and filled here.
+     */
+    public void admit(SessionServerCommand command) {
+        ServiceResponse response = command.getFuture().getResponse();
+
+        if (response == null) {
+            return;
+        }
+
+        ByteBuffer[] data = response.getData();
+
+        if (data == null) {
+            return;
+        }
+
+        long size = ByteBufferUtil.remaining(data);
+
+        if (size == 0) {
+            return;
+        }
+
+        boolean spilled;
+
+        if (isDirect(data)) {
+            // Off-heap to begin with so it is accounted for as spilled regardless of the limit
+            spillBytes.addAndGet(size);
+            spilled = true;
+        } else if (heapBytes.get() + size <= limit) {
+            spilled = false;
+        } else if (!reserveSpill(size)) {
+            spillRefused.incrementAndGet();
+            spilled = false;
+        } else {
+            ByteBuffer copy = spill(data, size);
+
+            if (copy != null) {
+                response.setData(new ByteBuffer[] { copy });
+                spilled = true;
+            } else {
+                spillBytes.addAndGet(-size);
+                spillRefused.incrementAndGet();
+                spilled = false;
+            }
+        }
+
+        if (!spilled) {
+            heapBytes.addAndGet(size);
+        }
+
+        command.setCacheBytes(size, spilled);
+    }
+
+    /**
+     * Release the response data of the command as it leaves the reply cache.
+     */
+    public void release(SessionServerCommand command) {
+        long size = command.getCacheBytes();
+
+        if (size == 0) {
+            return;
+        }
+
+        if (command.isCacheSpilled()) {
+            spillBytes.addAndGet(-size);
+        } else {
+            heapBytes.addAndGet(-size);
+        }
+
+        command.setCacheBytes(0, false);
+    }
+
+    /**
+     * Reserve room for the response data in the off-heap store. Return false if the off-heap limit would be exceeded.
+     */
+    private boolean reserveSpill(long size) {
+        while (true) {
+            long bytes = spillBytes.get();
+
+            if (bytes + size > spillLimit) {
+                return false;
+            }
+
+            if (spillBytes.compareAndSet(bytes, bytes + size)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean isDirect(ByteBuffer[] data) {
+        for (ByteBuffer buffer : data) {
+            if (!buffer.isDirect()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copy the data buffers into a single off-heap buffer. The positions of the original buffers are left alone since
+     * they may still be referenced by the write in progress.
+     */
+    private static ByteBuffer spill(ByteBuffer[] data, long size) {
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        ByteBuffer copy;
+
+        try {
+            copy = ByteBuffer.allocateDirect((int) size);
+        } catch (OutOfMemoryError e) {
+            logger.errorf("failed to spill %d bytes of response data off-heap", size);
+            return null;
+        }
+
+        for (ByteBuffer buffer : data) {
+            copy.put(buffer.duplicate());
+        }
+
+        copy.flip();
+
+        return copy;
+    }
+}
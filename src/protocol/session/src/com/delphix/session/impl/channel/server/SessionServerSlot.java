@@ -109,4 +109,37 @@ public class SessionServerSlot {
         cachedCommand = activeCommand;
         activeCommand = null;
     }
+
+    /**
+     * Evict the cached command if it was sequenced before the given commandSN. This is used when the peer has been
+     * found done with the slot without sending the next command over it (see SessionServerSlotTable). Return true if
+     * the slot no longer holds a cached command.
+     */
+    public boolean confirm(SerialNumber commandSN) {
+        if (cachedCommand == null) {
+            return true;
+        }
+
+        if (!cachedCommand.getCommandSN().lessThan(commandSN)) {
+            return false;
+        }
+
+        cachedCommand.getChannel().evict(cachedCommand);
+        cachedCommand = null;
+
+        return true;
+    }
+
+    /**
+     * Evict the cached command, if any, as the slot is trimmed from the slot table. The peer must no longer be using
+     * the slot at this point so there should not be any command active over it.
+     */
+    public void evict() {
+        assert activeCommand == null;
+
+        if (cachedCommand != null) {
+            cachedCommand.getChannel().evict(cachedCommand);
+            cachedCommand = null;
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.channel.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class drives the size of the server owned slot table based on the load of the server. Without it, the slot
+ * table stays at the size negotiated during login no matter how busy the server is, which lets a single client with
+ * a deep queue flood the executor shared by all nexuses.
+ *
+ * The controller follows the additive-increase/multiplicative-decrease scheme. It is evaluated as commands complete,
+ * at most once per interval. The server is considered congested if any of the following is true.
+ *
+ *   - the executor has more tasks queued than it has threads to run them
+ *   - the average process time over the interval exceeds twice the baseline
+ *   - the request data held by the active commands exceeds the data budget
+ *
+ * The slot table is halved when congested and grown by one slot otherwise. The size is bounded by MIN_SLOTS at the
+ * bottom and by the queue depth negotiated during login at the top, since the command sequencer and the command
+ * sequence window are sized for that once and for all. The baseline process time tracks the lowest average seen and
+ * drifts up slowly so that a permanent change in the workload is eventually accepted as the new normal.
+ *
+ * Downsizing takes effect only after the peer has confirmed the new target (see SessionServerSlotTable). The
+ * controller leaves the slot table alone until that happens. All methods are invoked with the channel locked.
+ */
+public class SessionServerSlotController {
+
+    private static final int MIN_SLOTS = 2; // Minimum number of slots
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100); // Evaluation interval (ns)
+    private static final long MIN_PROCESS_TIME = TimeUnit.MILLISECONDS.toNanos(1); // Baseline floor (ns)
+    private static final int BASELINE_DRIFT = 64; // Baseline drift rate (reciprocal)
+
+    private final SessionServerSlotTable slotTable; // Slot table under control
+    private final ExecutorService executor; // Service executor
+    private final int maxSlots; // Maximum number of slots
+    private final long dataBudget; // Request data budget (bytes)
+
+    private long dataSize; // Request data held by active commands (bytes)
+
+    private long lastTime; // Time of the last evaluation
+    private long processTime; // Total process time since the last evaluation (ns)
+    private int numCompleted; // Number of commands completed since the last evaluation
+    private long baseProcessTime; // Baseline process time (ns)
+
+    private int numGrows; // Number of times the slot table has been grown
+    private int numShrinks; // Number of times the slot table has been shrunk
+
+    public SessionServerSlotController(SessionServerSlotTable slotTable, ExecutorService executor, long dataBudget) {
+        this.slotTable = slotTable;
+        this.executor = executor;
+        this.maxSlots = slotTable.size();
+        this.dataBudget = dataBudget;
+
+        lastTime = System.nanoTime();
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public int getNumGrows() {
+        return numGrows;
+    }
+
+    public int getNumShrinks() {
+        return numShrinks;
+    }
+
+    /**
+     * The command has been submitted for execution.
+     */
+    public void start(SessionServerCommand command) {
+        dataSize += command.getDataSize();
+    }
+
+    /**
+     * The command has returned from execution.
+     */
+    public void done(SessionServerCommand command) {
+        dataSize -= command.getDataSize();
+
+        processTime += command.getStats().getProcessTime();
+        numCompleted++;
+
+        long now = System.nanoTime();
+
+        if (now - lastTime >= INTERVAL) {
+            adjust();
+
+            lastTime = now;
+            processTime = 0;
+            numCompleted = 0;
+        }
+    }
+
+    private void adjust() {
+        long averageTime = processTime / numCompleted;
+
+        boolean congested = isBacklogged() || dataSize > dataBudget
+                || averageTime > 2 * Math.max(baseProcessTime, MIN_PROCESS_TIME);
+
+        // Track the lowest process time seen while letting it drift up slowly
+        if (baseProcessTime == 0 || averageTime < baseProcessTime) {
+            baseProcessTime = averageTime;
+        } else {
+            baseProcessTime += (averageTime - baseProcessTime) / BASELINE_DRIFT;
+        }
+
+        // Wait for the peer to catch up with the last downsizing
+        if (slotTable.isResizing()) {
+            return;
+        }
+
+        int slots = slotTable.getCurrentMaxSlotID() + 1;
+
+        if (congested) {
+            if (slots > MIN_SLOTS) {
+                slotTable.setTargetMaxSlotID(Math.max(slots / 2, MIN_SLOTS) - 1);
+                numShrinks++;
+            }
+        } else {
+            if (slots < maxSlots) {
+                slotTable.setTargetMaxSlotID(slots);
+                numGrows++;
+            }
+        }
+    }
+
+    private boolean isBacklogged() {
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            return false;
+        }
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+
+        return pool.getQueue().size() > pool.getMaximumPoolSize();
+    }
+}
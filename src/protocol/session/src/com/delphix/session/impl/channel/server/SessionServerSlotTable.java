@@ -20,6 +20,7 @@ package com.delphix.session.impl.channel.server;
 
 import com.delphix.session.impl.common.ProtocolViolationException;
 import com.delphix.session.impl.frame.CommandStatus;
+import com.delphix.session.impl.frame.SerialNumber;
 
 import java.util.Arrays;
 import java.util.BitSet;
@@ -46,6 +47,14 @@ import java.util.BitSet;
  * in the "announcement" bitmap, we can safely trim the slot table down to the TargetMaxSlotID. The reason this works
  * is because the peer promises never to allocate new slots above the TargetMaxSlotID once it learns of the change.
  * The next request that falls in the "announcement" bitmap confirms the peer's knowledge of the TargetMaxSlotID.
+ *
+ * The command executed over a slot stays cached until the next command over the same slot confirms it. Since the
+ * peer always reserves the lowest slot available, the higher slots may go unused for a long time after a burst and
+ * so would the responses cached in them. The maxSlotIDInUse offers a cheaper confirmation. The peer assigns the
+ * commandSN at the same time it reserves the slot. If a request finds a slot above its maxSlotIDInUse, that slot was
+ * free on the peer when the request was sent and any command cached over it with a lower commandSN must have been
+ * completed by the peer before then. Such commands are evicted as the request reserves its slot. A "cache" bitmap
+ * keeps track of the slots holding cached commands so that the scan is cheap.
  */
 public class SessionServerSlotTable {
 
@@ -58,6 +67,7 @@ public class SessionServerSlotTable {
     private int numInUse; // Number of slot IDs in use locally
 
     private BitSet announceMap; // Announcement bitmap (see above)
+    private final BitSet cacheMap; // Cache bitmap (see above)
 
     public SessionServerSlotTable(int capacity) {
         table = new SessionServerSlot[capacity];
@@ -68,6 +78,8 @@ public class SessionServerSlotTable {
 
         currentMaxSlotID = capacity - 1;
         targetMaxSlotID = currentMaxSlotID;
+
+        cacheMap = new BitSet(capacity);
     }
 
     public int getCurrentMaxSlotID() {
@@ -79,7 +91,7 @@ public class SessionServerSlotTable {
     }
 
     private void grow() {
-        table = Arrays.copyOf(table, targetMaxSlotID);
+        table = Arrays.copyOf(table, targetMaxSlotID + 1);
 
         // Allocate new slots beyond the end of the original table
         for (int i = currentMaxSlotID + 1; i < table.length; i++) {
@@ -90,12 +102,30 @@ public class SessionServerSlotTable {
     }
 
     private void shrink() {
-        table = Arrays.copyOf(table, targetMaxSlotID);
+        /*
+         * The peer has confirmed it is done with the slots in the "freeing" zone. Evict the commands still cached in
+         * those slots since they would otherwise linger in the channel registry with no slot to confirm them.
+         */
+        for (int i = targetMaxSlotID + 1; i <= currentMaxSlotID; i++) {
+            table[i].evict();
+        }
+
+        cacheMap.clear(targetMaxSlotID + 1, currentMaxSlotID + 1);
+
+        table = Arrays.copyOf(table, targetMaxSlotID + 1);
         announceMap = null;
 
         currentMaxSlotID = targetMaxSlotID;
     }
 
+    /**
+     * Check if the slot table is in the midst of downsizing, i.e., waiting for the peer to confirm the knowledge of
+     * the TargetMaxSlotID.
+     */
+    public boolean isResizing() {
+        return targetMaxSlotID != currentMaxSlotID;
+    }
+
     public void setTargetMaxSlotID(int targetMaxSlotID) {
         // No change
         if (targetMaxSlotID == currentMaxSlotID) {
@@ -138,11 +168,11 @@ public class SessionServerSlotTable {
 
         if (targetMaxSlotID < currentMaxSlotID) {
             /*
-             * We are in the midst of downsizing. If the MaxSlotIDInUse is less than our target and the new request
+             * We are in the midst of downsizing. If the MaxSlotIDInUse is within our target and the new request
              * falls in the announcement bitmap, it confirms the peer has the knowledge of the TargetMaxSlotID and
              * we can proceed with downsizing.
              */
-            if (maxSlotIDInUse < targetMaxSlotID && announceMap.get(slotID)) {
+            if (maxSlotIDInUse <= targetMaxSlotID && announceMap.get(slotID)) {
                 shrink();
             }
         }
@@ -161,16 +191,16 @@ public class SessionServerSlotTable {
         }
 
         /*
-         * Neither the maxSlotIDInUse nor the slotID of the command must exceed the currentMaxSlotID for obvious
-         * reasons. But this may not always constitute a protocol violation. When the server has to adjust the size
-         * of the slot table downward due to flow control, the client may not have had the time to respond to that
-         * or some lingering commands have arrived due to retry.
+         * The slotID of the command must not exceed the currentMaxSlotID for obvious reasons. But this may not always
+         * constitute a protocol violation. When the server has to adjust the size of the slot table downward due to
+         * flow control, the client may not have had the time to respond to that or some lingering commands have
+         * arrived due to retry.
+         *
+         * The maxSlotIDInUse, on the other hand, is merely a snapshot taken when the request was sent. A request sent
+         * over one transport before the peer learned of the downsizing may well arrive after a later request over a
+         * different transport has confirmed it. Such a stale maxSlotIDInUse may exceed the currentMaxSlotID but it
+         * is harmless since it does not count towards downsizing.
          */
-        if (maxSlotIDInUse > currentMaxSlotID) {
-            command.setCommandStatus(CommandStatus.SLOT_MAX_INVALID);
-            return;
-        }
-
         if (slotID > currentMaxSlotID) {
             command.setCommandStatus(CommandStatus.SLOT_ID_INVALID);
             return;
@@ -183,12 +213,30 @@ public class SessionServerSlotTable {
             return;
         }
 
+        // The command cached over the slot, if any, has been confirmed by the new command
+        cacheMap.clear(slotID);
+
         // Update the maxSlotIDInUse
         setMaxSlotIDInUse(slotID, maxSlotIDInUse);
 
+        // Confirm the commands cached over the slots no longer in use by the peer
+        confirm(command.getCommandSN(), maxSlotIDInUse);
+
         numInUse++;
     }
 
+    private void confirm(SerialNumber commandSN, int maxSlotIDInUse) {
+        int slotID = cacheMap.nextSetBit(maxSlotIDInUse + 1);
+
+        while (slotID >= 0) {
+            if (table[slotID].confirm(commandSN)) {
+                cacheMap.clear(slotID);
+            }
+
+            slotID = cacheMap.nextSetBit(slotID + 1);
+        }
+    }
+
     public void release(SessionServerCommand command) {
         SessionServerSlot slot = command.getSlot();
 
@@ -203,6 +251,8 @@ public class SessionServerSlotTable {
         // Release the slot
         slot.release(command);
 
+        cacheMap.set(slot.getSlotID());
+
         numInUse--;
     }
 
@@ -23,6 +23,7 @@ import com.delphix.session.control.ClientControl;
 import com.delphix.session.control.NexusInfo;
 import com.delphix.session.control.NexusStats;
 import com.delphix.session.impl.common.SessionManager;
+import com.delphix.session.impl.common.SessionThrottler;
 import com.delphix.session.service.*;
 import com.delphix.session.util.ObjectRegistry;
 
@@ -42,6 +43,9 @@ public class ClientManagerImpl extends SessionManager implements ClientManager,
     // Zombie sessions waiting to go away
     private final List<ClientSession> zombie = new ArrayList<ClientSession>();
 
+    // Throughput throttler shared by all sessions
+    private final SessionThrottler throttler = new SessionThrottler(0);
+
     @Override
     public void start() {
         super.start();
@@ -62,6 +66,23 @@ public class ClientManagerImpl extends SessionManager implements ClientManager,
         return terminus;
     }
 
+    @Override
+    public int getBandwidthLimit() {
+        return (int) (throttler.getFillRate() / (1024 * 1024));
+    }
+
+    @Override
+    public void setBandwidthLimit(int bandwidthLimit) {
+        throttler.setFillRate(bandwidthLimit * (1024L * 1024));
+    }
+
+    /**
+     * Get the throughput throttler shared by all sessions. It is the parent of the per session throttlers.
+     */
+    public SessionThrottler getThrottler() {
+        return throttler;
+    }
+
     @Override
     public synchronized ClientNexus create(ClientConfig spec) {
         List<TransportAddress> addrs = spec.getAddresses();
@@ -22,6 +22,7 @@ import com.delphix.session.impl.common.ProtocolViolationException;
 import com.delphix.session.impl.common.SessionTransportHandler;
 import com.delphix.session.impl.common.SessionTransportManager;
 import com.delphix.session.impl.frame.NegotiateResponse;
+import com.delphix.session.impl.frame.SessionFrameBatcher;
 import com.delphix.session.impl.frame.SessionFrameDecoder;
 import com.delphix.session.impl.frame.SessionFrameEncoder;
 import com.delphix.session.impl.frame.SessionFrameOptions;
@@ -84,6 +85,13 @@ public class ClientNegotiateHandler extends SessionTransportHandler {
         encoder.setOptions(options);
         decoder.setOptions(options);
 
+        // Batch the frame writes if it has been negotiated for the transport
+        SessionFrameBatcher batcher = manager.getFrameBatcher(xport);
+
+        if (batcher != null) {
+            pipeline.addBefore("encoder", "batcher", batcher);
+        }
+
         /*
          * Shut off the valve temporarily for incoming traffic until the transport successfully joins the server
          * channel. We don't have to worry about server race on the back channel. By design, the server will not
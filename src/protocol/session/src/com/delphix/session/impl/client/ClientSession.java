@@ -584,7 +584,7 @@ public class ClientSession extends SessionNexus implements ClientNexus, SessionE
                 int bandwidthLimit = options.getOption(BANDWIDTH_LIMIT);
 
                 clientChannel = new SessionClientChannel(this, true, foreQueue, response.getExpectedCommandSN(),
-                        bandwidthLimit);
+                        bandwidthLimit, getClientManager().getThrottler());
                 serverChannel = new SessionServerChannel(this, false, backQueue, response.getCommandSN());
 
                 // N1 - At least one transport connection reached the LOGGED_IN state
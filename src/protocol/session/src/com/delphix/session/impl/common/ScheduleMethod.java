@@ -34,6 +34,14 @@ public enum ScheduleMethod {
         public SessionTransportScheduler create() {
             return new SessionTransportLeastQueue();
         }
+    },
+
+    LEAST_LATENCY() {
+
+        @Override
+        public SessionTransportScheduler create() {
+            return new SessionTransportLeastLatency();
+        }
     };
 
     public abstract SessionTransportScheduler create();
@@ -25,6 +25,7 @@ import com.delphix.session.impl.frame.SerialNumber;
 import com.delphix.session.util.Event;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public abstract class SessionChannel {
 
@@ -33,8 +34,17 @@ public abstract class SessionChannel {
     protected final SessionNexus nexus;
     protected final boolean fore;
 
-    protected SerialNumber commandSN;
-    protected SerialNumber expectedCommandSN;
+    private static final AtomicReferenceFieldUpdater<SessionChannel, SerialNumber> commandSNUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(SessionChannel.class, SerialNumber.class, "commandSN");
+    private static final AtomicReferenceFieldUpdater<SessionChannel, SerialNumber> expectedCommandSNUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(SessionChannel.class, SerialNumber.class, "expectedCommandSN");
+
+    /*
+     * The command sequences are volatile since the client channel advances them without the channel lock. They are
+     * updated with compare-and-set in that case.
+     */
+    protected volatile SerialNumber commandSN;
+    protected volatile SerialNumber expectedCommandSN;
 
     public SessionChannel(SessionNexus nexus, boolean fore) {
         this.nexus = nexus;
@@ -69,6 +79,14 @@ public abstract class SessionChannel {
         return expectedCommandSN;
     }
 
+    protected boolean compareAndSetCommandSN(SerialNumber expect, SerialNumber update) {
+        return commandSNUpdater.compareAndSet(this, expect, update);
+    }
+
+    protected boolean compareAndSetExpectedCommandSN(SerialNumber expect, SerialNumber update) {
+        return expectedCommandSNUpdater.compareAndSet(this, expect, update);
+    }
+
     /**
      * Set the expected command sequence.
      */
@@ -22,6 +22,7 @@ import com.delphix.appliance.logger.Logger;
 import com.delphix.session.impl.frame.ExchangeID;
 import com.delphix.session.impl.frame.RequestFrame;
 import com.delphix.session.impl.frame.ResponseFrame;
+import com.delphix.session.service.ServiceTrafficClass;
 
 public abstract class SessionExchange {
 
@@ -102,6 +103,22 @@ public abstract class SessionExchange {
         this.dependency = dependent;
     }
 
+    /**
+     * Get the size of the request data in bytes. It is used to account for the data outstanding on the transport and
+     * must stay the same while the exchange is in flight.
+     */
+    public long getRequestBytes() {
+        return 0;
+    }
+
+    /**
+     * Get the traffic class of the exchange for transport scheduling. Protocol control exchanges are small and treated
+     * as interactive.
+     */
+    public ServiceTrafficClass getTrafficClass() {
+        return ServiceTrafficClass.INTERACTIVE;
+    }
+
     /**
      * Check if this is a client exchange.
      */
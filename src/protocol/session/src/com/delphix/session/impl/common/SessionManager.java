@@ -19,6 +19,8 @@
 package com.delphix.session.impl.common;
 
 import com.delphix.appliance.logger.Logger;
+import com.delphix.session.impl.channel.server.SessionServerInflightBudget;
+import com.delphix.session.impl.channel.server.SessionServerReplyCache;
 import com.delphix.session.impl.sasl.SessionSaslProvider;
 import com.delphix.session.util.EventManager;
 import com.delphix.session.util.ExecutorUtil;
@@ -40,6 +42,9 @@ public abstract class SessionManager {
 
     protected SessionTransportManager channelManager; // Transport channel manager
 
+    protected final SessionServerReplyCache replyCache; // Reply cache shared by all server channels
+    protected final SessionServerInflightBudget inflightBudget; // Request data budget shared by all forechannels
+
     protected final ProtocolVersion minVersion; // Minimum protocol version supported
     protected final ProtocolVersion maxVersion; // Maximum protocol version supported
 
@@ -51,6 +56,9 @@ public abstract class SessionManager {
     public SessionManager() {
         minVersion = V_1_0_0;
         maxVersion = V_1_0_0;
+
+        replyCache = new SessionServerReplyCache();
+        inflightBudget = new SessionServerInflightBudget();
     }
 
     public void start() {
@@ -61,7 +69,7 @@ public abstract class SessionManager {
         scheduleManager = Executors.newScheduledThreadPool(CORE_SCHEDULER_THREADS);
 
         // Fire up the execution manager
-        executionManager = Executors.newCachedThreadPool();
+        executionManager = ExecutorUtil.newTaskExecutor();
     }
 
     public void stop() {
@@ -98,6 +106,14 @@ public abstract class SessionManager {
         return executionManager;
     }
 
+    public SessionServerReplyCache getReplyCache() {
+        return replyCache;
+    }
+
+    public SessionServerInflightBudget getInflightBudget() {
+        return inflightBudget;
+    }
+
     public ScheduledExecutorService getScheduleManager() {
         return scheduleManager;
     }
@@ -27,6 +27,9 @@ import com.delphix.session.control.TransportInfo;
 import com.delphix.session.impl.channel.client.SessionClientChannel;
 import com.delphix.session.impl.channel.server.SessionServerChannel;
 import com.delphix.session.impl.control.*;
+import com.delphix.session.impl.frame.SessionFrameBufferStats;
+import com.delphix.session.impl.frame.SessionFrameCompressAdvisor;
+import com.delphix.session.impl.frame.SessionFrameSizePredictor;
 import com.delphix.session.service.*;
 import com.delphix.session.util.*;
 import com.google.common.base.Throwables;
@@ -39,8 +42,10 @@ public abstract class SessionNexus implements ServiceNexus {
     protected static final Logger logger = Logger.getLogger(SessionNexus.class);
 
     protected static final long CONTROL_TIMEOUT = 5000; // Control timeout
+    protected static final ExchangeRegistry<ControlExchangeType> controlRegistry = // Control exchange registry
+    ExchangeRegistry.create(ControlExchangeType.class);
     protected static final ServiceCodec controlCodec = // Control codec
-    new ExchangeCodec(ExchangeRegistry.create(ControlExchangeType.class));
+    new ExchangeCodec(controlRegistry);
 
     protected ProtocolVersion actVersion; // Protocol version in use
 
@@ -50,6 +55,11 @@ public abstract class SessionNexus implements ServiceNexus {
     protected final Map<Class<?>, ProtocolHandler<?>> protocolHandlerMap;
 
     protected final GroupCodec codec; // Session Codec
+    protected final ExternalClassTable classTable; // Class table for compact object encoding
+
+    protected final SessionFrameSizePredictor sizePredictor; // Frame encoding size predictor
+    protected final SessionFrameBufferStats bufferStats; // Frame encoding buffer stats
+    protected final SessionFrameCompressAdvisor compressAdvisor; // Adaptive payload compression advisor
 
     protected SessionClientChannel clientChannel; // Client channel
     protected SessionServerChannel serverChannel; // Server channel
@@ -91,6 +101,11 @@ public abstract class SessionNexus implements ServiceNexus {
 
         // Create a session codec for internal and external use
         codec = new GroupCodec(service.getCodec(), controlCodec);
+        classTable = createClassTable(service.getCodec());
+
+        sizePredictor = new SessionFrameSizePredictor();
+        bufferStats = new SessionFrameBufferStats();
+        compressAdvisor = new SessionFrameCompressAdvisor();
     }
 
     @Override
@@ -112,6 +127,34 @@ public abstract class SessionNexus implements ServiceNexus {
         return codec;
     }
 
+    public ExternalClassTable getClassTable() {
+        return classTable;
+    }
+
+    /**
+     * Create the class table for compact object encoding from the exchange registries of the codecs in the group.
+     * Both sides of the nexus use the same service and hence agree on the table.
+     */
+    private static ExternalClassTable createClassTable(ServiceCodec serviceCodec) {
+        if (serviceCodec instanceof ExchangeCodec) {
+            return new ExternalClassTable(((ExchangeCodec) serviceCodec).getRegistry(), controlRegistry);
+        }
+
+        return new ExternalClassTable(controlRegistry);
+    }
+
+    public SessionFrameSizePredictor getSizePredictor() {
+        return sizePredictor;
+    }
+
+    public SessionFrameBufferStats getBufferStats() {
+        return bufferStats;
+    }
+
+    public SessionFrameCompressAdvisor getCompressAdvisor() {
+        return compressAdvisor;
+    }
+
     @Override
     public <T extends ProtocolHandler<T>> T getProtocolHandler(Class<T> iface) {
         T result = iface.cast(protocolHandlerMap.get(iface));
@@ -227,6 +270,9 @@ public abstract class SessionNexus implements ServiceNexus {
             stats.putAll(serverChannel.getStats());
         }
 
+        stats.putAll(bufferStats.getStats());
+        stats.putAll(compressAdvisor.getStats());
+
         result.setStats(stats);
 
         return result;
@@ -241,6 +287,9 @@ public abstract class SessionNexus implements ServiceNexus {
         if (serverChannel != null) {
             serverChannel.resetStats();
         }
+
+        bufferStats.resetStats();
+        compressAdvisor.resetStats();
     }
 
     @Override
@@ -255,6 +304,7 @@ public abstract class SessionNexus implements ServiceNexus {
         info.setClosed(isClosed());
 
         info.setOptions(getOptions().values());
+        info.setLZ4Instance(CompressMethod.getLZ4Instance());
 
         List<TransportInfo> xports = new ArrayList<TransportInfo>();
 
@@ -21,129 +21,153 @@ package com.delphix.session.impl.common;
 import com.delphix.session.impl.channel.client.SessionClientCommand;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class implements a simple throughput throttling mechanism. The implementation is based on a token bucket algorithm
  * (see http://en.wikipedia.org/wiki/Token_bucket).
+ *
+ * Instead of the token count, the bucket keeps the time at which it would be empty, i.e., the time up to which the
+ * tokens have been consumed. Tokens accrue as time passes and the bucket holds no more than one second worth of them.
+ * Consuming tokens advances the time by how long it takes to refill them at the fill rate. Since the bucket state is a
+ * single value, it is updated with compare-and-set without a lock. A command larger than the bucket is admitted when
+ * the bucket is full to avoid starving it, with the excess paid back by the commands that follow.
+ *
+ * Throttlers may be arranged in a hierarchy, such as a throttler per nexus under one shared by all the nexuses of the
+ * client manager. Tokens must be available at every level of the hierarchy for a command to proceed. The throttler
+ * never blocks. When tokens are not available, it returns the time to wait before trying again and it is up to the
+ * caller to reschedule the command.
  */
 public class SessionThrottler {
 
-    // Number of tokens available in the token bucket
-    private long tokens;
-
-    // Tokens needed to issue the next command
-    private long tokensNeeded;
+    // Maximum amount of time (in nano seconds) worth of tokens held in the token bucket
+    private static final long BUCKET_NS = TimeUnit.SECONDS.toNanos(1);
 
-    // Last time (in nano seconds) tokens were added to the token bucket
-    private long lastUpdateNS;
+    // Parent throttler if any
+    private final SessionThrottler parent;
 
     // Rate (bytes/sec) at which the token bucket is refilled
-    private long fillRateBytesPerSecond;
+    private volatile long fillRateBytesPerSecond;
 
-    // Lock to synchronize access to the token bucket
-    private final Object lock;
+    // Time (in nano seconds) up to which tokens have been consumed from the token bucket
+    private final AtomicLong emptyNS;
 
-    public SessionThrottler(long fillRateBytesPerSecond, Object lock) {
+    public SessionThrottler(long fillRateBytesPerSecond) {
+        this(fillRateBytesPerSecond, null);
+    }
+
+    public SessionThrottler(long fillRateBytesPerSecond, SessionThrottler parent) {
         this.fillRateBytesPerSecond = fillRateBytesPerSecond;
-        this.lock = lock;
-        this.lastUpdateNS = System.nanoTime();
+        this.parent = parent;
+
+        // The token bucket starts out empty
+        emptyNS = new AtomicLong(System.nanoTime());
+    }
+
+    public SessionThrottler getParent() {
+        return parent;
+    }
+
+    public long getFillRate() {
+        return fillRateBytesPerSecond;
     }
 
     /**
-     * Update the number of tokens in the token bucket.
+     * Set the fill rate of the token bucket. A fill rate of zero disables throttling at this level. The token bucket
+     * starts out empty when throttling is enabled.
      */
-    public void updateTokens() {
-        assert Thread.holdsLock(lock) : "Session throttling lock not held!";
+    public void setFillRate(long fillRateBytesPerSecond) {
+        if (this.fillRateBytesPerSecond == 0) {
+            emptyNS.set(System.nanoTime());
+        }
 
-        // Throttling disabled
-        if (fillRateBytesPerSecond == 0) {
-            return;
+        this.fillRateBytesPerSecond = fillRateBytesPerSecond;
+    }
+
+    /**
+     * Consume the number of tokens required for the given command. Return zero if the tokens have been consumed or
+     * the time (in nano seconds) to wait before the tokens may become available.
+     */
+    public long consumeTokens(SessionClientCommand command, double compressionRatio) {
+        // Command already has tokens
+        if (command.hasTokens()) {
+            return 0;
         }
 
-        long now = System.nanoTime();
-        double timeDelta = ((double) now - lastUpdateNS) / TimeUnit.SECONDS.toNanos(1);
-        long tokenDelta = (long) (timeDelta * fillRateBytesPerSecond);
+        long commandTokens = (long) (command.getDataSize() * compressionRatio);
+        long waitNS = consumeTokens(commandTokens);
 
-        // Don't lose time if not enough time has passed to add any tokens
-        if (tokenDelta == 0) {
-            return;
+        if (waitNS > 0) {
+            command.setThrottled();
+            return waitNS;
         }
 
-        // Cap the number of tokens in the token bucket at the fill rate
-        tokens = Math.min(tokens + tokenDelta, fillRateBytesPerSecond);
-        lastUpdateNS = now;
+        command.setHasTokens();
+
+        return 0;
     }
 
     /**
-     * Consume the number of tokens required for the given command.
+     * Consume the number of tokens from this throttler and all its ancestors. Return zero if the tokens have been
+     * consumed or the time (in nano seconds) to wait before the tokens may become available. In the latter case, no
+     * tokens have been consumed from any throttler in the hierarchy.
      */
-    public Boolean consumeTokens(SessionClientCommand command, double compressionRatio) {
-        return consumeTokens(command, compressionRatio, false);
-    }
-
-    public Boolean consumeTokens(SessionClientCommand command, double compressionRatio, Boolean waitForTokens) {
-        assert Thread.holdsLock(lock) : "Session throttling lock not held!";
+    public long consumeTokens(long tokens) {
+        long waitNS = consume(tokens);
 
-        // Throttling disabled
-        if (fillRateBytesPerSecond == 0) {
-            return true;
+        if (waitNS > 0 || parent == null) {
+            return waitNS;
         }
 
-        // Command already has tokens
-        if (command.hasTokens()) {
-            return true;
-        }
+        waitNS = parent.consumeTokens(tokens);
 
-        updateTokens();
-
-        long commandTokens = (long) (command.getDataSize() * compressionRatio);
-        if (commandTokens > tokens) {
-            tokensNeeded = commandTokens;
+        // Return the tokens consumed from this bucket if the parent is short
+        if (waitNS > 0) {
+            refund(tokens);
+        }
 
-            command.setThrottled();
+        return waitNS;
+    }
 
-            if (!waitForTokens) {
-                return false;
-            }
+    private long consume(long tokens) {
+        long fillRate = fillRateBytesPerSecond;
 
-            waitForTokens();
+        // Throttling disabled
+        if (fillRate == 0 || tokens == 0) {
+            return 0;
         }
 
-        assert tokens >= commandTokens;
+        long costNS = getCost(tokens, fillRate);
 
-        tokens -= commandTokens;
-        command.setHasTokens();
+        for (;;) {
+            long now = System.nanoTime();
+            long current = emptyNS.get();
 
-        return true;
-    }
+            // Cap the number of tokens in the token bucket
+            long full = now - BUCKET_NS;
+            long start = current - full > 0 ? current : full;
+            long update = start + costNS;
 
-    /**
-     * Blocks the calling thread until the token bucket has enough tokens to issue the given command.
-     */
-    private void waitForTokens() {
-        while (tokens < tokensNeeded) {
-            long waitTokens = tokensNeeded - tokens;
-            long waitMS = Math.max((long) (((double) waitTokens / fillRateBytesPerSecond) * 1000), 1);
-
-            try {
-                Thread.sleep(waitMS);
-            } catch (InterruptedException e) {
-                /*
-                 * Even though we are ignoring the thread interrupt this wait is bounded and will not prevent the
-                 * session from being shutdown. In the worst case this wait will be 1 second since the command data
-                 * must be <= the fillRate. In practice these waits will often be on the order of a few milliseconds.
-                 */
+            // Check if the tokens are available unless the bucket is full
+            if (update - now > 0 && start != full) {
+                return update - now;
             }
 
-            updateTokens();
+            if (emptyNS.compareAndSet(current, update)) {
+                return 0;
+            }
         }
-
-        tokensNeeded = 0;
     }
 
-    public Boolean needTokens() {
-        assert Thread.holdsLock(lock) : "Session throttling lock not held!";
+    private void refund(long tokens) {
+        long fillRate = fillRateBytesPerSecond;
+
+        if (fillRate != 0) {
+            emptyNS.addAndGet(-getCost(tokens, fillRate));
+        }
+    }
 
-        return tokensNeeded > 0;
+    private static long getCost(long tokens, long fillRate) {
+        return (long) ((double) tokens / fillRate * BUCKET_NS);
     }
 }
@@ -19,12 +19,14 @@
 package com.delphix.session.impl.common;
 
 import com.delphix.appliance.logger.Logger;
+import com.delphix.session.impl.channel.client.SessionClientChannel;
 import com.delphix.session.impl.frame.ExchangeID;
 import com.delphix.session.impl.frame.RequestFrame;
 import com.delphix.session.impl.frame.ResponseFrame;
+import com.delphix.session.impl.frame.SessionFrameBufferPool;
 import com.delphix.session.service.ServiceOptions;
 import com.delphix.session.service.ServiceTransport;
-import com.delphix.session.util.ObjectRegistry;
+import com.delphix.session.util.ConcurrentIntRegistry;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.socket.SocketChannelConfig;
 import org.jboss.netty.handler.ssl.SslHandler;
@@ -36,6 +38,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class SessionTransport implements ServiceTransport {
 
@@ -44,11 +47,13 @@ public abstract class SessionTransport implements ServiceTransport {
     // Session manager
     protected final SessionManager manager;
 
-    // Outgoing exchange registry
-    protected final ObjectRegistry<ExchangeID, SessionExchange> outgoing = ObjectRegistry.create();
-
-    // Incoming exchange registry
-    protected final ObjectRegistry<ExchangeID, SessionExchange> incoming = ObjectRegistry.create();
+    /*
+     * Outgoing and incoming exchange registries keyed by the exchange xid. They are safe for concurrent use so that
+     * exchanges may be registered and unregistered on the send and receive paths, and the queue depth sampled by the
+     * transport scheduler, without taking the transport lock.
+     */
+    protected final ConcurrentIntRegistry<SessionExchange> outgoing = ConcurrentIntRegistry.create();
+    protected final ConcurrentIntRegistry<SessionExchange> incoming = ConcurrentIntRegistry.create();
 
     /*
      * The transport guarantees weak completion ordering among the exchanges that are related to each other in the
@@ -60,6 +65,25 @@ public abstract class SessionTransport implements ServiceTransport {
      */
     protected final Queue<SessionExchange> lingerQueue = new LinkedList<SessionExchange>();
 
+    // Request data bytes outstanding on the transport
+    protected final AtomicLong outboundBytes = new AtomicLong();
+
+    // Total number of requests sent over the transport
+    protected final AtomicLong totalRequests = new AtomicLong();
+
+    /*
+     * Moving averages of the network round-trip time (ns) and the request data size (bytes) of the commands sent
+     * over the transport. They are fed back from command completion for use by the transport scheduler. They are
+     * updated without synchronization; a lost update at worst skews the average which is corrected over time anyway.
+     */
+    private static final int AVERAGE_SHIFT = 3; // Moving average gain of 1/8
+
+    private volatile long networkTime;
+    private volatile long requestBytes;
+
+    // Frame encoding buffer pool
+    protected final SessionFrameBufferPool bufferPool = new SessionFrameBufferPool();
+
     protected Channel channel; // Transport channel
 
     protected ServiceOptions options; // Protocol options
@@ -113,7 +137,7 @@ public abstract class SessionTransport implements ServiceTransport {
     // Close notification timeout (seconds)
 
     private ScheduledFuture<?> closeFuture; // Close notification future
-    private boolean closed; // Close notification flag
+    private volatile boolean closed; // Close notification flag
 
     public SessionTransport(SessionManager manager) {
         this.manager = manager;
@@ -150,15 +174,60 @@ public abstract class SessionTransport implements ServiceTransport {
     }
 
     @Override
-    public synchronized int getOutboundQueueDepth() {
+    public int getOutboundQueueDepth() {
         return outgoing.size();
     }
 
     @Override
-    public synchronized int getInboundQueueDepth() {
+    public int getInboundQueueDepth() {
         return incoming.size();
     }
 
+    /**
+     * Get the number of request data bytes outstanding on the transport. The count may drop below zero momentarily
+     * while an exchange sent without the transport lock is drained before the sender has accounted for it.
+     */
+    public long getOutboundBytes() {
+        return Math.max(outboundBytes.get(), 0);
+    }
+
+    /**
+     * Get the total number of requests sent over the transport.
+     */
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    /**
+     * Get the moving average of the network round-trip time in nanoseconds. It is zero if not yet sampled.
+     */
+    public long getNetworkTime() {
+        return networkTime;
+    }
+
+    /**
+     * Get the moving average of the request data size in bytes. It is zero if not yet sampled.
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * Update the moving averages with the network round-trip time and the request data size of an exchange that has
+     * just completed over the transport.
+     */
+    public void updateNetworkTime(long time, long bytes) {
+        if (time <= 0) {
+            return;
+        }
+
+        long average = networkTime;
+        networkTime = average == 0 ? time : average + ((time - average) >> AVERAGE_SHIFT);
+
+        average = requestBytes;
+        requestBytes = average == 0 ? bytes : average + ((bytes - average) >> AVERAGE_SHIFT);
+    }
+
     @Override
     public String getTlsProtocol() {
         if (channel != null) {
@@ -190,6 +259,14 @@ public abstract class SessionTransport implements ServiceTransport {
         return channel != null ? channel.isConnected() : false;
     }
 
+    /**
+     * Check if the transport can take more outbound data without exceeding the write buffer high watermark. The
+     * transport becomes writable again once the outbound data has drained below the low watermark.
+     */
+    public boolean isWritable() {
+        return channel != null ? channel.isWritable() : false;
+    }
+
     @Override
     public void close() {
         if (channel != null) {
@@ -225,6 +302,13 @@ public abstract class SessionTransport implements ServiceTransport {
         this.options = options.getTransportOptions();
     }
 
+    /**
+     * Get the frame encoding buffer pool for this transport.
+     */
+    public SessionFrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     /**
      * Get the session nexus to which this transport belongs.
      */
@@ -321,6 +405,24 @@ public abstract class SessionTransport implements ServiceTransport {
          */
     }
 
+    /**
+     * Notify the transport the underlying channel has become writable again. Commands held back while none of the
+     * transports were writable may resume on this transport.
+     */
+    public void notifyWritable() {
+        SessionNexus nexus = getNexus();
+
+        if (nexus == null) {
+            return;
+        }
+
+        SessionClientChannel clientChannel = nexus.getClientChannel();
+
+        if (clientChannel != null) {
+            clientChannel.notifyWritable(this);
+        }
+    }
+
     /**
      * Notify the transport the underlying channel has been closed.
      */
@@ -354,11 +456,20 @@ public abstract class SessionTransport implements ServiceTransport {
 
             exchangeSet = new HashSet<SessionExchange>();
 
-            outgoing.values(exchangeSet);
-            outgoing.clear();
+            /*
+             * The exchanges are drained after the closed flag is set. An exchange registered concurrently without
+             * the transport lock is either drained here or removed by the sender upon seeing the closed flag, but
+             * never both. Whoever takes an outgoing exchange off the queue is responsible for its request bytes, so
+             * they are drained one exchange at a time rather than reset, which would race with a concurrent sender
+             * that has yet to account for its exchange.
+             */
+            outgoing.drain(exchangeSet);
+
+            for (SessionExchange exchange : exchangeSet) {
+                outboundBytes.addAndGet(-exchange.getRequestBytes());
+            }
 
-            incoming.values(exchangeSet);
-            incoming.clear();
+            incoming.drain(exchangeSet);
         }
 
         // Clear the outstanding exchanges
@@ -424,10 +535,30 @@ public abstract class SessionTransport implements ServiceTransport {
      */
     public void sendRequest(SessionExchange exchange) {
         RequestFrame request = exchange.getRequest();
-        ExchangeID exchangeID = exchange.getExchangeID();
+        int xid = exchange.getExchangeID().getXid();
+
+        /*
+         * Register the exchange without the transport lock if the channel is still connected. The closed flag must be
+         * checked again after registration in case it has raced with shutdown. If shutdown has drained the exchange
+         * already, it is responsible for the completion. Otherwise, the exchange is taken back and handled below.
+         */
+        if (channel.isConnected()) {
+            outgoing.register(xid, exchange);
+
+            if (!closed) {
+                outboundBytes.addAndGet(exchange.getRequestBytes());
+                totalRequests.incrementAndGet();
+                channel.write(request);
+                return;
+            }
+
+            if (outgoing.remove(xid) == null) {
+                return;
+            }
+        }
 
         synchronized (this) {
-            if (!channel.isConnected()) {
+            if (closed || !channel.isConnected()) {
                 /*
                  * If the channel is being disconnected and outstanding exchanges completed, add this exchange to the
                  * linger queue to ensure completion ordering is always satisfied.
@@ -444,7 +575,9 @@ public abstract class SessionTransport implements ServiceTransport {
              * Register the exchange if the channel is still connected. The exchange will be completed by the channel
              * IO thread via the state change notification if transport reset is hit during write.
              */
-            outgoing.register(exchangeID, exchange);
+            outgoing.register(xid, exchange);
+            outboundBytes.addAndGet(exchange.getRequestBytes());
+            totalRequests.incrementAndGet();
         }
 
         channel.write(request);
@@ -463,20 +596,17 @@ public abstract class SessionTransport implements ServiceTransport {
          * For as long as the transport is still alive, the client must not unilaterally drop an outstanding request
          * over the same transport. An exception is thrown if the request is missing for the response.
          */
-        synchronized (this) {
-            exchange = outgoing.unregister(exchangeID);
+        exchange = outgoing.unregister(exchangeID.getXid());
+        outboundBytes.addAndGet(-exchange.getRequestBytes());
 
-            // Abort the dependency exchange if it hasn't been received
-            dependency = exchange.getDependency();
+        // Abort the dependency exchange if it hasn't been received
+        dependency = exchange.getDependency();
 
-            if (dependency != null) {
-                ExchangeID dependencyID = dependency.getExchangeID();
-
-                dependency = outgoing.locate(dependencyID);
+        if (dependency != null) {
+            dependency = outgoing.remove(dependency.getExchangeID().getXid());
 
-                if (dependency != null) {
-                    outgoing.unregister(dependencyID);
-                }
+            if (dependency != null) {
+                outboundBytes.addAndGet(-dependency.getRequestBytes());
             }
         }
 
@@ -504,9 +634,7 @@ public abstract class SessionTransport implements ServiceTransport {
          * For as long as the transport is still alive, the client must not retry the request over the same transport.
          * An exception is thrown if duplicate is found for the request.
          */
-        synchronized (this) {
-            incoming.register(exchangeID, exchange);
-        }
+        incoming.register(exchangeID.getXid(), exchange);
 
         // Set the transport over which the exchange is received
         exchange.setTransport(this);
@@ -523,30 +651,36 @@ public abstract class SessionTransport implements ServiceTransport {
 
         SessionExchange dependency;
 
-        synchronized (this) {
-            if (!channel.isConnected()) {
+        if (!channel.isConnected()) {
+            throw new TransportResetException("failed to send response");
+        }
+
+        // The exchange may have been drained by shutdown racing with the check above
+        if (incoming.remove(exchangeID.getXid()) == null) {
+            if (closed) {
                 throw new TransportResetException("failed to send response");
             }
 
-            incoming.unregister(exchangeID);
-
-            // Abort the dependency exchange if it hasn't been sent
-            dependency = exchange.getDependency();
-
-            if (dependency != null) {
-                ExchangeID dependencyID = dependency.getExchangeID();
+            throw new IllegalStateException("object not found " + exchangeID);
+        }
 
-                dependency = incoming.locate(dependencyID);
+        // Abort the dependency exchange if it hasn't been sent
+        dependency = exchange.getDependency();
 
-                if (dependency != null) {
-                    incoming.unregister(dependencyID);
-                }
-            }
+        if (dependency != null) {
+            incoming.remove(dependency.getExchangeID().getXid());
         }
 
         channel.write(response);
     }
 
+    /**
+     * Enable or disable reads on the transport. This is used by the server for backpressure.
+     */
+    public void setReadable(boolean readable) {
+        channel.setReadable(readable);
+    }
+
     /**
      * Accept the transport after it has successfully joined the server channel. This shall enable incoming traffic
      * to flow again on the transport so that requests can be delivered.
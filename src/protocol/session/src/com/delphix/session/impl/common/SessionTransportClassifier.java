@@ -0,0 +1,158 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.common;
+
+import com.delphix.session.service.ServiceTrafficClass;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * This class describes the traffic class aware transport scheduler. It sets aside a number of transports for the
+ * interactive traffic so that latency sensitive exchanges are not stuck behind bulk data on the same connection. The
+ * reserved and the shared transports are each scheduled with the configured scheduling method.
+ *
+ *   - interactive exchanges prefer the reserved transports and fall back to the shared ones if none of the reserved
+ *     is writable
+ *   - bulk exchanges are scheduled on the shared transports only, unless there is no shared transport at all
+ *
+ * Transports are reserved in the order they are attached. When a reserved transport is detached, a shared transport
+ * takes its place as long as at least one shared transport remains.
+ */
+public class SessionTransportClassifier implements SessionTransportScheduler {
+
+    private final int reserved; // Number of transports reserved for interactive traffic
+
+    private final SessionTransportScheduler interactive; // Scheduler of the reserved transports
+    private final SessionTransportScheduler bulk; // Scheduler of the shared transports
+
+    private final List<SessionTransport> reservedXports = new LinkedList<SessionTransport>();
+    private final List<SessionTransport> sharedXports = new LinkedList<SessionTransport>();
+
+    public SessionTransportClassifier(ScheduleMethod method, int reserved) {
+        this.reserved = reserved;
+
+        interactive = method.create();
+        bulk = method.create();
+    }
+
+    @Override
+    public synchronized void attach(SessionTransport xport) {
+        if (reservedXports.size() < reserved) {
+            reservedXports.add(xport);
+            interactive.attach(xport);
+        } else {
+            sharedXports.add(xport);
+            bulk.attach(xport);
+        }
+    }
+
+    @Override
+    public synchronized void detach(SessionTransport xport) {
+        if (sharedXports.remove(xport)) {
+            bulk.detach(xport);
+            return;
+        }
+
+        if (!reservedXports.remove(xport)) {
+            return;
+        }
+
+        interactive.detach(xport);
+
+        // Replace the reserved transport with a shared one if there are more than one left
+        if (sharedXports.size() > 1) {
+            SessionTransport replace = sharedXports.remove(0);
+
+            bulk.detach(replace);
+
+            reservedXports.add(replace);
+            interactive.attach(replace);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        reservedXports.clear();
+        sharedXports.clear();
+
+        interactive.clear();
+        bulk.clear();
+    }
+
+    @Override
+    public boolean contains(SessionTransport xport) {
+        return interactive.contains(xport) || bulk.contains(xport);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return interactive.isEmpty() && bulk.isEmpty();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return interactive.isWritable() || bulk.isWritable();
+    }
+
+    @Override
+    public boolean isWritable(SessionExchange exchange) {
+        if (!isBulk(exchange)) {
+            return isWritable();
+        }
+
+        if (bulk.isEmpty()) {
+            return interactive.isWritable();
+        }
+
+        return bulk.isWritable();
+    }
+
+    @Override
+    public SessionTransport schedule(SessionExchange exchange) {
+        if (isBulk(exchange)) {
+            if (bulk.isEmpty()) {
+                return interactive.schedule(exchange);
+            }
+
+            return bulk.schedule(exchange);
+        }
+
+        SessionTransport xport = interactive.schedule(exchange);
+
+        if (xport == null) {
+            xport = bulk.schedule(exchange);
+        }
+
+        return xport;
+    }
+
+    @Override
+    public SessionTransport schedule() {
+        if (interactive.isEmpty()) {
+            return bulk.schedule();
+        }
+
+        return interactive.schedule();
+    }
+
+    private static boolean isBulk(SessionExchange exchange) {
+        return exchange != null && exchange.getTrafficClass() == ServiceTrafficClass.BULK;
+    }
+}
@@ -74,6 +74,22 @@ public class SessionTransportHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        Channel channel = ctx.getChannel();
+
+        // Resume scheduling on the transport once the outbound data has drained below the low watermark
+        if (channel.isWritable()) {
+            SessionTransport xport = manager.locate(channel);
+
+            if (xport != null) {
+                xport.notifyWritable();
+            }
+        }
+
+        super.channelInterestChanged(ctx, e);
+    }
+
     @Override
     public void channelDisconnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
         Channel channel = ctx.getChannel();
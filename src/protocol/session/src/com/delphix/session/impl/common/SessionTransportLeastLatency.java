@@ -0,0 +1,83 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class describes the least latency transport scheduler. It schedules the exchange on the transport with the
+ * lowest expected completion time, which is estimated as the moving average of the network round-trip time of the
+ * transport multiplied by the load ahead of the exchange on the same transport, i.e.,
+ *
+ *     expected = networkTime * max(queueDepth + 1, (outboundBytes + requestBytes) / averageBytes)
+ *
+ * The load is the number of outstanding exchanges including this one, or the amount of outstanding request data in
+ * units of the average request size if that is larger, so that a transport carrying a few large requests is not
+ * mistaken for an idle one. A transport riding a congested path sees its round-trip time go up and is given less work
+ * until it recovers. A transport not yet sampled has an expected time of zero and is preferred until it is.
+ *
+ * Since a transport that has fallen out of favor would otherwise never be sampled again, every so often the exchange
+ * is scheduled in round-robin fashion instead to refresh the estimates of all transports. Transports that are not
+ * writable are skipped either way.
+ */
+public class SessionTransportLeastLatency extends SessionTransportQueue {
+
+    private static final int PROBE_INTERVAL = 64; // Number of exchanges scheduled between round-robin probes
+
+    private final AtomicInteger count = new AtomicInteger(); // Number of exchanges scheduled
+
+    @Override
+    public SessionTransport schedule(SessionExchange exchange) {
+        if (count.incrementAndGet() % PROBE_INTERVAL == 0) {
+            return rotate();
+        }
+
+        long bytes = exchange != null ? exchange.getRequestBytes() : 0;
+
+        SessionTransport sched = null;
+        double schedTime = 0;
+
+        for (SessionTransport xport : xports) {
+            if (!xport.isWritable()) {
+                continue;
+            }
+
+            double time = getExpectedTime(xport, bytes);
+
+            if (sched == null || time < schedTime
+                    || time == schedTime && xport.getOutboundQueueDepth() < sched.getOutboundQueueDepth()) {
+                sched = xport;
+                schedTime = time;
+            }
+        }
+
+        return sched;
+    }
+
+    private static double getExpectedTime(SessionTransport xport, long bytes) {
+        double load = xport.getOutboundQueueDepth() + 1;
+        long averageBytes = xport.getRequestBytes();
+
+        if (averageBytes > 0) {
+            load = Math.max(load, (double) (xport.getOutboundBytes() + bytes) / averageBytes);
+        }
+
+        return xport.getNetworkTime() * load;
+    }
+}
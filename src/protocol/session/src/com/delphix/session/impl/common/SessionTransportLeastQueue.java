@@ -25,6 +25,10 @@ public class SessionTransportLeastQueue extends SessionTransportQueue {
         SessionTransport sched = null;
 
         for (SessionTransport xport : xports) {
+            if (!xport.isWritable()) {
+                continue;
+            }
+
             if (sched == null) {
                 sched = xport;
             } else if (xport.getOutboundQueueDepth() < sched.getOutboundQueueDepth()) {
@@ -18,14 +18,18 @@
 
 package com.delphix.session.impl.common;
 
+import com.delphix.session.impl.frame.SessionFrameBatcher;
 import com.delphix.session.impl.frame.SessionFrameDecoder;
 import com.delphix.session.impl.frame.SessionFrameEncoder;
+import com.delphix.session.service.ServiceOptions;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 
+import static com.delphix.session.service.ServiceOption.WRITE_BATCH;
+
 public abstract class SessionTransportManager {
 
     /*
@@ -69,6 +73,19 @@ public abstract class SessionTransportManager {
         return new SessionFrameDecoder(this);
     }
 
+    /**
+     * Get the frame write batcher for the transport if write batching has been negotiated.
+     */
+    public SessionFrameBatcher getFrameBatcher(SessionTransport xport) {
+        ServiceOptions options = xport.getOptions();
+
+        if (!options.getOption(WRITE_BATCH)) {
+            return null;
+        }
+
+        return new SessionFrameBatcher(options);
+    }
+
     /**
      * Get the channel handler for the session login connect phase.
      */
@@ -18,40 +18,115 @@
 
 package com.delphix.session.impl.common;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * This class describes the base of the transport schedulers that keep the transports in a list. Command dispatch
+ * schedules a transport without the channel lock while transports are attached and detached from the session event
+ * context. The list is therefore kept in an array that is copied on write, with a cursor that rotates over it for
+ * the round-robin scheduling. Attach and detach are serialized with each other on the scheduler itself.
+ */
 public abstract class SessionTransportQueue implements SessionTransportScheduler {
 
-    protected final Queue<SessionTransport> xports = new LinkedList<SessionTransport>();
+    private static final SessionTransport[] EMPTY = new SessionTransport[0];
+
+    protected volatile SessionTransport[] xports = EMPTY;
+
+    private final AtomicInteger cursor = new AtomicInteger(); // Round-robin position
 
     @Override
-    public void attach(SessionTransport xport) {
-        xports.offer(xport);
+    public synchronized void attach(SessionTransport xport) {
+        SessionTransport[] copy = Arrays.copyOf(xports, xports.length + 1);
+
+        copy[xports.length] = xport;
+        xports = copy;
     }
 
     @Override
-    public void detach(SessionTransport xport) {
-        xports.remove(xport);
+    public synchronized void detach(SessionTransport xport) {
+        SessionTransport[] current = xports;
+
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == xport) {
+                SessionTransport[] copy = new SessionTransport[current.length - 1];
+
+                System.arraycopy(current, 0, copy, 0, i);
+                System.arraycopy(current, i + 1, copy, i, copy.length - i);
+
+                xports = copy;
+                return;
+            }
+        }
     }
 
     @Override
-    public void clear() {
-        xports.clear();
+    public synchronized void clear() {
+        xports = EMPTY;
     }
 
     @Override
     public boolean contains(SessionTransport xport) {
-        return xports.contains(xport);
+        for (SessionTransport current : xports) {
+            if (current == xport) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     @Override
     public boolean isEmpty() {
-        return xports.isEmpty();
+        return xports.length == 0;
+    }
+
+    @Override
+    public boolean isWritable() {
+        for (SessionTransport xport : xports) {
+            if (xport.isWritable()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isWritable(SessionExchange exchange) {
+        return isWritable();
     }
 
     @Override
     public SessionTransport schedule() {
-        return xports.peek();
+        SessionTransport[] current = xports;
+
+        if (current.length == 0) {
+            return null;
+        }
+
+        return current[index(cursor.get(), current.length)];
+    }
+
+    /**
+     * Rotate the transports in round-robin fashion until a writable one is found. Return null if none of the
+     * transports is writable.
+     */
+    protected SessionTransport rotate() {
+        SessionTransport[] current = xports;
+
+        for (int i = current.length; i > 0; i--) {
+            SessionTransport xport = current[index(cursor.getAndIncrement(), current.length)];
+
+            if (xport.isWritable()) {
+                return xport;
+            }
+        }
+
+        return null;
+    }
+
+    private static int index(int position, int length) {
+        return (position & Integer.MAX_VALUE) % length;
     }
 }
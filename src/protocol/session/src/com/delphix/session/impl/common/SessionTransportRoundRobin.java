@@ -22,14 +22,6 @@ public class SessionTransportRoundRobin extends SessionTransportQueue {
 
     @Override
     public SessionTransport schedule(SessionExchange exchange) {
-        SessionTransport xport;
-
-        xport = xports.poll();
-
-        if (xport != null) {
-            xports.offer(xport);
-        }
-
-        return xport;
+        return rotate();
     }
 }
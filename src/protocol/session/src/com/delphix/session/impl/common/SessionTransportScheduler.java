@@ -19,7 +19,8 @@
 package com.delphix.session.impl.common;
 
 /**
- * This interface describes a session transport scheduler.
+ * This interface describes a session transport scheduler. Transports may be scheduled and queried without the channel
+ * lock and concurrently with attach and detach.
  */
 public interface SessionTransportScheduler {
 
@@ -49,12 +50,22 @@ public interface SessionTransportScheduler {
     public boolean isEmpty();
 
     /**
-     * Schedule the exchange on a transport.
+     * Check if the scheduler has any writable transport.
+     */
+    public boolean isWritable();
+
+    /**
+     * Check if the scheduler has any writable transport for the exchange.
+     */
+    public boolean isWritable(SessionExchange exchange);
+
+    /**
+     * Schedule the exchange on a writable transport. Return null if none of the transports is writable.
      */
     public SessionTransport schedule(SessionExchange exchange);
 
     /**
-     * Schedule a transport.
+     * Schedule a transport regardless of whether it is writable.
      */
     public SessionTransport schedule();
 }
@@ -19,6 +19,7 @@
 package com.delphix.session.impl.frame;
 
 import com.delphix.session.service.ServiceRequest;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -124,4 +125,24 @@ public class CommandRequest extends OperateRequest {
 
         out.writeBoolean(idempotent);
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        slotID = buffer.readInt();
+        slotSN = SerialNumber.decode(buffer);
+
+        idempotent = buffer.readByte() != 0;
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeInt(slotID);
+        slotSN.encode(buffer);
+
+        buffer.writeByte(idempotent ? 1 : 0);
+    }
 }
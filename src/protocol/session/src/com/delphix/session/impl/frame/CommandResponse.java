@@ -20,6 +20,7 @@ package com.delphix.session.impl.frame;
 
 import com.delphix.session.service.ServiceException;
 import com.delphix.session.service.ServiceResponse;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -52,6 +53,8 @@ import java.io.ObjectOutput;
  */
 public class CommandResponse extends OperateResponse {
 
+    private static final CommandStatus[] statuses = CommandStatus.values();
+
     private int slotID;
     private SerialNumber slotSN;
 
@@ -111,7 +114,7 @@ public class CommandResponse extends OperateResponse {
         slotID = in.readInt();
         slotSN = SerialNumber.deserialize(in);
 
-        status = CommandStatus.values()[in.readByte()];
+        status = statuses[in.readByte()];
     }
 
     @Override
@@ -123,4 +126,24 @@ public class CommandResponse extends OperateResponse {
 
         out.writeByte(status.ordinal());
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        slotID = buffer.readInt();
+        slotSN = SerialNumber.decode(buffer);
+
+        status = statuses[buffer.readByte()];
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeInt(slotID);
+        slotSN.encode(buffer);
+
+        buffer.writeByte(status.ordinal());
+    }
 }
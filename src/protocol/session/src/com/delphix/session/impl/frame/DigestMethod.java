@@ -19,6 +19,8 @@
 package com.delphix.session.impl.frame;
 
 import com.delphix.session.impl.common.BadDigestException;
+import com.delphix.session.util.CRC32C;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 import java.nio.ByteBuffer;
 import java.util.zip.Adler32;
@@ -74,6 +76,28 @@ public enum DigestMethod {
         }
     },
 
+    DIGEST_CRC32C {
+        @Override
+        public int size() {
+            return Integer.SIZE / Byte.SIZE;
+        }
+
+        @Override
+        public Checksum create() {
+            return CRC32C.create();
+        }
+
+        @Override
+        public byte[] toByteArray(Checksum digest) {
+            return DigestMethod.toByteArray(size(), digest.getValue());
+        }
+
+        @Override
+        public long fromByteArray(byte[] array) {
+            return DigestMethod.fromByteArray(size(), array);
+        }
+    },
+
     DIGEST_ADLER32 {
         @Override
         public int size() {
@@ -142,10 +166,17 @@ public enum DigestMethod {
         return value;
     }
 
+    /*
+     * Size of the scratch buffer used to feed the checksum from a byte buffer that isn't backed by byte[]
+     */
+    private static final int SCRATCH_SIZE = 8192;
+
     /**
-     * Update the checksum with the byte buffer array.
+     * Update the checksum with the byte buffer array. None of the buffers is modified.
      */
     public static void updateDataDigest(ByteBuffer[] buffers, Checksum digest) {
+        byte[] scratch = null;
+
         for (ByteBuffer buffer : buffers) {
             /*
              * ChannelBuffer.toByteBuffers() uses ByteBuffer.wrap(byte[] array, int offset, int length) internally.
@@ -159,11 +190,32 @@ public enum DigestMethod {
             // Data copy may be avoided if the byte buffer is backed by byte[]
             if (buffer.hasArray()) {
                 digest.update(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+            } else if (CRC32C.isCRC32C(digest)) {
+                // CRC32C reads the direct buffer in place
+                CRC32C.update(digest, buffer);
             } else {
-                byte[] array = new byte[buffer.remaining()];
-                buffer.get(array);
-                digest.update(array, 0, array.length);
+                // Copy through a small scratch buffer instead of the whole buffer at once
+                if (scratch == null) {
+                    scratch = new byte[SCRATCH_SIZE];
+                }
+
+                while (buffer.hasRemaining()) {
+                    int length = Math.min(buffer.remaining(), scratch.length);
+                    buffer.get(scratch, 0, length);
+                    digest.update(scratch, 0, length);
+                }
             }
         }
     }
+
+    /**
+     * Update the checksum with a range of the channel buffer. The buffer indexes are not modified.
+     */
+    public static void updateDigest(ChannelBuffer buffer, int index, int length, Checksum digest) {
+        if (buffer.hasArray()) {
+            digest.update(buffer.array(), buffer.arrayOffset() + index, length);
+        } else {
+            updateDataDigest(buffer.toByteBuffers(index, length), digest);
+        }
+    }
 }
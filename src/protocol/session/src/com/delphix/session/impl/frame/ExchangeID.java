@@ -19,6 +19,7 @@
 package com.delphix.session.impl.frame;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 import java.io.Externalizable;
 import java.io.IOException;
@@ -99,4 +100,15 @@ public class ExchangeID implements Externalizable {
         exchangeID.readExternal(in);
         return exchangeID;
     }
+
+    /**
+     * Encode the exchange ID straight into the channel buffer in the same format as writeExternal.
+     */
+    public void encode(ChannelBuffer buffer) {
+        buffer.writeInt(xid);
+    }
+
+    public static ExchangeID decode(ChannelBuffer buffer) {
+        return new ExchangeID(buffer.readInt());
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -94,4 +96,18 @@ public class LogoutRequest extends OperateRequest {
 
         out.writeBoolean(logoutSession);
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        logoutSession = buffer.readByte() != 0;
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeByte(logoutSession ? 1 : 0);
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -31,6 +33,8 @@ import java.io.ObjectOutput;
  */
 public class LogoutResponse extends OperateResponse {
 
+    private static final LogoutStatus[] statuses = LogoutStatus.values();
+
     private LogoutStatus status;
 
     public LogoutResponse() {
@@ -54,7 +58,7 @@ public class LogoutResponse extends OperateResponse {
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         super.readExternal(in);
 
-        status = LogoutStatus.values()[in.readByte()];
+        status = statuses[in.readByte()];
     }
 
     @Override
@@ -63,4 +67,18 @@ public class LogoutResponse extends OperateResponse {
 
         out.writeByte(status.ordinal());
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        status = statuses[buffer.readByte()];
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeByte(status.ordinal());
+    }
 }
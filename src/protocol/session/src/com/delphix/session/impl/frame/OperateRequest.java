@@ -37,4 +37,9 @@ public abstract class OperateRequest extends RequestFrame {
     public void setForeChannel(boolean foreChannel) {
         this.foreChannel = foreChannel;
     }
+
+    @Override
+    public boolean isFixedLayout() {
+        return true;
+    }
 }
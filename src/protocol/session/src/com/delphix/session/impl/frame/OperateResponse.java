@@ -37,4 +37,9 @@ public abstract class OperateResponse extends ResponseFrame {
     public void setForeChannel(boolean foreChannel) {
         this.foreChannel = foreChannel;
     }
+
+    @Override
+    public boolean isFixedLayout() {
+        return true;
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -64,4 +66,18 @@ public abstract class RequestFrame extends SessionFrame {
 
         out.writeInt(maxSlotIDInUse);
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        maxSlotIDInUse = buffer.readInt();
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeInt(maxSlotIDInUse);
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -81,4 +83,20 @@ public abstract class ResponseFrame extends SessionFrame {
         out.writeInt(currentMaxSlotID);
         out.writeInt(targetMaxSlotID);
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        currentMaxSlotID = buffer.readInt();
+        targetMaxSlotID = buffer.readInt();
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeInt(currentMaxSlotID);
+        buffer.writeInt(targetMaxSlotID);
+    }
 }
@@ -19,6 +19,7 @@
 package com.delphix.session.impl.frame;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 import java.io.Externalizable;
 import java.io.IOException;
@@ -233,4 +234,39 @@ public class SerialNumber implements Comparable<SerialNumber>, Externalizable {
         sn.readExternal(in);
         return sn;
     }
+
+    /**
+     * Encode the serial number straight into the channel buffer in the same format as writeExternal.
+     */
+    public void encode(ChannelBuffer buffer) {
+        buffer.writeByte(serialBits);
+
+        if (serialBits < Byte.SIZE) {
+            buffer.writeByte((int) serialNumber);
+        } else if (serialBits < Short.SIZE) {
+            buffer.writeShort((int) serialNumber);
+        } else if (serialBits < Integer.SIZE) {
+            buffer.writeInt((int) serialNumber);
+        } else {
+            buffer.writeLong(serialNumber);
+        }
+    }
+
+    public static SerialNumber decode(ChannelBuffer buffer) {
+        SerialNumber sn = new SerialNumber();
+
+        sn.serialBits = buffer.readUnsignedByte();
+
+        if (sn.serialBits < Byte.SIZE) {
+            sn.serialNumber = buffer.readByte();
+        } else if (sn.serialBits < Short.SIZE) {
+            sn.serialNumber = buffer.readShort();
+        } else if (sn.serialBits < Integer.SIZE) {
+            sn.serialNumber = buffer.readInt();
+        } else {
+            sn.serialNumber = buffer.readLong();
+        }
+
+        return sn;
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -110,6 +112,10 @@ import java.io.ObjectOutput;
  *
  * A request carries the commandSN of the channel it is associate with and the expectedCommandSN of the opposite
  * channel in the same session. Vice versa for response.
+ *
+ * The frames exchanged in the operate phase, i.e., command, task management, ping, and logout, have a fixed layout
+ * made up of primitive fields only. They are encoded straight into the channel buffer with encode and decode instead
+ * of going through the object streams. The wire format is the same either way.
  */
 public abstract class SessionFrame implements Externalizable {
 
@@ -192,20 +198,41 @@ public abstract class SessionFrame implements Externalizable {
         expectedCommandSN.writeExternal(out);
     }
 
-    public static SessionFrame deserialize(ObjectInput in) throws IOException, ClassNotFoundException {
-        SessionFrameType type = SessionFrameType.values()[in.readByte()];
+    /**
+     * Check if the session frame has a fixed layout that may be encoded straight into the channel buffer.
+     */
+    public boolean isFixedLayout() {
+        return false;
+    }
+
+    /**
+     * Encode the session frame straight into the channel buffer in the same format as writeExternal. It is only
+     * supported by frames with a fixed layout.
+     */
+    public void encode(ChannelBuffer buffer) {
+        SessionFrameType type = SessionFrameType.getType(this.getClass());
+        buffer.writeByte(type.ordinal());
 
-        // newInstance uses reflection but not class loading
-        SessionFrame frame;
+        exchangeID.encode(buffer);
 
-        try {
-            frame = type.getObjectClass().newInstance();
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
+        commandSN.encode(buffer);
+        expectedCommandSN.encode(buffer);
+    }
 
-        frame.readExternal(in);
+    /**
+     * Decode the session frame from the channel buffer following the frame type. It is only supported by frames with
+     * a fixed layout.
+     */
+    public void decode(ChannelBuffer buffer) {
+        exchangeID = ExchangeID.decode(buffer);
 
+        commandSN = SerialNumber.decode(buffer);
+        expectedCommandSN = SerialNumber.decode(buffer);
+    }
+
+    public static SessionFrame deserialize(ObjectInput in) throws IOException, ClassNotFoundException {
+        SessionFrame frame = SessionFrameType.getType(in.readUnsignedByte()).create();
+        frame.readExternal(in);
         return frame;
     }
 }
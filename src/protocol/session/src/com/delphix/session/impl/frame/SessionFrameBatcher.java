@@ -0,0 +1,158 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.frame;
+
+import com.delphix.session.service.ServiceOptions;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.delphix.session.service.ServiceOption.WRITE_BATCH_BYTES;
+import static com.delphix.session.service.ServiceOption.WRITE_BATCH_FRAMES;
+import static org.jboss.netty.buffer.ChannelBuffers.wrappedBuffer;
+
+/**
+ * This class describes the session frame write batcher. It sits right below the frame encoder in the channel pipeline
+ * when write batching has been negotiated for the transport.
+ *
+ * Without batching, every frame sent over the transport is written to the channel on its own, which costs at least
+ * one write event and one system call per frame. That is a significant overhead for small frames, such as those from
+ * ping or light weight service requests, especially when the queue depth is high. With batching, the encoded frames
+ * are held back until the end of the current turn of the channel IO thread, at which point all of them are combined
+ * into a single composite buffer and written with one gathering write. The batch is flushed earlier if either the
+ * byte budget or the frame budget has been reached.
+ *
+ * The write future of each individual frame is completed when the batch it belongs to has been written. Any other
+ * downstream event, such as channel close, causes the pending batch to be flushed first to preserve ordering.
+ */
+public class SessionFrameBatcher extends SimpleChannelDownstreamHandler {
+
+    private final int maxBytes; // Maximum number of bytes per batch
+    private final int maxFrames; // Maximum number of frames per batch
+
+    private final List<MessageEvent> pending = new ArrayList<MessageEvent>(); // Pending writes
+    private int pendingBytes; // Number of bytes pending
+
+    private boolean scheduled; // Flush scheduled in the IO thread
+
+    public SessionFrameBatcher(ServiceOptions options) {
+        this(options.getOption(WRITE_BATCH_BYTES), options.getOption(WRITE_BATCH_FRAMES));
+    }
+
+    public SessionFrameBatcher(int maxBytes, int maxFrames) {
+        this.maxBytes = maxBytes;
+        this.maxFrames = maxFrames;
+    }
+
+    @Override
+    public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+        if (!(e instanceof MessageEvent)) {
+            synchronized (this) {
+                flush(ctx);
+            }
+        }
+
+        super.handleDownstream(ctx, e);
+    }
+
+    @Override
+    public void writeRequested(final ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+
+        synchronized (this) {
+            pending.add(e);
+            pendingBytes += buffer.readableBytes();
+
+            // Flush the batch right away if it is over budget
+            if (pending.size() >= maxFrames || pendingBytes >= maxBytes) {
+                flush(ctx);
+                return;
+            }
+
+            if (scheduled) {
+                return;
+            }
+
+            scheduled = true;
+        }
+
+        // Flush the batch at the end of the current turn of the channel IO thread
+        ctx.getPipeline().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (SessionFrameBatcher.this) {
+                    scheduled = false;
+                    flush(ctx);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the pending frames downstream with a single gathering write. The caller must hold the batcher lock which
+     * ensures the batches are written in the same order as they are formed.
+     */
+    private void flush(ChannelHandlerContext ctx) {
+        int size = pending.size();
+
+        if (size == 0) {
+            return;
+        }
+
+        if (size == 1) {
+            ctx.sendDownstream(pending.get(0));
+        } else {
+            ChannelBuffer[] buffers = new ChannelBuffer[size];
+            final ChannelFuture[] futures = new ChannelFuture[size];
+
+            for (int i = 0; i < size; i++) {
+                MessageEvent event = pending.get(i);
+
+                buffers[i] = (ChannelBuffer) event.getMessage();
+                futures[i] = event.getFuture();
+            }
+
+            ChannelFuture future = Channels.future(ctx.getChannel());
+
+            future.addListener(new ChannelFutureListener() {
+
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    for (ChannelFuture f : futures) {
+                        if (future.isSuccess()) {
+                            f.setSuccess();
+                        } else if (future.isCancelled()) {
+                            f.cancel();
+                        } else {
+                            f.setFailure(future.getCause());
+                        }
+                    }
+                }
+            });
+
+            Channels.write(ctx, future, wrappedBuffer(true, buffers));
+        }
+
+        pending.clear();
+        pendingBytes = 0;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.frame;
+
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.DynamicChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+/**
+ * This class describes a reusable frame encoding buffer. It is a dynamic buffer that belongs to a buffer pool. The
+ * buffer doubles as the listener for the write future of the frame it carries so that it can be returned to the pool
+ * as soon as the frame has been written without allocating anything extra per frame.
+ */
+public class SessionFrameBuffer extends DynamicChannelBuffer implements ChannelFutureListener {
+
+    private final SessionFrameBufferPool pool;
+
+    public SessionFrameBuffer(SessionFrameBufferPool pool, int estimate, ChannelBufferFactory factory) {
+        super(factory.getDefaultOrder(), estimate, factory);
+
+        this.pool = pool;
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture future) {
+        pool.release(this);
+    }
+}
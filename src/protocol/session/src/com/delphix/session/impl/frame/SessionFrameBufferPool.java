@@ -0,0 +1,94 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.frame;
+
+import org.jboss.netty.buffer.ChannelBufferFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * This class describes the per transport pool of frame encoding buffers.
+ *
+ * A buffer is acquired from the pool when a frame is encoded and released back once the write of the frame has been
+ * completed, successfully or not, at which point the transport no longer holds any reference to it. The pool is
+ * bounded both in the number of buffers and in the capacity of each buffer kept, so that a burst of large frames
+ * does not pin down memory after it is over. Buffers are handed out in LIFO order to favor those that are still
+ * cache hot. The content of a released buffer is left intact until it is acquired again, since a codec embedder
+ * completes the write future before the encoded frame has been consumed.
+ */
+public class SessionFrameBufferPool {
+
+    private static final int MAX_BUFFERS = 16; // Maximum number of buffers pooled
+    private static final int MAX_CAPACITY = 256 * 1024; // Maximum capacity of a pooled buffer
+
+    private final Deque<SessionFrameBuffer> buffers = new ArrayDeque<SessionFrameBuffer>(MAX_BUFFERS);
+
+    public SessionFrameBufferPool() {
+
+    }
+
+    /**
+     * Acquire a buffer with at least the given capacity from the pool. Return null if there is none available.
+     */
+    public synchronized SessionFrameBuffer acquire(int size) {
+        Iterator<SessionFrameBuffer> iter = buffers.iterator();
+
+        while (iter.hasNext()) {
+            SessionFrameBuffer buffer = iter.next();
+
+            if (buffer.capacity() >= size) {
+                iter.remove();
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Acquire a buffer with at least the given capacity from the pool or allocate a new one if there is none.
+     */
+    public SessionFrameBuffer allocate(int size, ChannelBufferFactory factory) {
+        SessionFrameBuffer buffer = acquire(size);
+
+        if (buffer == null) {
+            buffer = new SessionFrameBuffer(this, size, factory);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Release the buffer back to the pool. The buffer is dropped if the pool is full or it has grown too large.
+     */
+    public synchronized void release(SessionFrameBuffer buffer) {
+        if (buffers.size() >= MAX_BUFFERS || buffer.capacity() > MAX_CAPACITY) {
+            return;
+        }
+
+        buffers.push(buffer);
+    }
+
+    public synchronized int size() {
+        return buffers.size();
+    }
+}
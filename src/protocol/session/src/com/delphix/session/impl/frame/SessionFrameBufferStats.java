@@ -0,0 +1,91 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.frame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class describes the frame encoding buffer stats for a nexus.
+ */
+public class SessionFrameBufferStats {
+
+    private static final String TOTAL_ENCODED = "codec.sum.totalEncoded";
+    private static final String BUFFER_HITS = "codec.sum.bufferHits";
+    private static final String BUFFER_MISSES = "codec.sum.bufferMisses";
+    private static final String BUFFER_RESIZES = "codec.sum.bufferResizes";
+
+    private final AtomicLong totalEncoded = new AtomicLong(); // Total number of frames encoded
+    private final AtomicLong bufferHits = new AtomicLong(); // Total number of buffers reused from the pool
+    private final AtomicLong bufferMisses = new AtomicLong(); // Total number of buffers newly allocated
+    private final AtomicLong bufferResizes = new AtomicLong(); // Total number of buffers expanded during encoding
+
+    public SessionFrameBufferStats() {
+
+    }
+
+    public void update(boolean hit, boolean resized) {
+        totalEncoded.incrementAndGet();
+
+        if (hit) {
+            bufferHits.incrementAndGet();
+        } else {
+            bufferMisses.incrementAndGet();
+        }
+
+        if (resized) {
+            bufferResizes.incrementAndGet();
+        }
+    }
+
+    public void resetStats() {
+        totalEncoded.set(0);
+        bufferHits.set(0);
+        bufferMisses.set(0);
+        bufferResizes.set(0);
+    }
+
+    public long getTotalEncoded() {
+        return totalEncoded.get();
+    }
+
+    public long getBufferHits() {
+        return bufferHits.get();
+    }
+
+    public long getBufferMisses() {
+        return bufferMisses.get();
+    }
+
+    public long getBufferResizes() {
+        return bufferResizes.get();
+    }
+
+    public Map<String, ?> getStats() {
+        Map<String, Object> stats = new HashMap<String, Object>();
+
+        stats.put(TOTAL_ENCODED, getTotalEncoded());
+        stats.put(BUFFER_HITS, getBufferHits());
+        stats.put(BUFFER_MISSES, getBufferMisses());
+        stats.put(BUFFER_RESIZES, getBufferResizes());
+
+        return stats;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.frame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class describes the adaptive compression advisor for the service payload with bulk data.
+ *
+ * Bulk data that is already compressed, such as a compressed backup stream, gains nothing from payload compression
+ * but still costs the CPU cycles on both sides. The advisor samples the compression ratio, i.e., compressed size over
+ * uncompressed size, separately for each type of service payload in the nexus. Once the average ratio for a type has
+ * stayed above the threshold, payloads of that type are stored without compression. Every so often a payload is
+ * compressed again as a probe, and compression is resumed if the probe shows the data has become compressible.
+ *
+ * The payload stored without compression is marked in the payload flags of the frame header so that the decoder knows
+ * to skip decompression. Adaptive compression is only enabled if both sides have agreed to it during negotiation.
+ */
+public class SessionFrameCompressAdvisor {
+
+    private static final String PAYLOADS_COMPRESSED = "codec.sum.payloadsCompressed";
+    private static final String PAYLOADS_STORED = "codec.sum.payloadsStored";
+    private static final String COMPRESS_PROBES = "codec.sum.compressProbes";
+
+    private static final double RATIO_THRESHOLD = 0.9; // Compression ratio above which compression is skipped
+    private static final int MIN_SAMPLES = 4; // Minimum number of samples before compression is skipped
+    private static final int PROBE_INTERVAL = 64; // Number of payloads stored between probes
+
+    private final ConcurrentMap<Class<?>, Sample> samples = new ConcurrentHashMap<Class<?>, Sample>();
+
+    private final AtomicLong payloadsCompressed = new AtomicLong(); // Total number of payloads compressed
+    private final AtomicLong payloadsStored = new AtomicLong(); // Total number of payloads stored
+    private final AtomicLong compressProbes = new AtomicLong(); // Total number of probes
+
+    public SessionFrameCompressAdvisor() {
+
+    }
+
+    /**
+     * Check if the payload of the given type should be compressed.
+     */
+    public boolean shouldCompress(Class<?> type) {
+        Sample sample = samples.get(type);
+        boolean compress = true;
+
+        if (sample != null && sample.isSkipping()) {
+            compress = sample.probe();
+
+            if (compress) {
+                compressProbes.incrementAndGet();
+            }
+        }
+
+        if (compress) {
+            payloadsCompressed.incrementAndGet();
+        } else {
+            payloadsStored.incrementAndGet();
+        }
+
+        return compress;
+    }
+
+    /**
+     * Record the uncompressed and compressed sizes of the payload of the given type.
+     */
+    public void record(Class<?> type, int size, int compressed) {
+        if (size <= 0) {
+            return;
+        }
+
+        Sample sample = samples.get(type);
+
+        if (sample == null) {
+            sample = new Sample();
+
+            Sample existing = samples.putIfAbsent(type, sample);
+
+            if (existing != null) {
+                sample = existing;
+            }
+        }
+
+        sample.update((double) compressed / size);
+    }
+
+    public void resetStats() {
+        payloadsCompressed.set(0);
+        payloadsStored.set(0);
+        compressProbes.set(0);
+    }
+
+    public long getPayloadsCompressed() {
+        return payloadsCompressed.get();
+    }
+
+    public long getPayloadsStored() {
+        return payloadsStored.get();
+    }
+
+    public long getCompressProbes() {
+        return compressProbes.get();
+    }
+
+    public Map<String, ?> getStats() {
+        Map<String, Object> stats = new HashMap<String, Object>();
+
+        stats.put(PAYLOADS_COMPRESSED, getPayloadsCompressed());
+        stats.put(PAYLOADS_STORED, getPayloadsStored());
+        stats.put(COMPRESS_PROBES, getCompressProbes());
+
+        return stats;
+    }
+
+    /**
+     * The sample is updated without synchronization similar to the size predictor. A race could at worst cause an
+     * extra probe or a skewed average which is corrected over time anyway.
+     */
+    private static class Sample {
+
+        private volatile boolean skipping; // Compression skipped
+        private int countdown; // Payloads to be stored before the next probe
+
+        private double ratio; // Moving average of the compression ratio
+        private int count; // Number of samples in the average
+
+        public boolean isSkipping() {
+            return skipping;
+        }
+
+        public boolean probe() {
+            if (--countdown > 0) {
+                return false;
+            }
+
+            countdown = PROBE_INTERVAL;
+            return true;
+        }
+
+        public void update(double actual) {
+            if (skipping) {
+                // Resume compression and start over if the probe shows the data has become compressible
+                if (actual < RATIO_THRESHOLD) {
+                    ratio = actual;
+                    count = 1;
+                    skipping = false;
+                }
+
+                return;
+            }
+
+            if (count == 0) {
+                ratio = actual;
+            } else {
+                ratio += (actual - ratio) / 4;
+            }
+
+            if (++count >= MIN_SAMPLES && ratio > RATIO_THRESHOLD) {
+                countdown = PROBE_INTERVAL;
+                skipping = true;
+            }
+        }
+    }
+}
@@ -21,6 +21,9 @@ package com.delphix.session.impl.frame;
 import com.delphix.appliance.logger.Logger;
 import com.delphix.session.impl.common.*;
 import com.delphix.session.service.*;
+import com.delphix.session.util.ByteBufferUtil;
+import com.delphix.session.util.CompressMethod;
+import com.delphix.session.util.ExternalClassCache;
 import com.delphix.session.util.ExternalObjectInput;
 import com.delphix.session.util.ProtocolVersion;
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -38,6 +41,7 @@ import java.util.zip.CheckedInputStream;
 import java.util.zip.Checksum;
 
 import static com.delphix.session.impl.frame.SessionFrame.*;
+import static com.delphix.session.impl.frame.SessionFrameOptions.PAYLOAD_STORED;
 import static com.delphix.session.service.ServiceOption.*;
 import static org.jboss.netty.buffer.ChannelBuffers.hexDump;
 
@@ -47,21 +51,38 @@ import static org.jboss.netty.buffer.ChannelBuffers.hexDump;
  * For detailed description of the wire format, please refer to the SessionFrameEncoder class.
  *
  * When payload compression is disabled and the service payload includes bulk data, the bulk data is extracted from
- * the channel buffer into ByteBuffer's without additional data copy.
+ * the channel buffer into ByteBuffer's without additional data copy. Each ByteBuffer is a read-only slice of the
+ * cumulation buffer that covers exactly the bulk data, so that the service can neither modify the received data nor
+ * reach into the neighboring frames. Netty does not recycle the buffers it reads data into, nor does the frame decoder
+ * ever modify the cumulation buffer in place. Hence, the slices remain valid for as long as the service holds on to
+ * them and it is the garbage collector that eventually reclaims the memory.
+ *
+ * To keep bulk data copy free all the way from the socket, the cumulation buffer is never compacted with copy. The
+ * remainder of a partially decoded read is kept as a slice and the cumulation may grow into a composite buffer with
+ * as many components as it takes to hold the largest frame allowed.
  *
  * Whenever possible, we try to apply data filtering, such as decode, digest, and decompress, in one pass to avoid
  * multiple traversals of the same data. This is done via the chaining of filter streams.
  *
  * The FrameDecoder class from which this class extends is stateful and has member variables such as the cumulation
  * buffer for operation. As such, this class must not be sharable as it is unsafe to share the state. Therefore, we
- * have one instance of the decoder per channel, unlike the encoder which is shared among all channels.
+ * have one instance of the decoder per channel, as is the case for the encoder. The class cache of the compact object
+ * encoding is kept with the decoder for the same reason and mirrors the one kept with the encoder on the other end.
  */
 public class SessionFrameDecoder extends FrameDecoder {
 
     private static final Logger logger = Logger.getLogger(SessionFrameDecoder.class);
 
+    /*
+     * Maximum number of components in the composite cumulation buffer before it is consolidated with copy. It allows
+     * the largest frame to be received in reads of as small as 1KB each.
+     */
+    private static final int MAX_CUMULATION_COMPONENTS = 16384;
+
     private final SessionTransportManager manager;
 
+    private final ExternalClassCache classCache = new ExternalClassCache(); // Classes received over the transport
+
     private SessionNexus nexus;
 
     private SessionFrameOptions options;
@@ -70,6 +91,10 @@ public class SessionFrameDecoder extends FrameDecoder {
         this.manager = manager;
 
         options = new SessionFrameOptions();
+
+        // Avoid data copy in the cumulation buffer management
+        setMaxCumulationBufferCapacity(Integer.MAX_VALUE);
+        setMaxCumulationBufferComponents(MAX_CUMULATION_COMPONENTS);
     }
 
     public SessionFrameOptions getOptions() {
@@ -89,33 +114,26 @@ public class SessionFrameDecoder extends FrameDecoder {
 
         try {
             // Extract the frame from the input
-            ChannelBuffer[] buffers = extractFrame(ctx, buffer);
+            header = extractFrame(ctx, buffer);
 
-            if (buffers == null) {
+            if (header == null) {
                 return null;
             }
 
-            header = buffers[0];
-            body = buffers[1];
+            // The frame header is accessed by offset in place and the body is sliced out of the frame
+            int hdrLength = options.getHeaderLength();
+            body = header.slice(hdrLength, header.capacity() - hdrLength);
         } catch (Exception e) {
             logger.errorf("failed to extract frame: %s\n%s", buffer, hexDump(buffer));
             throw e;
         }
 
-        InputStream is = new ChannelBufferInputStream(body);
-
         DigestMethod method = options.getFrameDigest();
         Checksum digest = method.create();
 
-        if (digest != null) {
-            is = new CheckedInputStream(is, digest);
-        }
-
-        ObjectInput oin = new ExternalObjectInput(is);
-
         try {
             // Decode the frame body
-            frame = SessionFrame.deserialize(oin);
+            frame = decodeFrame(body, digest);
 
             // Verify frame digest
             if (digest != null) {
@@ -131,8 +149,6 @@ public class SessionFrameDecoder extends FrameDecoder {
         } catch (Exception e) {
             logger.errorf("failed to decode frame: %s\n%s", body, hexDump(body));
             throw e;
-        } finally {
-            oin.close();
         }
 
         return frame;
@@ -146,11 +162,13 @@ public class SessionFrameDecoder extends FrameDecoder {
         // Verify frame length
         verifyLength(header.getUnsignedMedium(LENGTH_OFFSET), true);
 
+        CompressMethod compress = getPayloadCompress(header);
+
         InputStream bis = new ChannelBufferInputStream(body);
         InputStream is;
 
         try {
-            is = options.getPayloadCompress().createInputStream(bis);
+            is = compress.createInputStream(bis, body.readableBytes(), options.getCompressParallelism());
         } finally {
             bis.close();
         }
@@ -162,11 +180,11 @@ public class SessionFrameDecoder extends FrameDecoder {
             is = new CheckedInputStream(is, digest);
         }
 
-        ObjectInput oin = new ExternalObjectInput(is);
+        ExternalObjectInput oin = createObjectInput(is);
 
         try {
             if (codec != null) {
-                request = codec.decodeRequest(is);
+                request = codec.decodeRequest(oin);
             } else {
                 request = (ServiceRequest) oin.readObject();
             }
@@ -174,7 +192,7 @@ public class SessionFrameDecoder extends FrameDecoder {
             int length = oin.readInt();
 
             if (length > 0) {
-                ByteBuffer[] buffers = decodeData(is, digest, body, length);
+                ByteBuffer[] buffers = decodeData(is, digest, body, length, compress);
                 request.setData(buffers);
             }
 
@@ -202,11 +220,13 @@ public class SessionFrameDecoder extends FrameDecoder {
         ServiceResponse response;
         ServiceException exception;
 
+        CompressMethod compress = getPayloadCompress(header);
+
         InputStream bis = new ChannelBufferInputStream(body);
         InputStream is;
 
         try {
-            is = options.getPayloadCompress().createInputStream(bis);
+            is = compress.createInputStream(bis, body.readableBytes(), options.getCompressParallelism());
         } finally {
             bis.close();
         }
@@ -218,12 +238,12 @@ public class SessionFrameDecoder extends FrameDecoder {
             is = new CheckedInputStream(is, digest);
         }
 
-        ObjectInput oin = new ExternalObjectInput(is);
+        ExternalObjectInput oin = createObjectInput(is);
 
         try {
             if (oin.readBoolean()) {
                 if (codec != null) {
-                    exception = codec.decodeException(is);
+                    exception = codec.decodeException(oin);
                 } else {
                     exception = (ServiceException) oin.readObject();
                 }
@@ -233,7 +253,7 @@ public class SessionFrameDecoder extends FrameDecoder {
 
             if (oin.readBoolean()) {
                 if (codec != null) {
-                    response = codec.decodeResponse(is);
+                    response = codec.decodeResponse(oin);
                 } else {
                     response = (ServiceResponse) oin.readObject();
                 }
@@ -241,7 +261,7 @@ public class SessionFrameDecoder extends FrameDecoder {
                 int length = oin.readInt();
 
                 if (length > 0) {
-                    ByteBuffer[] buffers = decodeData(is, digest, body, length);
+                    ByteBuffer[] buffers = decodeData(is, digest, body, length, compress);
                     response.setData(buffers);
                 }
 
@@ -256,7 +276,57 @@ public class SessionFrameDecoder extends FrameDecoder {
         }
     }
 
-    private ChannelBuffer[] extractFrame(ChannelHandlerContext ctx, ChannelBuffer buffer) {
+    /**
+     * Decode the session frame from the frame body with the optional frame digest. The frames with a fixed layout are
+     * decoded straight from the channel buffer while the rest go through the object stream.
+     */
+    private SessionFrame decodeFrame(ChannelBuffer body, Checksum digest) throws IOException, ClassNotFoundException {
+        int start = body.readerIndex();
+        SessionFrame frame = SessionFrameType.getType(body.getUnsignedByte(start)).create();
+
+        if (frame.isFixedLayout()) {
+            body.skipBytes(1);
+            frame.decode(body);
+
+            if (digest != null) {
+                DigestMethod.updateDigest(body, start, body.readerIndex() - start, digest);
+            }
+
+            return frame;
+        }
+
+        InputStream is = new ChannelBufferInputStream(body);
+
+        if (digest != null) {
+            is = new CheckedInputStream(is, digest);
+        }
+
+        ObjectInput oin = new ExternalObjectInput(is);
+
+        try {
+            return SessionFrame.deserialize(oin);
+        } finally {
+            oin.close();
+        }
+    }
+
+    /**
+     * Create the object input for the service payload. The service codec is handed the object input rather than the
+     * underlying stream such that objects read by the codec pick up the compact object encoding if negotiated.
+     */
+    private ExternalObjectInput createObjectInput(InputStream is) {
+        if (options.isCompactObjects()) {
+            return new ExternalObjectInput(is, nexus.getClassTable(), classCache);
+        }
+
+        return new ExternalObjectInput(is);
+    }
+
+    /**
+     * Extract the next frame from the input if it has been fully received. Return the frame sliced out of the input,
+     * or null if more input is needed.
+     */
+    private ChannelBuffer extractFrame(ChannelHandlerContext ctx, ChannelBuffer buffer) {
         int available = buffer.readableBytes();
 
         // Wait til the frame header is received
@@ -296,10 +366,12 @@ public class SessionFrameDecoder extends FrameDecoder {
             throw new ProtocolViolationException("invalid frame type " + type);
         }
 
-        ProtocolVersion version = new ProtocolVersion(slice.getUnsignedByte(VERSION_OFFSET),
-                slice.getUnsignedByte(VERSION_OFFSET + 1), slice.getUnsignedByte(VERSION_OFFSET + 2));
+        int major = slice.getUnsignedByte(VERSION_OFFSET);
+        int minor = slice.getUnsignedByte(VERSION_OFFSET + 1);
+        int revision = slice.getUnsignedByte(VERSION_OFFSET + 2);
 
-        if (!version.equals(active)) {
+        if (major != active.getMajor() || minor != active.getMinor() || revision != active.getRevision()) {
+            ProtocolVersion version = new ProtocolVersion(major, minor, revision);
             throw new ProtocolViolationException("invalid version " + version + " expected " + active);
         }
 
@@ -331,19 +403,13 @@ public class SessionFrameDecoder extends FrameDecoder {
         Checksum digest = method.create();
 
         if (digest != null) {
-            byte[] header = new byte[options.getHeaderDigestOffset()];
-
-            slice.getBytes(0, header);
-            digest.update(header, 0, header.length);
+            DigestMethod.updateDigest(slice, 0, options.getHeaderDigestOffset(), digest);
 
             verifyDigest(method, slice, options.getHeaderDigestOffset(), digest);
         }
 
-        // Slice the frame header and body out of the slice buffer
-        ChannelBuffer[] result = new ChannelBuffer[2];
-
-        result[0] = slice.slice(0, hdrLength);
-        result[1] = slice.slice(hdrLength, length - hdrLength);
+        // Slice the frame out of the slice buffer
+        ChannelBuffer result = slice.slice(0, length);
 
         // Skip the current frame from the buffer passed in for the next round
         buffer.skipBytes(length);
@@ -398,11 +464,11 @@ public class SessionFrameDecoder extends FrameDecoder {
         }
     }
 
-    private ByteBuffer[] decodeData(InputStream is, Checksum digest, ChannelBuffer body, int length)
-            throws IOException {
+    private ByteBuffer[] decodeData(InputStream is, Checksum digest, ChannelBuffer body, int length,
+            CompressMethod compress) throws IOException {
         ByteBuffer[] buffers;
 
-        if (options.isPayloadCompressed()) {
+        if (compress != CompressMethod.COMPRESS_NONE) {
             byte[] data = new byte[length];
             int offset = 0;
 
@@ -425,11 +491,30 @@ public class SessionFrameDecoder extends FrameDecoder {
             if (options.isDigestData()) {
                 DigestMethod.updateDataDigest(buffers, digest);
             }
+
+            // Hand out read-only slices of the cumulation buffer without copy
+            buffers = ByteBufferUtil.readOnlySlice(buffers);
         }
 
         return buffers;
     }
 
+    /**
+     * Get the compress method for the service payload. With adaptive compression, the payload may have been stored
+     * without compression as indicated by the payload flags in the frame header.
+     */
+    private CompressMethod getPayloadCompress(ChannelBuffer header) {
+        if (options.isCompressAdaptive()) {
+            int flags = header.getInt(options.getPayloadFlagsOffset());
+
+            if ((flags & PAYLOAD_STORED) != 0) {
+                return CompressMethod.COMPRESS_NONE;
+            }
+        }
+
+        return options.getPayloadCompress();
+    }
+
     private SessionNexus getNexus(ChannelHandlerContext ctx) {
         if (nexus == null) {
             SessionTransport xport = manager.locate(ctx.getChannel());
@@ -26,24 +26,31 @@ import com.delphix.session.service.ServiceException;
 import com.delphix.session.service.ServiceRequest;
 import com.delphix.session.service.ServiceResponse;
 import com.delphix.session.util.CompressMethod;
+import com.delphix.session.util.ExternalClassCache;
 import com.delphix.session.util.ExternalObjectOutput;
 import com.delphix.session.util.ProtocolVersion;
 import org.jboss.netty.buffer.ByteBufferBackedChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
 import java.io.IOException;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Checksum;
 
 import static com.delphix.session.impl.frame.SessionFrame.*;
+import static com.delphix.session.impl.frame.SessionFrameOptions.PAYLOAD_STORED;
 import static org.jboss.netty.buffer.ChannelBuffers.*;
+import static org.jboss.netty.channel.Channels.write;
 
 /**
  * This class describes the session frame encoder. In addition to basic frame encoding, it supports a variety of
@@ -95,14 +102,22 @@ import static org.jboss.netty.buffer.ChannelBuffers.*;
  * Payload compression is applied over the entire service payload. When payload compression is enabled, if payload
  * digest is also enabled, it covers the entire payload as well regardless of the bulk data digest setting.
  *
+ * With adaptive compression, the service payload with bulk data found to be incompressible is encoded the same way as
+ * if payload compression were disabled, and the payload flags in the frame header is marked as stored.
+ *
  * Buffer Management
  *
  * We try to optimize buffer management and eliminate unnecessary data copy in the codec implementation. For the
  * encoder, we start off with a dynamic data buffer with an estimated initial size which is used to encode the frame
  * header, frame body, service payload except any bulk data. The buffer is dynamically expanded if there isn't enough
- * space for the encoded data. Data copy is incurred only during buffer expansion. With a proper initial size estimate,
- * we could avoid this data copy with reasonable memory overhead. In the future, we could "train" the encoder to learn
- * the optimal size over time.
+ * space for the encoded data. Data copy is incurred only during buffer expansion. To avoid this data copy with
+ * reasonable memory overhead, the initial size is predicted by the nexus wide SessionFrameSizePredictor, which learns
+ * the encoded size of the frame header and the service payload separately for each type of frame and payload.
+ *
+ * The encoding buffers are recycled through a per transport SessionFrameBufferPool. A buffer is returned to the pool
+ * once the write of the frame it carries has been completed, such that the common case encodes without resizing or
+ * generating garbage for the frame header. The buffer pool hit/miss and buffer resize counters are reported as part
+ * of the nexus stats.
  *
  * While calculating the checksum for the bulk data included in the service payload, we only need to make extra data
  * copy if the ByteBuffer is not backed up a byte array, since the checksum implementation doesn't take anything but
@@ -119,6 +134,15 @@ import static org.jboss.netty.buffer.ChannelBuffers.*;
  *
  * Whenever possible, we try to apply data filtering, such as encode, digest, and compress, in one pass to avoid
  * multiple traversals of the same data. This is done via the chaining of filter streams.
+ * The session frames with a fixed layout, which are those exchanged in the operate phase, are encoded straight into
+ * the channel buffer instead, and the frame digest is calculated over the encoded bytes afterwards.
+ *
+ * Object Encoding
+ *
+ * With the compact object encoding, the classes not found in the nexus class table are cached per transport on both
+ * ends (see ExternalClassCache). The classes defined by the service payload of a frame are committed to the cache
+ * once the frame has been written, after which the other frames refer to them by handle. The cache goes away along
+ * with the encoder when the transport is closed, and a recovered transport starts over with a new one.
  */
 public class SessionFrameEncoder extends OneToOneEncoder {
 
@@ -127,6 +151,9 @@ public class SessionFrameEncoder extends OneToOneEncoder {
     private final SessionTransportManager manager;
     private final int estimate;
 
+    private final ExternalClassCache classCache = new ExternalClassCache(); // Classes sent over the transport
+
+    private SessionTransport xport;
     private SessionNexus nexus;
     private SessionFrameOptions options;
 
@@ -151,57 +178,139 @@ public class SessionFrameEncoder extends OneToOneEncoder {
 
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
-        SessionFrame frame = (SessionFrame) msg;
+        return encode(ctx, channel, (SessionFrame) msg, null);
+    }
 
+    /**
+     * Encode the frame and write it downstream. The encoding buffer is released back to the pool after the write has
+     * been completed.
+     */
+    @Override
+    protected boolean doEncode(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        ChannelBuffer buffer = encode(ctx, e.getChannel(), (SessionFrame) e.getMessage(), e.getFuture());
+        write(ctx, e.getFuture(), buffer, e.getRemoteAddress());
+        return true;
+    }
+
+    private ChannelBuffer encode(ChannelHandlerContext ctx, Channel channel, SessionFrame frame, ChannelFuture future)
+            throws Exception {
         if (!(frame instanceof ConnectRequest || frame instanceof ConnectResponse)) {
             getNexus(ctx);
         }
 
-        ChannelBuffer buffer = dynamicBuffer(estimate, channel.getConfig().getBufferFactory());
+        // Allocate the encoding buffer with the predicted size
+        SessionFrameSizePredictor predictor = nexus != null ? nexus.getSizePredictor() : null;
+        Class<?> payloadType = getPayloadType(frame);
+
+        int size;
+
+        if (predictor != null) {
+            size = predictor.predict(frame.getClass());
+
+            if (payloadType != null) {
+                size += predictor.predict(payloadType);
+            }
+        } else {
+            size = estimate;
+        }
+
+        SessionFrameBufferPool pool = getBufferPool(ctx);
+        SessionFrameBuffer encoding = null;
+        boolean hit = false;
+
+        if (pool != null) {
+            encoding = pool.acquire(size);
+            hit = encoding != null;
+
+            if (encoding == null) {
+                encoding = new SessionFrameBuffer(pool, size, channel.getConfig().getBufferFactory());
+            }
+        }
+
+        ChannelBuffer buffer;
+
+        if (encoding != null) {
+            buffer = encoding;
+        } else {
+            buffer = dynamicBuffer(size, channel.getConfig().getBufferFactory());
+        }
+
+        int capacity = buffer.capacity();
 
         // Start the frame header
         startHeader(buffer);
 
         // Encode the frame body
-        OutputStream os = new ChannelBufferOutputStream(buffer);
-
         DigestMethod method = options.getFrameDigest();
         Checksum digest = method.create();
 
-        if (digest != null) {
-            os = new CheckedOutputStream(os, digest);
-        }
+        if (frame.isFixedLayout()) {
+            int start = buffer.writerIndex();
 
-        ObjectOutput oout = new ExternalObjectOutput(os);
+            frame.encode(buffer);
 
-        try {
-            frame.writeExternal(oout);
-        } finally {
-            oout.close();
+            if (digest != null) {
+                DigestMethod.updateDigest(buffer, start, buffer.writerIndex() - start, digest);
+            }
+        } else {
+            OutputStream os = new ChannelBufferOutputStream(buffer);
+
+            if (digest != null) {
+                os = new CheckedOutputStream(os, digest);
+            }
+
+            ObjectOutput oout = new ExternalObjectOutput(os);
+
+            try {
+                frame.writeExternal(oout);
+            } finally {
+                oout.close();
+            }
         }
 
         if (digest != null) {
             buffer.setBytes(options.getFrameDigestOffset(), method.toByteArray(digest));
         }
 
+        int headerSize = buffer.writerIndex();
+        ChannelBuffer header = buffer;
+
         // Encode the service payload
         if (frame instanceof CommandRequest) {
-            buffer = encodeRequest(buffer, (CommandRequest) frame);
+            buffer = encodeRequest(buffer, (CommandRequest) frame, future);
         } else if (frame instanceof CommandResponse) {
-            buffer = encodeResponse(buffer, (CommandResponse) frame);
+            buffer = encodeResponse(buffer, (CommandResponse) frame, future);
         }
 
         // Finish the frame header
         finishHeader(buffer);
 
+        // Train the predictor with the actual sizes
+        if (predictor != null) {
+            predictor.record(frame.getClass(), headerSize);
+
+            if (payloadType != null && header.writerIndex() > headerSize) {
+                predictor.record(payloadType, header.writerIndex() - headerSize);
+            }
+
+            nexus.getBufferStats().update(hit, header.capacity() > capacity);
+        }
+
+        // Recycle the encoding buffer once the frame has been written
+        if (encoding != null && future != null) {
+            future.addListener(encoding);
+        }
+
         return buffer;
     }
 
-    private ChannelBuffer encodeRequest(ChannelBuffer buffer, CommandRequest command) throws IOException {
+    private ChannelBuffer encodeRequest(ChannelBuffer buffer, CommandRequest command, ChannelFuture future)
+            throws IOException {
         ServiceRequest request = command.getRequest();
+        CompressMethod compress = getPayloadCompress(request, request.getData() != null);
 
-        if (request.getData() != null && options.isPayloadCompressed()) {
-            buffer = encodeRequestDataCompress(buffer, request);
+        if (request.getData() != null && compress != CompressMethod.COMPRESS_NONE) {
+            buffer = encodeRequestDataCompress(buffer, request, future);
 
             // Record the current write index
             int dataEnd = buffer.writerIndex();
@@ -215,25 +324,33 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             // Set the write index back to its original position
             buffer.writerIndex(dataEnd);
         } else {
-            buffer = encodeRequestNoDataCompress(buffer, request);
+            buffer = encodeRequestNoDataCompress(buffer, request, compress, future);
         }
 
+        setPayloadFlags(buffer, compress);
+
         return buffer;
     }
 
-    private ChannelBuffer encodeResponse(ChannelBuffer buffer, CommandResponse command) throws IOException {
+    private ChannelBuffer encodeResponse(ChannelBuffer buffer, CommandResponse command, ChannelFuture future)
+            throws IOException {
         ServiceResponse response = command.getResponse();
 
         if (command.getStatus() != CommandStatus.SUCCESS) {
             return buffer;
         }
 
-        if (response != null && response.getData() != null && options.isPayloadCompressed()) {
-            buffer = encodeResponseDataCompress(buffer, response);
+        boolean hasData = response != null && response.getData() != null;
+        CompressMethod compress = getPayloadCompress(response, hasData);
+
+        if (hasData && compress != CompressMethod.COMPRESS_NONE) {
+            buffer = encodeResponseDataCompress(buffer, response, future);
         } else {
-            buffer = encodeResponseNoDataCompress(buffer, response, command.getException());
+            buffer = encodeResponseNoDataCompress(buffer, response, command.getException(), compress, future);
         }
 
+        setPayloadFlags(buffer, compress);
+
         return buffer;
     }
 
@@ -242,15 +359,15 @@ public class SessionFrameEncoder extends OneToOneEncoder {
      * data is first written into a dynamic encoding buffer with optional digest and compression enabled. The bulk
      * data is then combined with the encoding buffer to avoid additional copy.
      */
-    private ChannelBuffer encodeRequestNoDataCompress(ChannelBuffer buffer, ServiceRequest request)
-            throws IOException {
+    private ChannelBuffer encodeRequestNoDataCompress(ChannelBuffer buffer, ServiceRequest request,
+            CompressMethod compress, ChannelFuture future) throws IOException {
         ServiceCodec codec = nexus.getCodec();
 
         OutputStream bos = new ChannelBufferOutputStream(buffer);
         OutputStream os;
 
         try {
-            os = options.getPayloadCompress().createOutputStream(bos);
+            os = compress.createOutputStream(bos);
         } finally {
             bos.close();
         }
@@ -262,12 +379,12 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             os = new CheckedOutputStream(os, digest);
         }
 
-        ObjectOutput oout = new ExternalObjectOutput(os);
+        ExternalObjectOutput oout = createObjectOutput(os);
 
         try {
             // Encode the service payload
             if (codec != null) {
-                codec.encode(os, request);
+                codec.encode(oout, request);
             } else {
                 oout.writeObject(request);
             }
@@ -292,6 +409,8 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             oout.close();
         }
 
+        commitClasses(oout, future);
+
         // Encode the payload digest
         if (digest != null) {
             buffer.setBytes(options.getPayloadDigestOffset(), method.toByteArray(digest));
@@ -301,14 +420,14 @@ public class SessionFrameEncoder extends OneToOneEncoder {
     }
 
     private ChannelBuffer encodeResponseNoDataCompress(ChannelBuffer buffer, ServiceResponse response,
-            ServiceException exception) throws IOException {
+            ServiceException exception, CompressMethod compress, ChannelFuture future) throws IOException {
         ServiceCodec codec = nexus.getCodec();
 
         OutputStream bos = new ChannelBufferOutputStream(buffer);
         OutputStream os;
 
         try {
-            os = options.getPayloadCompress().createOutputStream(bos);
+            os = compress.createOutputStream(bos);
         } finally {
             bos.close();
         }
@@ -320,7 +439,7 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             os = new CheckedOutputStream(os, digest);
         }
 
-        ObjectOutput oout = new ExternalObjectOutput(os);
+        ExternalObjectOutput oout = createObjectOutput(os);
 
         try {
             // Encode the exception
@@ -328,7 +447,7 @@ public class SessionFrameEncoder extends OneToOneEncoder {
                 oout.writeBoolean(true);
 
                 if (codec != null) {
-                    codec.encode(os, exception);
+                    codec.encode(oout, exception);
                 } else {
                     oout.writeObject(exception);
                 }
@@ -341,7 +460,7 @@ public class SessionFrameEncoder extends OneToOneEncoder {
                 oout.writeBoolean(true);
 
                 if (codec != null) {
-                    codec.encode(os, response);
+                    codec.encode(oout, response);
                 } else {
                     oout.writeObject(response);
                 }
@@ -370,6 +489,8 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             oout.close();
         }
 
+        commitClasses(oout, future);
+
         // Payload digest
         if (digest != null) {
             buffer.setBytes(options.getPayloadDigestOffset(), method.toByteArray(digest));
@@ -378,25 +499,60 @@ public class SessionFrameEncoder extends OneToOneEncoder {
         return buffer;
     }
 
+    /**
+     * Create the object output for the service payload. The service codec is handed the object output rather than the
+     * underlying stream such that objects written by the codec pick up the compact object encoding if negotiated.
+     */
+    private ExternalObjectOutput createObjectOutput(OutputStream os) {
+        if (options.isCompactObjects()) {
+            return new ExternalObjectOutput(os, nexus.getClassTable(), classCache);
+        }
+
+        return new ExternalObjectOutput(os);
+    }
+
+    /**
+     * Commit the classes defined by the service payload to the class cache once the frame has been written. Frames
+     * encoded from then on are queued behind this one and may refer to the classes by handle. The classes are never
+     * committed if the write has failed, in which case the transport is going away anyway.
+     */
+    private void commitClasses(ExternalObjectOutput oout, ChannelFuture future) {
+        final List<ExternalClassCache.Entry> defined = oout.getDefinedClasses();
+
+        if (defined.isEmpty() || future == null) {
+            return;
+        }
+
+        future.addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess()) {
+                    classCache.commit(defined);
+                }
+            }
+        });
+    }
+
     /**
      * With data compression, encode the payload uncompressed first and then compress it together with bulk data.
      */
-    private ChannelBuffer encodeRequestDataCompress(ChannelBuffer buffer, ServiceRequest request)
-            throws IOException {
+    private ChannelBuffer encodeRequestDataCompress(ChannelBuffer buffer, ServiceRequest request,
+            ChannelFuture future) throws IOException {
         ServiceCodec codec = nexus.getCodec();
 
         ByteBuffer[] buffers = request.getData();
         assert buffers != null;
 
-        ChannelBuffer body = dynamicBuffer(buffer.capacity());
+        ChannelBuffer body = dynamicBuffer(predictPayload(request));
         OutputStream os = new ChannelBufferOutputStream(body);
 
-        ObjectOutput oout = new ExternalObjectOutput(os);
+        ExternalObjectOutput oout = createObjectOutput(os);
 
         try {
             // Encode the service payload
             if (codec != null) {
-                codec.encode(os, request);
+                codec.encode(oout, request);
             } else {
                 oout.writeObject(request);
             }
@@ -413,23 +569,28 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             oout.close();
         }
 
+        commitClasses(oout, future);
+
+        // Train the predictor with the uncompressed payload size
+        recordPayload(request, body.readableBytes());
+
         // Compress the entire payload including body and data
-        buffer = compressPayload(buffer, body, buffers);
+        buffer = compressPayload(buffer, body, buffers, request.getClass());
 
         return buffer;
     }
 
-    private ChannelBuffer encodeResponseDataCompress(ChannelBuffer buffer, ServiceResponse response)
-            throws IOException {
+    private ChannelBuffer encodeResponseDataCompress(ChannelBuffer buffer, ServiceResponse response,
+            ChannelFuture future) throws IOException {
         ServiceCodec codec = nexus.getCodec();
 
         ByteBuffer[] buffers = response.getData();
         assert buffers != null;
 
-        ChannelBuffer body = dynamicBuffer(buffer.capacity());
+        ChannelBuffer body = dynamicBuffer(predictPayload(response));
         OutputStream os = new ChannelBufferOutputStream(body);
 
-        ObjectOutput oout = new ExternalObjectOutput(os);
+        ExternalObjectOutput oout = createObjectOutput(os);
 
         try {
             // Encode the exception
@@ -439,7 +600,7 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             oout.writeBoolean(true);
 
             if (codec != null) {
-                codec.encode(os, response);
+                codec.encode(oout, response);
             } else {
                 oout.writeObject(response);
             }
@@ -456,14 +617,19 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             oout.close();
         }
 
+        commitClasses(oout, future);
+
+        // Train the predictor with the uncompressed payload size
+        recordPayload(response, body.readableBytes());
+
         // Compress the entire payload including body and data
-        buffer = compressPayload(buffer, body, buffers);
+        buffer = compressPayload(buffer, body, buffers, response.getClass());
 
         return buffer;
     }
 
-    private ChannelBuffer compressPayload(ChannelBuffer buffer, ChannelBuffer srcBody, ByteBuffer[] srcBufs)
-            throws IOException {
+    private ChannelBuffer compressPayload(ChannelBuffer buffer, ChannelBuffer srcBody, ByteBuffer[] srcBufs,
+            Class<?> payloadType) throws IOException {
         CompressMethod compress = options.getPayloadCompress();
 
         // Get the total number of bytes to be compressed
@@ -492,7 +658,7 @@ public class SessionFrameEncoder extends OneToOneEncoder {
         OutputStream os;
 
         try {
-            os = compress.createOutputStream(bos);
+            os = compress.createOutputStream(bos, size, options.getCompressParallelism());
         } finally {
             bos.close();
         }
@@ -525,39 +691,72 @@ public class SessionFrameEncoder extends OneToOneEncoder {
             result.setBytes(options.getPayloadDigestOffset(), method.toByteArray(digest));
         }
 
+        // Sample the compression ratio for adaptive compression
+        if (options.isCompressAdaptive()) {
+            nexus.getCompressAdvisor().record(payloadType, size, result.writerIndex() - buffer.writerIndex());
+        }
+
         return result;
     }
 
+    /**
+     * Get the compress method for the service payload. With adaptive compression, the payload with bulk data may be
+     * stored without compression as advised.
+     */
+    private CompressMethod getPayloadCompress(Object payload, boolean hasData) {
+        CompressMethod compress = options.getPayloadCompress();
+
+        if (!hasData || !options.isCompressAdaptive()) {
+            return compress;
+        }
+
+        if (nexus.getCompressAdvisor().shouldCompress(payload.getClass())) {
+            return compress;
+        }
+
+        return CompressMethod.COMPRESS_NONE;
+    }
+
+    /**
+     * Flag the service payload as stored in the frame header if compression has been skipped.
+     */
+    private void setPayloadFlags(ChannelBuffer buffer, CompressMethod compress) {
+        if (options.isCompressAdaptive() && compress == CompressMethod.COMPRESS_NONE) {
+            buffer.setInt(options.getPayloadFlagsOffset(), PAYLOAD_STORED);
+        }
+    }
+
     /**
      * Start a frame header at the beginning of the channel buffer. Frame length and optional headers are not filled
      * in until the rest of the frame has been encoded.
      */
-    private void startHeader(ChannelBuffer buffer) throws IOException {
-        ChannelBufferOutputStream bos = new ChannelBufferOutputStream(buffer);
-
-        try {
-            // Protocol identifier
-            bos.writeInt(PROTO_IDENT);
+    private void startHeader(ChannelBuffer buffer) {
+        int start = buffer.writerIndex();
 
-            // Frame type and protocol version
-            if (nexus != null) {
-                bos.writeByte(TYPE_VERSION);
-                nexus.getActVersion().write(bos);
-            } else {
-                bos.writeByte(TYPE_CONNECT);
-                ProtocolVersion.writeReserved(bos);
-            }
+        // Protocol identifier
+        buffer.writeInt(PROTO_IDENT);
 
-            // Frame offset
-            int length = options.getHeaderLength();
-            bos.writeByte(length);
+        // Frame type and protocol version
+        ProtocolVersion version;
 
-            // Zero fill the rest for now including frame length and optional headers
-            buffer.writeZero(length - bos.writtenBytes());
-        } finally {
-            bos.flush();
-            bos.close();
+        if (nexus != null) {
+            buffer.writeByte(TYPE_VERSION);
+            version = nexus.getActVersion();
+        } else {
+            buffer.writeByte(TYPE_CONNECT);
+            version = ProtocolVersion.getReserved();
         }
+
+        buffer.writeByte(version.getMajor());
+        buffer.writeByte(version.getMinor());
+        buffer.writeByte(version.getRevision());
+
+        // Frame offset
+        int length = options.getHeaderLength();
+        buffer.writeByte(length);
+
+        // Zero fill the rest for now including frame length and optional headers
+        buffer.writeZero(length - (buffer.writerIndex() - start));
     }
 
     /**
@@ -574,19 +773,56 @@ public class SessionFrameEncoder extends OneToOneEncoder {
 
         if (digest != null) {
             int offset = options.getHeaderDigestOffset();
-            byte[] array = new byte[offset];
 
-            buffer.getBytes(0, array);
-            digest.update(array, 0, offset);
+            DigestMethod.updateDigest(buffer, 0, offset, digest);
 
             buffer.setBytes(offset, method.toByteArray(digest));
         }
     }
 
+    /**
+     * Get the type of the service payload carried in the frame for size prediction.
+     */
+    private static Class<?> getPayloadType(SessionFrame frame) {
+        if (frame instanceof CommandRequest) {
+            return ((CommandRequest) frame).getRequest().getClass();
+        } else if (frame instanceof CommandResponse) {
+            CommandResponse command = (CommandResponse) frame;
+
+            if (command.getResponse() != null) {
+                return command.getResponse().getClass();
+            } else if (command.getException() != null) {
+                return command.getException().getClass();
+            }
+        }
+
+        return null;
+    }
+
+    private int predictPayload(Object payload) {
+        return nexus.getSizePredictor().predict(payload.getClass());
+    }
+
+    private void recordPayload(Object payload, int size) {
+        nexus.getSizePredictor().record(payload.getClass(), size);
+    }
+
+    private SessionFrameBufferPool getBufferPool(ChannelHandlerContext ctx) {
+        SessionTransport xport = getTransport(ctx);
+        return xport != null ? xport.getBufferPool() : null;
+    }
+
+    private SessionTransport getTransport(ChannelHandlerContext ctx) {
+        if (xport == null) {
+            xport = manager.locate(ctx.getChannel());
+        }
+
+        return xport;
+    }
+
     private SessionNexus getNexus(ChannelHandlerContext ctx) {
         if (nexus == null) {
-            SessionTransport xport = manager.locate(ctx.getChannel());
-            nexus = xport.getNexus();
+            nexus = getTransport(ctx).getNexus();
         }
 
         return nexus;
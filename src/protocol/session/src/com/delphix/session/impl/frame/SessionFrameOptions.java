@@ -38,6 +38,15 @@ import static com.delphix.session.service.ServiceOption.*;
  *
  *     payload compress  - enable compression on the service payload including the bulk data
  *
+ *     compress adaptive - skip compression on the service payload with bulk data that is found incompressible and
+ *                         flag the payload as stored in the frame header
+ *
+ *     compress parallel - compress and uncompress large service payload in parallel chunks where supported by the
+ *                         compression method (local only)
+ *
+ *     compact objects   - encode objects written to the service payload outside of the service codec, such as the
+ *                         service exception, with the compact object encoding instead of java serialization
+ *
  * Multiple digest and compression algorithms are supported. New algorithms can be added with ease by extending the
  * DigestMethod and CompressMethod enumerations. The choice of digest algorithm can be made independently for header,
  * frame, and payload, which allows maximum flexibility for balancing speed v.s. collision proof.
@@ -53,6 +62,10 @@ import static com.delphix.session.service.ServiceOption.*;
  * large in size when compared to the bulk data. If payload digest is enabled too, the entire payload will be subject
  * to checksum.
  *
+ * With adaptive compression, the payload flags are included in the variable part of the frame header after the
+ * digests except the header digest. It indicates whether the service payload of the frame has been stored without
+ * compression.
+ *
  * All digests are included in the variable part of the frame header as opposed to be included in line with the data
  * it covers. Such a design simplifies the wire tracer as it enables state-less decoding without having to know the
  * frame options which are negotiated only during login.
@@ -61,6 +74,9 @@ import static com.delphix.session.service.ServiceOption.*;
  */
 public class SessionFrameOptions {
 
+    public static final int PAYLOAD_FLAGS_SIZE = 4; // Payload flags size
+    public static final int PAYLOAD_STORED = 0x1; // Payload stored without compression
+
     private DigestMethod headerDigest;
     private DigestMethod frameDigest;
 
@@ -68,6 +84,10 @@ public class SessionFrameOptions {
     private boolean digestData;
 
     private CompressMethod payloadCompress;
+    private boolean compressAdaptive;
+    private int compressParallelism;
+
+    private boolean compactObjects;
 
     public SessionFrameOptions() {
         headerDigest = DigestMethod.DIGEST_NONE;
@@ -77,6 +97,7 @@ public class SessionFrameOptions {
         digestData = true;
 
         payloadCompress = CompressMethod.COMPRESS_NONE;
+        compressParallelism = 1;
     }
 
     public SessionFrameOptions(ServiceOptions options) {
@@ -95,6 +116,11 @@ public class SessionFrameOptions {
 
         methods = options.getOption(PAYLOAD_COMPRESS);
         payloadCompress = CompressMethod.valueOf(methods.get(0));
+        compressAdaptive = options.getOption(PAYLOAD_COMPRESS_ADAPTIVE);
+
+        compressParallelism = options.getOption(PAYLOAD_COMPRESS_PARALLEL);
+
+        compactObjects = options.getOption(COMPACT_OBJECTS);
     }
 
     public DigestMethod getHeaderDigest() {
@@ -133,6 +159,30 @@ public class SessionFrameOptions {
         this.payloadCompress = payloadCompress;
     }
 
+    public boolean isCompressAdaptive() {
+        return compressAdaptive && isPayloadCompressed();
+    }
+
+    public void setCompressAdaptive(boolean compressAdaptive) {
+        this.compressAdaptive = compressAdaptive;
+    }
+
+    public int getCompressParallelism() {
+        return compressParallelism;
+    }
+
+    public void setCompressParallelism(int compressParallelism) {
+        this.compressParallelism = compressParallelism;
+    }
+
+    public boolean isCompactObjects() {
+        return compactObjects;
+    }
+
+    public void setCompactObjects(boolean compactObjects) {
+        this.compactObjects = compactObjects;
+    }
+
     public boolean isPayloadCompressed() {
         return payloadCompress != CompressMethod.COMPRESS_NONE;
     }
@@ -150,6 +200,7 @@ public class SessionFrameOptions {
 
         length += frameDigest.size();
         length += payloadDigest.size();
+        length += getPayloadFlagsSize();
         length += headerDigest.size();
 
         return length;
@@ -163,7 +214,15 @@ public class SessionFrameOptions {
         return getFrameDigestOffset() + frameDigest.size();
     }
 
-    public int getHeaderDigestOffset() {
+    public int getPayloadFlagsOffset() {
         return getPayloadDigestOffset() + payloadDigest.size();
     }
+
+    public int getPayloadFlagsSize() {
+        return isCompressAdaptive() ? PAYLOAD_FLAGS_SIZE : 0;
+    }
+
+    public int getHeaderDigestOffset() {
+        return getPayloadFlagsOffset() + getPayloadFlagsSize();
+    }
 }
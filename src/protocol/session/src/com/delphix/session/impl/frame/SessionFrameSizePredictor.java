@@ -0,0 +1,113 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.frame;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class describes the adaptive size predictor for the frame encoding buffer.
+ *
+ * The encoding buffer holds the frame header and body as well as the encoded service payload, excluding any bulk data
+ * which is attached to the frame without copy. If the buffer is too small, it has to be expanded with data copy. If
+ * it is too large, memory is wasted for as long as the frame is outstanding. The predictor learns the encoded size
+ * separately for each type of frame (header and body) and each type of service payload, such that the common case
+ * fits in the initial buffer.
+ *
+ * The estimate for a given type follows the largest size seen recently with some headroom. It is raised immediately
+ * when a larger size is seen, and only lowered after a number of consecutive encodings came in at half or less of
+ * the estimate, in order to avoid oscillation.
+ */
+public class SessionFrameSizePredictor {
+
+    private static final int MINIMUM = 64; // Minimum estimate and its granularity
+    private static final int INITIAL = 256; // Initial estimate for a type not yet seen
+    private static final int SHRINK_THRESHOLD = 16; // Consecutive over-estimates before it is lowered
+
+    private final ConcurrentMap<Class<?>, Estimate> estimates = new ConcurrentHashMap<Class<?>, Estimate>();
+
+    public SessionFrameSizePredictor() {
+
+    }
+
+    /**
+     * Predict the encoded size for the given type.
+     */
+    public int predict(Class<?> type) {
+        Estimate estimate = estimates.get(type);
+        return estimate != null ? estimate.getSize() : INITIAL;
+    }
+
+    /**
+     * Record the actual encoded size for the given type.
+     */
+    public void record(Class<?> type, int size) {
+        Estimate estimate = estimates.get(type);
+
+        if (estimate == null) {
+            estimate = new Estimate();
+
+            Estimate existing = estimates.putIfAbsent(type, estimate);
+
+            if (existing != null) {
+                estimate = existing;
+            }
+        }
+
+        estimate.update(size);
+    }
+
+    /**
+     * Round the size up to the estimate granularity with 1/8 headroom to absorb the variance in encoded size.
+     */
+    private static int roundUp(int size) {
+        int padded = size + (size >> 3);
+        return Math.max(MINIMUM, (padded + MINIMUM - 1) & ~(MINIMUM - 1));
+    }
+
+    /**
+     * The estimate is updated without synchronization. The worst a race could do is to skew the estimate which is
+     * corrected over time anyway.
+     */
+    private static class Estimate {
+
+        private volatile int size = INITIAL; // Current estimate
+        private int shrink; // Consecutive over-estimates
+
+        public int getSize() {
+            return size;
+        }
+
+        public void update(int actual) {
+            int current = size;
+
+            if (actual > current) {
+                size = roundUp(actual);
+                shrink = 0;
+            } else if (actual <= current >> 1) {
+                if (++shrink >= SHRINK_THRESHOLD) {
+                    size = Math.max(roundUp(actual), current >> 1);
+                    shrink = 0;
+                }
+            } else {
+                shrink = 0;
+            }
+        }
+    }
+}
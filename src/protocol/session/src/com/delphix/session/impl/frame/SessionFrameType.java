@@ -18,29 +18,130 @@
 
 package com.delphix.session.impl.frame;
 
+import com.delphix.session.impl.common.ProtocolViolationException;
+
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Session frame type enumeration.
+ * Session frame type enumeration. Each type creates its frame directly rather than through reflection.
  */
 public enum SessionFrameType {
 
-    CONNECT_REQUEST(ConnectRequest.class),
-    CONNECT_RESPONSE(ConnectResponse.class),
-    AUTHENTICATE_REQUEST(AuthenticateRequest.class),
-    AUTHENTICATE_RESPONSE(AuthenticateResponse.class),
-    NEGOTIATE_REQUEST(NegotiateRequest.class),
-    NEGOTIATE_RESPONSE(NegotiateResponse.class),
-    COMMAND_REQUEST(CommandRequest.class),
-    COMMAND_RESPONSE(CommandResponse.class),
-    TASKMGMT_REQUEST(TaskMgmtRequest.class),
-    TASKMGMT_RESPONSE(TaskMgmtResponse.class),
-    PING_REQUEST(PingRequest.class),
-    PING_RESPONSE(PingResponse.class),
-    LOGOUT_REQUEST(LogoutRequest.class),
-    LOGOUT_RESPONSE(LogoutResponse.class);
+    CONNECT_REQUEST(ConnectRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new ConnectRequest();
+        }
+    },
+
+    CONNECT_RESPONSE(ConnectResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new ConnectResponse();
+        }
+    },
+
+    AUTHENTICATE_REQUEST(AuthenticateRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new AuthenticateRequest();
+        }
+    },
+
+    AUTHENTICATE_RESPONSE(AuthenticateResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new AuthenticateResponse();
+        }
+    },
+
+    NEGOTIATE_REQUEST(NegotiateRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new NegotiateRequest();
+        }
+    },
+
+    NEGOTIATE_RESPONSE(NegotiateResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new NegotiateResponse();
+        }
+    },
+
+    COMMAND_REQUEST(CommandRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new CommandRequest();
+        }
+    },
+
+    COMMAND_RESPONSE(CommandResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new CommandResponse();
+        }
+    },
+
+    TASKMGMT_REQUEST(TaskMgmtRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new TaskMgmtRequest();
+        }
+    },
+
+    TASKMGMT_RESPONSE(TaskMgmtResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new TaskMgmtResponse();
+        }
+    },
+
+    PING_REQUEST(PingRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new PingRequest();
+        }
+    },
+
+    PING_RESPONSE(PingResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new PingResponse();
+        }
+    },
+
+    LOGOUT_REQUEST(LogoutRequest.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new LogoutRequest();
+        }
+    },
+
+    LOGOUT_RESPONSE(LogoutResponse.class) {
+
+        @Override
+        public SessionFrame create() {
+            return new LogoutResponse();
+        }
+    };
+
+    private static final SessionFrameType[] types = values();
 
     private static Map<Class<? extends SessionFrame>, SessionFrameType> typeMap;
 
@@ -62,7 +163,23 @@ public enum SessionFrameType {
         return objectClass;
     }
 
+    /**
+     * Create an empty frame of this type to be decoded.
+     */
+    public abstract SessionFrame create();
+
     public static SessionFrameType getType(Class<? extends SessionFrame> objectClass) {
         return typeMap.get(objectClass);
     }
+
+    /**
+     * Get the type from the ordinal encoded on the wire.
+     */
+    public static SessionFrameType getType(int ordinal) {
+        if (ordinal < 0 || ordinal >= types.length) {
+            throw new ProtocolViolationException("invalid session frame type " + ordinal);
+        }
+
+        return types[ordinal];
+    }
 }
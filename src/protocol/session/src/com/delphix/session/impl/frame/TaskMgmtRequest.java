@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -106,4 +108,26 @@ public class TaskMgmtRequest extends OperateRequest {
         out.writeInt(targetSlotID);
         targetSlotSN.writeExternal(out);
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        targetExchangeID = ExchangeID.decode(buffer);
+        targetCommandSN = SerialNumber.decode(buffer);
+
+        targetSlotID = buffer.readInt();
+        targetSlotSN = SerialNumber.decode(buffer);
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        targetExchangeID.encode(buffer);
+        targetCommandSN.encode(buffer);
+
+        buffer.writeInt(targetSlotID);
+        targetSlotSN.encode(buffer);
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.delphix.session.impl.frame;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -46,6 +48,8 @@ import java.io.ObjectOutput;
  */
 public class TaskMgmtResponse extends OperateResponse {
 
+    private static final TaskMgmtStatus[] statuses = TaskMgmtStatus.values();
+
     private TaskMgmtStatus status;
 
     public TaskMgmtResponse() {
@@ -64,7 +68,7 @@ public class TaskMgmtResponse extends OperateResponse {
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         super.readExternal(in);
 
-        status = TaskMgmtStatus.values()[in.readByte()];
+        status = statuses[in.readByte()];
     }
 
     @Override
@@ -73,4 +77,18 @@ public class TaskMgmtResponse extends OperateResponse {
 
         out.writeByte(status.ordinal());
     }
+
+    @Override
+    public void decode(ChannelBuffer buffer) {
+        super.decode(buffer);
+
+        status = statuses[buffer.readByte()];
+    }
+
+    @Override
+    public void encode(ChannelBuffer buffer) {
+        super.encode(buffer);
+
+        buffer.writeByte(status.ordinal());
+    }
 }
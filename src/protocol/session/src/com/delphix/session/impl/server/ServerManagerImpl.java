@@ -127,6 +127,41 @@ public class ServerManagerImpl extends SessionManager implements ServerManager,
         return port;
     }
 
+    @Override
+    public int getReplyCacheLimit() {
+        return (int) (replyCache.getLimit() / (1024 * 1024));
+    }
+
+    @Override
+    public void setReplyCacheLimit(int replyCacheLimit) {
+        replyCache.setLimit(replyCacheLimit * (1024L * 1024));
+    }
+
+    @Override
+    public int getReplySpillLimit() {
+        return (int) (replyCache.getSpillLimit() / (1024 * 1024));
+    }
+
+    @Override
+    public void setReplySpillLimit(int replySpillLimit) {
+        replyCache.setSpillLimit(replySpillLimit * (1024L * 1024));
+    }
+
+    @Override
+    public int getInflightLimit() {
+        return (int) (inflightBudget.getLimit() / (1024 * 1024));
+    }
+
+    @Override
+    public void setInflightLimit(int inflightLimit) {
+        inflightBudget.setLimit(inflightLimit * (1024L * 1024));
+    }
+
+    @Override
+    public long getInflightBytes() {
+        return inflightBudget.getUsage();
+    }
+
     @Override
     public synchronized Collection<ServiceTransport> getTransports() {
         List<ServiceTransport> xports = new ArrayList<ServiceTransport>();
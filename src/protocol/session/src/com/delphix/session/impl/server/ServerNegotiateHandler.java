@@ -100,6 +100,13 @@ public class ServerNegotiateHandler extends SessionTransportHandler {
         encoder.setOptions(options);
         decoder.setOptions(options);
 
+        // Batch the frame writes if it has been negotiated for the transport
+        SessionFrameBatcher batcher = manager.getFrameBatcher(xport);
+
+        if (batcher != null) {
+            pipeline.addBefore("encoder", "batcher", batcher);
+        }
+
         // Finally start the transport for the server role only
         xport.start(false);
     }
@@ -66,6 +66,17 @@ public interface ClientManager {
      */
     public ServiceTerminus getTerminus();
 
+    /**
+     * Get the aggregate bandwidth limit (in MB/s) of all service clients. Zero means no limit.
+     */
+    public int getBandwidthLimit();
+
+    /**
+     * Set the aggregate bandwidth limit (in MB/s) of all service clients. It applies on top of the per client limit
+     * set with the nexus.bandwidthLimit.local option. Zero means no limit.
+     */
+    public void setBandwidthLimit(int bandwidthLimit);
+
     /**
      * Stop the client manager.
      */
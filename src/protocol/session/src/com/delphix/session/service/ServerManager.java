@@ -56,6 +56,46 @@ public interface ServerManager extends ServerRegistry {
      */
     public Collection<ServiceTransport> getTransports();
 
+    /**
+     * Get the limit (in MB) on the response data cached on the heap by all servers pending confirmation from the
+     * clients. Response data in excess of the limit is moved off-heap, subject to the reply spill limit.
+     */
+    public int getReplyCacheLimit();
+
+    /**
+     * Set the limit (in MB) on the response data cached on the heap by all servers pending confirmation from the
+     * clients. Zero means all response data is moved off-heap.
+     */
+    public void setReplyCacheLimit(int replyCacheLimit);
+
+    /**
+     * Get the limit (in MB) on the response data cached off-heap by all servers, including response data that is
+     * off-heap to begin with. Once the limit is reached, response data in excess of the heap limit stays on the heap.
+     */
+    public int getReplySpillLimit();
+
+    /**
+     * Set the limit (in MB) on the response data cached off-heap by all servers. Zero means nothing is moved off-heap.
+     */
+    public void setReplySpillLimit(int replySpillLimit);
+
+    /**
+     * Get the limit (in MB) on the request data held in memory by all servers for the commands under execution. Reads
+     * are disabled on the transports of the heaviest clients once the limit is exceeded until the request data held
+     * drops below three quarters of it.
+     */
+    public int getInflightLimit();
+
+    /**
+     * Set the limit (in MB) on the request data held in memory by all servers.
+     */
+    public void setInflightLimit(int inflightLimit);
+
+    /**
+     * Get the number of request data bytes currently held in memory by all servers.
+     */
+    public long getInflightBytes();
+
     /**
      * Stop the service manager.
      */
@@ -0,0 +1,32 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.service;
+
+/**
+ * This class represents a request with an explicit traffic class. A request that does not implement this interface
+ * is classified based on whether it carries bulk data or not (see ServiceTrafficClass). All requests sharing the same
+ * tag, if tagged, must be of the same traffic class or they may not be processed in the order they are submitted.
+ */
+public interface ServiceClassifiedRequest extends ServiceRequest {
+
+    /**
+     * Return the request traffic class.
+     */
+    public ServiceTrafficClass getTrafficClass();
+}
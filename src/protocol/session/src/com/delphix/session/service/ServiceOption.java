@@ -96,12 +96,31 @@ import java.util.*;
  *                              transport. It caps the interval determined by the exponential back-off. The valid
  *                              range is [120,000, 3,600,000] and the default is 300,000.
  *
+ *   WRITE_BATCH                xport.writeBatch
+ *
+ *                              Whether frames sent over the transport are batched and written to the network with
+ *                              one gathering write. Frames are held back until the end of the current turn of the
+ *                              transport IO thread or until either the byte or the frame budget has been reached,
+ *                              whichever happens first. The actual value in use is determined by AND(client proposal,
+ *                              server offer). It's a boolean value and the default is false.
+ *
+ *   WRITE_BATCH_BYTES          xport.writeBatchBytes.local
+ *
+ *                              The maximum number of bytes in a write batch. The valid range is [4,096, 16,777,216]
+ *                              and the default is 65,536.
+ *
+ *   WRITE_BATCH_FRAMES         xport.writeBatchFrames.local
+ *
+ *                              The maximum number of frames in a write batch. The valid range is [2, 1,024] and the
+ *                              default is 64.
+ *
  *   HEADER_DIGEST              nexus.headerDigest
  *
  *                              The digest mechanism used for the checksum of the frame header. The actual value in
  *                              use is determined by INTERSECT(client proposal, server offer), with the proposal and
  *                              the offer being lists of mechanisms in preference order. The supported mechanisms
- *                              include DIGEST_NONE, DIGEST_ADLER32, and DIGEST_CRC32. The default is DIGEST_NONE.
+ *                              include DIGEST_NONE, DIGEST_ADLER32, DIGEST_CRC32, and DIGEST_CRC32C. The default is
+ *                              DIGEST_NONE.
  *
  *   FRAME_DIGEST               nexus.frameDigest
  *
@@ -109,7 +128,8 @@ import java.util.*;
  *                              the service payload which is determined by the PAYLOAD_DIGEST). The actual value in
  *                              use is determined by INTERSECT(client proposal, server offer), with the proposal and
  *                              the offer being lists of mechanisms in preference order. The supported mechanisms
- *                              include DIGEST_NONE, DIGEST_ADLER32, and DIGEST_CRC32. The default is DIGEST_NONE.
+ *                              include DIGEST_NONE, DIGEST_ADLER32, DIGEST_CRC32, and DIGEST_CRC32C. The default is
+ *                              DIGEST_NONE.
  *
  *   PAYLOAD_DIGEST             nexus.payloadDigest
  *
@@ -117,15 +137,17 @@ import java.util.*;
  *                              request/response and tje service exception. The actual value in use is determined by
  *                              INTERSECT(client proposal, server offer), with the proposal and the offer being lists
  *                              of mechanisms in preference order. The supported mechanisms include DIGEST_NONE,
- *                              DIGEST_ADLER32, and DIGEST_CRC32. The default is DIGEST_NONE.
+ *                              DIGEST_ADLER32, DIGEST_CRC32, and DIGEST_CRC32C. The default is DIGEST_NONE.
+ *                              DIGEST_CRC32C is hardware assisted as of Java 9 only; on older runtimes it falls back
+ *                              to a table driven implementation that is much slower than DIGEST_CRC32.
  *
  *   PAYLOAD_COMPRESS           nexus.payloadCompress
  *
  *                              The compression mechanism used for the compression of the service payload. The actual
  *                              value in use is determined by INTERSECT(client proposal, server offer), with the
  *                              proposal and the offer being lists of mechanisms in preference order. The supported
- *                              mechanisms include COMPRESS_NONE, COMPRESS_DEFLATE, and COMPRESS_GZIP. The default is
- *                              COMPRESS_NONE.
+ *                              mechanisms include COMPRESS_NONE, COMPRESS_DEFLATE, COMPRESS_GZIP, COMPRESS_LZ4, and
+ *                              COMPRESS_LZ4_HC. The default is COMPRESS_NONE.
  *
  *   DIGEST_DATA                nexus.digestData
  *
@@ -133,6 +155,28 @@ import java.util.*;
  *                              actual value in use in determined by OR(client proposal, server offer). It's a boolean
  *                              value and the default is false.
  *
+ *   PAYLOAD_COMPRESS_ADAPTIVE  nexus.payloadCompressAdaptive
+ *
+ *                              Whether to skip compression for service payload with bulk data that has been found to
+ *                              be incompressible. The payload stored without compression is flagged in the frame
+ *                              header. The actual value in use is determined by AND(client proposal, server offer).
+ *                              It's a boolean value and the default is false.
+ *
+ *   PAYLOAD_COMPRESS_PARALLEL  nexus.payloadCompressParallel.local
+ *
+ *                              The maximum number of chunks of a large service payload to be compressed or
+ *                              uncompressed in parallel on the local side. It only applies to compression mechanisms
+ *                              with independently encoded chunks, such as COMPRESS_LZ4, and doesn't change the wire
+ *                              encoding. The valid range is [1, 64] and the default is 1 which disables parallelism.
+ *
+ *   COMPACT_OBJECTS            nexus.compactObjects
+ *
+ *                              Whether objects not covered by a service codec, such as service exceptions and RMI
+ *                              arguments, are encoded with the compact object encoding instead of java serialization.
+ *                              The class identifiers are derived from the exchange registries of the nexus. The actual
+ *                              value in use is determined by AND(client proposal, server offer). It's a boolean value
+ *                              and the default is false.
+ *
  *   FORE_QUEUE_DEPTH           nexus.forechannel.queueDepth
  *
  *                              The maximum number of outstanding commands allowed to be issued over the forechannel.
@@ -161,6 +205,15 @@ import java.util.*;
  *
  *                              Similar to BACK_MAX_REQUEST except for the response frame.
  *
+ *   FORE_DATA_WINDOW           nexus.forechannel.dataWindow
+ *
+ *                              The maximum amount of request data (in bytes) the client may have outstanding over
+ *                              the forechannel. It bounds the memory held by commands on the server regardless of the
+ *                              mix of request sizes, which the queue depth alone does not. A command carrying more
+ *                              data than the window is only started when nothing else is outstanding. The actual
+ *                              value in use is determined by MIN(client proposal, server offer) with 0 meaning no
+ *                              limit. The valid range is [0, 2GB) and the default is 64MB.
+ *
  *   ORDERED_EXECUTION          nexus.orderedExecution
  *
  *                              Whether commands are always executed in the same order as they are submitted over the
@@ -206,7 +259,33 @@ import java.util.*;
  *                              The transport scheduler to use for request dispatching. In case of multi-connection
  *                              session, there may be more than one connections at a time attached to a session
  *                              channel. The scheduler is responsible for selecting a transport to dispatch the
- *                              request on. It is a string value and the default is round-robin.
+ *                              request on. It is a string value and the default is round-robin. The supported
+ *                              schedulers are ROUND_ROBIN, LEAST_QUEUE which selects the transport with the fewest
+ *                              outstanding requests, and LEAST_LATENCY which selects the transport with the lowest
+ *                              expected completion time based on its network round-trip time and outstanding load.
+ *
+ *   XPORT_INTERACTIVE          nexus.xportInteractive.local
+ *
+ *                              The number of transports reserved for interactive traffic (see ServiceTrafficClass).
+ *                              Interactive requests prefer the reserved transports and fall back to the others when
+ *                              none of the reserved is writable. Bulk requests are never scheduled on the reserved
+ *                              transports unless no other transport is attached. The transport scheduler chosen by
+ *                              XPORT_SCHED applies within each set. The valid range is [0, 16] and the default is 0
+ *                              which means all transports are shared.
+ *
+ *   FORE_QUEUE_CONTROL         nexus.forechannel.queueControl.server
+ *
+ *                              Whether the server adjusts the size of the forechannel slot table dynamically based
+ *                              on its load. The slot table is shrunk multiplicatively when the executor is backed
+ *                              up, the command process time rises well above its baseline, or the request data held
+ *                              by active commands exceeds FORE_DATA_BUDGET; otherwise it is grown additively back up
+ *                              to the negotiated FORE_QUEUE_DEPTH. It's a boolean value and the default is false.
+ *
+ *   FORE_DATA_BUDGET           nexus.forechannel.dataBudget.server
+ *
+ *                              The amount of request data (in bytes) active commands over the forechannel may hold
+ *                              before the server starts to shrink the slot table. It only applies if
+ *                              FORE_QUEUE_CONTROL is enabled. The valid range is [64KB, 2GB) and the default is 64MB.
  */
 public abstract class ServiceOption<T> {
 
@@ -223,16 +302,19 @@ public abstract class ServiceOption<T> {
         digestSupported.add("DIGEST_NONE");
         digestSupported.add("DIGEST_ADLER32");
         digestSupported.add("DIGEST_CRC32");
+        digestSupported.add("DIGEST_CRC32C");
 
         // Currently supported compress methods
         compressSupported.add("COMPRESS_NONE");
         compressSupported.add("COMPRESS_DEFLATE");
         compressSupported.add("COMPRESS_GZIP");
         compressSupported.add("COMPRESS_LZ4");
+        compressSupported.add("COMPRESS_LZ4_HC");
 
         // Currently supported schedulers
         schedSupported.add("ROUND_ROBIN");
         schedSupported.add("LEAST_QUEUE");
+        schedSupported.add("LEAST_LATENCY");
     }
 
     // Default digest and compression offers
@@ -267,6 +349,21 @@ public abstract class ServiceOption<T> {
     public static final ServiceOption<Integer> RECOVERY_TIMEOUT =
             new ServiceOptionInteger("xport.recoveryTimeout.client", 120 * 1000, 3600 * 1000, 300 * 1000);
 
+    public static final ServiceOption<Boolean> WRITE_BATCH =
+            new ServiceOptionBoolean("xport.writeBatch", false) {
+
+                @Override
+                public Boolean negotiate(Boolean offered, Boolean proposed) {
+                    return offered && proposed;
+                }
+            };
+
+    public static final ServiceOption<Integer> WRITE_BATCH_BYTES =
+            new ServiceOptionInteger("xport.writeBatchBytes.local", 4096, 16777216, 65536);
+
+    public static final ServiceOption<Integer> WRITE_BATCH_FRAMES =
+            new ServiceOptionInteger("xport.writeBatchFrames.local", 2, 1024, 64);
+
     public static final ServiceOption<List<String>> HEADER_DIGEST =
             new ServiceOptionStringList("nexus.headerDigest", digestSupported, digestNone);
 
@@ -282,6 +379,27 @@ public abstract class ServiceOption<T> {
     public static final ServiceOption<Boolean> DIGEST_DATA =
             new ServiceOptionBoolean("nexus.digestData", false);
 
+    public static final ServiceOption<Boolean> PAYLOAD_COMPRESS_ADAPTIVE =
+            new ServiceOptionBoolean("nexus.payloadCompressAdaptive", false) {
+
+                @Override
+                public Boolean negotiate(Boolean offered, Boolean proposed) {
+                    return offered && proposed;
+                }
+            };
+
+    public static final ServiceOption<Integer> PAYLOAD_COMPRESS_PARALLEL =
+            new ServiceOptionInteger("nexus.payloadCompressParallel.local", 1, 64, 1);
+
+    public static final ServiceOption<Boolean> COMPACT_OBJECTS =
+            new ServiceOptionBoolean("nexus.compactObjects", false) {
+
+                @Override
+                public Boolean negotiate(Boolean offered, Boolean proposed) {
+                    return offered && proposed;
+                }
+            };
+
     public static final ServiceOption<Integer> FORE_QUEUE_DEPTH =
             new ServiceOptionInteger("nexus.forechannel.queueDepth", 1, 4096, 32);
 
@@ -300,6 +418,21 @@ public abstract class ServiceOption<T> {
     public static final ServiceOption<Integer> BACK_MAX_RESPONSE =
             new ServiceOptionInteger("nexus.backchannel.maxResponse", 8192, 16777215, 65536);
 
+    public static final ServiceOption<Integer> FORE_DATA_WINDOW =
+            new ServiceOptionInteger("nexus.forechannel.dataWindow", 0, Integer.MAX_VALUE, 64 * 1024 * 1024) {
+
+                @Override
+                public Integer negotiate(Integer offered, Integer proposed) {
+                    if (offered == 0) {
+                        return proposed;
+                    } else if (proposed == 0) {
+                        return offered;
+                    }
+
+                    return Math.min(offered, proposed);
+                }
+            };
+
     public static final ServiceOption<Boolean> ORDERED_EXECUTION =
             new ServiceOptionBoolean("nexus.orderedExecution", true) {
 
@@ -327,6 +460,15 @@ public abstract class ServiceOption<T> {
     public static final ServiceOption<String> XPORT_SCHEDULER =
             new ServiceOptionString("nexus.xportSched.local", schedSupported, "ROUND_ROBIN");
 
+    public static final ServiceOption<Integer> XPORT_INTERACTIVE =
+            new ServiceOptionInteger("nexus.xportInteractive.local", 0, 16, 0);
+
+    public static final ServiceOption<Boolean> FORE_QUEUE_CONTROL =
+            new ServiceOptionBoolean("nexus.forechannel.queueControl.server", false);
+
+    public static final ServiceOption<Integer> FORE_DATA_BUDGET =
+            new ServiceOptionInteger("nexus.forechannel.dataBudget.server", 65536, Integer.MAX_VALUE, 64 * 1024 * 1024);
+
     public static Set<ServiceOption<?>> supportedOptions() {
         Set<ServiceOption<?>> supported = new HashSet<ServiceOption<?>>();
         supported.addAll(options);
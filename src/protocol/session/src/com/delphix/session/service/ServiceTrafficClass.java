@@ -0,0 +1,66 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class describes the traffic classes of service requests. Latency sensitive requests, such as small remote
+ * method calls, should not be held up behind bulk data requests that may take a long time to put on the wire. The
+ * traffic class of a request determines how it is queued for dispatch and which transports it is scheduled on.
+ *
+ *   INTERACTIVE    the request is latency sensitive; it is dispatched ahead of pending bulk requests and scheduled
+ *                  on the transports reserved for interactive traffic when available
+ *
+ *   BULK           the request carries bulk data; it is scheduled on the transports not reserved for interactive
+ *                  traffic
+ */
+public enum ServiceTrafficClass {
+
+    INTERACTIVE,
+    BULK;
+
+    /**
+     * Classify the service request. A request may specify its traffic class explicitly by implementing the
+     * ServiceClassifiedRequest interface. Otherwise, a tagged request is always classified as bulk to preserve the
+     * submission order of the requests sharing the tag, and any other request is classified as bulk if and only if
+     * it carries bulk data.
+     */
+    public static ServiceTrafficClass classify(ServiceRequest request) {
+        if (request instanceof ServiceClassifiedRequest) {
+            return ((ServiceClassifiedRequest) request).getTrafficClass();
+        }
+
+        if (request instanceof ServiceTaggedRequest) {
+            return BULK;
+        }
+
+        ByteBuffer[] data = request.getData();
+
+        if (data != null) {
+            for (ByteBuffer buffer : data) {
+                if (buffer.hasRemaining()) {
+                    return BULK;
+                }
+            }
+        }
+
+        return INTERACTIVE;
+    }
+}
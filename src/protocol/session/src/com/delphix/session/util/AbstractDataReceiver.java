@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -51,8 +52,8 @@ public abstract class AbstractDataReceiver<V> implements Callable<V> {
     // Data offset
     protected long offset;
 
-    // Receiver complete (set when the final update request has been received)
-    protected boolean complete;
+    // Receiver complete (released when the final update request has been received)
+    protected final CountDownLatch complete;
 
     // Async task future
     protected AsyncFuture<V> future;
@@ -62,6 +63,7 @@ public abstract class AbstractDataReceiver<V> implements Callable<V> {
 
     protected AbstractDataReceiver() {
         exception = new AtomicReference<Throwable>();
+        complete = new CountDownLatch(1);
     }
 
     public void setupDebug() {
@@ -131,22 +133,19 @@ public abstract class AbstractDataReceiver<V> implements Callable<V> {
     /**
      * Wait for the final update to complete the receiver task.
      */
-    protected synchronized void awaitDone() {
-        while (!complete) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                throw new DelphixInterruptedException();
-            }
+    protected void awaitDone() {
+        try {
+            complete.await();
+        } catch (InterruptedException e) {
+            throw new DelphixInterruptedException();
         }
     }
 
     /**
      * Inform the receiver of the final update to conclude the receiver task.
      */
-    public synchronized void complete() {
-        complete = true;
-        notify();
+    public void complete() {
+        complete.countDown();
     }
 
     /**
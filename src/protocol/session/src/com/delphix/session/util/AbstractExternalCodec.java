@@ -53,7 +53,7 @@ public abstract class AbstractExternalCodec implements ServiceCodec {
     @Override
     public void encode(OutputStream out, ServiceException exception) throws IOException {
         @SuppressWarnings("resource")
-        ObjectOutput oout = new ExternalObjectOutput(out);
+        ObjectOutput oout = ExternalObjectOutput.create(out);
 
         /*
          * If the ServiceException is not serializable then we need to convert it to a new service exception
@@ -88,7 +88,7 @@ public abstract class AbstractExternalCodec implements ServiceCodec {
     @Override
     public ServiceException decodeException(InputStream in) throws IOException, ClassNotFoundException {
         @SuppressWarnings("resource")
-        ObjectInput oin = new ExternalObjectInput(in);
+        ObjectInput oin = ExternalObjectInput.create(in);
         return (ServiceException) oin.readObject();
     }
 
@@ -26,6 +26,7 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * This class describes a future implementation. It is different from the default java FutureTask with regard to the
@@ -45,6 +46,9 @@ import java.util.concurrent.TimeoutException;
  *   - If a task is completed anyways after the cancellation has been initiated, it will complete, i.e., isDone is
  *   true and isCancelled false. That is also different from the standard java implementation which sets both to
  *   true after cancel returns.
+ *
+ * The future monitor only guards short state transitions. Threads waiting for the task to be done are parked outside
+ * of the monitor rather than in Object.wait() so that a waiting virtual thread does not pin its carrier thread.
  */
 public abstract class AbstractFuture<V> implements AsyncFuture<V> {
 
@@ -56,6 +60,8 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
     protected V result;
     protected Throwable exception;
 
+    private Waiter waiters; // Threads waiting for the task to be done (guarded by the future monitor)
+
     public AbstractFuture() {
         this(false);
     }
@@ -95,12 +101,15 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
     }
 
     public void setResult(V v) {
+        Waiter released;
+
         synchronized (this) {
             finalizeState(false);
             result = v;
 
-            notifyAll();
+            released = releaseWaiters();
         }
+        unpark(released);
         done();
     }
 
@@ -111,6 +120,8 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
             logger.debug(t, "Encountered the following exception in a future: ");
         }
 
+        Waiter released;
+
         synchronized (this) {
             finalizeState(interrupted);
 
@@ -120,8 +131,9 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
                 exception = null;
             }
 
-            notifyAll();
+            released = releaseWaiters();
         }
+        unpark(released);
         done();
     }
 
@@ -142,12 +154,13 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
     @Override
     public boolean cancel(boolean mayInterruptIfRunning, boolean waitUntilDone, boolean interruptible) {
         boolean aborted = false;
+        Waiter released = null;
 
         synchronized (this) {
             if (state == AsyncFutureState.INITIAL) {
                 setState(AsyncFutureState.ABORTED);
                 aborted = true;
-                notifyAll();
+                released = releaseWaiters();
             } else if (state == AsyncFutureState.ACTIVE) {
                 setState(AsyncFutureState.ABORTING);
             } else {
@@ -156,6 +169,7 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
         }
 
         if (aborted) {
+            unpark(released);
             done();
             return true;
         }
@@ -166,16 +180,10 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
             return true;
         }
 
-        synchronized (this) {
-            while (!taskDone()) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    if (interruptible) {
-                        return false;
-                    }
-                }
-            }
+        try {
+            awaitDone(interruptible, false, 0);
+        } catch (InterruptedException e) {
+            return false;
         }
 
         return isCancelled();
@@ -229,11 +237,24 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
     }
 
     @Override
-    public synchronized V get() throws InterruptedException, ExecutionException {
-        while (!taskDone()) {
-            wait();
+    public V get() throws InterruptedException, ExecutionException {
+        awaitDone(true, false, 0);
+        return report();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!awaitDone(true, true, System.nanoTime() + unit.toNanos(timeout))) {
+            throw new TimeoutException();
         }
 
+        return report();
+    }
+
+    /**
+     * Return the outcome of the task once it is done.
+     */
+    private synchronized V report() throws ExecutionException {
         if (state == AsyncFutureState.ABORTED) {
             throw new CancellationException();
         }
@@ -245,30 +266,92 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
         return result;
     }
 
-    @Override
-    public synchronized V get(long timeout, TimeUnit unit)
-            throws InterruptedException, ExecutionException, TimeoutException {
-        long until = System.currentTimeMillis() + unit.toMillis(timeout);
+    /**
+     * Wait until the task is done, or until the deadline in System.nanoTime() has passed for a timed wait, in which
+     * case false is returned. An uninterruptible wait clears the interrupt and carries on.
+     */
+    private boolean awaitDone(boolean interruptible, boolean timed, long deadline) throws InterruptedException {
+        Waiter waiter = null;
+
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (taskDone()) {
+                        return true;
+                    }
 
-        while (!taskDone()) {
-            long timeoutMs = until - System.currentTimeMillis();
+                    if (waiter == null) {
+                        waiter = new Waiter(waiters);
+                        waiters = waiter;
+                    } else if (waiter.released) {
+                        // Released for a recurring task that has been rearmed since
+                        waiter = new Waiter(waiters);
+                        waiters = waiter;
+                    }
+                }
 
-            if (timeoutMs > 0) {
-                wait(timeoutMs);
-            } else {
-                throw new TimeoutException();
+                if (!timed) {
+                    LockSupport.park(this);
+                } else {
+                    long nanos = deadline - System.nanoTime();
+
+                    if (nanos <= 0) {
+                        return false;
+                    }
+
+                    LockSupport.parkNanos(this, nanos);
+                }
+
+                if (Thread.interrupted() && interruptible) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            if (waiter != null) {
+                removeWaiter(waiter);
             }
         }
+    }
 
-        if (state == AsyncFutureState.ABORTED) {
-            throw new CancellationException();
+    private synchronized void removeWaiter(Waiter waiter) {
+        if (waiter.released) {
+            return;
         }
 
-        if (exception != null) {
-            throw new ExecutionException(exception);
+        Waiter prev = null;
+
+        for (Waiter curr = waiters; curr != null; prev = curr, curr = curr.next) {
+            if (curr == waiter) {
+                if (prev == null) {
+                    waiters = curr.next;
+                } else {
+                    prev.next = curr.next;
+                }
+
+                break;
+            }
         }
+    }
 
-        return result;
+    /**
+     * Detach the waiters to be unparked once the monitor has been dropped. Must be called with the monitor held. The
+     * detached waiters are never linked again.
+     */
+    private Waiter releaseWaiters() {
+        Waiter released = waiters;
+        waiters = null;
+
+        for (Waiter waiter = released; waiter != null; waiter = waiter.next) {
+            waiter.released = true;
+        }
+
+        return released;
+    }
+
+    private static void unpark(Waiter released) {
+        for (Waiter waiter = released; waiter != null; waiter = waiter.next) {
+            LockSupport.unpark(waiter.thread);
+        }
     }
 
     @Override
@@ -307,7 +390,7 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
     }
 
     @Override
-    public synchronized V await(long timeout, TimeUnit unit) throws ExecutionException, TimeoutException {
+    public V await(long timeout, TimeUnit unit) throws ExecutionException, TimeoutException {
         V result = null;
 
         try {
@@ -340,4 +423,15 @@ public abstract class AbstractFuture<V> implements AsyncFuture<V> {
 
         return result;
     }
+
+    private static class Waiter {
+
+        private final Thread thread = Thread.currentThread();
+        private Waiter next;
+        private boolean released;
+
+        Waiter(Waiter next) {
+            this.next = next;
+        }
+    }
 }
@@ -24,7 +24,6 @@ import com.delphix.session.service.*;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -63,7 +62,7 @@ public abstract class AbstractService implements Service {
      * Fire up the executors.
      */
     public void start() {
-        serviceExecutor = Executors.newCachedThreadPool();
+        serviceExecutor = ExecutorUtil.newTaskExecutor();
         protocolExecutor = getProtocolExecutor();
     }
 
@@ -108,7 +107,7 @@ public abstract class AbstractService implements Service {
      * Return the executor that processes the protocol requests delivered upstream from DSP. By default, a global
      * thread pool executor is used. Override this method to return a custom executor if desired. For example, one
      * may want to use the TaggedRequestExecutor to ensure end-to-end ordering if the application service involves
-     * data streaming.
+     * data streaming, or the StripedTaggedRequestExecutor if there are a great many streams at once.
      */
     protected ExecutorService getProtocolExecutor() {
         return null;
@@ -35,7 +35,7 @@ public abstract class AsyncTask<T> {
     protected final Queue<T> queue;
     protected final Object lock;
 
-    protected FutureTask<?> task;
+    protected volatile FutureTask<?> task;
 
     protected final Runnable runnable = new Runnable() {
 
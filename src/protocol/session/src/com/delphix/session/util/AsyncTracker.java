@@ -26,12 +26,17 @@ import java.util.*;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class provides the functionality needed for executing and tracking the status of a collection of asynchronous
  * tasks. A typical consumer of the async task tracker is a higher level task that initiates one or more async sub-
  * tasks during its execution. The higher level task may use the tracker for sub-task completion, cancellation, and
  * exception handling.
+ *
+ * The tracker state is guarded by a lock rather than the object monitor so that a tracker context blocked on the task
+ * limit or the task completion does not pin its carrier thread when it runs on a virtual thread.
  */
 public class AsyncTracker {
 
@@ -58,6 +63,10 @@ public class AsyncTracker {
     // Wait for the tracker to complete
     protected boolean waitDone;
 
+    // Tracker state lock and the condition signalled on task completion
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition taskCompleted = lock.newCondition();
+
     public AsyncTracker() {
         this(Integer.MAX_VALUE);
     }
@@ -94,7 +103,9 @@ public class AsyncTracker {
     public void track(Object task, AsyncFuture<?> future) {
         boolean done;
 
-        synchronized (this) {
+        lock.lock();
+
+        try {
             // No new tasks allowed once the tracker is waiting to be shutdown
             assert !waitDone : "tracker already shutdown";
 
@@ -113,11 +124,13 @@ public class AsyncTracker {
                 logger.tracef("maximum task limit %d has been reached", maxTasks);
 
                 try {
-                    wait();
+                    taskCompleted.await();
                 } catch (InterruptedException e) {
                     throw new DelphixInterruptedException();
                 }
             }
+        } finally {
+            lock.unlock();
         }
 
         if (done) {
@@ -132,34 +145,40 @@ public class AsyncTracker {
      * This is the portion of the async task completion callback that updates various internal tracker states and
      * therefore must be done with synchronization.
      */
-    private synchronized boolean taskDone(Object task) {
-        AsyncFuture<?> future = activeMap.get(task);
+    private boolean taskDone(Object task) {
+        lock.lock();
 
-        /*
-         * It is possible this may race with the tracker context such that the task hasn't been added to the
-         * command map by the time it is already completed, in which case, get would return null and task
-         * completion is processed immediately after dispatch in the tracker context.
-         */
-        if (future == null) {
-            return false;
-        }
+        try {
+            AsyncFuture<?> future = activeMap.get(task);
+
+            /*
+             * It is possible this may race with the tracker context such that the task hasn't been added to the
+             * command map by the time it is already completed, in which case, get would return null and task
+             * completion is processed immediately after dispatch in the tracker context.
+             */
+            if (future == null) {
+                return false;
+            }
 
-        // Limit notify callback to empty to non-empty transition only
-        boolean notify = doneQueue.isEmpty();
+            // Limit notify callback to empty to non-empty transition only
+            boolean notify = doneQueue.isEmpty();
 
-        assert future.isDone();
-        doneQueue.offer(future);
+            assert future.isDone();
+            doneQueue.offer(future);
 
-        // Finally remove the task from the active map
-        int numTasks = activeMap.size();
+            // Finally remove the task from the active map
+            int numTasks = activeMap.size();
 
-        activeMap.remove(task);
+            activeMap.remove(task);
 
-        if (waitDone || numTasks == maxTasks) {
-            notifyAll();
-        }
+            if (waitDone || numTasks == maxTasks) {
+                taskCompleted.signalAll();
+            }
 
-        return notify;
+            return notify;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -194,10 +213,14 @@ public class AsyncTracker {
              * continue if the latter has added more tasks to the doneQueue.
              */
             if (done == null) {
-                synchronized (this) {
+                lock.lock();
+
+                try {
                     if (doneQueue.isEmpty()) {
                         break;
                     }
+                } finally {
+                    lock.unlock();
                 }
 
                 continue;
@@ -261,24 +284,32 @@ public class AsyncTracker {
 
         List<AsyncFuture<?>> futures = new ArrayList<AsyncFuture<?>>();
 
-        synchronized (this) {
+        lock.lock();
+
+        try {
             futures.addAll(activeMap.values());
+        } finally {
+            lock.unlock();
         }
 
         for (AsyncFuture<?> future : futures) {
             future.cancel(true);
         }
 
-        synchronized (this) {
+        lock.lock();
+
+        try {
             waitDone = true;
 
             while (!activeMap.isEmpty()) {
                 try {
-                    wait();
+                    taskCompleted.await();
                 } catch (InterruptedException e) {
                     logger.errorf(e, "async tracker interrupted - active tasks %d", activeMap.size());
                 }
             }
+        } finally {
+            lock.unlock();
         }
 
         // Process the completed task queue
@@ -295,12 +326,18 @@ public class AsyncTracker {
      * before the remaining tasks complete and it should always call the cancel() method for cleanup.
      */
     public void awaitDone() {
-        synchronized (this) {
+        lock.lock();
+
+        try {
             waitDone = true;
+        } finally {
+            lock.unlock();
         }
 
         while (true) {
-            synchronized (this) {
+            lock.lock();
+
+            try {
                 // Stop if there are no more active tasks left
                 if (activeMap.isEmpty()) {
                     break;
@@ -309,12 +346,14 @@ public class AsyncTracker {
                 // Wait until at least one active task has completed
                 while (doneQueue.isEmpty()) {
                     try {
-                        wait();
+                        taskCompleted.await();
                     } catch (InterruptedException e) {
                         logger.errorf(e, "async tracker interrupted - active tasks %d", activeMap.size());
                         throw new DelphixInterruptedException();
                     }
                 }
+            } finally {
+                lock.unlock();
             }
 
             // Process the completed task queue
@@ -332,14 +371,26 @@ public class AsyncTracker {
     /**
      * Check if the tracker is done.
      */
-    public synchronized boolean isDone() {
-        return waitDone && activeMap.isEmpty() && doneQueue.isEmpty();
+    public boolean isDone() {
+        lock.lock();
+
+        try {
+            return waitDone && activeMap.isEmpty() && doneQueue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Check if the tracker is being shut down.
      */
-    public synchronized boolean isWaitDone() {
-        return waitDone;
+    public boolean isWaitDone() {
+        lock.lock();
+
+        try {
+            return waitDone;
+        } finally {
+            lock.unlock();
+        }
     }
 }
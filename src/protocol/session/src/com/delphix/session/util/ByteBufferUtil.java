@@ -54,6 +54,16 @@ public final class ByteBufferUtil {
         return newByteBuffers;
     }
 
+    public static ByteBuffer[] readOnlySlice(ByteBuffer[] byteBuffers) {
+        ByteBuffer[] newByteBuffers = new ByteBuffer[byteBuffers.length];
+
+        for (int i = 0; i < byteBuffers.length; i++) {
+            newByteBuffers[i] = byteBuffers[i].slice().asReadOnlyBuffer();
+        }
+
+        return newByteBuffers;
+    }
+
     public static void corrupt(ByteBuffer[] byteBuffers) {
         for (int i = 0; i < byteBuffers.length; i++) {
             int remaining = byteBuffers[i].remaining();
@@ -0,0 +1,250 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum as defined in RFC 3720.
+ *
+ * As of Java 9, the JDK provides java.util.zip.CRC32C, which the JIT compiles down to the CRC32 instructions of the
+ * processor where available. Since the tree is built for Java 6, the JDK class is looked up reflectively and create()
+ * returns an instance of it if found. This class only serves as the fallback on older runtimes. It is computed with
+ * the slicing-by-8 algorithm, which consumes eight bytes per table lookup round and runs several times faster than the
+ * classic byte at a time algorithm, but it is still far slower than the hardware assisted implementation.
+ *
+ * In addition to the Checksum interface, either implementation may be updated directly from a ByteBuffer. Buffers that
+ * aren't backed by byte[], such as direct buffers, are read in place without being copied out.
+ */
+public class CRC32C implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82F63B78; // Castagnoli polynomial (reversed)
+
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+
+            TABLES[0][n] = crc;
+        }
+
+        for (int n = 0; n < 256; n++) {
+            int crc = TABLES[0][n];
+
+            for (int k = 1; k < 8; k++) {
+                crc = (crc >>> 8) ^ TABLES[0][crc & 0xff];
+                TABLES[k][n] = crc;
+            }
+        }
+    }
+
+    private static final int[] T0 = TABLES[0];
+    private static final int[] T1 = TABLES[1];
+    private static final int[] T2 = TABLES[2];
+    private static final int[] T3 = TABLES[3];
+    private static final int[] T4 = TABLES[4];
+    private static final int[] T5 = TABLES[5];
+    private static final int[] T6 = TABLES[6];
+    private static final int[] T7 = TABLES[7];
+
+    // JDK implementation with its constructor and ByteBuffer update method (null if not available)
+    private static final Class<? extends Checksum> jdkClass;
+    private static final Constructor<? extends Checksum> jdkConstructor;
+    private static final Method jdkUpdate;
+
+    static {
+        Class<? extends Checksum> clazz = null;
+        Constructor<? extends Checksum> constructor = null;
+        Method update = null;
+
+        try {
+            clazz = Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class);
+            constructor = clazz.getConstructor();
+            update = clazz.getMethod("update", ByteBuffer.class);
+        } catch (Exception e) {
+            // Fall back to the table driven implementation prior to Java 9
+            clazz = null;
+            constructor = null;
+            update = null;
+        }
+
+        jdkClass = clazz;
+        jdkConstructor = constructor;
+        jdkUpdate = update;
+    }
+
+    private int crc = 0xffffffff; // Running checksum (inverted)
+
+    public CRC32C() {
+
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ T0[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+
+        int c = crc;
+
+        while (len >= 8) {
+            int lo = (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | b[off + 3] << 24;
+            int hi = (b[off + 4] & 0xff) | (b[off + 5] & 0xff) << 8 | (b[off + 6] & 0xff) << 16 | b[off + 7] << 24;
+
+            c = slice8(c ^ lo, hi);
+
+            off += 8;
+            len -= 8;
+        }
+
+        while (len-- > 0) {
+            c = (c >>> 8) ^ T0[(c ^ b[off++]) & 0xff];
+        }
+
+        crc = c;
+    }
+
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    /**
+     * Update the checksum with the remaining bytes of the buffer. Upon return, the position of the buffer is advanced
+     * to its limit.
+     */
+    public void update(ByteBuffer buffer) {
+        int pos = buffer.position();
+        int limit = buffer.limit();
+
+        if (pos >= limit) {
+            return;
+        }
+
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + pos, limit - pos);
+            buffer.position(limit);
+            return;
+        }
+
+        ByteBuffer le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int c = crc;
+
+        while (limit - pos >= 8) {
+            long value = le.getLong(pos);
+
+            c = slice8(c ^ (int) value, (int) (value >>> 32));
+            pos += 8;
+        }
+
+        while (pos < limit) {
+            c = (c >>> 8) ^ T0[(c ^ le.get(pos++)) & 0xff];
+        }
+
+        crc = c;
+        buffer.position(limit);
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xffffffff;
+    }
+
+    /**
+     * Create a CRC-32C checksum with the JDK implementation if available or this class otherwise.
+     */
+    public static Checksum create() {
+        if (jdkClass != null) {
+            try {
+                return jdkConstructor.newInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return new CRC32C();
+    }
+
+    /**
+     * Check if the JDK implementation is used by create().
+     */
+    public static boolean isJdkImplementation() {
+        return jdkClass != null;
+    }
+
+    /**
+     * Check if the checksum is a CRC-32C checksum that may be updated directly from a ByteBuffer.
+     */
+    public static boolean isCRC32C(Checksum digest) {
+        return digest instanceof CRC32C || (jdkClass != null && jdkClass.isInstance(digest));
+    }
+
+    /**
+     * Update the CRC-32C checksum with the remaining bytes of the buffer. Upon return, the position of the buffer is
+     * advanced to its limit.
+     */
+    public static void update(Checksum digest, ByteBuffer buffer) {
+        if (digest instanceof CRC32C) {
+            ((CRC32C) digest).update(buffer);
+            return;
+        }
+
+        try {
+            jdkUpdate.invoke(digest, buffer);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int slice8(int lo, int hi) {
+        return T7[lo & 0xff] ^ T6[(lo >>> 8) & 0xff] ^ T5[(lo >>> 16) & 0xff] ^ T4[lo >>> 24]
+                ^ T3[hi & 0xff] ^ T2[(hi >>> 8) & 0xff] ^ T1[(hi >>> 16) & 0xff] ^ T0[hi >>> 24];
+    }
+}
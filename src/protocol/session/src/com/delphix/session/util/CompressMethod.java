@@ -26,6 +26,9 @@ import net.jpountz.lz4.LZ4Factory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.*;
 
 /**
@@ -96,6 +99,24 @@ public enum CompressMethod {
             return new LZ4InputStream(is, lz4Codec, LZ4_BUFFER_MAX);
         }
 
+        @Override
+        public OutputStream createOutputStream(OutputStream os, int size, int parallelism) throws IOException {
+            if (parallelism <= 1 || size < LZ4_PARALLEL_MIN) {
+                return createOutputStream(os);
+            }
+
+            return createParallelOutputStream(os, lz4Codec, parallelism);
+        }
+
+        @Override
+        public InputStream createInputStream(InputStream is, int size, int parallelism) throws IOException {
+            if (parallelism <= 1 || size < LZ4_PARALLEL_MIN) {
+                return createInputStream(is);
+            }
+
+            return createParallelInputStream(is, lz4Codec, parallelism);
+        }
+
         /**
          * In the worst case, LZ4 with the set of parameters we have adds less than 1/32 of the original data as
          * overhead.
@@ -104,6 +125,48 @@ public enum CompressMethod {
         public int estimateCompressed(int size) {
             return LZ4OutputStream.getMaxCompressedLength(size, LZ4_BUFFER_MIN, lz4Codec);
         }
+    },
+
+    /**
+     * LZ4 with the high compression compressor. It produces the same format as the fast compressor and hence shares
+     * the same decompressor which is just as fast. Compression is several times slower but still comparable to deflate
+     * at the best speed level, while the ratio is on par or better. It is meant for bandwidth bound links where both
+     * sides have spare cycles, especially when combined with parallel compression. Data is always compressed in the
+     * maximum sized chunks since the compression ratio improves with larger chunks.
+     */
+    COMPRESS_LZ4_HC {
+        @Override
+        public OutputStream createOutputStream(OutputStream os) throws IOException {
+            return new LZ4OutputStream(os, lz4HighCodec, LZ4_BUFFER_MAX, LZ4_BUFFER_MAX);
+        }
+
+        @Override
+        public InputStream createInputStream(InputStream is) throws IOException {
+            return new LZ4InputStream(is, lz4HighCodec, LZ4_BUFFER_MAX);
+        }
+
+        @Override
+        public OutputStream createOutputStream(OutputStream os, int size, int parallelism) throws IOException {
+            if (parallelism <= 1 || size < LZ4_PARALLEL_MIN) {
+                return createOutputStream(os);
+            }
+
+            return createParallelOutputStream(os, lz4HighCodec, parallelism);
+        }
+
+        @Override
+        public InputStream createInputStream(InputStream is, int size, int parallelism) throws IOException {
+            if (parallelism <= 1 || size < LZ4_PARALLEL_MIN) {
+                return createInputStream(is);
+            }
+
+            return createParallelInputStream(is, lz4HighCodec, parallelism);
+        }
+
+        @Override
+        public int estimateCompressed(int size) {
+            return LZ4OutputStream.getMaxCompressedLength(size, LZ4_BUFFER_MAX, lz4HighCodec);
+        }
     };
 
     private static final Logger logger = Logger.getLogger(CompressMethod.class);
@@ -111,29 +174,220 @@ public enum CompressMethod {
     private static final int LZ4_BUFFER_MIN = 1024;
     private static final int LZ4_BUFFER_MAX = 65536;
     private static final LZ4Codec lz4Codec;
+    private static final LZ4Codec lz4HighCodec;
+
+    /*
+     * Minimum payload size for parallel compression. Below this, the overhead of the task handoff outweighs the gain
+     * from using more than one core.
+     */
+    private static final int LZ4_PARALLEL_MIN = 4 * LZ4_BUFFER_MAX;
+
+    // Executor shared among all streams in the parallel mode
+    private static ExecutorService parallelExecutor;
+
+    /*
+     * System property used to override the LZ4 instance selection. The value is one of "native", "unsafe", or "safe".
+     */
+    public static final String LZ4_INSTANCE_PROPERTY = "session.lz4.instance";
+
+    private static final String LZ4_NATIVE = "native";
+    private static final String LZ4_UNSAFE = "unsafe";
+    private static final String LZ4_SAFE = "safe";
+
+    /*
+     * Architectures on which the native and unsafe instances have been known to work. Both of them rely on unaligned
+     * memory access which is fine on x86 but results in SIGBUS on strict alignment architectures such as sparc.
+     */
+    private static final String[] LZ4_UNALIGNED_ARCHS = { "x86", "i386", "i486", "i586", "i686", "amd64", "x86_64" };
+
+    private static final int LZ4_SELF_TEST_SIZE = 65536;
+
+    private static final String lz4Instance;
 
     static {
         /*
-         * This will return the fastest LZ4 compressor that is supported on the system. There are currently three
-         * implementations, namely, native or JNI based, Unsafe API based, and standard java based, ordered by the
-         * speed. The JNI version requires a native library which may not be supported on the platform. If it fails
-         * to load, we will fail back to the Unsafe version and then the standard java version. The standard java
-         * version is only about half the speed of the native version though.
+         * There are currently three LZ4 implementations, namely, native or JNI based, Unsafe API based, and standard
+         * java based, ordered by the speed. The standard java version is only about half the speed of the native
+         * version. The JNI version requires a native library which may not be supported on the platform.
          *
          * Edit by Guangmu:
          * Neither fastestInstance() nor unsafeInstance() is suitable for Solaris.
          * @see <a href="https://github.com/delphix/dsp/issues/6">
          *     [BUG] liblz4-java.so crashed with SIGBUS on Solaris 10(sparc)
          *     </a>
+         *
+         * A SIGBUS takes down the whole JVM and cannot be caught by a self-test. Hence we only consider the native and
+         * unsafe instances on architectures known to support unaligned access and stick to the safe instance anywhere
+         * else. Each candidate is validated with a round-trip self-test before it is put to use. The selection may be
+         * overridden with the system property for troubleshooting purposes.
          */
-        LZ4Factory factory = LZ4Factory.safeInstance();
-
-        logger.infof("Safe LZ4 instance available: %s", factory);
+        LZ4Factory factory = selectLZ4Factory();
 
         LZ4Compressor compressor = factory.fastCompressor();
         LZ4Decompressor decompressor = factory.decompressor();
 
         lz4Codec = new LZ4LengthCodec(compressor, decompressor);
+        lz4HighCodec = new LZ4LengthCodec(factory.highCompressor(), decompressor);
+        lz4Instance = factory.toString();
+
+        logger.infof("LZ4 instance selected: %s", lz4Instance);
+    }
+
+    /**
+     * Large payloads are compressed in maximum sized chunks in parallel. The wire encoding is the same as the serial
+     * mode and it is thus transparent to the peer.
+     */
+    private static OutputStream createParallelOutputStream(OutputStream os, LZ4Codec codec, int parallelism) {
+        return new LZ4OutputStream(os, codec, LZ4_BUFFER_MAX, LZ4_BUFFER_MAX, getParallelExecutor(), parallelism);
+    }
+
+    private static InputStream createParallelInputStream(InputStream is, LZ4Codec codec, int parallelism) {
+        return new LZ4InputStream(is, codec, LZ4_BUFFER_MAX, getParallelExecutor(), parallelism);
+    }
+
+    /**
+     * Get the executor for parallel compression. It is bounded by the number of processors available to the system
+     * and the threads are created on demand.
+     */
+    private static synchronized ExecutorService getParallelExecutor() {
+        if (parallelExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "compress-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+
+            executor.allowCoreThreadTimeOut(true);
+            parallelExecutor = executor;
+        }
+
+        return parallelExecutor;
+    }
+
+    /**
+     * Get the name of the LZ4 instance selected for the system.
+     */
+    public static String getLZ4Instance() {
+        return lz4Instance;
+    }
+
+    private static LZ4Factory selectLZ4Factory() {
+        String[] candidates;
+
+        String override = System.getProperty(LZ4_INSTANCE_PROPERTY);
+
+        if (override != null) {
+            candidates = new String[] { override.trim().toLowerCase() };
+        } else if (isUnalignedArch(System.getProperty("os.arch"))) {
+            candidates = new String[] { LZ4_NATIVE, LZ4_UNSAFE };
+        } else {
+            candidates = new String[0];
+        }
+
+        for (String candidate : candidates) {
+            LZ4Factory factory;
+
+            try {
+                factory = getLZ4Factory(candidate);
+            } catch (Throwable t) {
+                logger.infof("LZ4 %s instance unavailable: %s", candidate, t);
+                continue;
+            }
+
+            if (factory == null) {
+                logger.errorf("invalid LZ4 instance %s specified by %s", candidate, LZ4_INSTANCE_PROPERTY);
+                continue;
+            }
+
+            if (selfTest(factory)) {
+                return factory;
+            }
+
+            logger.errorf("LZ4 %s instance failed self-test", candidate);
+        }
+
+        return LZ4Factory.safeInstance();
+    }
+
+    private static boolean isUnalignedArch(String arch) {
+        if (arch == null) {
+            return false;
+        }
+
+        for (String unaligned : LZ4_UNALIGNED_ARCHS) {
+            if (unaligned.equalsIgnoreCase(arch)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static LZ4Factory getLZ4Factory(String name) {
+        if (name.equals(LZ4_NATIVE)) {
+            return LZ4Factory.nativeInstance();
+        } else if (name.equals(LZ4_UNSAFE)) {
+            return LZ4Factory.unsafeInstance();
+        } else if (name.equals(LZ4_SAFE)) {
+            return LZ4Factory.safeInstance();
+        }
+
+        return null;
+    }
+
+    /**
+     * Compress and decompress a sample of both compressible and incompressible data with the given instance using
+     * both the fast and the high compressors. The compressed output is also decompressed with the safe instance to
+     * make sure the two are interchangeable, since the peer may well have selected a different instance.
+     */
+    private static boolean selfTest(LZ4Factory factory) {
+        byte[] data = new byte[LZ4_SELF_TEST_SIZE];
+        long seed = LZ4_SELF_TEST_SIZE;
+
+        for (int i = 0; i < data.length; i++) {
+            if (i < data.length / 2) {
+                data[i] = (byte) (i % 61);
+            } else {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                data[i] = (byte) (seed >>> 56);
+            }
+        }
+
+        try {
+            return selfTest(factory, factory.fastCompressor(), data) && selfTest(factory, factory.highCompressor(), data);
+        } catch (Throwable t) {
+            logger.errorf(t, "LZ4 %s self-test failed", factory);
+            return false;
+        }
+    }
+
+    private static boolean selfTest(LZ4Factory factory, LZ4Compressor compressor, byte[] data) {
+        byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+        int length = compressor.compress(data, 0, data.length, compressed, 0, compressed.length);
+
+        byte[] restored = new byte[data.length];
+
+        if (factory.decompressor().decompress(compressed, 0, restored, 0, data.length) != length) {
+            return false;
+        }
+
+        if (!Arrays.equals(data, restored)) {
+            return false;
+        }
+
+        restored = new byte[data.length];
+        LZ4Factory.safeInstance().decompressor().decompress(compressed, 0, restored, 0, data.length);
+
+        return Arrays.equals(data, restored);
     }
 
     /**
@@ -146,6 +400,23 @@ public enum CompressMethod {
      */
     public abstract InputStream createInputStream(InputStream is) throws IOException;
 
+    /**
+     * Create a compression output stream for this method given the uncompressed size of the data to be written and
+     * the maximum number of chunks to be compressed in parallel. Methods that don't support parallel compression
+     * simply create the regular output stream.
+     */
+    public OutputStream createOutputStream(OutputStream os, int size, int parallelism) throws IOException {
+        return createOutputStream(os);
+    }
+
+    /**
+     * Create a decompression input stream for this method given the compressed size of the data to be read and the
+     * maximum number of chunks to be uncompressed in parallel.
+     */
+    public InputStream createInputStream(InputStream is, int size, int parallelism) throws IOException {
+        return createInputStream(is);
+    }
+
     /**
      * Get the compressed size for the given uncompressed size based on worst case compression ratio.
      */
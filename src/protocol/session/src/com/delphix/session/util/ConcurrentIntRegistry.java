@@ -0,0 +1,319 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class describes a concurrent registry of distinct objects each identified by its own unique int key. It is
+ * similar to ObjectRegistry except that it is safe for concurrent use without external synchronization.
+ *
+ * The registry is split into a fixed number of segments by the hash of the key. Each segment is an open addressing
+ * hash table with linear probing over primitive int keys, which avoids the boxing of keys and the allocation of hash
+ * entries on every registration. The segments are locked independently so that concurrent operations rarely contend
+ * with each other. The number of objects registered is maintained in an atomic counter and can be read without any
+ * locking at all.
+ *
+ * Objects are removed with backward shift deletion rather than tombstones so that the probe sequences stay short no
+ * matter how many objects have come and gone.
+ */
+public class ConcurrentIntRegistry<V> {
+
+    private static final int SEGMENT_SHIFT = 28; // Number of bits to shift the hash by to get the segment
+    private static final int SEGMENT_COUNT = 1 << (32 - SEGMENT_SHIFT); // Number of segments
+    private static final int INITIAL_CAPACITY = 16; // Initial capacity of each segment
+
+    private final Segment<V>[] segments;
+    private final AtomicInteger size = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentIntRegistry() {
+        segments = new Segment[SEGMENT_COUNT];
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment<V>();
+        }
+    }
+
+    /**
+     * Register the object with the given key. An exception is thrown if the key already exists.
+     */
+    public void register(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+
+        if (!segmentFor(hash).put(key, hash, value)) {
+            throw new IllegalStateException("object already exists " + key);
+        }
+
+        size.incrementAndGet();
+    }
+
+    /**
+     * Unregister the object with the given key. An exception is thrown if the key doesn't exist.
+     */
+    public V unregister(int key) {
+        V value = remove(key);
+
+        if (value == null) {
+            throw new IllegalStateException("object not found " + key);
+        }
+
+        return value;
+    }
+
+    /**
+     * Remove the object with the given key if it exists and return it; otherwise, return null.
+     */
+    public V remove(int key) {
+        int hash = hash(key);
+        V value = segmentFor(hash).remove(key, hash);
+
+        if (value != null) {
+            size.decrementAndGet();
+        }
+
+        return value;
+    }
+
+    public V locate(int key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    public boolean contains(int key) {
+        return locate(key) != null;
+    }
+
+    /**
+     * Add all the objects registered to the collection.
+     */
+    public void values(Collection<? super V> values) {
+        for (Segment<V> segment : segments) {
+            segment.values(values, false);
+        }
+    }
+
+    /**
+     * Remove all the objects registered and add them to the collection. Each object is removed atomically such that
+     * it is either drained or removed individually but never both.
+     */
+    public void drain(Collection<? super V> values) {
+        for (Segment<V> segment : segments) {
+            size.addAndGet(-segment.values(values, true));
+        }
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            size.addAndGet(-segment.values(null, true));
+        }
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+
+        for (Segment<V> segment : segments) {
+            segment.toString(sb);
+        }
+
+        return sb.append("}").toString();
+    }
+
+    public static <V> ConcurrentIntRegistry<V> create() {
+        return new ConcurrentIntRegistry<V>();
+    }
+
+    /**
+     * Spread the key with the golden ratio multiplier. The high bits select the segment while the low bits select the
+     * slot within the segment. Keys allocated in sequence, such as exchange IDs, remain collision free in the slots.
+     */
+    private static int hash(int key) {
+        return key * 0x9e3779b9;
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    private static class Segment<V> {
+
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int count;
+
+        public synchronized boolean put(int key, int hash, V value) {
+            int mask = keys.length - 1;
+            int index = hash & mask;
+
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    return false;
+                }
+
+                index = (index + 1) & mask;
+            }
+
+            keys[index] = key;
+            values[index] = value;
+
+            // Keep the load factor under 3/4
+            if (++count > keys.length - (keys.length >> 2)) {
+                resize();
+            }
+
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized V get(int key, int hash) {
+            int mask = keys.length - 1;
+            int index = hash & mask;
+
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    return (V) values[index];
+                }
+
+                index = (index + 1) & mask;
+            }
+
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public synchronized V remove(int key, int hash) {
+            int mask = keys.length - 1;
+            int index = hash & mask;
+
+            while (values[index] != null) {
+                if (keys[index] == key) {
+                    V value = (V) values[index];
+
+                    delete(index);
+                    count--;
+
+                    return value;
+                }
+
+                index = (index + 1) & mask;
+            }
+
+            return null;
+        }
+
+        /**
+         * Add the values in the segment to the collection if not null and optionally remove them. Return the number
+         * of values in the segment.
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized int values(Collection<? super V> collection, boolean remove) {
+            int result = count;
+
+            if (collection != null) {
+                for (Object value : values) {
+                    if (value != null) {
+                        collection.add((V) value);
+                    }
+                }
+            }
+
+            if (remove && count > 0) {
+                keys = new int[INITIAL_CAPACITY];
+                values = new Object[INITIAL_CAPACITY];
+                count = 0;
+            }
+
+            return result;
+        }
+
+        public synchronized void toString(StringBuilder sb) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    if (sb.length() > 1) {
+                        sb.append(", ");
+                    }
+
+                    sb.append(keys[i]).append('=').append(values[i]);
+                }
+            }
+        }
+
+        /**
+         * Delete the entry at the given index and shift the entries following it in the same cluster back, as long
+         * as doing so doesn't move an entry before its home slot.
+         */
+        private void delete(int index) {
+            int mask = keys.length - 1;
+            int hole = index;
+            int next = (hole + 1) & mask;
+
+            while (values[next] != null) {
+                int home = hash(keys[next]) & mask;
+
+                // Move the entry into the hole unless its home slot lies cyclically within (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+
+                next = (next + 1) & mask;
+            }
+
+            values[hole] = null;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+
+            keys = new int[oldKeys.length << 1];
+            values = new Object[oldValues.length << 1];
+
+            int mask = keys.length - 1;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int index = hash(oldKeys[i]) & mask;
+
+                    while (values[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -34,9 +34,13 @@ public class ExchangeCodec extends AbstractExternalCodec {
         this.registry = registry;
     }
 
+    public ExchangeRegistry<?> getRegistry() {
+        return registry;
+    }
+
     @Override
     protected void encodeExchange(OutputStream out, ServiceExchange exchange) throws IOException {
-        ObjectOutput oout = new ExternalObjectOutput(out);
+        ObjectOutput oout = ExternalObjectOutput.create(out);
 
         // Encode the object type
         oout.writeInt(registry.getObjectType(exchange.getClass()));
@@ -48,7 +52,7 @@ public class ExchangeCodec extends AbstractExternalCodec {
 
     @Override
     protected ServiceExchange decodeExchange(InputStream in) throws IOException, ClassNotFoundException {
-        ObjectInput oin = new ExternalObjectInput(in);
+        ObjectInput oin = ExternalObjectInput.create(in);
 
         // Decode the object type
         ServiceExchange exchange = createExchange(registry.getObjectClass(oin.readInt()));
@@ -61,6 +61,10 @@ public class ExchangeRegistry<E extends Enum<E>> {
         return values[type].getObjectClass();
     }
 
+    public int size() {
+        return values.length;
+    }
+
     public static <E extends Enum<E>> ExchangeRegistry<E> create(Class<E> clazz) {
         return new ExchangeRegistry<E>(clazz);
     }
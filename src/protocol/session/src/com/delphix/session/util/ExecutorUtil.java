@@ -18,16 +18,59 @@
 
 package com.delphix.session.util;
 
+import com.delphix.appliance.logger.Logger;
 import com.delphix.platform.PlatformManagerLocator;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public class ExecutorUtil {
 
+    private static final Logger logger = Logger.getLogger(ExecutorUtil.class);
+
+    /**
+     * System property to run service invocations and other blocking tasks on virtual threads where the runtime
+     * supports them. It is off by default.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "session.virtual.threads";
+
     private static final long SERVICE_SHUTDOWN_TIMEOUT = 15;
 
+    /**
+     * Create an executor for tasks that may block for the duration of a command, such as service invocations and
+     * remote stream transfers. With virtual threads enabled, each task runs on its own virtual thread and the number
+     * of platform threads is bounded by the carrier pool, which is sized to the number of cores, instead of by the
+     * number of tasks in flight. Otherwise, or if the runtime does not support virtual threads, a cached thread pool
+     * is returned.
+     */
+    public static ExecutorService newTaskExecutor() {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            ExecutorService executor = newVirtualThreadExecutor();
+
+            if (executor != null) {
+                return executor;
+            }
+        }
+
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Virtual threads are looked up reflectively since the code is built for runtimes that predate them.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            logger.infof("virtual threads not supported by the runtime - using platform threads instead");
+            return null;
+        }
+    }
+
     /**
      * Shutdown the executor service.
      */
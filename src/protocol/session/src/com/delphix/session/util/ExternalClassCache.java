@@ -0,0 +1,196 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class describes the class cache used by the compact object encoding for classes not found in the class table.
+ * A class is defined with its name and assigned a handle the first time it is written. Once the definition is known
+ * to have reached the peer, the class is written by handle instead. The class descriptors of serializable objects
+ * that fall back to java serialization are written the same way, under handles of their own, except that they are
+ * defined with the complete java class descriptor. The reader thus decodes the field data with the field layout of
+ * the sender, which may differ from its own under the same serial version as the class evolves compatibly.
+ *
+ * Without a cache of its own, an object stream keeps one for the life of the stream where the definitions are usable
+ * right away. A cache may also be shared by the object streams of the same connection, one for each direction, such
+ * that repeated classes cost a handle across frames. On the output side, the frames may be encoded concurrently and
+ * hit the wire in a different order. Hence, the definitions made by a frame must be committed by the user once the
+ * frame has been written, before the handles may be used by other frames. Until then, each frame that needs the class
+ * carries the definition with the same handle. On the input side, the cache is used by one decoder at a time in the
+ * order the frames are received. The cache must be discarded along with the connection, such as on transport
+ * recovery, since the handles are only meaningful to the peer on the other end.
+ *
+ * The number of handles is bounded. Classes beyond the limit are written by name each time.
+ */
+public class ExternalClassCache {
+
+    public static final int MAX_CLASSES = 4096;
+
+    // Output side
+    private final ConcurrentMap<Class<?>, Entry> entries = new ConcurrentHashMap<Class<?>, Entry>();
+    private final ConcurrentMap<Class<?>, Entry> descriptors = new ConcurrentHashMap<Class<?>, Entry>();
+    private final AtomicInteger nextHandle = new AtomicInteger();
+
+    // Input side
+    private Object[] definitions = new Object[16]; // Class or class descriptor by handle
+
+    /**
+     * Get the entry for the class to be written, assigning it a new handle if there is none yet. Return null if the
+     * cache is full.
+     */
+    public Entry getEntry(Class<?> clazz) {
+        return getEntry(entries, clazz);
+    }
+
+    /**
+     * Get the entry for the class descriptor to be written, assigning it a new handle if there is none yet. Return
+     * null if the cache is full.
+     */
+    public Entry getDescriptorEntry(Class<?> clazz) {
+        return getEntry(descriptors, clazz);
+    }
+
+    private Entry getEntry(ConcurrentMap<Class<?>, Entry> entries, Class<?> clazz) {
+        Entry entry = entries.get(clazz);
+
+        if (entry != null) {
+            return entry;
+        }
+
+        if (nextHandle.get() >= MAX_CLASSES) {
+            return null;
+        }
+
+        int handle = nextHandle.getAndIncrement();
+
+        if (handle >= MAX_CLASSES) {
+            return null;
+        }
+
+        // The handle is simply skipped if another thread has won the race
+        entry = new Entry(clazz, handle);
+        Entry existing = entries.putIfAbsent(clazz, entry);
+
+        return existing != null ? existing : entry;
+    }
+
+    /**
+     * Commit the definitions written by a frame that has been received by the peer.
+     */
+    public void commit(List<Entry> defined) {
+        for (Entry entry : defined) {
+            entry.commit();
+        }
+    }
+
+    /**
+     * Define the class for the handle read from the peer.
+     */
+    public void define(int handle, Class<?> clazz) throws StreamCorruptedException {
+        define(handle, (Object) clazz);
+    }
+
+    /**
+     * Define the class descriptor of the peer for the handle read from the peer.
+     */
+    public void defineDescriptor(int handle, ObjectStreamClass desc) throws StreamCorruptedException {
+        define(handle, (Object) desc);
+    }
+
+    private void define(int handle, Object definition) throws StreamCorruptedException {
+        if (handle < 0 || handle >= MAX_CLASSES) {
+            throw new StreamCorruptedException("invalid class handle " + handle);
+        }
+
+        if (handle >= definitions.length) {
+            definitions = Arrays.copyOf(definitions,
+                    Math.min(Math.max(handle + 1, definitions.length * 2), MAX_CLASSES));
+        }
+
+        definitions[handle] = definition;
+    }
+
+    /**
+     * Get the class for the handle read from the peer.
+     */
+    public Class<?> getClass(int handle) throws StreamCorruptedException {
+        return (Class<?>) getDefinition(handle, Class.class);
+    }
+
+    /**
+     * Get the class descriptor of the peer for the handle read from the peer.
+     */
+    public ObjectStreamClass getDescriptor(int handle) throws StreamCorruptedException {
+        return (ObjectStreamClass) getDefinition(handle, ObjectStreamClass.class);
+    }
+
+    private Object getDefinition(int handle, Class<?> type) throws StreamCorruptedException {
+        Object definition = null;
+
+        if (handle >= 0 && handle < definitions.length) {
+            definition = definitions[handle];
+        }
+
+        if (!type.isInstance(definition)) {
+            throw new StreamCorruptedException("invalid class handle " + handle);
+        }
+
+        return definition;
+    }
+
+    public int size() {
+        return entries.size() + descriptors.size();
+    }
+
+    public static class Entry {
+
+        private final Class<?> clazz;
+        private final int handle;
+
+        private volatile boolean committed;
+
+        private Entry(Class<?> clazz, int handle) {
+            this.clazz = clazz;
+            this.handle = handle;
+        }
+
+        public Class<?> getObjectClass() {
+            return clazz;
+        }
+
+        public int getHandle() {
+            return handle;
+        }
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        void commit() {
+            committed = true;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class describes the class table used by the compact object encoding of ExternalObjectOutput. It maps a class
+ * to a small integer identifier that is known to both sides of a nexus without having to be sent over the wire. The
+ * table consists of a fixed set of common classes followed by the exchange classes of each of the exchange registries
+ * in the order given. Both sides build the table from the same exchange type enums and hence agree on the mappings
+ * once the compact encoding has been negotiated.
+ *
+ * Classes not found in the table are sent by name the first time they are encountered by the object stream and by
+ * a per stream handle afterwards.
+ *
+ * The builtin classes must never be reordered or removed since the identifiers are part of the wire encoding. New
+ * classes may only be appended to the list, which in turn shifts the identifiers of the exchange classes, and would
+ * thus require a new protocol version.
+ */
+public class ExternalClassTable {
+
+    // Builtin classes with their identifiers implied by the position in the list
+    private static final Class<?>[] builtins = {
+            Object.class,
+            String.class,
+            ArrayList.class,
+            LinkedList.class,
+            HashSet.class,
+            LinkedHashSet.class,
+            HashMap.class,
+            LinkedHashMap.class,
+    };
+
+    private final Map<Class<?>, Integer> classMap = new HashMap<Class<?>, Integer>();
+    private final Class<?>[] classes;
+
+    public ExternalClassTable(ExchangeRegistry<?>... registries) {
+        List<Class<?>> list = new ArrayList<Class<?>>();
+
+        for (Class<?> clazz : builtins) {
+            list.add(clazz);
+        }
+
+        for (ExchangeRegistry<?> registry : registries) {
+            for (int type = 0; type < registry.size(); type++) {
+                list.add(registry.getObjectClass(type));
+            }
+        }
+
+        if (list.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("class table overflow " + list.size());
+        }
+
+        classes = list.toArray(new Class<?>[list.size()]);
+
+        // The first occurrence wins in case the same class is defined by more than one registry
+        for (int id = classes.length - 1; id >= 0; id--) {
+            classMap.put(classes[id], id);
+        }
+    }
+
+    /**
+     * Return the identifier of the class or -1 if it is not found in the table.
+     */
+    public int getClassId(Class<?> clazz) {
+        Integer id = classMap.get(clazz);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Return the class corresponding to the identifier.
+     */
+    public Class<?> getClass(int id) {
+        if (id < 0 || id >= classes.length) {
+            return null;
+        }
+
+        return classes[id];
+    }
+
+    public int size() {
+        return classes.length;
+    }
+}
@@ -13,12 +13,17 @@
  */
 
 /**
- * Copyright (c) 2013 by Delphix. All rights reserved.
+ * Copyright (c) 2013, 2014 by Delphix. All rights reserved.
  */
 
 package com.delphix.session.util;
 
 import java.io.*;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.util.*;
+
+import static com.delphix.session.util.ExternalObjectOutput.*;
 
 /**
  * This class provides a lightweight implementation of the ObjectInput interface. It works in tandem with the
@@ -29,16 +34,509 @@ import java.io.*;
  * the default no-arg constructor with public access. The default constructor should defer initialization til the
  * call to the readExternal method. For casual use, it also supports reading an object encoded in the java default
  * ObjectOutputStream format.
+ *
+ * If a class table is given, readObject decodes the compact encoding produced by ExternalObjectOutput with the same
+ * class table (see ExternalObjectOutput for details). The class cache, if given, must be the counterpart of the one
+ * used by the peer for the same connection.
  */
 public class ExternalObjectInput extends DataInputStream implements ObjectInput {
 
+    // Bytes allocated at a time for an encoded length beyond the bytes available in the stream
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ExternalClassTable table; // Class table for compact encoding (optional)
+    private ExternalClassCache classCache; // Class cache for classes not in the table
+
     public ExternalObjectInput(InputStream in) {
+        this(in, null, null);
+    }
+
+    public ExternalObjectInput(InputStream in, ExternalClassTable table) {
+        this(in, table, null);
+    }
+
+    public ExternalObjectInput(InputStream in, ExternalClassTable table, ExternalClassCache cache) {
         super(in);
+        this.table = table;
+
+        classCache = cache;
+    }
+
+    /**
+     * Return the input stream itself if it is an ExternalObjectInput already so that the encoding mode is carried
+     * over to the nested decoder; otherwise, wrap the input stream.
+     */
+    public static ExternalObjectInput create(InputStream in) {
+        if (in instanceof ExternalObjectInput) {
+            return (ExternalObjectInput) in;
+        }
+
+        return new ExternalObjectInput(in);
+    }
+
+    public boolean isCompact() {
+        return table != null;
     }
 
     @Override
     public Object readObject() throws ClassNotFoundException, IOException {
-        ObjectInputStream ois = new ObjectInputStream(this);
+        if (table != null) {
+            return readCompact();
+        }
+
+        return readSerial();
+    }
+
+    private Object readSerial() throws ClassNotFoundException, IOException {
+        ObjectInputStream ois = table != null ? new CompactObjectInputStream() : new ObjectInputStream(this);
         return ois.readObject();
     }
+
+    private Object readCompact() throws ClassNotFoundException, IOException {
+        int tag = readUnsignedByte();
+
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+
+        case TAG_TRUE:
+            return Boolean.TRUE;
+
+        case TAG_FALSE:
+            return Boolean.FALSE;
+
+        case TAG_BYTE:
+            return readByte();
+
+        case TAG_SHORT:
+            return readShort();
+
+        case TAG_CHAR:
+            return readChar();
+
+        case TAG_INT:
+            return readInt();
+
+        case TAG_LONG:
+            return readLong();
+
+        case TAG_FLOAT:
+            return readFloat();
+
+        case TAG_DOUBLE:
+            return readDouble();
+
+        case TAG_STRING:
+            return readUTF();
+
+        case TAG_LONG_STRING:
+            return readLongString();
+
+        case TAG_UUID:
+            long msb = readLong();
+            return new UUID(msb, readLong());
+
+        case TAG_ENUM:
+            return readEnum(readClass(this));
+
+        case TAG_EXTERNAL:
+            return readExternal(readClass(this));
+
+        case TAG_COLLECTION:
+            return readCollection(readClass(this));
+
+        case TAG_MAP:
+            return readMap(readClass(this));
+
+        case TAG_SERIAL:
+            return readSerial();
+
+        default:
+            return readArray(tag);
+        }
+    }
+
+    private String readLongString() throws IOException {
+        return new String(readChars(readLength()));
+    }
+
+    private Object readEnum(Class<?> clazz) throws IOException {
+        Object[] constants = clazz.getEnumConstants();
+        int ordinal = readUnsignedShort();
+
+        if (constants == null || ordinal >= constants.length) {
+            throw new InvalidClassException(clazz.getName(), "invalid enum constant " + ordinal);
+        }
+
+        return constants[ordinal];
+    }
+
+    private Object readExternal(Class<?> clazz) throws ClassNotFoundException, IOException {
+        if (!Externalizable.class.isAssignableFrom(clazz)) {
+            throw new InvalidClassException(clazz.getName(), "not externalizable");
+        }
+
+        Externalizable obj;
+
+        try {
+            // Allow for non-public classes with a public no-arg constructor the same way java serialization does
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            obj = (Externalizable) constructor.newInstance();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        obj.readExternal(this);
+
+        return obj;
+    }
+
+    private Object readCollection(Class<?> clazz) throws ClassNotFoundException, IOException {
+        int size = readLength();
+        Collection<Object> collection;
+
+        if (clazz == ArrayList.class) {
+            collection = new ArrayList<Object>(getInitialLength(size, 1));
+        } else if (clazz == LinkedList.class) {
+            collection = new LinkedList<Object>();
+        } else if (clazz == HashSet.class) {
+            collection = new HashSet<Object>(getCapacity(getInitialLength(size, 1)));
+        } else if (clazz == LinkedHashSet.class) {
+            collection = new LinkedHashSet<Object>(getCapacity(getInitialLength(size, 1)));
+        } else {
+            throw new InvalidClassException(clazz.getName(), "unsupported collection");
+        }
+
+        for (int i = 0; i < size; i++) {
+            collection.add(readCompact());
+        }
+
+        return collection;
+    }
+
+    private Object readMap(Class<?> clazz) throws ClassNotFoundException, IOException {
+        int size = readLength();
+        Map<Object, Object> map;
+
+        if (clazz == HashMap.class) {
+            map = new HashMap<Object, Object>(getCapacity(getInitialLength(size, 2)));
+        } else if (clazz == LinkedHashMap.class) {
+            map = new LinkedHashMap<Object, Object>(getCapacity(getInitialLength(size, 2)));
+        } else {
+            throw new InvalidClassException(clazz.getName(), "unsupported map");
+        }
+
+        for (int i = 0; i < size; i++) {
+            Object key = readCompact();
+            map.put(key, readCompact());
+        }
+
+        return map;
+    }
+
+    private static int getCapacity(int size) {
+        return Math.max((int) (size / 0.75f) + 1, 16);
+    }
+
+    private Object readArray(int tag) throws ClassNotFoundException, IOException {
+        switch (tag) {
+        case TAG_OBJECT_ARRAY:
+            Class<?> componentType = readClass(this);
+            return readObjects(componentType, readLength());
+
+        case TAG_BYTE_ARRAY:
+            return readBytes(readLength());
+
+        case TAG_INT_ARRAY:
+            return readInts(readLength());
+
+        case TAG_LONG_ARRAY:
+            return readLongs(readLength());
+
+        case TAG_BOOLEAN_ARRAY:
+            return readBooleans(readLength());
+
+        case TAG_SHORT_ARRAY:
+            return readShorts(readLength());
+
+        case TAG_CHAR_ARRAY:
+            return readChars(readLength());
+
+        case TAG_FLOAT_ARRAY:
+            return readFloats(readLength());
+
+        case TAG_DOUBLE_ARRAY:
+            return readDoubles(readLength());
+
+        default:
+            throw new StreamCorruptedException("invalid object tag " + tag);
+        }
+    }
+
+    private Object[] readObjects(Class<?> componentType, int length) throws ClassNotFoundException, IOException {
+        Object[] objects = (Object[]) Array.newInstance(componentType, getInitialLength(length, 1));
+
+        for (int i = 0; i < length; i++) {
+            if (i == objects.length) {
+                objects = Arrays.copyOf(objects, getGrowLength(i, length));
+            }
+
+            objects[i] = readCompact();
+        }
+
+        return objects;
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[getInitialLength(length, 1)];
+
+        for (int offset = 0; offset < length; offset = bytes.length) {
+            if (offset == bytes.length) {
+                bytes = Arrays.copyOf(bytes, getGrowLength(offset, length));
+            }
+
+            readFully(bytes, offset, bytes.length - offset);
+        }
+
+        return bytes;
+    }
+
+    private int[] readInts(int length) throws IOException {
+        int[] ints = new int[getInitialLength(length, 4)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == ints.length) {
+                ints = Arrays.copyOf(ints, getGrowLength(i, length));
+            }
+
+            ints[i] = readInt();
+        }
+
+        return ints;
+    }
+
+    private long[] readLongs(int length) throws IOException {
+        long[] longs = new long[getInitialLength(length, 8)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == longs.length) {
+                longs = Arrays.copyOf(longs, getGrowLength(i, length));
+            }
+
+            longs[i] = readLong();
+        }
+
+        return longs;
+    }
+
+    private boolean[] readBooleans(int length) throws IOException {
+        boolean[] booleans = new boolean[getInitialLength(length, 1)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == booleans.length) {
+                booleans = Arrays.copyOf(booleans, getGrowLength(i, length));
+            }
+
+            booleans[i] = readBoolean();
+        }
+
+        return booleans;
+    }
+
+    private short[] readShorts(int length) throws IOException {
+        short[] shorts = new short[getInitialLength(length, 2)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == shorts.length) {
+                shorts = Arrays.copyOf(shorts, getGrowLength(i, length));
+            }
+
+            shorts[i] = readShort();
+        }
+
+        return shorts;
+    }
+
+    private char[] readChars(int length) throws IOException {
+        char[] chars = new char[getInitialLength(length, 2)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == chars.length) {
+                chars = Arrays.copyOf(chars, getGrowLength(i, length));
+            }
+
+            chars[i] = readChar();
+        }
+
+        return chars;
+    }
+
+    private float[] readFloats(int length) throws IOException {
+        float[] floats = new float[getInitialLength(length, 4)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == floats.length) {
+                floats = Arrays.copyOf(floats, getGrowLength(i, length));
+            }
+
+            floats[i] = readFloat();
+        }
+
+        return floats;
+    }
+
+    private double[] readDoubles(int length) throws IOException {
+        double[] doubles = new double[getInitialLength(length, 8)];
+
+        for (int i = 0; i < length; i++) {
+            if (i == doubles.length) {
+                doubles = Arrays.copyOf(doubles, getGrowLength(i, length));
+            }
+
+            doubles[i] = readDouble();
+        }
+
+        return doubles;
+    }
+
+    private int readLength() throws IOException {
+        int length = readInt();
+
+        if (length < 0) {
+            throw new StreamCorruptedException("invalid length " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Return the number of elements to allocate up front for an array or collection of the given length, where each
+     * element takes at least the given number of bytes on the wire. The length is trusted only as far as the bytes
+     * available in the stream cover it, so that a corrupt length fails on the missing data rather than on a huge
+     * allocation. Beyond that, the array is allocated a chunk at a time and grown as the elements are read.
+     */
+    private int getInitialLength(int length, int elementSize) throws IOException {
+        if ((long) length * elementSize <= available()) {
+            return length;
+        }
+
+        return Math.min(length, Math.max(CHUNK_SIZE / elementSize, 1));
+    }
+
+    private static int getGrowLength(int current, int length) {
+        return (int) Math.min(current * 2L, length);
+    }
+
+    /**
+     * Read the class reference written by ExternalObjectOutput.
+     */
+    private Class<?> readClass(DataInput in) throws ClassNotFoundException, IOException {
+        int ref = in.readShort();
+
+        if (ref >= 0) {
+            Class<?> clazz = table.getClass(ref);
+
+            if (clazz == null) {
+                throw new StreamCorruptedException("invalid class id " + ref);
+            }
+
+            return clazz;
+        }
+
+        if (ref == CLASS_NEW) {
+            return readClassName(in);
+        }
+
+        if (ref == CLASS_DEFINE) {
+            int handle = in.readUnsignedShort();
+            Class<?> clazz = readClassName(in);
+
+            getClassCache().define(handle, clazz);
+
+            return clazz;
+        }
+
+        return getClassCache().getClass(CLASS_HANDLE - ref);
+    }
+
+    private ExternalClassCache getClassCache() {
+        if (classCache == null) {
+            classCache = new ExternalClassCache();
+        }
+
+        return classCache;
+    }
+
+    /**
+     * Read the class name and verify the serial version against the local class.
+     */
+    private Class<?> readClassName(DataInput in) throws ClassNotFoundException, IOException {
+        Class<?> clazz = resolveClass(in.readUTF());
+        long suid = in.readLong();
+
+        ObjectStreamClass desc = ObjectStreamClass.lookup(clazz);
+
+        if (desc != null && desc.getSerialVersionUID() != suid) {
+            throw new InvalidClassException(clazz.getName(), "incompatible serial version " + suid + " with local " +
+                    desc.getSerialVersionUID());
+        }
+
+        return clazz;
+    }
+
+    /**
+     * Load the class by name. The context class loader is preferred if there is one.
+     */
+    protected Class<?> resolveClass(String name) throws ClassNotFoundException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+        if (loader == null) {
+            loader = ExternalObjectInput.class.getClassLoader();
+        }
+
+        return Class.forName(name, false, loader);
+    }
+
+    /**
+     * This class reads the class descriptors of java serialization written as references to the class cache of the
+     * compact encoding. The descriptor of the peer is read in the java format the first time and cached for the
+     * handle, such that the field data is decoded with the field layout of the peer as java serialization does.
+     */
+    private class CompactObjectInputStream extends ObjectInputStream {
+
+        public CompactObjectInputStream() throws IOException {
+            super(ExternalObjectInput.this);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int ref = readShort();
+
+            if (ref == CLASS_NEW) {
+                return super.readClassDescriptor();
+            }
+
+            if (ref == CLASS_DEFINE) {
+                int handle = readUnsignedShort();
+                ObjectStreamClass desc = super.readClassDescriptor();
+
+                getClassCache().defineDescriptor(handle, desc);
+
+                return desc;
+            }
+
+            if (ref >= 0) {
+                throw new StreamCorruptedException("invalid class descriptor reference " + ref);
+            }
+
+            return getClassCache().getDescriptor(CLASS_HANDLE - ref);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+            return ExternalObjectInput.this.resolveClass(desc.getName());
+        }
+    }
 }
@@ -13,12 +13,13 @@
  */
 
 /**
- * Copyright (c) 2013 by Delphix. All rights reserved.
+ * Copyright (c) 2013, 2014 by Delphix. All rights reserved.
  */
 
 package com.delphix.session.util;
 
 import java.io.*;
+import java.util.*;
 
 /**
  * This class provides a lightweight implementation of the ObjectOutput interface. Contrary to the full featured
@@ -29,24 +30,472 @@ import java.io.*;
  * To encode such an object, the writeExternal method should be called with ExternalObjectOutput. For casual use,
  * it is also possible to call writeObject on ExternalObjectOutput for an object that implements the Serializable
  * interface. But keep in mind that doing so will write out the full java class descriptor.
+ *
+ * If a class table is given, writeObject uses a compact encoding instead, which is negotiated per nexus. Each object
+ * is prefixed with a one byte tag. Boxed primitives, strings, UUIDs, enums, arrays, and the common list, set, and map
+ * implementations are encoded inline, as are Externalizable objects via writeExternal. A class is referred to by its
+ * identifier in the class table, or by name the first time it is written and by a handle afterwards. The handles are
+ * kept in a class cache private to the stream or shared across the frames of a connection (see ExternalClassCache).
+ * Anything else falls back to java serialization written straight into the stream, with the class descriptors written
+ * in full the first time and by a handle afterwards, such that the peer decodes the field data with the field layout
+ * of the sender as java serialization does. Unlike the java serialization, the compact encoding does not preserve
+ * shared references between the objects encoded inline. Nor does it support cyclic references, such as a collection
+ * containing itself or an Externalizable object writing a back pointer to its parent, which fail with
+ * NotSerializableException instead.
  */
 public class ExternalObjectOutput extends DataOutputStream implements ObjectOutput {
 
+    // Object tags of the compact encoding
+    static final int TAG_NULL = 0;
+    static final int TAG_TRUE = 1;
+    static final int TAG_FALSE = 2;
+    static final int TAG_BYTE = 3;
+    static final int TAG_SHORT = 4;
+    static final int TAG_CHAR = 5;
+    static final int TAG_INT = 6;
+    static final int TAG_LONG = 7;
+    static final int TAG_FLOAT = 8;
+    static final int TAG_DOUBLE = 9;
+    static final int TAG_STRING = 10;
+    static final int TAG_LONG_STRING = 11;
+    static final int TAG_UUID = 12;
+    static final int TAG_ENUM = 13;
+    static final int TAG_EXTERNAL = 14;
+    static final int TAG_COLLECTION = 15;
+    static final int TAG_MAP = 16;
+    static final int TAG_OBJECT_ARRAY = 17;
+    static final int TAG_BOOLEAN_ARRAY = 18;
+    static final int TAG_BYTE_ARRAY = 19;
+    static final int TAG_SHORT_ARRAY = 20;
+    static final int TAG_CHAR_ARRAY = 21;
+    static final int TAG_INT_ARRAY = 22;
+    static final int TAG_LONG_ARRAY = 23;
+    static final int TAG_FLOAT_ARRAY = 24;
+    static final int TAG_DOUBLE_ARRAY = 25;
+    static final int TAG_SERIAL = 26;
+
+    /*
+     * Class references other than the class table identifiers; smaller values refer to the class handles. A class is
+     * defined by its name and serial version, or by the java class descriptor in case of java serialization.
+     */
+    static final int CLASS_NEW = -1; // Class definition without a handle
+    static final int CLASS_DEFINE = -2; // Class handle followed by the class definition
+    static final int CLASS_HANDLE = -3; // Class handle zero
+
+    private static final int MAX_UTF_LENGTH = 65535; // Maximum length of modified UTF-8 encoding
+
+    /*
+     * Objects written inline are tracked by identity to catch cyclic references. A cycle recurses without bound, so it
+     * is still caught if the objects at the first few levels of nesting are not tracked, which spares the typical flat
+     * payload from maintaining the identity map altogether.
+     */
+    private static final int UNTRACKED_DEPTH = 8;
+
+    private final ExternalClassTable table; // Class table for compact encoding (optional)
+    private final boolean sharedCache; // Class cache shared with other streams
+    private ExternalClassCache classCache; // Class cache for classes not in the table
+    private List<ExternalClassCache.Entry> definedClasses; // Classes defined in the shared cache by the stream
+
+    private int depth; // Nesting depth of the objects being written inline
+    private Map<Object, Object> inProgress; // Objects being written inline beyond the untracked depth
+
     public ExternalObjectOutput(OutputStream out) {
+        this(out, null, null);
+    }
+
+    public ExternalObjectOutput(OutputStream out, ExternalClassTable table) {
+        this(out, table, null);
+    }
+
+    public ExternalObjectOutput(OutputStream out, ExternalClassTable table, ExternalClassCache cache) {
         super(out);
+        this.table = table;
+
+        sharedCache = cache != null;
+        classCache = cache;
+    }
+
+    /**
+     * Return the output stream itself if it is an ExternalObjectOutput already so that the encoding mode is carried
+     * over to the nested encoder; otherwise, wrap the output stream.
+     */
+    public static ExternalObjectOutput create(OutputStream out) {
+        if (out instanceof ExternalObjectOutput) {
+            return (ExternalObjectOutput) out;
+        }
+
+        return new ExternalObjectOutput(out);
+    }
+
+    public boolean isCompact() {
+        return table != null;
+    }
+
+    /**
+     * Return the classes defined in the shared class cache by the stream. They must be committed to the cache once the
+     * encoded data has been written to the peer.
+     */
+    public List<ExternalClassCache.Entry> getDefinedClasses() {
+        if (definedClasses == null) {
+            return Collections.emptyList();
+        }
+
+        return definedClasses;
     }
 
     @Override
     public void writeObject(Object obj) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(baos);
+        if (table != null) {
+            writeCompact(obj);
+        } else {
+            writeSerial(obj);
+        }
+    }
+
+    /**
+     * Write the object with java serialization straight into this stream without closing it.
+     */
+    private void writeSerial(Object obj) throws IOException {
+        ObjectOutputStream oos = table != null ? new CompactObjectOutputStream() : new ObjectOutputStream(this);
+
+        oos.writeObject(obj);
+        oos.flush();
+    }
+
+    private void writeCompact(Object obj) throws IOException {
+        if (obj == null) {
+            write(TAG_NULL);
+            return;
+        }
+
+        Class<?> clazz = obj.getClass();
+
+        if (clazz == String.class) {
+            writeString((String) obj);
+        } else if (clazz == Integer.class) {
+            write(TAG_INT);
+            writeInt((Integer) obj);
+        } else if (clazz == Long.class) {
+            write(TAG_LONG);
+            writeLong((Long) obj);
+        } else if (clazz == Boolean.class) {
+            write((Boolean) obj ? TAG_TRUE : TAG_FALSE);
+        } else if (clazz == Byte.class) {
+            write(TAG_BYTE);
+            writeByte((Byte) obj);
+        } else if (clazz == Short.class) {
+            write(TAG_SHORT);
+            writeShort((Short) obj);
+        } else if (clazz == Character.class) {
+            write(TAG_CHAR);
+            writeChar((Character) obj);
+        } else if (clazz == Float.class) {
+            write(TAG_FLOAT);
+            writeFloat((Float) obj);
+        } else if (clazz == Double.class) {
+            write(TAG_DOUBLE);
+            writeDouble((Double) obj);
+        } else if (clazz == UUID.class) {
+            UUID uuid = (UUID) obj;
+
+            write(TAG_UUID);
+            writeLong(uuid.getMostSignificantBits());
+            writeLong(uuid.getLeastSignificantBits());
+        } else if (obj instanceof Enum) {
+            Enum<?> e = (Enum<?>) obj;
+
+            write(TAG_ENUM);
+            writeClass(this, e.getDeclaringClass());
+            writeShort(e.ordinal());
+        } else if (obj instanceof Externalizable) {
+            enter(obj);
+
+            try {
+                write(TAG_EXTERNAL);
+                writeClass(this, clazz);
+                ((Externalizable) obj).writeExternal(this);
+            } finally {
+                exit(obj);
+            }
+        } else if (clazz.isArray()) {
+            writeArray(obj, clazz.getComponentType());
+        } else if (clazz == ArrayList.class || clazz == LinkedList.class || clazz == HashSet.class ||
+                clazz == LinkedHashSet.class) {
+            Collection<?> collection = (Collection<?>) obj;
+
+            enter(obj);
+
+            try {
+                write(TAG_COLLECTION);
+                writeClass(this, clazz);
+                writeInt(collection.size());
+
+                for (Object element : collection) {
+                    writeCompact(element);
+                }
+            } finally {
+                exit(obj);
+            }
+        } else if (clazz == HashMap.class || clazz == LinkedHashMap.class) {
+            Map<?, ?> map = (Map<?, ?>) obj;
+
+            enter(obj);
+
+            try {
+                write(TAG_MAP);
+                writeClass(this, clazz);
+                writeInt(map.size());
+
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeCompact(entry.getKey());
+                    writeCompact(entry.getValue());
+                }
+            } finally {
+                exit(obj);
+            }
+        } else {
+            write(TAG_SERIAL);
+            writeSerial(obj);
+        }
+    }
 
-        try {
-            out.writeObject(obj);
-        } finally {
-            out.close();
+    /**
+     * Enter an object to be written inline. Throw NotSerializableException if the object is already being written at
+     * an outer level, i.e., it is referred to by itself directly or indirectly.
+     */
+    private void enter(Object obj) throws NotSerializableException {
+        depth++;
+
+        if (depth <= UNTRACKED_DEPTH) {
+            return;
+        }
+
+        if (inProgress == null) {
+            inProgress = new IdentityHashMap<Object, Object>();
+        }
+
+        if (inProgress.put(obj, obj) != null) {
+            depth--;
+            throw new NotSerializableException("cyclic reference to " + obj.getClass().getName() +
+                    " not supported by the compact encoding");
+        }
+    }
+
+    private void exit(Object obj) {
+        if (depth > UNTRACKED_DEPTH) {
+            inProgress.remove(obj);
         }
 
-        super.write(baos.toByteArray());
+        depth--;
+    }
+
+    private void writeString(String str) throws IOException {
+        // Every char takes at most 3 bytes in modified UTF-8
+        if (str.length() <= MAX_UTF_LENGTH / 3 || getUTFLength(str) <= MAX_UTF_LENGTH) {
+            write(TAG_STRING);
+            writeUTF(str);
+        } else {
+            write(TAG_LONG_STRING);
+            writeInt(str.length());
+            writeChars(str);
+        }
+    }
+
+    private static int getUTFLength(String str) {
+        int length = 0;
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            if (c >= 0x0001 && c <= 0x007f) {
+                length++;
+            } else if (c > 0x07ff) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+
+        return length;
+    }
+
+    private void writeArray(Object array, Class<?> componentType) throws IOException {
+        if (!componentType.isPrimitive()) {
+            Object[] objects = (Object[]) array;
+
+            enter(array);
+
+            try {
+                write(TAG_OBJECT_ARRAY);
+                writeClass(this, componentType);
+                writeInt(objects.length);
+
+                for (Object obj : objects) {
+                    writeCompact(obj);
+                }
+            } finally {
+                exit(array);
+            }
+        } else if (componentType == byte.class) {
+            byte[] bytes = (byte[]) array;
+
+            write(TAG_BYTE_ARRAY);
+            writeInt(bytes.length);
+            write(bytes);
+        } else if (componentType == int.class) {
+            int[] ints = (int[]) array;
+
+            write(TAG_INT_ARRAY);
+            writeInt(ints.length);
+
+            for (int v : ints) {
+                writeInt(v);
+            }
+        } else if (componentType == long.class) {
+            long[] longs = (long[]) array;
+
+            write(TAG_LONG_ARRAY);
+            writeInt(longs.length);
+
+            for (long v : longs) {
+                writeLong(v);
+            }
+        } else if (componentType == boolean.class) {
+            boolean[] booleans = (boolean[]) array;
+
+            write(TAG_BOOLEAN_ARRAY);
+            writeInt(booleans.length);
+
+            for (boolean v : booleans) {
+                writeBoolean(v);
+            }
+        } else if (componentType == short.class) {
+            short[] shorts = (short[]) array;
+
+            write(TAG_SHORT_ARRAY);
+            writeInt(shorts.length);
+
+            for (short v : shorts) {
+                writeShort(v);
+            }
+        } else if (componentType == char.class) {
+            char[] chars = (char[]) array;
+
+            write(TAG_CHAR_ARRAY);
+            writeInt(chars.length);
+
+            for (char v : chars) {
+                writeChar(v);
+            }
+        } else if (componentType == float.class) {
+            float[] floats = (float[]) array;
+
+            write(TAG_FLOAT_ARRAY);
+            writeInt(floats.length);
+
+            for (float v : floats) {
+                writeFloat(v);
+            }
+        } else {
+            double[] doubles = (double[]) array;
+
+            write(TAG_DOUBLE_ARRAY);
+            writeInt(doubles.length);
+
+            for (double v : doubles) {
+                writeDouble(v);
+            }
+        }
+    }
+
+    /**
+     * Write the class reference. A class not found in the class table is written by name the first time, along with
+     * its serial version for the peer to verify, and by handle afterwards.
+     */
+    private void writeClass(DataOutput out, Class<?> clazz) throws IOException {
+        int id = table.getClassId(clazz);
+
+        if (id >= 0) {
+            out.writeShort(id);
+            return;
+        }
+
+        if (writeReference(out, getClassCache().getEntry(clazz))) {
+            writeClassName(out, clazz);
+        }
+    }
+
+    /**
+     * Write the reference to the class descriptor of java serialization. Unlike a class reference, the descriptor is
+     * never referred to by the class table identifier, since the peer needs the field layout of the sender as well.
+     * Return true if the descriptor itself must follow.
+     */
+    private boolean writeDescriptor(DataOutput out, Class<?> clazz) throws IOException {
+        return writeReference(out, getClassCache().getDescriptorEntry(clazz));
+    }
+
+    private ExternalClassCache getClassCache() {
+        if (classCache == null) {
+            classCache = new ExternalClassCache();
+        }
+
+        return classCache;
+    }
+
+    /**
+     * Write the reference to the class cache entry. Return true if the definition must follow, i.e., the entry has
+     * yet to be defined to the peer or there is no entry at all with the cache full.
+     */
+    private boolean writeReference(DataOutput out, ExternalClassCache.Entry entry) throws IOException {
+        if (entry == null) {
+            out.writeShort(CLASS_NEW);
+            return true;
+        }
+
+        if (entry.isCommitted() || (definedClasses != null && definedClasses.contains(entry))) {
+            out.writeShort(CLASS_HANDLE - entry.getHandle());
+            return false;
+        }
+
+        out.writeShort(CLASS_DEFINE);
+        out.writeShort(entry.getHandle());
+
+        // The definition is usable right away unless the cache is shared with other streams
+        if (sharedCache) {
+            if (definedClasses == null) {
+                definedClasses = new ArrayList<ExternalClassCache.Entry>();
+            }
+
+            definedClasses.add(entry);
+        } else {
+            entry.commit();
+        }
+
+        return true;
+    }
+
+    private static void writeClassName(DataOutput out, Class<?> clazz) throws IOException {
+        ObjectStreamClass desc = ObjectStreamClass.lookup(clazz);
+
+        out.writeUTF(clazz.getName());
+        out.writeLong(desc != null ? desc.getSerialVersionUID() : 0);
+    }
+
+    /**
+     * This class writes the class descriptors of java serialization as references to the class cache of the compact
+     * encoding, followed by the descriptor in the java format the first time.
+     */
+    private class CompactObjectOutputStream extends ObjectOutputStream {
+
+        public CompactObjectOutputStream() throws IOException {
+            super(ExternalObjectOutput.this);
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            if (ExternalObjectOutput.this.writeDescriptor(this, desc.forClass())) {
+                super.writeClassDescriptor(desc);
+            }
+        }
     }
 }
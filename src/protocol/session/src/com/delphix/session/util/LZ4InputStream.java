@@ -21,7 +21,11 @@ package com.delphix.session.util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
 
 /**
  * Uncompress a stream which has been compressed with LZ4OutputStream. The same LZ4Codec must be provided as the one
@@ -32,15 +36,26 @@ import java.util.Arrays;
  * temporarily until it is read.
  *
  * In general, we don't know the chunk sizes of the compressed stream, whether it is compressed and uncompressed. To
- * accommodate, the internal buffers used here are dynamically expandable.
+ * accommodate, the internal buffers used here are dynamically expandable. The chunk size is bounded by the maxSize
+ * the stream has been compressed with, however, and the chunk lengths read from the stream are validated against it
+ * before any buffer is allocated, such that a corrupt stream is rejected rather than allocating up to 2GB at a time.
+ *
+ * The input stream may optionally be created in the parallel mode with an executor and a parallelism. In that case,
+ * up to parallelism compressed chunks are read ahead from the underlying input stream and uncompressed concurrently
+ * in the executor. The uncompressed chunks are returned in the same order as they appear in the stream.
  */
 public class LZ4InputStream extends InputStream {
 
     private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final int DEFAULT_MAX_SIZE = 65536;
 
     private final InputStream is;
     private final LZ4Codec codec;
 
+    // Maximum chunk lengths as bounded by the maxSize of the output stream
+    private final int maxUncompressedLength;
+    private final int maxCompressedLength;
+
     // Staging buffer for unread uncompressed data
     private byte[] stagingBuffer;
     private int stagingOffset;
@@ -52,13 +67,49 @@ public class LZ4InputStream extends InputStream {
 
     private final byte[] oneByteBuffer;
 
+    // Executor and read ahead chunks for parallel decompression
+    private final Executor executor;
+    private final int parallelism;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private boolean eof;
+
     public LZ4InputStream(InputStream is, LZ4Codec codec, int bufferSize) {
+        this(is, codec, bufferSize, null, 1);
+    }
+
+    public LZ4InputStream(InputStream is, LZ4Codec codec, int bufferSize, Executor executor, int parallelism) {
+        this(is, codec, bufferSize, Math.max(bufferSize, DEFAULT_MAX_SIZE), executor, parallelism);
+    }
+
+    /**
+     * Create a new InputStream in the parallel mode if an executor is provided and the parallelism is greater than
+     * one. Otherwise, the input stream operates in the serial mode. The maxSize specifies the maximum size of the
+     * uncompressed chunk, which must be no less than the one the stream has been compressed with. Unless given, it
+     * defaults to the larger of the bufferSize and the default maxSize of LZ4OutputStream.
+     */
+    public LZ4InputStream(InputStream is, LZ4Codec codec, int bufferSize, int maxSize, Executor executor,
+            int parallelism) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("invalid maxSize - must be > 0");
+        }
+
         this.is = is;
         this.codec = codec;
 
+        this.maxUncompressedLength = maxSize;
+        this.maxCompressedLength = codec.getMaxCompressedLength(maxSize);
+
         this.stagingBuffer = new byte[bufferSize];
         this.encodedBuffer = new byte[bufferSize];
         this.oneByteBuffer = new byte[1];
+
+        if (executor != null && parallelism > 1) {
+            this.executor = executor;
+            this.parallelism = parallelism;
+        } else {
+            this.executor = null;
+            this.parallelism = 1;
+        }
     }
 
     public LZ4InputStream(InputStream is, LZ4Codec codec) {
@@ -77,6 +128,12 @@ public class LZ4InputStream extends InputStream {
 
         stagingOffset = -1;
 
+        for (Future<byte[]> future : pending) {
+            future.cancel(false);
+        }
+
+        pending.clear();
+
         super.close();
         is.close();
     }
@@ -121,6 +178,10 @@ public class LZ4InputStream extends InputStream {
             }
         }
 
+        if (executor != null) {
+            return readParallel(buf, off, len, count);
+        }
+
         while (true) {
             assert stagingLength == 0;
 
@@ -132,10 +193,7 @@ public class LZ4InputStream extends InputStream {
                 return count == 0 ? -1 : count;
             }
 
-            int compressedLength = ((encodedBuffer[0] & 0xFF) << 24)
-                    | ((encodedBuffer[1] & 0xFF) << 16)
-                    | ((encodedBuffer[2] & 0xFF) << 8)
-                    | (encodedBuffer[3] & 0xFF);
+            int compressedLength = getCompressedLength();
 
             if (encodedBuffer.length < 4 + compressedLength) {
                 encodedBuffer = expandBuffer(encodedBuffer, compressedLength + 4);
@@ -146,7 +204,7 @@ public class LZ4InputStream extends InputStream {
             assert success : "malformed input data exception expected";
 
             // Get the uncompressed data length for the compressed chunk
-            int maxLength = codec.getMaxUncompressedLength(encodedBuffer, 4, compressedLength);
+            int maxLength = getUncompressedLength(encodedBuffer, 4, compressedLength);
 
             if (maxLength > len) {
                 /*
@@ -191,6 +249,144 @@ public class LZ4InputStream extends InputStream {
         return count;
     }
 
+    /**
+     * Read from the uncompressed chunks in the parallel mode. Each chunk becomes the staging buffer in turn once it
+     * has been uncompressed.
+     */
+    private int readParallel(byte[] buf, int off, int len, int count) throws IOException {
+        while (len > 0) {
+            assert stagingLength == 0;
+
+            readAhead();
+
+            if (pending.isEmpty()) {
+                return count == 0 ? -1 : count;
+            }
+
+            stagingBuffer = waitPending();
+            stagingOffset = 0;
+            stagingLength = stagingBuffer.length;
+
+            int copied = Math.min(len, stagingLength);
+
+            System.arraycopy(stagingBuffer, stagingOffset, buf, off, copied);
+
+            stagingOffset += copied;
+            stagingLength -= copied;
+
+            off += copied;
+            len -= copied;
+            count += copied;
+        }
+
+        return count;
+    }
+
+    /**
+     * Read ahead compressed chunks from the input stream and submit them for decompression until we have reached the
+     * parallelism or the end of the input stream.
+     */
+    private void readAhead() throws IOException {
+        while (!eof && pending.size() < parallelism) {
+            if (!readAtLeast(4)) {
+                eof = true;
+                break;
+            }
+
+            int compressedLength = getCompressedLength();
+
+            final byte[] chunk = new byte[compressedLength];
+
+            // Take whatever has been read into the encoded buffer beyond the compressed data length
+            int copied = Math.min(encodedLength - 4, compressedLength);
+            System.arraycopy(encodedBuffer, 4, chunk, 0, copied);
+            rewindEncodedBuffer(4 + copied);
+
+            while (copied < compressedLength) {
+                int inc = is.read(chunk, copied, compressedLength - copied);
+
+                if (inc == -1) {
+                    throw new EOFException("Malformed input data");
+                }
+
+                copied += inc;
+            }
+
+            FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+
+                @Override
+                public byte[] call() throws IOException {
+                    int maxLength = getUncompressedLength(chunk, 0, chunk.length);
+
+                    byte[] result = new byte[maxLength];
+                    int length = codec.uncompress(chunk, 0, chunk.length, result, 0, maxLength);
+
+                    return length == maxLength ? result : Arrays.copyOf(result, length);
+                }
+            });
+
+            pending.add(task);
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Wait for the oldest read ahead chunk to be uncompressed and return the result.
+     */
+    private byte[] waitPending() throws IOException {
+        Future<byte[]> future = pending.poll();
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Return the compressed data length of the chunk at the beginning of the encoded buffer. It is validated before
+     * any buffer is allocated for the chunk.
+     */
+    private int getCompressedLength() throws IOException {
+        int compressedLength = ((encodedBuffer[0] & 0xFF) << 24)
+                | ((encodedBuffer[1] & 0xFF) << 16)
+                | ((encodedBuffer[2] & 0xFF) << 8)
+                | (encodedBuffer[3] & 0xFF);
+
+        if (compressedLength < 0 || compressedLength > maxCompressedLength) {
+            throw new IOException("Malformed input data - invalid compressed length " + compressedLength);
+        }
+
+        return compressedLength;
+    }
+
+    /**
+     * Return the uncompressed data length of the compressed chunk. It is validated before any buffer is allocated
+     * to uncompress the chunk into.
+     */
+    private int getUncompressedLength(byte[] src, int srcOff, int srcLen) throws IOException {
+        int length = codec.getMaxUncompressedLength(src, srcOff, srcLen);
+
+        if (length < 0 || length > maxUncompressedLength) {
+            throw new IOException("Malformed input data - invalid uncompressed length " + length);
+        }
+
+        return length;
+    }
+
     /**
      * Read at least the given length of bytes from the input stream. The assumption is that this is the start of
      * a new compressed data chunk. The method may block until it's done. If EOF is reached before at least length
@@ -19,7 +19,11 @@
 package com.delphix.session.util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
 
 /**
  * LZ4 based output stream that compresses data by splitting it into variable length chunks and compressing each
@@ -40,6 +44,12 @@ import java.io.OutputStream;
  *  <compressed data> = <uncompressed data length> + <lz4 compressor output>
  *
  * Both the <compressed data length> and <uncompressed data length> fields are four byte in length.
+ *
+ * Since each chunk is compressed independently of the others, the output stream may optionally be created in the
+ * parallel mode with an executor and a parallelism. In that case, each chunk is copied and compressed in the executor
+ * while up to parallelism chunks are outstanding at a time. The compressed chunks are written to the output stream in
+ * the same order as they are formed, so the wire encoding is exactly the same as in the serial mode. The parallel
+ * mode only pays off for large streams with large chunk sizes.
  */
 public class LZ4OutputStream extends OutputStream {
 
@@ -61,11 +71,25 @@ public class LZ4OutputStream extends OutputStream {
     // Encoded buffer with compressed data
     private final byte[] encodedBuffer;
 
+    // Executor and outstanding chunks for parallel compression
+    private final Executor executor;
+    private final int parallelism;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
     /**
      * Create a new OutputStream. The maxSize and minSize specify the maximum and minimum sizes of the chunk to be
      * compressed, respectively.
      */
     public LZ4OutputStream(OutputStream os, LZ4Codec codec, int minSize, int maxSize) {
+        this(os, codec, minSize, maxSize, null, 1);
+    }
+
+    /**
+     * Create a new OutputStream in the parallel mode if an executor is provided and the parallelism is greater than
+     * one. Otherwise, the output stream operates in the serial mode.
+     */
+    public LZ4OutputStream(OutputStream os, LZ4Codec codec, int minSize, int maxSize, Executor executor,
+            int parallelism) {
         if (minSize < 1) {
             throw new IllegalArgumentException("invalid minSize - must be > 0");
         }
@@ -86,7 +110,16 @@ public class LZ4OutputStream extends OutputStream {
         this.maxCompressedLength = codec.getMaxCompressedLength(maxSize);
 
         this.stagingBuffer = new byte[minUncompressedLength];
-        this.encodedBuffer = new byte[maxCompressedLength + 4];
+
+        if (executor != null && parallelism > 1) {
+            this.executor = executor;
+            this.parallelism = parallelism;
+            this.encodedBuffer = null;
+        } else {
+            this.executor = null;
+            this.parallelism = 1;
+            this.encodedBuffer = new byte[maxCompressedLength + 4];
+        }
     }
 
     public LZ4OutputStream(OutputStream os, LZ4Codec codec, int maxSize) {
@@ -179,16 +212,78 @@ public class LZ4OutputStream extends OutputStream {
             throw new IllegalStateException();
         }
 
-        if (len > 0) {
-            int compressedLen = codec.compress(buf, off, len, encodedBuffer, 4, maxCompressedLength);
-
-            // Encode the compressed data length prior to the compressed data chunk
-            encodedBuffer[0] = (byte) (compressedLen >>> 24);
-            encodedBuffer[1] = (byte) (compressedLen >>> 16);
-            encodedBuffer[2] = (byte) (compressedLen >>> 8);
-            encodedBuffer[3] = (byte) compressedLen;
+        if (len == 0) {
+            return;
+        }
 
+        if (executor == null) {
+            int compressedLen = encodeChunk(buf, off, len, encodedBuffer);
             os.write(encodedBuffer, 0, 4 + compressedLen);
+            return;
+        }
+
+        // Wait for the oldest chunk to complete if we have reached the parallelism
+        if (pending.size() >= parallelism) {
+            writePending();
+        }
+
+        final byte[] chunk = new byte[len];
+        System.arraycopy(buf, off, chunk, 0, len);
+
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() {
+                byte[] encoded = new byte[maxCompressedLength + 4];
+                int compressedLen = encodeChunk(chunk, 0, chunk.length, encoded);
+
+                // Trim the encoded buffer to the actual length which is needed for the write later
+                byte[] result = new byte[4 + compressedLen];
+                System.arraycopy(encoded, 0, result, 0, result.length);
+
+                return result;
+            }
+        });
+
+        pending.add(task);
+        executor.execute(task);
+    }
+
+    /**
+     * Compress the chunk into the encoded buffer with the compressed data length prior to the compressed data, and
+     * return the compressed data length.
+     */
+    private int encodeChunk(byte[] buf, int off, int len, byte[] encoded) {
+        int compressedLen = codec.compress(buf, off, len, encoded, 4, maxCompressedLength);
+
+        // Encode the compressed data length prior to the compressed data chunk
+        encoded[0] = (byte) (compressedLen >>> 24);
+        encoded[1] = (byte) (compressedLen >>> 16);
+        encoded[2] = (byte) (compressedLen >>> 8);
+        encoded[3] = (byte) compressedLen;
+
+        return compressedLen;
+    }
+
+    /**
+     * Wait for the oldest outstanding chunk to be compressed and write it to the output stream.
+     */
+    private void writePending() throws IOException {
+        Future<byte[]> future = pending.poll();
+
+        try {
+            os.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
         }
     }
 
@@ -200,6 +295,11 @@ public class LZ4OutputStream extends OutputStream {
     @Override
     public void flush() throws IOException {
         encode();
+
+        while (!pending.isEmpty()) {
+            writePending();
+        }
+
         os.flush();
     }
 
@@ -212,6 +312,13 @@ public class LZ4OutputStream extends OutputStream {
         } finally {
             stagingOffset = -1;
 
+            // Abandon the outstanding chunks in case of failure
+            for (Future<byte[]> future : pending) {
+                future.cancel(false);
+            }
+
+            pending.clear();
+
             super.close();
             os.close();
         }
@@ -0,0 +1,171 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class describes a lock-free latency histogram with log-linear buckets similar to HdrHistogram.
+ *
+ * Values are grouped by their power of two magnitude, and each magnitude is further divided into a fixed number of
+ * linear sub-buckets. The bucket width is thus proportional to the value, which keeps the relative error of every
+ * percentile within 1/32 (about 3%) across the whole range while using a small fixed amount of memory. Values below
+ * the sub-bucket count are recorded exactly. Values beyond the trackable range are recorded in the last bucket, but
+ * the maximum is always exact.
+ *
+ * Recording is a couple of atomic increments and never blocks, so it may be done on the command completion path from
+ * any number of threads. A percentile is computed from a snapshot of the counts which may be slightly inconsistent
+ * with concurrent recording; that is acceptable for statistics.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6; // Number of bits for the sub-bucket index
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // Number of sub-buckets per magnitude
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1; // Number of sub-buckets added per magnitude
+
+    private static final int MAX_VALUE_BITS = 40; // Values up to 2^40 (~18 minutes in ns) are tracked
+
+    private static final int BUCKET_COUNT = index((1L << MAX_VALUE_BITS) - 1) + 1;
+
+    // Percentiles exported along with the stats key suffixes
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+    private static final String[] SUFFIXES = { ".p50", ".p90", ".p99", ".p999" };
+
+    private static final String MAX_SUFFIX = ".max";
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public LatencyHistogram() {
+
+    }
+
+    /**
+     * Record the value in the histogram. Negative values, such as from a phase that was never reached, are ignored.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+
+        counts.incrementAndGet(Math.min(index(value), BUCKET_COUNT - 1));
+        totalCount.incrementAndGet();
+
+        long max = maxValue.get();
+
+        while (value > max) {
+            if (maxValue.compareAndSet(max, value)) {
+                break;
+            }
+
+            max = maxValue.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Return the value at the given percentile, i.e., the highest value in the bucket within which the percentile
+     * falls, capped at the maximum recorded. It is zero if the histogram is empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += snapshot[i];
+
+            if (count >= target) {
+                return Math.min(highestValue(i), getMaxValue());
+            }
+        }
+
+        return getMaxValue();
+    }
+
+    /**
+     * Add the percentiles and the maximum to the stats map under the given key prefix, e.g., "client.hist.executeTime"
+     * yields "client.hist.executeTime.p50" and so on.
+     */
+    public void getStats(String prefix, Map<String, Object> stats) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            stats.put(prefix + SUFFIXES[i], getValueAtPercentile(PERCENTILES[i]));
+        }
+
+        stats.put(prefix + MAX_SUFFIX, getMaxValue());
+    }
+
+    /**
+     * Map the value to its bucket index. Values below the sub-bucket count map to themselves. Otherwise, the index is
+     * made up of the magnitude of the value above the sub-bucket range and the top sub-bucket bits of the value.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+
+        return (shift + 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * Return the highest value that maps to the bucket index.
+     */
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long base = (long) (index % SUB_BUCKET_HALF + SUB_BUCKET_HALF) << shift;
+
+        return base + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import com.delphix.appliance.logger.Logger;
+import com.delphix.session.service.ServiceFuture;
+import com.delphix.session.service.ServiceRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class provides ordered execution of service requests by key much like AbstractOrderedExecutor, but without
+ * any allocation or map lookup per key. Instead of creating a serial executor for each source, the ordering key is
+ * hashed onto a fixed set of lanes, each of which is served by a single worker thread. Requests with the same key
+ * always land in the same lane and are executed in the order of submission. Requests with different keys that
+ * happen to share a lane are executed in the order of submission as well, which is stricter than needed but harmless.
+ *
+ * Each lane has two queues. The ordered queue holds the requests with a key and is only ever consumed by the lane
+ * worker, i.e., it is used as a multi-producer single-consumer queue. The unordered queue holds everything else and
+ * is spread across the lanes round-robin. A worker with nothing left in its own lane steals from the unordered queue
+ * of the other lanes so that unordered work is never stuck behind a busy lane. Ordered work is never stolen.
+ *
+ * Since a lane is served by a single thread, a request that blocks holds up all the other keys sharing the lane. The
+ * executor is best suited for services with many short-lived keys, such as one per remote stream, whose requests
+ * do not block on each other. The subclass must override the getKey() method to identify the key of a given request.
+ */
+public abstract class StripedOrderedExecutor extends AbstractExecutorService {
+
+    private static final Logger logger = Logger.getLogger(StripedOrderedExecutor.class);
+
+    /**
+     * Key returned by getKey() for requests that need no ordering.
+     */
+    protected static final Object UNORDERED = new Object();
+
+    // Executor states
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private final Lane[] lanes;
+    private final CountDownLatch terminated;
+
+    private volatile int state = RUNNING;
+    private int nextLane; // Next lane for unordered work (racy by design)
+
+    /**
+     * Create a striped ordered executor with two lanes per processor.
+     */
+    public StripedOrderedExecutor() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Create a striped ordered executor with the specified number of lanes.
+     */
+    public StripedOrderedExecutor(int numLanes) {
+        this(numLanes, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Create a striped ordered executor with the specified number of lanes and thread factory.
+     */
+    public StripedOrderedExecutor(int numLanes, ThreadFactory factory) {
+        if (numLanes <= 0) {
+            throw new IllegalArgumentException("invalid number of lanes " + numLanes);
+        }
+
+        lanes = new Lane[numLanes];
+        terminated = new CountDownLatch(numLanes);
+
+        for (int i = 0; i < numLanes; i++) {
+            lanes[i] = new Lane(i);
+        }
+
+        for (Lane lane : lanes) {
+            lane.start(factory);
+        }
+    }
+
+    public int getNumLanes() {
+        return lanes.length;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+
+        if (state != RUNNING) {
+            throw new RejectedExecutionException("executor has been shutdown");
+        }
+
+        Object key = UNORDERED;
+
+        if (runnable instanceof ServiceFuture) {
+            ServiceFuture future = (ServiceFuture) runnable;
+            key = getKey(future.getServiceRequest());
+        }
+
+        Queue<Runnable> queue;
+
+        if (key != UNORDERED) {
+            Lane lane = lanes[laneFor(key)];
+
+            queue = lane.ordered;
+            queue.offer(runnable);
+
+            lane.wakeup();
+        } else {
+            int index = (nextLane++ & Integer.MAX_VALUE) % lanes.length;
+            Lane lane = lanes[index];
+
+            queue = lane.unordered;
+            queue.offer(runnable);
+
+            // Wake up the lane or, if it is busy, any idle lane that may steal the work
+            if (!lane.wakeup()) {
+                for (int i = 1; i < lanes.length; i++) {
+                    if (lanes[(index + i) % lanes.length].wakeup()) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Take the work back if shutdown has raced with the submission and the workers may be gone
+        if (state != RUNNING && queue.remove(runnable)) {
+            throw new RejectedExecutionException("executor has been shutdown");
+        }
+    }
+
+    /**
+     * Return the ordering key of the given request or UNORDERED if it may be executed in any order. The key must be
+     * stable for the duration of the request and its hashCode() cheap as it is called on every submission.
+     */
+    protected abstract Object getKey(ServiceRequest request);
+
+    private int laneFor(Object key) {
+        int hash = key != null ? key.hashCode() : 0;
+
+        // Spread the higher bits downward since the number of lanes is usually small
+        hash ^= (hash >>> 16);
+        hash ^= (hash >>> 8);
+
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    @Override
+    public void shutdown() {
+        if (state == RUNNING) {
+            state = SHUTDOWN;
+        }
+
+        for (Lane lane : lanes) {
+            lane.wakeup();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        state = STOP;
+
+        List<Runnable> tasks = new ArrayList<Runnable>();
+
+        for (Lane lane : lanes) {
+            lane.drain(tasks);
+            lane.interrupt();
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Check if there is work for the given lane, either in its own queues or in the unordered queue of others.
+     */
+    private boolean hasWork(Lane lane) {
+        if (!lane.ordered.isEmpty()) {
+            return true;
+        }
+
+        for (Lane other : lanes) {
+            if (!other.unordered.isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Steal unordered work from the lanes following the given one.
+     */
+    private Runnable steal(Lane lane) {
+        for (int i = 1; i < lanes.length; i++) {
+            Runnable task = lanes[(lane.index + i) % lanes.length].unordered.poll();
+
+            if (task != null) {
+                return task;
+            }
+        }
+
+        return null;
+    }
+
+    private class Lane implements Runnable {
+
+        private final int index; // Lane index
+        private final Queue<Runnable> ordered = new ConcurrentLinkedQueue<Runnable>(); // Consumed by the lane only
+        private final Queue<Runnable> unordered = new ConcurrentLinkedQueue<Runnable>(); // Consumed by any lane
+
+        private Thread thread; // Lane worker
+        private volatile boolean parked; // Lane worker parked for lack of work
+
+        public Lane(int index) {
+            this.index = index;
+        }
+
+        public void start(ThreadFactory factory) {
+            thread = factory.newThread(this);
+            thread.start();
+        }
+
+        /**
+         * Wake up the lane worker if it is parked. Return true if it was.
+         */
+        public boolean wakeup() {
+            if (!parked) {
+                return false;
+            }
+
+            parked = false;
+            LockSupport.unpark(thread);
+
+            return true;
+        }
+
+        public void interrupt() {
+            thread.interrupt();
+        }
+
+        public void drain(List<Runnable> tasks) {
+            Runnable task;
+
+            while ((task = ordered.poll()) != null) {
+                tasks.add(task);
+            }
+
+            while ((task = unordered.poll()) != null) {
+                tasks.add(task);
+            }
+        }
+
+        private Runnable poll() {
+            Runnable task = ordered.poll();
+
+            if (task == null) {
+                task = unordered.poll();
+            }
+
+            if (task == null) {
+                task = steal(this);
+            }
+
+            return task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (state != STOP) {
+                    Runnable task = poll();
+
+                    if (task != null) {
+                        try {
+                            task.run();
+                        } catch (Throwable t) {
+                            logger.errorf(t, "failed to execute task");
+                        }
+
+                        continue;
+                    }
+
+                    // Exit once shutdown and there is no work left
+                    if (state != RUNNING) {
+                        break;
+                    }
+
+                    /*
+                     * Announce the intention to park before checking for work one last time. A producer either sees
+                     * the parked flag after it has queued the work and wakes us up, or we see the work here.
+                     */
+                    parked = true;
+
+                    if (hasWork(this) || state != RUNNING) {
+                        parked = false;
+                        continue;
+                    }
+
+                    LockSupport.park(this);
+                    parked = false;
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import com.delphix.session.service.ServiceRequest;
+import com.delphix.session.service.ServiceTaggedRequest;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class provides ordered execution of tagged service requests over a fixed set of lanes. It is a drop-in
+ * alternative to TaggedRequestExecutor for services with a large number of distinct tags, where the per tag executor
+ * becomes a burden. The special null tag is also supported. Requests without a tag are executed in any order.
+ */
+public class StripedTaggedRequestExecutor extends StripedOrderedExecutor {
+
+    /**
+     * Create a striped tagged request executor with two lanes per processor.
+     */
+    public StripedTaggedRequestExecutor() {
+        super();
+    }
+
+    /**
+     * Create a striped tagged request executor with the specified number of lanes.
+     */
+    public StripedTaggedRequestExecutor(int numLanes) {
+        super(numLanes);
+    }
+
+    /**
+     * Create a striped tagged request executor with the specified number of lanes and thread factory.
+     */
+    public StripedTaggedRequestExecutor(int numLanes, ThreadFactory factory) {
+        super(numLanes, factory);
+    }
+
+    @Override
+    protected Object getKey(ServiceRequest request) {
+        if (request instanceof ServiceTaggedRequest) {
+            return ((ServiceTaggedRequest) request).getTag();
+        }
+
+        return UNORDERED;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.impl.channel.client;
+
+import com.delphix.appliance.server.test.UnitTest;
+import com.delphix.session.test.HelloRequest;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+@UnitTest
+public class SessionClientCommandQueueTest {
+
+    @Test
+    public void testPriority() {
+        SessionClientCommandQueue queue = new SessionClientCommandQueue();
+
+        SessionClientCommand b1 = createCommand();
+        SessionClientCommand b2 = createCommand();
+        SessionClientCommand p1 = createCommand();
+        SessionClientCommand p2 = createCommand();
+
+        // Priority commands go ahead of the others in the order of their arrival
+        queue.offer(b1);
+        queue.offerPriority(p1);
+        queue.offer(b2);
+        queue.offerPriority(p2);
+
+        assertQueue(queue, p1, p2, b1, b2);
+
+        // Removing the last priority command lets the next one take its place
+        assertTrue(queue.remove(p2));
+        assertFalse(queue.remove(p2));
+
+        queue.offerPriority(p2);
+
+        assertQueue(queue, p1, p2, b1, b2);
+
+        queue.clear();
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testRequeue() {
+        SessionClientCommandQueue queue = new SessionClientCommandQueue();
+
+        SessionClientCommand b1 = createCommand();
+        SessionClientCommand b2 = createCommand();
+        SessionClientCommand p1 = createCommand();
+        SessionClientCommand p2 = createCommand();
+        SessionClientCommand p3 = createCommand();
+
+        queue.offer(b1);
+        queue.offerPriority(p1);
+
+        // The only priority command is restored as one after it fails to restart
+        assertSame(queue.poll(), p1);
+        queue.requeue(p1, true);
+        queue.offerPriority(p2);
+
+        assertQueue(queue, p1, p2, b1);
+
+        // Priority commands queued after a requeued one stay behind it
+        assertSame(queue.poll(), p1);
+        queue.requeue(p1, true);
+        queue.offerPriority(p3);
+
+        assertQueue(queue, p1, p2, p3, b1);
+
+        // A command without priority is restored without it
+        queue.clear();
+        queue.offer(b1);
+        queue.offer(b2);
+
+        assertSame(queue.poll(), b1);
+        queue.requeue(b1, false);
+        queue.offerPriority(p1);
+
+        assertQueue(queue, p1, b1, b2);
+
+        // Each command is on at most one queue at a time
+        try {
+            queue.requeue(b1, false);
+            fail("command queued twice");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    private static SessionClientCommand createCommand() {
+        return new SessionClientCommand(null, new HelloRequest());
+    }
+
+    private static void assertQueue(SessionClientCommandQueue queue, SessionClientCommand... commands) {
+        List<SessionClientCommand> actual = new ArrayList<SessionClientCommand>(queue);
+
+        assertEquals(actual, Arrays.asList(commands));
+        assertEquals(queue.size(), commands.length);
+        assertSame(queue.peek(), commands[0]);
+    }
+}
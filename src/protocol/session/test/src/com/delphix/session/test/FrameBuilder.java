@@ -0,0 +1,123 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.test;
+
+import com.delphix.session.impl.frame.*;
+import com.delphix.session.service.ServiceException;
+import com.delphix.session.service.ServiceRequest;
+import com.delphix.session.service.ServiceResponse;
+
+/**
+ * This class builds command frames with a fixed set of exchange and slot attributes for the frame codec tests and
+ * benchmarks.
+ */
+public class FrameBuilder {
+
+    private final ExchangeID exchangeID;
+    private final SerialNumber commandSN;
+    private final SerialNumber slotSN;
+    private final int slotID;
+    private final int maxSlotID;
+
+    public FrameBuilder(ExchangeID exchangeID, SerialNumber commandSN, SerialNumber slotSN, int slotID, int maxSlotID) {
+        this.exchangeID = exchangeID;
+        this.commandSN = commandSN;
+        this.slotSN = slotSN;
+        this.slotID = slotID;
+        this.maxSlotID = maxSlotID;
+    }
+
+    public ExchangeID getExchangeID() {
+        return exchangeID;
+    }
+
+    public SerialNumber getCommandSN() {
+        return commandSN;
+    }
+
+    public SerialNumber getSlotSN() {
+        return slotSN;
+    }
+
+    public int getSlotID() {
+        return slotID;
+    }
+
+    public int getMaxSlotID() {
+        return maxSlotID;
+    }
+
+    /**
+     * Build a command request frame carrying the service request.
+     */
+    public CommandRequest buildRequest(ServiceRequest request) {
+        CommandRequest command = new CommandRequest();
+
+        command.setExchangeID(exchangeID);
+        command.setCommandSN(commandSN);
+        command.setExpectedCommandSN(commandSN);
+        command.setSlotID(slotID);
+        command.setSlotSN(slotSN);
+        command.setMaxSlotIDInUse(maxSlotID);
+
+        command.setRequest(request);
+
+        return command;
+    }
+
+    /**
+     * Build a successful command response frame carrying the service response.
+     */
+    public CommandResponse buildResponse(ServiceResponse response) {
+        CommandResponse command = buildResponse(CommandStatus.SUCCESS);
+
+        command.setResponse(response);
+
+        return command;
+    }
+
+    /**
+     * Build a successful command response frame carrying the service exception.
+     */
+    public CommandResponse buildException(ServiceException exception) {
+        CommandResponse command = buildResponse(CommandStatus.SUCCESS);
+
+        command.setException(exception);
+
+        return command;
+    }
+
+    /**
+     * Build a command response frame with the given status and no service payload.
+     */
+    public CommandResponse buildResponse(CommandStatus status) {
+        CommandResponse command = new CommandResponse();
+
+        command.setExchangeID(exchangeID);
+        command.setCommandSN(commandSN);
+        command.setExpectedCommandSN(commandSN);
+        command.setStatus(status);
+        command.setTargetMaxSlotID(maxSlotID);
+        command.setCurrentMaxSlotID(maxSlotID);
+        command.setSlotID(slotID);
+        command.setSlotSN(slotSN);
+
+        return command;
+    }
+}
@@ -19,22 +19,22 @@
 package com.delphix.session.test;
 
 import com.delphix.appliance.server.test.UnitTest;
-import com.delphix.session.impl.common.*;
+import com.delphix.session.impl.common.ProtocolViolationException;
 import com.delphix.session.impl.frame.*;
 import com.delphix.session.service.*;
+import com.delphix.session.util.ByteBufferUtil;
 import com.delphix.session.util.CompressMethod;
-import com.delphix.session.util.EventSource;
-import com.google.common.collect.ImmutableList;
+import com.delphix.session.util.ExternalObjectOutput;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.channel.Channel;
 import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
 import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
 import org.testng.annotations.*;
 
+import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
-import java.util.Collection;
-import java.util.UUID;
+import java.util.Random;
 
 import static org.testng.Assert.*;
 
@@ -64,63 +64,16 @@ public class FrameTest {
     private EncoderEmbedder<ChannelBuffer> encoder;
     private DecoderEmbedder<SessionFrame> decoder;
 
-    private SessionTransportManager xportManager = new TestTransportManager();
+    private TestTransportManager xportManager = new TestTransportManager();
 
     @BeforeClass
     public void initFrame() {
-        HelloRequest request = new HelloRequest(val1.getBytes(), val2.getBytes());
+        FrameBuilder builder = new FrameBuilder(exchangeID, commandSN, slotSN, slotID, maxSlotID);
 
-        cmdRequest = new CommandRequest();
-
-        cmdRequest.setExchangeID(exchangeID);
-        cmdRequest.setCommandSN(commandSN);
-        cmdRequest.setExpectedCommandSN(commandSN);
-        cmdRequest.setSlotID(slotID);
-        cmdRequest.setSlotSN(slotSN);
-        cmdRequest.setMaxSlotIDInUse(maxSlotID);
-
-        cmdRequest.setRequest(request);
-
-        HelloResponse response = new HelloResponse(val1.getBytes(), val2.getBytes());
-
-        cmdResponse = new CommandResponse();
-
-        cmdResponse.setExchangeID(exchangeID);
-        cmdResponse.setCommandSN(commandSN);
-        cmdResponse.setExpectedCommandSN(commandSN);
-        cmdResponse.setStatus(CommandStatus.SUCCESS);
-        cmdResponse.setTargetMaxSlotID(maxSlotID);
-        cmdResponse.setCurrentMaxSlotID(maxSlotID);
-        cmdResponse.setSlotID(slotID);
-        cmdResponse.setSlotSN(slotSN);
-
-        cmdResponse.setResponse(response);
-
-        ServiceExecutionException exception = new ServiceExecutionException(errorMessage);
-
-        cmdException = new CommandResponse();
-
-        cmdException.setExchangeID(exchangeID);
-        cmdException.setCommandSN(commandSN);
-        cmdException.setExpectedCommandSN(commandSN);
-        cmdException.setStatus(CommandStatus.SUCCESS);
-        cmdException.setTargetMaxSlotID(maxSlotID);
-        cmdException.setCurrentMaxSlotID(maxSlotID);
-        cmdException.setSlotID(slotID);
-        cmdException.setSlotSN(slotSN);
-
-        cmdException.setException(exception);
-
-        badResponse = new CommandResponse();
-
-        badResponse.setExchangeID(exchangeID);
-        badResponse.setCommandSN(commandSN);
-        badResponse.setExpectedCommandSN(commandSN);
-        badResponse.setStatus(CommandStatus.SLOT_ID_INVALID);
-        badResponse.setTargetMaxSlotID(maxSlotID);
-        badResponse.setCurrentMaxSlotID(maxSlotID);
-        badResponse.setSlotID(slotID);
-        badResponse.setSlotSN(slotSN);
+        cmdRequest = builder.buildRequest(new HelloRequest(val1.getBytes(), val2.getBytes()));
+        cmdResponse = builder.buildResponse(new HelloResponse(val1.getBytes(), val2.getBytes()));
+        cmdException = builder.buildException(new ServiceExecutionException(errorMessage));
+        badResponse = builder.buildResponse(CommandStatus.SLOT_ID_INVALID);
     }
 
     @AfterClass
@@ -243,6 +196,19 @@ public class FrameTest {
         runFrameCodec();
     }
 
+    @Test
+    public void testPayloadLz4Hc() {
+        SessionFrameOptions options;
+
+        options = frameEnc.getOptions();
+        options.setPayloadCompress(CompressMethod.COMPRESS_LZ4_HC);
+
+        options = frameDec.getOptions();
+        options.setPayloadCompress(CompressMethod.COMPRESS_LZ4_HC);
+
+        runFrameCodec();
+    }
+
     @Test
     public void testOptionsCombo() {
         SessionFrameOptions options;
@@ -306,6 +272,189 @@ public class FrameTest {
         verifyResponse(frames[2]);
     }
 
+    @Test
+    public void testDataZeroCopy() {
+        SessionFrameOptions options;
+
+        options = frameEnc.getOptions();
+        options.setPayloadDigest(DigestMethod.DIGEST_CRC32);
+        options.setDigestData(true);
+
+        options = frameDec.getOptions();
+        options.setPayloadDigest(DigestMethod.DIGEST_CRC32);
+        options.setDigestData(true);
+
+        encoder.offer(cmdRequest);
+        decoder.offer(encoder.poll());
+
+        CommandRequest command = (CommandRequest) decoder.poll();
+        ByteBuffer[] buffers = command.getRequest().getData();
+
+        // Bulk data is handed out as read-only slices covering nothing but the data itself
+        for (ByteBuffer buffer : buffers) {
+            assertTrue(buffer.isReadOnly());
+            assertEquals(buffer.position(), 0);
+        }
+
+        ByteBufferUtil.rewind(buffers);
+        verifyData(buffers);
+    }
+
+    @Test
+    public void testSizePredictor() {
+        SessionFrameBufferStats stats = xportManager.getNexus().getBufferStats();
+
+        // Train the predictor with the first frame
+        codecRequest();
+
+        long encoded = stats.getTotalEncoded();
+        long resizes = stats.getBufferResizes();
+
+        // Subsequent frames of the same type should fit in the predicted buffer
+        for (int i = 0; i < 4; i++) {
+            codecRequest();
+        }
+
+        assertEquals(stats.getTotalEncoded(), encoded + 4);
+        assertEquals(stats.getBufferResizes(), resizes);
+    }
+
+    @Test
+    public void testAdaptiveCompress() {
+        SessionFrameOptions options;
+
+        options = frameEnc.getOptions();
+        options.setPayloadDigest(DigestMethod.DIGEST_CRC32);
+        options.setPayloadCompress(CompressMethod.COMPRESS_LZ4);
+        options.setCompressAdaptive(true);
+
+        options = frameDec.getOptions();
+        options.setPayloadDigest(DigestMethod.DIGEST_CRC32);
+        options.setPayloadCompress(CompressMethod.COMPRESS_LZ4);
+        options.setCompressAdaptive(true);
+
+        SessionFrameCompressAdvisor advisor = xportManager.getNexus().getCompressAdvisor();
+        advisor.resetStats();
+
+        // Random data is incompressible
+        byte[] data = new byte[16384];
+        new Random(0).nextBytes(data);
+
+        FrameBuilder builder = new FrameBuilder(exchangeID, commandSN, slotSN, slotID, maxSlotID);
+        CommandRequest request = builder.buildRequest(new HelloRequest(data));
+
+        for (int i = 0; i < 8; i++) {
+            encoder.offer(request);
+            decoder.offer(encoder.poll());
+
+            CommandRequest command = (CommandRequest) decoder.poll();
+            ByteBuffer[] buffers = command.getRequest().getData();
+
+            assertEquals(ByteBufferUtil.remaining(buffers), data.length);
+
+            ByteBuffer result = ByteBuffer.allocate(data.length);
+
+            for (ByteBuffer buffer : buffers) {
+                result.put(buffer);
+            }
+
+            assertEquals(result.array(), data);
+        }
+
+        // Compression should be skipped once the ratio has been sampled
+        assertTrue(advisor.getPayloadsStored() > 0);
+        assertEquals(advisor.getPayloadsCompressed() + advisor.getPayloadsStored(), 8);
+
+        // Payload without bulk data is still compressed
+        runFrameCodec();
+    }
+
+    @Test
+    public void testFixedLayout() throws Exception {
+        SessionFrameOptions options;
+
+        options = frameEnc.getOptions();
+        options.setFrameDigest(DigestMethod.DIGEST_CRC32);
+
+        options = frameDec.getOptions();
+        options.setFrameDigest(DigestMethod.DIGEST_CRC32);
+
+        PingRequest pingRequest = new PingRequest();
+        pingRequest.setExchangeID(exchangeID);
+        pingRequest.setCommandSN(commandSN);
+        pingRequest.setExpectedCommandSN(new SerialNumber(7, 5L));
+        pingRequest.setMaxSlotIDInUse(maxSlotID);
+
+        PingResponse pingResponse = new PingResponse();
+        pingResponse.setExchangeID(exchangeID);
+        pingResponse.setCommandSN(new SerialNumber(63, Long.MAX_VALUE));
+        pingResponse.setExpectedCommandSN(new SerialNumber(15, 1234L));
+
+        TaskMgmtRequest taskRequest = new TaskMgmtRequest();
+        taskRequest.setExchangeID(exchangeID);
+        taskRequest.setCommandSN(commandSN);
+        taskRequest.setExpectedCommandSN(commandSN);
+        taskRequest.setTargetExchangeID(ExchangeID.allocate());
+        taskRequest.setTargetCommandSN(commandSN.next());
+        taskRequest.setTargetSlotID(slotID);
+        taskRequest.setTargetSlotSN(slotSN);
+
+        TaskMgmtResponse taskResponse = new TaskMgmtResponse();
+        taskResponse.setExchangeID(exchangeID);
+        taskResponse.setCommandSN(commandSN);
+        taskResponse.setExpectedCommandSN(commandSN);
+        taskResponse.setStatus(TaskMgmtStatus.ABORTED_SLOT_FAILURE);
+
+        LogoutRequest logoutRequest = new LogoutRequest();
+        logoutRequest.setExchangeID(exchangeID);
+        logoutRequest.setCommandSN(commandSN);
+        logoutRequest.setExpectedCommandSN(commandSN);
+        logoutRequest.setLogoutSession(true);
+
+        LogoutResponse logoutResponse = new LogoutResponse();
+        logoutResponse.setExchangeID(exchangeID);
+        logoutResponse.setCommandSN(commandSN);
+        logoutResponse.setExpectedCommandSN(commandSN);
+        logoutResponse.setStatus(LogoutStatus.LOGOUT_FAILED);
+
+        SessionFrame[] frames = { cmdRequest, badResponse, pingRequest, pingResponse, taskRequest, taskResponse,
+                logoutRequest, logoutResponse };
+
+        for (SessionFrame frame : frames) {
+            assertTrue(frame.isFixedLayout());
+
+            // The direct encoding is the same as the stream encoding on the wire
+            ChannelBuffer direct = ChannelBuffers.dynamicBuffer();
+            frame.encode(direct);
+
+            ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+            ObjectOutput oout = new ExternalObjectOutput(new ChannelBufferOutputStream(stream));
+            frame.writeExternal(oout);
+            oout.close();
+
+            assertEquals(direct, stream);
+
+            // And it survives the round trip through the codec
+            encoder.offer(frame);
+            decoder.offer(encoder.poll());
+
+            SessionFrame result = decoder.poll();
+            assertEquals(result.getClass(), frame.getClass());
+
+            ChannelBuffer decoded = ChannelBuffers.dynamicBuffer();
+            result.encode(decoded);
+
+            assertEquals(decoded, direct);
+        }
+
+        try {
+            SessionFrameType.getType(SessionFrameType.values().length);
+            fail("invalid frame type accepted");
+        } catch (ProtocolViolationException e) {
+            // Expected
+        }
+    }
+
     private void runFrameCodec() {
         codecRequest();
 
@@ -427,100 +576,4 @@ public class FrameTest {
 
         assertEquals(val, val1 + val2);
     }
-
-    private static class TestTransportManager extends SessionTransportManager {
-
-        private SessionTransport xport = new TestTransport();
-
-        @Override
-        public SessionTransport locate(Channel channel) {
-            return xport;
-        }
-
-        @Override
-        public SessionTransportHandler getConnectHandler(SessionTransport xport) {
-            return null;
-        }
-
-        @Override
-        public SessionTransportHandler getOperateHandler(SessionTransport xport) {
-            return null;
-        }
-    }
-
-    private static class TestTransport extends SessionTransport {
-
-        private TestNexus nexus = new TestNexus();
-
-        public TestTransport() {
-            super(null);
-
-            ClientConfig spec = nexus.getSpec();
-            options = spec.getOptions().getTransportOptions();
-        }
-
-        @Override
-        public boolean isClient() {
-            return false;
-        }
-
-        @Override
-        public SessionNexus getNexus() {
-            return nexus;
-        }
-    }
-
-    private static class TestNexus extends SessionNexus {
-
-        private static final ServiceType type = new ServiceType(UUID.randomUUID(), "hello", "hello service");
-        private static final HelloService helloService = new HelloService(type);
-        private static final ClientConfig spec = new ClientConfig(null, null, helloService,
-                ImmutableList.<ProtocolHandler<?>> of(helloService));
-
-        public TestNexus() {
-            super(spec);
-
-            actVersion = SessionProtocol.V_1_0_0;
-            options = spec.getOptions().getNexusOptions();
-        }
-
-        public ClientConfig getSpec() {
-            return spec;
-        }
-
-        @Override
-        public Collection<ServiceTransport> getTransports() {
-            return null;
-        }
-
-        @Override
-        public boolean isClient() {
-            return false;
-        }
-
-        @Override
-        public boolean isConnected() {
-            return false;
-        }
-
-        @Override
-        public boolean isDegraded() {
-            return false;
-        }
-
-        @Override
-        public CloseFuture close() {
-            return null;
-        }
-
-        @Override
-        public EventSource getEventSource() {
-            return null;
-        }
-
-        @Override
-        public void stop() {
-
-        }
-    }
 }
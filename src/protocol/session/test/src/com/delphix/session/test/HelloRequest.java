@@ -31,6 +31,7 @@ import java.nio.ByteBuffer;
 public class HelloRequest implements ServiceRequest, Externalizable {
 
     public static final String NON_IDEMPOTENT_TEST = "non-idempotent hello";
+    public static final String ECHO_TEST = "echo hello";
 
     private String message = "hey there";
     private boolean idempotent; // Local only
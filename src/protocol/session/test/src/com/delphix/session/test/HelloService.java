@@ -21,6 +21,7 @@ package com.delphix.session.test;
 import com.delphix.session.service.*;
 import com.google.common.collect.ImmutableList;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class HelloService implements HelloProtocolHandler, ProtocolHandlerFactory, Service {
@@ -36,6 +37,22 @@ public class HelloService implements HelloProtocolHandler, ProtocolHandlerFactor
         if (!(request instanceof HelloRequest)) {
             throw new ServiceExecutionException("unknown request " + request);
         }
+
+        HelloRequest hello = (HelloRequest) request;
+        ByteBuffer[] data = hello.getData();
+
+        // Send a copy of the request data back if asked to
+        if (hello.getMessage().equals(HelloRequest.ECHO_TEST) && data != null) {
+            byte[][] sg = new byte[data.length][];
+
+            for (int i = 0; i < data.length; i++) {
+                sg[i] = new byte[data[i].remaining()];
+                data[i].duplicate().get(sg[i]);
+            }
+
+            return new HelloResponse(sg);
+        }
+
         return new HelloResponse();
     }
 
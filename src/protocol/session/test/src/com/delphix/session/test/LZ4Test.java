@@ -19,6 +19,7 @@
 package com.delphix.session.test;
 
 import com.delphix.appliance.server.test.UnitTest;
+import com.delphix.session.util.CompressMethod;
 import com.delphix.session.util.LZ4Codec;
 import com.delphix.session.util.LZ4InputStream;
 import com.delphix.session.util.LZ4LengthCodec;
@@ -31,11 +32,17 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 @UnitTest
 public class LZ4Test {
@@ -119,4 +126,180 @@ public class LZ4Test {
             }
         }
     }
+
+    @Test
+    public void testCompressMethod() throws IOException {
+        String instance = CompressMethod.getLZ4Instance();
+        assertNotNull(instance);
+
+        String arch = System.getProperty("os.arch");
+
+        // The native and unsafe instances must never be selected on strict alignment architectures by default
+        if (System.getProperty(CompressMethod.LZ4_INSTANCE_PROPERTY) == null && arch.startsWith("sparc")) {
+            assertEquals(instance, LZ4Factory.safeInstance().toString());
+        }
+
+        byte[] buf = new byte[256 * 1024];
+        Random r = new Random(0);
+        for (int i = 0; i < buf.length; ++i) {
+            buf[i] = (byte) r.nextInt(16);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream os = CompressMethod.COMPRESS_LZ4.createOutputStream(out);
+        os.write(buf);
+        os.close();
+
+        assertTrue(out.size() <= CompressMethod.COMPRESS_LZ4.estimateCompressed(buf.length));
+
+        InputStream is = CompressMethod.COMPRESS_LZ4.createInputStream(new ByteArrayInputStream(out.toByteArray()));
+        byte[] restored = new byte[buf.length];
+        int off = 0;
+
+        while (off < buf.length) {
+            int read = is.read(restored, off, restored.length - off);
+            assertTrue(read >= 0);
+            off += read;
+        }
+
+        is.close();
+
+        assertEquals(restored, buf);
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        LZ4Codec codec = new LZ4LengthCodec(factory.fastCompressor(), factory.decompressor());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            int[] lens = new int[] { 0, 1, 65536, 1024 * 1024 + 17 };
+            int[] parallels = new int[] { 2, 3, 8 };
+
+            for (int len : lens) {
+                for (int parallelism : parallels) {
+                    runParallelTest(codec, executor, len, parallelism);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMalformedInput() throws IOException {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        LZ4Codec codec = new LZ4LengthCodec(factory.fastCompressor(), factory.decompressor());
+
+        byte[] buf = new byte[128 * 1024];
+        Random r = new Random(0);
+        for (int i = 0; i < buf.length; ++i) {
+            buf[i] = (byte) r.nextInt(10);
+        }
+
+        // Chunks larger than the input stream allows for
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream os = new LZ4OutputStream(out, codec, buf.length, buf.length);
+        os.write(buf);
+        os.close();
+
+        byte[] oversized = out.toByteArray();
+
+        out = new ByteArrayOutputStream();
+        os = new LZ4OutputStream(out, codec, 65536, 65536);
+        os.write(buf);
+        os.close();
+
+        // Corrupt uncompressed length
+        byte[] uncompressed = out.toByteArray();
+        Arrays.fill(uncompressed, 4, 8, (byte) 0x7f);
+
+        // Corrupt compressed length, both too large and negative
+        byte[] compressed = out.toByteArray();
+        Arrays.fill(compressed, 0, 4, (byte) 0x7f);
+
+        byte[] negative = out.toByteArray();
+        Arrays.fill(negative, 0, 4, (byte) 0xff);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            for (byte[] data : Arrays.asList(oversized, uncompressed, compressed, negative)) {
+                assertMalformed(new LZ4InputStream(new ByteArrayInputStream(data), codec, 4096, 65536, null, 1));
+                assertMalformed(new LZ4InputStream(new ByteArrayInputStream(data), codec, 4096, 65536, executor, 4));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertMalformed(InputStream is) {
+        byte[] restored = new byte[256 * 1024];
+
+        try {
+            while (is.read(restored) != -1) {
+                // Keep reading
+            }
+
+            fail("malformed input accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private void runParallelTest(LZ4Codec codec, ExecutorService executor, int len, int parallelism)
+            throws IOException {
+        byte[] buf = new byte[len];
+        Random r = new Random(len);
+        for (int i = 0; i < len; ++i) {
+            buf[i] = (byte) r.nextInt(10);
+        }
+
+        // Serial and parallel compression must produce the same wire encoding
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        OutputStream os = new LZ4OutputStream(serial, codec, 65536, 65536);
+        writeRandomly(os, buf, r);
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        os = new LZ4OutputStream(parallel, codec, 65536, 65536, executor, parallelism);
+        writeRandomly(os, buf, r);
+
+        assertEquals(parallel.toByteArray(), serial.toByteArray());
+
+        // Uncompress in parallel
+        InputStream is = new LZ4InputStream(new ByteArrayInputStream(parallel.toByteArray()), codec, 4096, executor,
+                parallelism);
+
+        byte[] restored = new byte[len + 100];
+        int off = 0;
+
+        while (true) {
+            int read = is.read(restored, off, Math.min(restored.length - off, r.nextInt(100000) + 1));
+
+            if (read == -1) {
+                break;
+            }
+
+            off += read;
+        }
+
+        is.close();
+
+        assertEquals(off, len);
+        assertEquals(Arrays.copyOf(restored, len), buf);
+    }
+
+    private void writeRandomly(OutputStream os, byte[] buf, Random r) throws IOException {
+        int off = 0;
+
+        while (off < buf.length) {
+            int l = Math.min(r.nextInt(200000) + 1, buf.length - off);
+            os.write(buf, off, l);
+            off += l;
+        }
+
+        os.close();
+    }
 }
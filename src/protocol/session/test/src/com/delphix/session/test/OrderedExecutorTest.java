@@ -0,0 +1,197 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.test;
+
+import com.delphix.appliance.server.test.UnitTest;
+import com.delphix.session.service.*;
+import com.delphix.session.util.ExecutorUtil;
+import com.delphix.session.util.StripedTaggedRequestExecutor;
+import com.delphix.session.util.ThreadFuture;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+@UnitTest
+public class OrderedExecutorTest {
+
+    @Test
+    public void testTagOrder() throws Exception {
+        int numTags = 64;
+        int numRequests = 200;
+
+        StripedTaggedRequestExecutor executor = new StripedTaggedRequestExecutor(4);
+
+        List<List<Integer>> results = new ArrayList<List<Integer>>();
+
+        for (int i = 0; i < numTags; i++) {
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        final CountDownLatch done = new CountDownLatch(numTags * numRequests);
+
+        for (int seq = 0; seq < numRequests; seq++) {
+            for (int tag = 0; tag < numTags; tag++) {
+                final List<Integer> result = results.get(tag);
+                final int value = seq;
+
+                executor.execute(new TaggedFuture(tag, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        result.add(value);
+                        done.countDown();
+                    }
+                }));
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        // Requests with the same tag must have been executed in the order of submission
+        for (List<Integer> result : results) {
+            assertEquals(result.size(), numRequests);
+
+            for (int seq = 0; seq < numRequests; seq++) {
+                assertEquals(result.get(seq).intValue(), seq);
+            }
+        }
+
+        ExecutorUtil.shutdown(executor);
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testWorkStealing() throws Exception {
+        int numTasks = 100;
+
+        StripedTaggedRequestExecutor executor = new StripedTaggedRequestExecutor(2);
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // Block one of the lanes with a tagged request
+        executor.execute(new TaggedFuture("blocker", new Runnable() {
+
+            @Override
+            public void run() {
+                blocked.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Do nothing
+                }
+            }
+        }));
+
+        assertTrue(blocked.await(30, TimeUnit.SECONDS));
+
+        // Untagged work queued to the blocked lane must be stolen by the other
+        final CountDownLatch done = new CountDownLatch(numTasks);
+
+        for (int i = 0; i < numTasks; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        release.countDown();
+
+        ExecutorUtil.shutdown(executor);
+        assertTrue(executor.isTerminated());
+
+        try {
+            executor.execute(new TaggedFuture("late", new Runnable() {
+
+                @Override
+                public void run() {
+                    fail("task executed after shutdown");
+                }
+            }));
+
+            fail("task accepted after shutdown");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+    private static class TaggedFuture extends ThreadFuture<ServiceResponse> implements ServiceFuture {
+
+        private final TaggedRequest request;
+
+        public TaggedFuture(Object tag, Runnable runnable) {
+            super(runnable, null);
+
+            this.request = new TaggedRequest(tag);
+        }
+
+        @Override
+        public ServiceRequest getServiceRequest() {
+            return request;
+        }
+    }
+
+    private static class TaggedRequest implements ServiceTaggedRequest {
+
+        private final Object tag;
+
+        public TaggedRequest(Object tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Object getTag() {
+            return tag;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public ByteBuffer[] getData() {
+            return null;
+        }
+
+        @Override
+        public void setData(ByteBuffer[] data) {
+
+        }
+
+        @Override
+        public ServiceResponse execute(ServiceNexus nexus) {
+            return null;
+        }
+    }
+}
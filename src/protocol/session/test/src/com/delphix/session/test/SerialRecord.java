@@ -0,0 +1,40 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.test;
+
+import java.io.Serializable;
+
+/**
+ * This class is a serializable object that stands in for an earlier version of com.delphix.session.util.SerialRecord
+ * with one field less under the same serial version.
+ */
+public class SerialRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int a;
+
+    public SerialRecord(int a) {
+        this.a = a;
+    }
+
+    public int getA() {
+        return a;
+    }
+}
@@ -20,26 +20,31 @@ package com.delphix.session.test;
 
 import com.delphix.appliance.logger.Logger;
 import com.delphix.session.control.NexusStats;
+import com.delphix.session.impl.common.SessionTransport;
 import com.delphix.session.net.NetServerConfig;
 import com.delphix.session.sasl.*;
 import com.delphix.session.service.*;
 import com.delphix.session.ssl.*;
 import com.delphix.session.util.AsyncFuture;
 import com.delphix.session.util.AsyncTracker;
+import com.delphix.session.util.ByteBufferUtil;
 import com.delphix.session.util.ExecutorUtil;
 import com.delphix.session.util.ThreadFuture;
 import com.google.common.collect.ImmutableList;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.testng.SkipException;
 import org.testng.annotations.*;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.delphix.session.service.ServiceOption.*;
 import static com.delphix.session.service.ServiceProtocol.PORT;
@@ -1119,6 +1124,39 @@ public class ServiceTest extends SessionBaseTest {
         awaitDone(numThreads);
     }
 
+    @Test
+    public void testLatencyHistogram() {
+        int numThreads = 1;
+
+        // Create the session
+        ClientConfig spec = initServiceSpec(new HelloService(helloService));
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Issue commands over the fore channel
+        issueCommands(client, numThreads, 64, 0);
+
+        // Wait for the test to complete
+        awaitDone(numThreads);
+
+        // Check the local client percentiles and the server percentiles pulled from the peer
+        checkPercentiles(client.getStats(), "client.hist.executeTime");
+        checkPercentiles(client.getPeerStats(), "server.hist.serviceTime");
+    }
+
+    private void checkPercentiles(NexusStats stats, String prefix) {
+        long p50 = Long.parseLong(stats.getStat(prefix + ".p50").toString());
+        long p90 = Long.parseLong(stats.getStat(prefix + ".p90").toString());
+        long p99 = Long.parseLong(stats.getStat(prefix + ".p99").toString());
+        long p999 = Long.parseLong(stats.getStat(prefix + ".p999").toString());
+        long max = Long.parseLong(stats.getStat(prefix + ".max").toString());
+
+        assertTrue(p50 > 0);
+        assertTrue(p50 <= p90 && p90 <= p99 && p99 <= p999 && p999 <= max);
+    }
+
     @Test
     public void testReinstatement() {
         ClientNexus[] clients = new ClientNexus[2];
@@ -1230,6 +1268,39 @@ public class ServiceTest extends SessionBaseTest {
         awaitDone(numThreads);
     }
 
+    @Test
+    public void testWriteBatch() {
+        int numThreads = 8;
+
+        // Configure the server
+        Server server = serverManager.locate(helloService.getServiceName());
+        ServiceOptions offer = server.getConfig().getOptions();
+
+        offer.setOption(WRITE_BATCH, true);
+
+        // Configure the client
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+        ServiceOptions proposal = spec.getOptions();
+
+        proposal.setOption(WRITE_BATCH, true);
+        proposal.setOption(WRITE_BATCH_FRAMES, 4);
+
+        // Create the session
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        for (ServiceTransport xport : client.getTransports()) {
+            assertTrue(xport.getOptions().getOption(WRITE_BATCH));
+        }
+
+        // Issue commands over the fore channel
+        issueCommands(client, numThreads, 64, 0);
+
+        // Wait for the test to complete
+        awaitDone(numThreads);
+    }
+
     @Test
     public void testLatency() {
         int numThreads = 1;
@@ -1308,6 +1379,35 @@ public class ServiceTest extends SessionBaseTest {
         }
     }
 
+    @Test
+    public void testConcurrentDispatch() {
+        int numThreads = 16;
+
+        // Create the session with a queue depth small enough for commands to queue up now and then
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+        ServiceOptions proposal = spec.getOptions();
+        proposal.setOption(FORE_QUEUE_DEPTH, 8);
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Issue commands from many threads so that dispatch and completion race on and off the fast path
+        issueCommands(client, numThreads, 2000, 0, true);
+
+        // Wait for the test to complete
+        awaitDone(numThreads);
+
+        displayStats(client);
+
+        // Every command should have left the channel with its slot and data credit returned
+        assertEquals(getStat(client, "client.now.totalCount"), 0);
+        assertEquals(getStat(client, "client.now.activeCount"), 0);
+        assertEquals(getStat(client, "client.now.pendingCount"), 0);
+        assertEquals(getStat(client, "client.now.dataInUse"), 0);
+    }
+
     @Test
     public void testLeastQueue() {
         int numThreads = 8;
@@ -1339,6 +1439,648 @@ public class ServiceTest extends SessionBaseTest {
         }
     }
 
+    @Test
+    public void testLeastLatency() {
+        int numThreads = 8;
+
+        // Create the session
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+        // Set the scheduler to LEAST_LATENCY instead of the default ROUND_ROBIN
+        ServiceOptions proposal = spec.getOptions();
+        proposal.setOption(XPORT_SCHEDULER, "LEAST_LATENCY");
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Slow down one of the transports by pausing reads on it such that the responses are held up
+        final SessionTransport slowed = (SessionTransport) client.getTransports().iterator().next();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread slowdown = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    do {
+                        slowed.setReadable(false);
+                        Thread.sleep(5);
+                        slowed.setReadable(true);
+                    } while (!done.await(1, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    fail("slowdown interrupted", e);
+                } finally {
+                    slowed.setReadable(true);
+                }
+            }
+        });
+
+        Map<ServiceTransport, Long> before = getTotalRequests(client);
+
+        slowdown.start();
+
+        try {
+            // Issue commands over the fore channel
+            issueCommands(client, numThreads, 12000, 0);
+
+            // Wait for the test to complete
+            awaitDone(numThreads);
+        } finally {
+            done.countDown();
+
+            try {
+                slowdown.join();
+            } catch (InterruptedException e) {
+                fail("test interrupted", e);
+            }
+        }
+
+        Map<ServiceTransport, Long> after = getTotalRequests(client);
+
+        // The slowed transport is given well under half the work of the others
+        long slowedRequests = after.get(slowed) - before.get(slowed);
+
+        for (ServiceTransport xport : after.keySet()) {
+            if (xport != slowed) {
+                long requests = after.get(xport) - before.get(xport);
+                logger.infof("%s: %d requests vs %d over the slowed transport", xport, requests, slowedRequests);
+                assertTrue(slowedRequests * 2 < requests, "slowed transport not avoided");
+            }
+        }
+
+        displayStats(client);
+
+        Server server = serverManager.locate(helloService.getServiceName());
+        ServerNexus session = server.locate(clientTerminus);
+
+        if (session != null) {
+            displayStats(session);
+        }
+    }
+
+    @Test
+    public void testWriteWatermark() {
+        // Create the session
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+        // Set the write watermarks low enough for the transports to become unwritable under load
+        ServiceOptions proposal = spec.getOptions();
+        proposal.setOption(WRITE_HIGH_WATERMARK, 65536);
+        proposal.setOption(WRITE_LOW_WATERMARK, 4096);
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Issue data commands without waiting so that they pile up behind the watermarks
+        List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+
+        for (int i = 0; i < 2000; i++) {
+            futures.add(client.execute(new HelloRequest(new byte[32768]), null, 0));
+        }
+
+        for (ServiceFuture future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                fail("command interrupted", e);
+            } catch (ExecutionException e) {
+                fail("command failed", e.getCause());
+            }
+        }
+
+        displayStats(client);
+    }
+
+    @Test
+    public void testTrafficClass() {
+        int numThreads = 4;
+
+        // Requests are classified by the presence of bulk data
+        assertEquals(ServiceTrafficClass.classify(new HelloRequest()), ServiceTrafficClass.INTERACTIVE);
+        assertEquals(ServiceTrafficClass.classify(new HelloRequest(new byte[1])), ServiceTrafficClass.BULK);
+        assertEquals(ServiceTrafficClass.classify(new HelloRequest(new byte[0])), ServiceTrafficClass.INTERACTIVE);
+
+        // Create the session
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 3);
+
+        // Reserve one of the transports for interactive traffic
+        ServiceOptions proposal = spec.getOptions();
+        proposal.setOption(XPORT_INTERACTIVE, 1);
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Interactive commands are sent over the reserved transport as long as it is writable
+        Map<ServiceTransport, Long> before = getTotalRequests(client);
+
+        issueCommands(client, numThreads, 2000, 0);
+        awaitDone(numThreads);
+
+        Map<ServiceTransport, Long> after = getTotalRequests(client);
+
+        ServiceTransport reserved = null;
+        long reservedRequests = 0;
+        long totalRequests = 0;
+
+        for (ServiceTransport xport : after.keySet()) {
+            long requests = after.get(xport) - before.get(xport);
+
+            if (requests > reservedRequests) {
+                reserved = xport;
+                reservedRequests = requests;
+            }
+
+            totalRequests += requests;
+        }
+
+        assertTrue(reservedRequests >= totalRequests * 9 / 10, "reserved transport not used for interactive traffic");
+
+        // Bulk commands are kept off the reserved transport
+        before = after;
+
+        issueCommands(client, numThreads, 2000, 0, true);
+        awaitDone(numThreads);
+
+        after = getTotalRequests(client);
+
+        assertTrue(after.get(reserved) - before.get(reserved) < numThreads * 2000 / 100,
+                "reserved transport used for bulk traffic");
+
+        // Issue a mix of bulk and interactive commands over the fore channel
+        issueCommands(client, numThreads, 6000, 0, true);
+        issueCommands(client, numThreads, 6000, 0);
+
+        // Wait for the test to complete
+        awaitDone(numThreads * 2);
+
+        displayStats(client);
+    }
+
+    @Test
+    public void testAggregateBandwidthLimit() {
+        // Create the session with a generous per nexus limit
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+        ServiceOptions proposal = spec.getOptions();
+        proposal.setOption(BANDWIDTH_LIMIT, 100);
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Cap the aggregate bandwidth of all clients at 1MB/s which is what the nexus gets
+        clientManager.setBandwidthLimit(1);
+
+        try {
+            List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+            long start = System.nanoTime();
+
+            // Send 2MB of data which should take about 2 seconds starting with an empty bucket
+            for (int i = 0; i < 64; i++) {
+                futures.add(client.execute(new HelloRequest(new byte[32768]), null, 0));
+            }
+
+            for (ServiceFuture future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    fail("command interrupted", e);
+                } catch (ExecutionException e) {
+                    fail("command failed", e.getCause());
+                }
+            }
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsed >= 1500, "aggregate bandwidth limit not enforced " + elapsed + "ms");
+        } finally {
+            clientManager.setBandwidthLimit(0);
+        }
+
+        displayStats(client);
+    }
+
+    @Test
+    public void testQueueControl() {
+        // Configure the server to shrink the slot table once more than 64KB of request data is held
+        Server server = serverManager.locate(helloService.getServiceName());
+        ServiceOptions offer = server.getConfig().getOptions();
+        offer.setOption(FORE_QUEUE_CONTROL, true);
+        offer.setOption(FORE_DATA_BUDGET, 65536);
+
+        // Create the session
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        // Issue data commands without waiting so that the full queue depth is put to use
+        List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+
+        for (int i = 0; i < 2000; i++) {
+            futures.add(client.execute(new HelloRequest(new byte[32768]), null, 0));
+        }
+
+        for (ServiceFuture future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                fail("command interrupted", e);
+            } catch (ExecutionException e) {
+                fail("command failed", e.getCause());
+            }
+        }
+
+        displayStats(client);
+
+        ServerNexus session = server.locate(clientTerminus);
+        assertNotNull(session);
+
+        displayStats(session);
+
+        // The slot table should have been shrunk below the negotiated queue depth
+        long slots = getStat(session, "server.now.slotCount");
+        assertTrue(slots < FORE_QUEUE_DEPTH.getDefault(), "slot table not shrunk " + slots);
+    }
+
+    @Test
+    public void testDataWindow() {
+        int window = 32768;
+        int oversize = 49152;
+
+        // Configure the server to grant a data window much smaller than the queue depth worth of requests
+        Server server = serverManager.locate(helloService.getServiceName());
+        ServiceOptions offer = server.getConfig().getOptions();
+        offer.setOption(FORE_DATA_WINDOW, window);
+
+        // Create the session
+        ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        assertEquals(client.getOptions().getOption(FORE_DATA_WINDOW).intValue(), window);
+
+        // Issue data commands without waiting, including a few that exceed the window on their own
+        List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+
+        for (int i = 0; i < 1000; i++) {
+            int size = i % 100 == 0 ? oversize : 8192;
+            futures.add(client.execute(new HelloRequest(new byte[size]), null, 0));
+
+            // Only a command exceeding the window on its own may go beyond it
+            long inUse = getStat(client, "client.now.dataInUse");
+            assertTrue(inUse <= window || inUse == oversize, "data window exceeded " + inUse);
+        }
+
+        for (ServiceFuture future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                fail("command interrupted", e);
+            } catch (ExecutionException e) {
+                fail("command failed", e.getCause());
+            }
+        }
+
+        // All the credit should have been returned
+        assertEquals(getStat(client, "client.now.dataInUse"), 0);
+
+        displayStats(client);
+    }
+
+    @Test
+    public void testReplyCache() {
+        int size = 16384;
+        int limit = serverManager.getReplyCacheLimit();
+
+        // Move all cached response data off-heap
+        serverManager.setReplyCacheLimit(0);
+
+        try {
+            Server server = serverManager.locate(helloService.getServiceName());
+
+            // Create the session
+            ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+            ClientNexus client = clientManager.create(spec);
+
+            login(client);
+
+            // Issue echo commands without waiting so that the responses are cached over many slots
+            List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+
+            for (int i = 0; i < 256; i++) {
+                HelloRequest request = new HelloRequest(new byte[size]);
+                request.setMessage(HelloRequest.ECHO_TEST);
+                futures.add(client.execute(request, null, 0));
+            }
+
+            for (ServiceFuture future : futures) {
+                try {
+                    HelloResponse response = (HelloResponse) future.get();
+                    assertEquals(ByteBufferUtil.remaining(response.getData()), size);
+                } catch (InterruptedException e) {
+                    fail("command interrupted", e);
+                } catch (ExecutionException e) {
+                    fail("command failed", e.getCause());
+                }
+            }
+
+            ServerNexus session = server.locate(clientTerminus);
+            assertNotNull(session);
+
+            displayStats(session);
+
+            // Nothing should be cached on the heap with the limit at zero
+            assertEquals(getStat(session, "server.now.cachedBytes"), 0);
+
+            long spilled = getStat(session, "server.now.spilledBytes");
+            assertTrue(spilled > size, "response data not spilled " + spilled);
+
+            // The next command over the lowest slot confirms the responses cached over all the other slots
+            HelloRequest request = new HelloRequest(new byte[size]);
+            request.setMessage(HelloRequest.ECHO_TEST);
+
+            try {
+                client.execute(request).get();
+            } catch (InterruptedException e) {
+                fail("command interrupted", e);
+            } catch (ExecutionException e) {
+                fail("command failed", e.getCause());
+            }
+
+            spilled = getStat(session, "server.now.spilledBytes");
+            assertTrue(spilled <= size, "response data not confirmed " + spilled);
+
+            displayStats(session);
+        } finally {
+            serverManager.setReplyCacheLimit(limit);
+        }
+    }
+
+    @Test
+    public void testReplySpillLimit() {
+        int size = 16384;
+        int limit = serverManager.getReplyCacheLimit();
+        int spillLimit = serverManager.getReplySpillLimit();
+
+        // Leave no room either on the heap or off-heap
+        serverManager.setReplyCacheLimit(0);
+        serverManager.setReplySpillLimit(0);
+
+        try {
+            Server server = serverManager.locate(helloService.getServiceName());
+
+            // Create the session
+            ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+            ClientNexus client = clientManager.create(spec);
+
+            login(client);
+
+            // Issue echo commands without waiting so that the responses are cached over many slots
+            List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+
+            for (int i = 0; i < 64; i++) {
+                HelloRequest request = new HelloRequest(new byte[size]);
+                request.setMessage(HelloRequest.ECHO_TEST);
+                futures.add(client.execute(request, null, 0));
+            }
+
+            for (ServiceFuture future : futures) {
+                try {
+                    HelloResponse response = (HelloResponse) future.get();
+                    assertEquals(ByteBufferUtil.remaining(response.getData()), size);
+                } catch (InterruptedException e) {
+                    fail("command interrupted", e);
+                } catch (ExecutionException e) {
+                    fail("command failed", e.getCause());
+                }
+            }
+
+            ServerNexus session = server.locate(clientTerminus);
+            assertNotNull(session);
+
+            displayStats(session);
+
+            // The spill is refused so the response data stays on the heap in excess of the budget
+            assertEquals(getStat(session, "server.now.spilledBytes"), 0);
+
+            long cached = getStat(session, "server.now.cachedBytes");
+            assertTrue(cached > size, "response data not cached " + cached);
+        } finally {
+            serverManager.setReplyCacheLimit(limit);
+            serverManager.setReplySpillLimit(spillLimit);
+        }
+    }
+
+    @Test
+    public void testInflightBudget() {
+        int limit = serverManager.getInflightLimit();
+
+        // Disable reads as soon as any request data is held
+        serverManager.setInflightLimit(0);
+
+        try {
+            Server server = serverManager.locate(helloService.getServiceName());
+
+            // Create the session
+            ClientConfig spec = initServiceSpec(new HelloService(helloService), 2);
+
+            ClientNexus client = clientManager.create(spec);
+
+            login(client);
+
+            // Issue data commands without waiting so that reads are disabled and enabled over and over
+            List<ServiceFuture> futures = new ArrayList<ServiceFuture>();
+
+            for (int i = 0; i < 1000; i++) {
+                futures.add(client.execute(new HelloRequest(new byte[32768]), null, 0));
+            }
+
+            for (ServiceFuture future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    fail("command interrupted", e);
+                } catch (ExecutionException e) {
+                    fail("command failed", e.getCause());
+                }
+            }
+
+            ServerNexus session = server.locate(clientTerminus);
+            assertNotNull(session);
+
+            displayStats(session);
+
+            // All the request data should have been released once responded to
+            assertEquals(getStat(session, "server.now.inflightBytes"), 0);
+            assertEquals(serverManager.getInflightBytes(), 0);
+        } finally {
+            serverManager.setInflightLimit(limit);
+        }
+    }
+
+    @Test
+    public void testTaskExecutor() throws Exception {
+        String property = System.getProperty(ExecutorUtil.VIRTUAL_THREADS_PROPERTY);
+
+        // Virtual threads are used if supported by the runtime; otherwise, it falls back to platform threads
+        System.setProperty(ExecutorUtil.VIRTUAL_THREADS_PROPERTY, "true");
+
+        ExecutorService tasks;
+
+        try {
+            tasks = ExecutorUtil.newTaskExecutor();
+        } finally {
+            if (property == null) {
+                System.clearProperty(ExecutorUtil.VIRTUAL_THREADS_PROPERTY);
+            } else {
+                System.setProperty(ExecutorUtil.VIRTUAL_THREADS_PROPERTY, property);
+            }
+        }
+
+        final AsyncFuture<Object> gate = new ThreadFuture<Object>(new Runnable() {
+
+            @Override
+            public void run() {
+                // Do nothing
+            }
+        }, null);
+
+        final AsyncTracker tracker = new AsyncTracker();
+
+        // Thread.isVirtual is looked up reflectively since it is only available from Java 21 on
+        Method isVirtual;
+
+        try {
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            isVirtual = null;
+        }
+
+        final Method virtual = isVirtual;
+        final AtomicInteger virtualTasks = new AtomicInteger();
+
+        try {
+            // Block the tasks on the gate with both timed and untimed waits
+            for (int i = 0; i < 1000; i++) {
+                final boolean timed = i % 2 == 0;
+
+                final Runnable wait = new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            if (virtual != null && (Boolean) virtual.invoke(Thread.currentThread())) {
+                                virtualTasks.incrementAndGet();
+                            }
+
+                            if (timed) {
+                                try {
+                                    gate.get(1, TimeUnit.MILLISECONDS);
+                                } catch (TimeoutException e) {
+                                    // Expected as the gate is still closed
+                                }
+                            }
+
+                            gate.get();
+                        } catch (InterruptedException e) {
+                            fail("wait interrupted", e);
+                        } catch (ExecutionException e) {
+                            fail("wait failed", e.getCause());
+                        } catch (Exception e) {
+                            fail("virtual thread check failed", e);
+                        }
+                    }
+                };
+
+                AsyncFuture<?> future = new ThreadFuture<Object>(wait, null) {
+
+                    @Override
+                    public void done() {
+                        tracker.done(wait);
+                    }
+                };
+
+                tasks.execute(future);
+
+                tracker.track(wait, future);
+            }
+
+            try {
+                gate.get(100, TimeUnit.MILLISECONDS);
+                fail("gate opened unexpectedly");
+            } catch (TimeoutException e) {
+                // Expected
+            }
+
+            // An interrupted wait should throw with the interrupt cleared
+            Thread.currentThread().interrupt();
+
+            try {
+                gate.get();
+                fail("wait not interrupted");
+            } catch (InterruptedException e) {
+                assertFalse(Thread.currentThread().isInterrupted());
+            }
+
+            // Open the gate to release all the waiters
+            gate.run();
+
+            tracker.awaitDone();
+            assertTrue(tracker.isDone());
+        } finally {
+            ExecutorUtil.shutdown(tasks);
+        }
+
+        // The waits have been exercised on platform threads but the virtual thread mode itself has not
+        if (virtual == null) {
+            throw new SkipException("virtual threads not supported by the runtime");
+        }
+
+        assertEquals(virtualTasks.get(), 1000, "tasks not run on virtual threads");
+    }
+
+    @Test
+    public void testCompactObjects() {
+        int numThreads = 2;
+
+        // Configure the server
+        Server server = serverManager.locate(helloService.getServiceName());
+        server.getConfig().getOptions().setOption(COMPACT_OBJECTS, true);
+
+        // Configure the client
+        ClientConfig spec = initServiceSpec(new HelloService(helloService));
+        spec.getOptions().setOption(COMPACT_OBJECTS, true);
+
+        // Create the session
+        ClientNexus client = clientManager.create(spec);
+
+        login(client);
+
+        assertTrue(client.getOptions().getOption(COMPACT_OBJECTS));
+
+        // Issue commands over the fore channel
+        issueCommands(client, numThreads, 64, 0);
+
+        // Wait for the test to complete
+        awaitDone(numThreads);
+
+        // Control exchanges are encoded with the class table
+        assertEquals(client.getPeerInfo().getClientTerminus(), clientTerminus.toString());
+
+        // The classes of the peer stats are defined once and referred to by handle afterwards
+        for (int i = 0; i < 4; i++) {
+            checkPercentiles(client.getPeerStats(), "server.hist.serviceTime");
+        }
+    }
+
     @Test
     public void testBackChannel() {
         final int numThreads = 8;
@@ -2103,6 +2845,16 @@ public class ServiceTest extends SessionBaseTest {
         }
     }
 
+    private Map<ServiceTransport, Long> getTotalRequests(ServiceNexus nexus) {
+        Map<ServiceTransport, Long> requests = new HashMap<ServiceTransport, Long>();
+
+        for (ServiceTransport xport : nexus.getTransports()) {
+            requests.put(xport, ((SessionTransport) xport).getTotalRequests());
+        }
+
+        return requests;
+    }
+
     private void displayStats(ServiceNexus nexus) {
         logger.infof("%s: command stats\n%s", nexus, nexus.getStats().format());
     }
@@ -0,0 +1,132 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.test;
+
+import com.delphix.session.impl.common.*;
+import com.delphix.session.service.*;
+import com.delphix.session.util.EventSource;
+import com.google.common.collect.ImmutableList;
+import org.jboss.netty.channel.Channel;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * This class describes a standalone transport manager for exercising the frame codec outside of a live session. All
+ * channels are mapped to a single server side transport on a nexus that offers the hello service.
+ */
+public class TestTransportManager extends SessionTransportManager {
+
+    private final TestTransport xport = new TestTransport();
+
+    @Override
+    public SessionTransport locate(Channel channel) {
+        return xport;
+    }
+
+    @Override
+    public SessionTransportHandler getConnectHandler(SessionTransport xport) {
+        return null;
+    }
+
+    @Override
+    public SessionTransportHandler getOperateHandler(SessionTransport xport) {
+        return null;
+    }
+
+    public SessionNexus getNexus() {
+        return xport.getNexus();
+    }
+
+    private static class TestTransport extends SessionTransport {
+
+        private TestNexus nexus = new TestNexus();
+
+        public TestTransport() {
+            super(null);
+
+            ClientConfig spec = nexus.getSpec();
+            options = spec.getOptions().getTransportOptions();
+        }
+
+        @Override
+        public boolean isClient() {
+            return false;
+        }
+
+        @Override
+        public SessionNexus getNexus() {
+            return nexus;
+        }
+    }
+
+    private static class TestNexus extends SessionNexus {
+
+        private static final ServiceType type = new ServiceType(UUID.randomUUID(), "hello", "hello service");
+        private static final HelloService helloService = new HelloService(type);
+        private static final ClientConfig spec = new ClientConfig(null, null, helloService,
+                ImmutableList.<ProtocolHandler<?>> of(helloService));
+
+        public TestNexus() {
+            super(spec);
+
+            actVersion = SessionProtocol.V_1_0_0;
+            options = spec.getOptions().getNexusOptions();
+        }
+
+        public ClientConfig getSpec() {
+            return spec;
+        }
+
+        @Override
+        public Collection<ServiceTransport> getTransports() {
+            return null;
+        }
+
+        @Override
+        public boolean isClient() {
+            return false;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return false;
+        }
+
+        @Override
+        public boolean isDegraded() {
+            return false;
+        }
+
+        @Override
+        public CloseFuture close() {
+            return null;
+        }
+
+        @Override
+        public EventSource getEventSource() {
+            return null;
+        }
+
+        @Override
+        public void stop() {
+
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import com.delphix.appliance.server.test.UnitTest;
+import com.delphix.session.impl.frame.DigestMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import static org.testng.Assert.*;
+
+@UnitTest
+public class CRC32CTest {
+
+    @Test
+    public void testVectors() {
+        // Check values from RFC 3720 B.4
+        assertEquals(checksum("123456789".getBytes()), 0xE3069283L);
+        assertEquals(checksum(new byte[32]), 0x8A9136AAL);
+
+        byte[] ones = new byte[32];
+        byte[] ascending = new byte[32];
+
+        for (int i = 0; i < 32; i++) {
+            ones[i] = (byte) 0xff;
+            ascending[i] = (byte) i;
+        }
+
+        assertEquals(checksum(ones), 0x62A8AB43L);
+        assertEquals(checksum(ascending), 0x46DD794EL);
+    }
+
+    @Test
+    public void testUpdate() {
+        byte[] data = new byte[65536 + 13];
+        new Random(0).nextBytes(data);
+
+        long expected = checksum(data);
+
+        // Byte at a time and arbitrary splits must agree with the bulk update
+        CRC32C crc = new CRC32C();
+
+        for (byte b : data) {
+            crc.update(b);
+        }
+
+        assertEquals(crc.getValue(), expected);
+
+        crc.reset();
+        Random random = new Random(1);
+
+        for (int off = 0; off < data.length;) {
+            int len = Math.min(random.nextInt(100), data.length - off);
+            crc.update(data, off, len);
+            off += len;
+        }
+
+        assertEquals(crc.getValue(), expected);
+
+        // Direct buffers are digested in place
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 3);
+        direct.position(3);
+        direct.put(data);
+        direct.position(3);
+
+        crc.reset();
+        crc.update(direct);
+
+        assertEquals(crc.getValue(), expected);
+        assertEquals(direct.remaining(), 0);
+
+        // Data digest over a mix of heap and direct buffers leaves the buffers intact
+        direct.position(3 + 100);
+
+        ByteBuffer[] buffers = new ByteBuffer[] { ByteBuffer.wrap(data, 0, 100), direct };
+        Checksum digest = DigestMethod.DIGEST_CRC32C.create();
+
+        DigestMethod.updateDataDigest(buffers, digest);
+
+        assertEquals(digest.getValue(), expected);
+        assertEquals(buffers[0].remaining(), 100);
+        assertEquals(buffers[1].remaining(), data.length - 100);
+    }
+
+    @Test
+    public void testJdkImplementation() {
+        // The JDK implementation is used as of Java 9
+        boolean jdk = !System.getProperty("java.specification.version").startsWith("1.");
+        assertEquals(CRC32C.isJdkImplementation(), jdk);
+
+        byte[] data = new byte[4096 + 7];
+        new Random(0).nextBytes(data);
+
+        long expected = checksum(data);
+
+        // Either implementation must agree with the table driven one
+        Checksum digest = CRC32C.create();
+        assertTrue(CRC32C.isCRC32C(digest));
+
+        digest.update(data, 0, data.length);
+        assertEquals(digest.getValue(), expected);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        direct.flip();
+
+        digest.reset();
+        CRC32C.update(digest, direct);
+
+        assertEquals(digest.getValue(), expected);
+        assertEquals(direct.remaining(), 0);
+
+        assertFalse(CRC32C.isCRC32C(new CRC32()));
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import com.delphix.appliance.server.test.UnitTest;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+@UnitTest
+public class ConcurrentIntRegistryTest {
+
+    @Test
+    public void testRegistry() {
+        ConcurrentIntRegistry<Integer> registry = ConcurrentIntRegistry.create();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(0);
+
+        // Random keys with plenty of collisions and removals to exercise probing, deletion, and resize
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(4096) - 2048;
+
+            if (random.nextBoolean()) {
+                if (expected.containsKey(key)) {
+                    try {
+                        registry.register(key, i);
+                        fail("duplicate registered");
+                    } catch (IllegalStateException e) {
+                        // Expected
+                    }
+                } else {
+                    registry.register(key, i);
+                    expected.put(key, i);
+                }
+            } else {
+                assertEquals(registry.remove(key), expected.remove(key));
+            }
+
+            assertEquals(registry.size(), expected.size());
+        }
+
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(registry.locate(entry.getKey()), entry.getValue());
+        }
+
+        try {
+            registry.unregister(4096);
+            fail("missing unregistered");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        List<Integer> values = new ArrayList<Integer>();
+        registry.drain(values);
+
+        assertEquals(new HashSet<Integer>(values), new HashSet<Integer>(expected.values()));
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final ConcurrentIntRegistry<Integer> registry = ConcurrentIntRegistry.create();
+        final AtomicInteger sequence = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+        final int count = 50000;
+
+        Thread[] threads = new Thread[8];
+        final CountDownLatch latch = new CountDownLatch(threads.length);
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    latch.countDown();
+
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    // Register and remove sequential keys the same way exchange IDs come and go
+                    for (int j = 0; j < count; j++) {
+                        int key = sequence.incrementAndGet();
+                        registry.register(key, key);
+
+                        if (j % 2 == 0 && registry.remove(key) != null) {
+                            removed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(registry.size(), threads.length * count - removed.get());
+
+        List<Integer> values = new ArrayList<Integer>();
+        registry.drain(values);
+
+        assertEquals(values.size(), threads.length * count / 2);
+        assertEquals(registry.size(), 0);
+    }
+}
@@ -0,0 +1,533 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import com.delphix.appliance.server.test.UnitTest;
+import com.delphix.session.impl.control.ControlExchangeType;
+import com.delphix.session.impl.control.GetPeerInfoRequest;
+import com.delphix.session.service.ServiceExecutionException;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.delphix.session.util.ExternalObjectOutput.*;
+import static org.testng.Assert.*;
+
+@UnitTest
+public class ExternalObjectTest {
+
+    private final ExternalClassTable table = new ExternalClassTable(ExchangeRegistry.create(ControlExchangeType.class));
+
+    // Encoded frames by object output
+    private final Map<ExternalObjectOutput, byte[]> frames = new IdentityHashMap<ExternalObjectOutput, byte[]>();
+
+    @Test
+    public void testCompactObjects() throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        // A string that exceeds the modified UTF-8 limit
+        for (int i = 0; i < 30000; i++) {
+            builder.append('\u20ac');
+        }
+
+        List<Object> list = new ArrayList<Object>();
+        list.add(1);
+        list.add("two");
+        list.add(null);
+        list.add(new LinkedList<Object>(Arrays.<Object>asList(3L, 4.0)));
+
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put("key", new HashSet<Object>(Arrays.<Object>asList('a', (byte) 1, (short) 2)));
+        map.put(UUID.randomUUID(), new HashMap<Object, Object>());
+
+        Object[] objects = {
+            null,
+            true,
+            false,
+            Byte.MIN_VALUE,
+            Short.MAX_VALUE,
+            'x',
+            Integer.MIN_VALUE,
+            Long.MAX_VALUE,
+            1.5f,
+            Double.NaN,
+            "",
+            "ascii",
+            "\u0000\u00e9\u20ac",
+            builder.toString(),
+            UUID.randomUUID(),
+            TimeUnit.SECONDS,
+            list,
+            map,
+            new LinkedHashSet<Object>(Arrays.asList("c", "b", "a")),
+            new Date(),
+        };
+
+        for (Object obj : objects) {
+            assertEquals(roundTrip(obj), obj);
+        }
+
+        assertEquals((boolean[]) roundTrip(new boolean[] { true, false }), new boolean[] { true, false });
+        assertEquals((byte[]) roundTrip(new byte[] { 1, 2, 3 }), new byte[] { 1, 2, 3 });
+        assertEquals((short[]) roundTrip(new short[] { 1, 2, 3 }), new short[] { 1, 2, 3 });
+        assertEquals((char[]) roundTrip(new char[] { 'a', 'b' }), new char[] { 'a', 'b' });
+        assertEquals((int[]) roundTrip(new int[] { 1, -1 }), new int[] { 1, -1 });
+        assertEquals((long[]) roundTrip(new long[] { 1L, -1L }), new long[] { 1L, -1L });
+        assertEquals((float[]) roundTrip(new float[] { 1.0f }), new float[] { 1.0f });
+        assertEquals((double[]) roundTrip(new double[] { 1.0 }), new double[] { 1.0 });
+
+        String[][] strings = (String[][]) roundTrip(new String[][] { { "a", null }, { "b" } });
+        assertEquals(strings[0], new String[] { "a", null });
+        assertEquals(strings[1], new String[] { "b" });
+
+        // Externalizable and serializable objects
+        Point point = (Point) roundTrip(new Point(3, 4));
+        assertEquals(point.x, 3);
+        assertEquals(point.y, 4);
+
+        ServiceExecutionException exception = (ServiceExecutionException) roundTrip(
+                new ServiceExecutionException("kaboom!"));
+        assertEquals(exception.getMessage(), "kaboom!");
+    }
+
+    @Test
+    public void testClassReference() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos, table);
+
+        // The class is written by name the first time and by handle afterwards
+        oout.writeObject(new Point(1, 2));
+        int first = oout.size();
+        oout.writeObject(new Point(1, 2));
+        int second = oout.size() - first;
+
+        assertTrue(second < first);
+        assertEquals(second, 1 + 2 + 8);
+
+        // Exchanges in the class table are always written by identifier
+        int size = oout.size();
+        oout.writeObject(new GetPeerInfoRequest());
+        int exchange = oout.size() - size;
+
+        size = oout.size();
+        oout.writeObject(new GetPeerInfoRequest());
+        assertEquals(oout.size() - size, exchange);
+
+        oout.close();
+
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(baos.toByteArray()), table);
+
+        assertEquals(((Point) oin.readObject()).y, 2);
+        assertEquals(((Point) oin.readObject()).y, 2);
+        assertTrue(oin.readObject() instanceof GetPeerInfoRequest);
+        assertTrue(oin.readObject() instanceof GetPeerInfoRequest);
+        assertEquals(oin.read(), -1);
+    }
+
+    @Test
+    public void testClassCache() throws Exception {
+        ExternalClassCache sendCache = new ExternalClassCache();
+        ExternalClassCache receiveCache = new ExternalClassCache();
+
+        // Both frames carry the definition since neither has been committed yet
+        ExternalObjectOutput first = encodeFrame(sendCache, new Point(1, 2));
+        ExternalObjectOutput second = encodeFrame(sendCache, new Point(3, 4));
+
+        assertEquals(first.getDefinedClasses().size(), 1);
+        assertEquals(second.getDefinedClasses().size(), 1);
+        assertEquals(second.size(), first.size());
+
+        // The class is referred to by handle once the definition has been written
+        sendCache.commit(first.getDefinedClasses());
+
+        ExternalObjectOutput third = encodeFrame(sendCache, new Point(5, 6));
+
+        assertTrue(third.getDefinedClasses().isEmpty());
+        assertEquals(third.size(), 1 + 2 + 8);
+
+        // So are the class descriptors of serializable objects
+        Date date = new Date();
+
+        ExternalObjectOutput fourth = encodeFrame(sendCache, date);
+        sendCache.commit(fourth.getDefinedClasses());
+
+        ExternalObjectOutput fifth = encodeFrame(sendCache, date);
+
+        assertTrue(fifth.getDefinedClasses().isEmpty());
+        assertTrue(fifth.size() < fourth.size());
+        assertTrue(fifth.size() < encodeFrame(null, date).size());
+
+        assertEquals(((Point) decodeFrame(receiveCache, first)).y, 2);
+        assertEquals(((Point) decodeFrame(receiveCache, second)).y, 4);
+        assertEquals(((Point) decodeFrame(receiveCache, third)).y, 6);
+        assertEquals(decodeFrame(receiveCache, fourth), date);
+        assertEquals(decodeFrame(receiveCache, fifth), date);
+
+        // The handles are meaningless to a new connection
+        try {
+            decodeFrame(new ExternalClassCache(), third);
+            fail("class handle resolved");
+        } catch (StreamCorruptedException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testNestedStream() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos, table);
+
+        // The nested encoder inherits the compact encoding
+        assertSame(ExternalObjectOutput.create(oout), oout);
+        assertFalse(ExternalObjectOutput.create(baos).isCompact());
+
+        ExternalObjectOutput.create(oout).writeObject("nested");
+        oout.writeInt(7);
+        oout.close();
+
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(baos.toByteArray()), table);
+
+        assertSame(ExternalObjectInput.create(oin), oin);
+        assertEquals(ExternalObjectInput.create(oin).readObject(), "nested");
+        assertEquals(oin.readInt(), 7);
+    }
+
+    @Test
+    public void testSerialObjects() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos);
+
+        // Without a class table, the object is written with java serialization
+        oout.writeObject("serial");
+        oout.writeInt(7);
+        oout.close();
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(dis.readShort(), ObjectStreamConstants.STREAM_MAGIC);
+
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(oin.readObject(), "serial");
+        assertEquals(oin.readInt(), 7);
+    }
+
+    @Test
+    public void testSerialEvolution() throws Exception {
+        ExternalClassCache sendCache = new ExternalClassCache();
+        ExternalClassCache receiveCache = new ExternalClassCache();
+
+        // The earlier version is read with the field layout of the sender, leaving the extra field unset
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos, table, sendCache);
+
+        oout.writeObject(new com.delphix.session.test.SerialRecord(11));
+        oout.writeObject(new com.delphix.session.test.SerialRecord(12));
+        oout.writeInt(0xdeadbeef);
+        oout.close();
+
+        sendCache.commit(oout.getDefinedClasses());
+
+        ExternalObjectInput oin = new EvolvedObjectInput(baos.toByteArray(), receiveCache,
+                com.delphix.session.test.SerialRecord.class, SerialRecord.class);
+
+        for (int a = 11; a <= 12; a++) {
+            SerialRecord record = (SerialRecord) oin.readObject();
+            assertEquals(record.getA(), a);
+            assertEquals(record.getB(), 0L);
+        }
+
+        assertEquals(oin.readInt(), 0xdeadbeef);
+
+        // The descriptor of the sender is referred to by handle once committed
+        ExternalObjectOutput frame = encodeFrame(sendCache, new com.delphix.session.test.SerialRecord(13));
+        assertTrue(frame.getDefinedClasses().isEmpty());
+
+        oin = new EvolvedObjectInput(frames.get(frame), receiveCache, com.delphix.session.test.SerialRecord.class,
+                SerialRecord.class);
+        assertEquals(((SerialRecord) oin.readObject()).getA(), 13);
+        assertEquals(oin.read(), -1);
+
+        // The later version is read by skipping the extra field
+        baos = new ByteArrayOutputStream();
+        oout = new ExternalObjectOutput(baos, table);
+
+        oout.writeObject(new SerialRecord(21, 22L));
+        oout.writeInt(0xdeadbeef);
+        oout.close();
+
+        oin = new EvolvedObjectInput(baos.toByteArray(), null, SerialRecord.class,
+                com.delphix.session.test.SerialRecord.class);
+        assertEquals(((com.delphix.session.test.SerialRecord) oin.readObject()).getA(), 21);
+        assertEquals(oin.readInt(), 0xdeadbeef);
+    }
+
+    @Test
+    public void testCyclicCollection() throws Exception {
+        List<Object> list = new ArrayList<Object>();
+        list.add("self");
+        list.add(list);
+
+        assertCyclic(list);
+
+        // Cycles through maps and arrays are caught as well
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("values", new Object[] { 1, map });
+
+        assertCyclic(map);
+
+        // A shared reference that does not form a cycle is written as a copy, however deep it is nested
+        List<Object> shared = new LinkedList<Object>(Arrays.<Object>asList(1, 2));
+        List<Object> nested = Arrays.<Object>asList(shared, shared);
+
+        for (int i = 0; i < 32; i++) {
+            nested = new ArrayList<Object>(Arrays.<Object>asList(nested, shared));
+        }
+
+        assertEquals(roundTrip(nested), nested);
+    }
+
+    @Test
+    public void testCyclicExternal() throws Exception {
+        Node parent = new Node();
+        Node child = new Node();
+
+        // The child refers back to its parent through writeObject
+        parent.peer = child;
+        child.peer = parent;
+
+        assertCyclic(parent);
+
+        // Without the back pointer, the chain is written inline as usual
+        parent.peer = new Node();
+        assertTrue(roundTrip(parent) instanceof Node);
+    }
+
+    @Test
+    public void testCorruptLength() throws Exception {
+        int[] tags = { TAG_LONG_STRING, TAG_BOOLEAN_ARRAY, TAG_BYTE_ARRAY, TAG_SHORT_ARRAY, TAG_CHAR_ARRAY,
+                TAG_INT_ARRAY, TAG_LONG_ARRAY, TAG_FLOAT_ARRAY, TAG_DOUBLE_ARRAY };
+
+        // A length far beyond the frame fails on the missing data rather than on the allocation
+        for (int tag : tags) {
+            assertTruncated(tag, null);
+        }
+
+        assertTruncated(TAG_OBJECT_ARRAY, String.class);
+        assertTruncated(TAG_COLLECTION, ArrayList.class);
+        assertTruncated(TAG_COLLECTION, HashSet.class);
+        assertTruncated(TAG_MAP, HashMap.class);
+    }
+
+    @Test
+    public void testUnbufferedInput() throws Exception {
+        byte[] bytes = new byte[100000];
+        long[] longs = new long[100000];
+        String[] strings = new String[10000];
+        List<Object> list = new ArrayList<Object>();
+        Map<Object, Object> map = new HashMap<Object, Object>();
+
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = (byte) i;
+            longs[i] = i;
+            strings[i] = String.valueOf(i);
+            list.add(i);
+            map.put(i, strings[i]);
+        }
+
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'x');
+
+        List<Object> values = new ArrayList<Object>(Arrays.<Object>asList(bytes, longs, strings, list, map,
+                new String(chars)));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos, table);
+
+        oout.writeObject(values);
+        oout.close();
+
+        // Arrays are grown as the elements arrive from a stream that does not report what is available
+        InputStream is = new FilterInputStream(new ByteArrayInputStream(baos.toByteArray())) {
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+
+        ExternalObjectInput oin = new ExternalObjectInput(is, table);
+        List<?> result = (List<?>) oin.readObject();
+
+        assertEquals(oin.read(), -1);
+
+        assertEquals((byte[]) result.get(0), bytes);
+        assertEquals((long[]) result.get(1), longs);
+        assertEquals((Object[]) result.get(2), strings);
+        assertEquals(result.subList(3, values.size()), values.subList(3, values.size()));
+    }
+
+    private void assertTruncated(int tag, Class<?> clazz) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+
+        out.writeByte(tag);
+
+        if (clazz != null) {
+            out.writeShort(CLASS_NEW);
+            out.writeUTF(clazz.getName());
+            out.writeLong(ObjectStreamClass.lookup(clazz).getSerialVersionUID());
+        }
+
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeLong(0);
+        out.close();
+
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(baos.toByteArray()), table);
+
+        try {
+            oin.readObject();
+            fail("truncated object read");
+        } catch (EOFException e) {
+            // Expected
+        }
+    }
+
+    private void assertCyclic(Object obj) throws IOException {
+        ExternalObjectOutput oout = new ExternalObjectOutput(new ByteArrayOutputStream(), table);
+
+        try {
+            oout.writeObject(obj);
+            fail("cyclic reference written");
+        } catch (NotSerializableException e) {
+            // Expected
+        }
+    }
+
+    private Object roundTrip(Object obj) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos, table);
+
+        oout.writeObject(obj);
+        oout.writeInt(0xdeadbeef);
+        oout.close();
+
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(baos.toByteArray()), table);
+        Object result = oin.readObject();
+
+        // The object must be fully consumed
+        assertEquals(oin.readInt(), 0xdeadbeef);
+        assertEquals(oin.read(), -1);
+
+        return result;
+    }
+
+    private ExternalObjectOutput encodeFrame(ExternalClassCache cache, Object obj) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ExternalObjectOutput oout = new ExternalObjectOutput(baos, table, cache);
+
+        oout.writeObject(obj);
+        oout.close();
+
+        frames.put(oout, baos.toByteArray());
+
+        return oout;
+    }
+
+    private Object decodeFrame(ExternalClassCache cache, ExternalObjectOutput frame) throws IOException,
+            ClassNotFoundException {
+        ExternalObjectInput oin = new ExternalObjectInput(new ByteArrayInputStream(frames.get(frame)), table, cache);
+
+        Object result = oin.readObject();
+        assertEquals(oin.read(), -1);
+
+        return result;
+    }
+
+    /**
+     * This class resolves a serializable class written by the peer to a different version of the class.
+     */
+    private class EvolvedObjectInput extends ExternalObjectInput {
+
+        private final Class<?> peerClass;
+        private final Class<?> localClass;
+
+        public EvolvedObjectInput(byte[] data, ExternalClassCache cache, Class<?> peerClass, Class<?> localClass) {
+            super(new ByteArrayInputStream(data), table, cache);
+
+            this.peerClass = peerClass;
+            this.localClass = localClass;
+        }
+
+        @Override
+        protected Class<?> resolveClass(String name) throws ClassNotFoundException {
+            if (name.equals(peerClass.getName())) {
+                return localClass;
+            }
+
+            return super.resolveClass(name);
+        }
+    }
+
+    private static class Point implements Externalizable {
+
+        private int x;
+        private int y;
+
+        public Point() {
+
+        }
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeInt(x);
+            out.writeInt(y);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            x = in.readInt();
+            y = in.readInt();
+        }
+    }
+
+    private static class Node implements Externalizable {
+
+        private Node peer;
+
+        public Node() {
+
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeObject(peer);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+            peer = (Node) in.readObject();
+        }
+    }
+}
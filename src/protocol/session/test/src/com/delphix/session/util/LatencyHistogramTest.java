@@ -0,0 +1,91 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import com.delphix.appliance.server.test.UnitTest;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@UnitTest
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(histogram.getValueAtPercentile(50.0), 0);
+
+        // Values 1 through 10000 us in ns
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(histogram.getTotalCount(), 10000);
+        assertEquals(histogram.getMaxValue(), 10000000);
+
+        checkPercentile(histogram, 50.0, 5000000);
+        checkPercentile(histogram, 90.0, 9000000);
+        checkPercentile(histogram, 99.0, 9900000);
+        checkPercentile(histogram, 99.9, 9990000);
+        assertEquals(histogram.getValueAtPercentile(100.0), 10000000);
+
+        Map<String, Object> stats = new HashMap<String, Object>();
+        histogram.getStats("test", stats);
+
+        assertEquals(stats.size(), 5);
+        assertEquals(stats.get("test.max"), 10000000L);
+
+        histogram.reset();
+
+        assertEquals(histogram.getTotalCount(), 0);
+        assertEquals(histogram.getValueAtPercentile(99.0), 0);
+    }
+
+    @Test
+    public void testRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // Small values are exact
+        for (long i = 0; i < 64; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(histogram.getValueAtPercentile(50.0), 31);
+
+        // Values beyond the trackable range are capped but the maximum is exact
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+
+        assertEquals(histogram.getTotalCount(), 65);
+        assertEquals(histogram.getValueAtPercentile(100.0), (1L << 40) - 1);
+        assertEquals(histogram.getMaxValue(), Long.MAX_VALUE);
+    }
+
+    private static void checkPercentile(LatencyHistogram histogram, double percentile, long expected) {
+        long value = histogram.getValueAtPercentile(percentile);
+
+        // The bucket resolution guarantees the relative error is no more than 1/32
+        assertTrue(value >= expected && value <= expected + expected / 32, percentile + " " + value);
+    }
+}
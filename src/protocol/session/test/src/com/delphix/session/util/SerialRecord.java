@@ -0,0 +1,47 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Copyright (c) 2014 by Delphix. All rights reserved.
+ */
+
+package com.delphix.session.util;
+
+import java.io.Serializable;
+
+/**
+ * This class is a serializable object that has evolved compatibly from com.delphix.session.test.SerialRecord, i.e.,
+ * it has an extra field under the same serial version. The two stand in for the same class on peers running different
+ * versions, since java serialization matches the class names without the package.
+ */
+public class SerialRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int a;
+    private final long b;
+
+    public SerialRecord(int a, long b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    public int getA() {
+        return a;
+    }
+
+    public long getB() {
+        return b;
+    }
+}